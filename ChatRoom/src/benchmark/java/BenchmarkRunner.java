@@ -0,0 +1,193 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * BenchmarkRunner class runs throughput and allocation benchmarks of codec and protocol hot paths. Each benchmark is
+ * set up once, warmed up, then measured over iterations of fixed length on the calling thread. Besides operations per
+ * second it reports bytes allocated per operation and allocation rate, read from the per-thread allocation counter of
+ * the JVM, and garbage collections run while measuring, the figures the gc profiler of JMH gives. JMH itself cannot be
+ * used here: it rejects benchmarks in the default package, and classes of a named package cannot see the server classes.
+ */
+public class BenchmarkRunner {
+
+  /**
+   * Operations run between two reads of the clock
+   */
+  private static final int BATCH = 16;
+  private final List<String> names;
+  private final List<Callable<Fixture>> setups;
+  private final int warmupIterations;
+  private final int iterations;
+  private final long iterationNanos;
+  private final com.sun.management.ThreadMXBean threads;
+
+  /**
+   * Never returned by an operation, reading it keeps the JIT from dropping results
+   */
+  private volatile Object never;
+
+  /**
+   * Constructor of BenchmarkRunner
+   *
+   * @param warmupIterations represented as int, iterations run before measuring
+   * @param iterations represented as int, iterations measured
+   * @param iterationMillis represented as long, length of one iteration
+   */
+  public BenchmarkRunner(int warmupIterations, int iterations, long iterationMillis) {
+    if (iterations < 1 || iterationMillis < 1) {
+      throw new InvalidArgException("Benchmark iterations and iteration millis should be greater than zero!");
+    }
+    this.names = new ArrayList<>();
+    this.setups = new ArrayList<>();
+    this.warmupIterations = warmupIterations;
+    this.iterations = iterations;
+    this.iterationNanos = iterationMillis * 1_000_000L;
+    this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    this.never = new Object();
+  }
+
+  /**
+   * This public method is used to add a benchmark
+   *
+   * @param name represented as String, name of benchmark
+   * @param setup represented as Callable, creates the state of benchmark, called only if the benchmark is run
+   */
+  public void add(String name, Callable<Fixture> setup) {
+    this.names.add(name);
+    this.setups.add(setup);
+  }
+
+  /**
+   * This public method is used to run every benchmark whose name contains a filter and print a line per benchmark
+   *
+   * @param filter represented as String, part of benchmark names to run, empty for all
+   * @throws Exception if a benchmark cannot be set up or fails
+   */
+  public void run(String filter) throws Exception {
+    System.out.printf("%-40s %14s %12s %12s %10s %8s %8s%n", "Benchmark", "ops/s", "error", "B/op", "MB/s", "gc", "gc ms");
+    for (int i = 0; i < this.names.size(); i++) {
+      if (this.names.get(i).contains(filter)) {
+        Fixture fixture = this.setups.get(i).call();
+        try {
+          this.measure(this.names.get(i), fixture);
+        } finally {
+          fixture.tearDown();
+        }
+      }
+    }
+  }
+
+  /**
+   * This private method is used to warm up and measure one benchmark
+   *
+   * @param name represented as String, name of benchmark
+   * @param fixture represented as Fixture, state of benchmark
+   * @throws Exception if an operation fails
+   */
+  private void measure(String name, Fixture fixture) throws Exception {
+    for (int i = 0; i < this.warmupIterations; i++) {
+      this.iteration(fixture, new long[2]);
+    }
+    long threadId = Thread.currentThread().getId();
+    long[] gcBefore = collections();
+    long allocatedBefore = this.threads.getThreadAllocatedBytes(threadId);
+    double[] throughput = new double[this.iterations];
+    long operations = 0;
+    long nanos = 0;
+    for (int i = 0; i < this.iterations; i++) {
+      long[] result = new long[2];
+      this.iteration(fixture, result);
+      throughput[i] = result[0] * 1e9 / result[1];
+      operations += result[0];
+      nanos += result[1];
+    }
+    long allocated = this.threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+    long[] gcAfter = collections();
+    double mean = 0;
+    for (double value : throughput) {
+      mean += value / throughput.length;
+    }
+    double variance = 0;
+    for (double value : throughput) {
+      variance += (value - mean) * (value - mean) / Math.max(1, throughput.length - 1);
+    }
+    System.out.printf("%-40s %14.1f %12.1f %12.1f %10.1f %8d %8d%n", name, mean, Math.sqrt(variance),
+        (double) allocated / operations, allocated * 1e3 / nanos, gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+  }
+
+  /**
+   * This private method is used to run operations for one iteration
+   *
+   * @param fixture represented as Fixture, state of benchmark
+   * @param result represented as long array, gets number of operations and nanoseconds they took
+   * @throws Exception if an operation fails
+   */
+  private void iteration(Fixture fixture, long[] result) throws Exception {
+    long start = System.nanoTime();
+    long end = start + this.iterationNanos;
+    long operations = 0;
+    long now;
+    do {
+      for (int i = 0; i < BATCH; i++) {
+        if (fixture.operation() == this.never) {
+          throw new IllegalStateException();
+        }
+      }
+      operations += BATCH;
+      now = System.nanoTime();
+    } while (now < end);
+    result[0] = operations;
+    result[1] = now - start;
+  }
+
+  /**
+   * This private static method is used to get number of garbage collections so far and milliseconds they took
+   *
+   * @return represented as long array
+   */
+  private static long[] collections() {
+    long[] total = new long[2];
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total[0] += Math.max(0, collector.getCollectionCount());
+      total[1] += Math.max(0, collector.getCollectionTime());
+    }
+    return total;
+  }
+
+  /**
+   * Enter point to run benchmarks, iterations can be set with benchmark.* system properties
+   *
+   * @param args user args, optional part of benchmark names to run
+   * @throws Exception if a benchmark fails
+   */
+  public static void main(String[] args) throws Exception {
+    BenchmarkRunner runner = new BenchmarkRunner(Integer.getInteger("benchmark.warmupIterations", 3),
+        Integer.getInteger("benchmark.iterations", 5), Long.getLong("benchmark.iterationMillis", 1000));
+    CodecBenchmarks.register(runner);
+    ProtocolBenchmarks.register(runner);
+    runner.run(args.length > 0 ? args[0] : "");
+  }
+
+  /**
+   * Fixture interface is the state of one benchmark and the operation measured on it
+   */
+  public interface Fixture {
+
+    /**
+     * This method is used to run the measured operation once
+     *
+     * @return represented as Object, result of operation, consumed so the work is not optimized away
+     * @throws Exception if operation fails
+     */
+    Object operation() throws Exception;
+
+    /**
+     * This method is used to release the state once benchmark is measured
+     */
+    default void tearDown() {
+    }
+  }
+}
@@ -0,0 +1,92 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * CodecBenchmarks class measures the client side MessageCodec: encoding terminal commands into frames and decoding frames
+ * sent by the server, both on in-memory streams. Broadcast and direct messages are encoded in both protocol versions.
+ */
+public class CodecBenchmarks {
+
+  /**
+   * Text of benchmarked messages, long enough to be a typical chat line
+   */
+  private static final String MESSAGE = "hello everyone, the build is green again and the release goes out tonight";
+
+  /**
+   * This public static method is used to add codec benchmarks to a runner
+   *
+   * @param runner represented as BenchmarkRunner
+   */
+  public static void register(BenchmarkRunner runner) {
+    for (int version = WireFormat.VERSION_1; version <= WireFormat.VERSION_2; version++) {
+      int encoded = version;
+      runner.add("codec.encodeBroadcast[version=" + version + "]", () -> encode("@all " + MESSAGE, encoded));
+      runner.add("codec.encodeDirect[version=" + version + "]", () -> encode("@bob " + MESSAGE, encoded));
+    }
+    runner.add("codec.encodeInsult", () -> encode("!bob", WireFormat.VERSION_1));
+    runner.add("codec.decodeBroadcast", CodecBenchmarks::decodeBroadcast);
+  }
+
+  /**
+   * This static method is used to make a codec encode a protocol version, as if the server had accepted it
+   *
+   * @param codec represented as MessageCodec
+   * @param version represented as int, protocol version
+   * @throws IOException if response cannot be decoded
+   */
+  static void acceptVersion(MessageCodec codec, int version) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MessageIdentifier.PROTOCOL_VERSION_RESPONSE);
+    out.writeInt(version);
+    codec.decodeMessage(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+  }
+
+  /**
+   * This private static method is used to create a benchmark encoding one command again and again
+   *
+   * @param command represented as String, terminal command
+   * @param version represented as int, protocol version of encoded frames
+   * @return represented as Fixture
+   * @throws IOException if protocol version cannot be set
+   */
+  private static BenchmarkRunner.Fixture encode(String command, int version) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    MessageCodec codec = new MessageCodec(new DataOutputStream(bytes));
+    codec.setUsername("amy");
+    codec.setConnected(true);
+    acceptVersion(codec, version);
+    return () -> {
+      bytes.reset();
+      codec.encodeMessage(command);
+      return bytes;
+    };
+  }
+
+  /**
+   * This private static method is used to create a benchmark decoding one BROADCAST_MESSAGE frame again and again
+   *
+   * @return represented as Fixture
+   * @throws IOException if frame cannot be encoded
+   */
+  private static BenchmarkRunner.Fixture decodeBroadcast() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MessageIdentifier.BROADCAST_MESSAGE);
+    WireFormat.writeString(out, "bob");
+    WireFormat.writeString(out, MESSAGE);
+    byte[] frame = bytes.toByteArray();
+    ReplayInputStream input = new ReplayInputStream();
+    DataInputStream in = new DataInputStream(input);
+    MessageCodec codec = new MessageCodec(new DataOutputStream(new ByteArrayOutputStream()));
+    codec.setUsername("amy");
+    codec.setConnected(true);
+    return () -> {
+      input.replay(frame);
+      return codec.decodeMessage(in);
+    };
+  }
+}
@@ -0,0 +1,247 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * ProtocolBenchmarks class measures ChatRoomProtocol.processInput of a server that is never bound to a port. Clients are
+ * in-memory connections: requests are replayed from byte arrays and frames sent to them are released right away, so a
+ * broadcast measures encoding, history and fan-out to every recipient queue without socket writes. A direct message is
+ * measured in both protocol versions, to compare the time taken to parse a request.
+ */
+public class ProtocolBenchmarks {
+
+  /**
+   * Numbers of broadcast recipients benchmarked
+   */
+  private static final int[] RECIPIENTS = {10, 100, 1000};
+
+  /**
+   * This public static method is used to add protocol benchmarks to a runner
+   *
+   * @param runner represented as BenchmarkRunner
+   */
+  public static void register(BenchmarkRunner runner) {
+    for (int recipients : RECIPIENTS) {
+      runner.add("protocol.broadcast[recipients=" + recipients + "]", () -> broadcast(recipients));
+    }
+    runner.add("protocol.sendInsult", ProtocolBenchmarks::sendInsult);
+    for (int version = WireFormat.VERSION_1; version <= WireFormat.VERSION_2; version++) {
+      int requested = version;
+      runner.add("protocol.directMessage[version=" + version + "]", () -> directMessage(requested));
+    }
+  }
+
+  /**
+   * This private static method is used to create a benchmark where one client broadcasts to a number of others
+   *
+   * @param recipients represented as int, number of other logged in clients
+   * @return represented as Fixture
+   * @throws IOException if a client cannot log in
+   */
+  private static BenchmarkRunner.Fixture broadcast(int recipients) throws IOException {
+    ChatRoomServer server = newServer(recipients + 1);
+    for (int i = 0; i < recipients; i++) {
+      new Client(server).login("user" + i);
+    }
+    Client amy = new Client(server);
+    amy.login("amy");
+    byte[] request = encode("amy", "@all hello everyone, the build is green again");
+    return new BenchmarkRunner.Fixture() {
+      @Override
+      public Object operation() throws IOException {
+        amy.process(request);
+        return amy;
+      }
+
+      @Override
+      public void tearDown() {
+        server.stop(0).join();
+      }
+    };
+  }
+
+  /**
+   * This private static method is used to create a benchmark where one client insults another
+   *
+   * @return represented as Fixture
+   * @throws IOException if a client cannot log in
+   */
+  private static BenchmarkRunner.Fixture sendInsult() throws IOException {
+    ChatRoomServer server = newServer(2);
+    Client amy = new Client(server);
+    amy.login("amy");
+    new Client(server).login("bob");
+    byte[] request = encode("amy", "!bob");
+    return new BenchmarkRunner.Fixture() {
+      @Override
+      public Object operation() throws IOException {
+        amy.process(request);
+        return amy;
+      }
+
+      @Override
+      public void tearDown() {
+        server.stop(0).join();
+      }
+    };
+  }
+
+  /**
+   * This private static method is used to create a benchmark where one client sends a direct message to another
+   *
+   * @param version represented as int, protocol version negotiated by the sender
+   * @return represented as Fixture
+   * @throws IOException if a client cannot log in
+   */
+  private static BenchmarkRunner.Fixture directMessage(int version) throws IOException {
+    ChatRoomServer server = newServer(2);
+    Client amy = new Client(server);
+    amy.negotiate(version);
+    amy.login("amy");
+    new Client(server).login("bob");
+    byte[] request = encode("amy", "@bob hello bob, the build is green again", version);
+    return new BenchmarkRunner.Fixture() {
+      @Override
+      public Object operation() throws IOException {
+        amy.process(request);
+        return amy;
+      }
+
+      @Override
+      public void tearDown() {
+        server.stop(0).join();
+      }
+    };
+  }
+
+  /**
+   * This private static method is used to create a server with room for a number of clients
+   *
+   * @param clients represented as int, most clients logged in
+   * @return represented as ChatRoomServer
+   */
+  private static ChatRoomServer newServer(int clients) {
+    ServerConfig config = ServerConfig.fromSystemProperties();
+    config.setMaxClients(clients);
+    return new ChatRoomServer(config);
+  }
+
+  /**
+   * This private static method is used to encode a terminal command of a user into a request frame
+   *
+   * @param username represented as String, user sending the command
+   * @param command represented as String, terminal command
+   * @return represented as byte array, frame starting with its message identifier
+   * @throws IOException if command cannot be encoded
+   */
+  private static byte[] encode(String username, String command) throws IOException {
+    return encode(username, command, WireFormat.VERSION_1);
+  }
+
+  /**
+   * This private static method is used to encode a terminal command of a user into a request frame of a protocol version
+   *
+   * @param username represented as String, user sending the command
+   * @param command represented as String, terminal command
+   * @param version represented as int, protocol version of frame
+   * @return represented as byte array, frame starting with its message identifier
+   * @throws IOException if command cannot be encoded
+   */
+  private static byte[] encode(String username, String command, int version) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    MessageCodec codec = new MessageCodec(new DataOutputStream(bytes));
+    codec.setUsername(username);
+    CodecBenchmarks.acceptVersion(codec, version);
+    codec.encodeMessage(command);
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Client class is an in-memory connection with its own protocol, it releases every frame sent to it
+   */
+  private static final class Client implements ClientConnection {
+    private final ReplayInputStream input;
+    private final DataInputStream in;
+    private final ChatRoomProtocol protocol;
+
+    /**
+     * Constructor of Client
+     *
+     * @param server represented as ChatRoomServer
+     */
+    private Client(ChatRoomServer server) {
+      this.input = new ReplayInputStream();
+      this.in = new DataInputStream(this.input);
+      this.protocol = new ChatRoomProtocol(this.in, this, server);
+    }
+
+    /**
+     * This private method is used to negotiate the protocol version of requests on this connection
+     *
+     * @param version represented as int, requested protocol version
+     * @throws IOException if request cannot be processed
+     */
+    private void negotiate(int version) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      new MessageCodec(new DataOutputStream(bytes)).encodeProtocolVersion(version);
+      this.process(bytes.toByteArray());
+      if (this.protocol.getVersion() != version) {
+        throw new IllegalStateException("Protocol version " + version + " was not accepted");
+      }
+    }
+
+    /**
+     * This private method is used to log in a user on this connection
+     *
+     * @param username represented as String
+     * @throws IOException if login fails
+     */
+    private void login(String username) throws IOException {
+      this.process(encode(username, "login", this.protocol.getVersion()));
+      if (this.protocol.getUsername() == null) {
+        throw new IllegalStateException("Login of " + username + " failed");
+      }
+    }
+
+    /**
+     * This private method is used to run one request frame through the protocol
+     *
+     * @param request represented as byte array, frame starting with its message identifier
+     * @throws IOException if request cannot be processed
+     */
+    private void process(byte[] request) throws IOException {
+      this.input.replay(request);
+      this.protocol.processInput(this.protocol.readMessageIdentifier());
+    }
+
+    @Override
+    public void send(Frame frame) {
+      frame.release();
+    }
+
+    @Override
+    public int queuedFrames() {
+      return 0;
+    }
+
+    @Override
+    public long writtenSequence() {
+      return 0;
+    }
+
+    @Override
+    public ChatRoomProtocol getProtocol() {
+      return this.protocol;
+    }
+
+    @Override
+    public boolean isClosed() {
+      return false;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,51 @@
+import java.io.InputStream;
+
+/**
+ * ReplayInputStream class is an input stream over a byte array that can be pointed at new bytes, so a protocol or a codec
+ * reads the same request again and again without allocating a stream per operation.
+ */
+public class ReplayInputStream extends InputStream {
+  private byte[] bytes;
+  private int position;
+
+  /**
+   * Constructor of ReplayInputStream, empty until bytes are replayed
+   */
+  public ReplayInputStream() {
+    this.bytes = new byte[0];
+  }
+
+  /**
+   * This public method is used to read bytes from their start
+   *
+   * @param bytes represented as byte array, bytes to read next
+   */
+  public void replay(byte[] bytes) {
+    this.bytes = bytes;
+    this.position = 0;
+  }
+
+  @Override
+  public int read() {
+    return this.position < this.bytes.length ? this.bytes[this.position++] & 0xff : -1;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) {
+    if (length == 0) {
+      return 0;
+    }
+    int count = Math.min(length, this.bytes.length - this.position);
+    if (count <= 0) {
+      return -1;
+    }
+    System.arraycopy(this.bytes, this.position, buffer, offset, count);
+    this.position += count;
+    return count;
+  }
+
+  @Override
+  public int available() {
+    return this.bytes.length - this.position;
+  }
+}
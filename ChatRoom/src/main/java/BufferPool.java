@@ -0,0 +1,151 @@
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BufferPool class hands out ByteBuffers in power of two size classes and takes them back for reuse.
+ * Each size class is a lock-free queue that retains a bounded number of bytes; requests larger than the biggest class
+ * are allocated on demand and never retained.
+ */
+public class BufferPool {
+  private final boolean direct;
+  private final int minSizeShift;
+  private final int maxSize;
+  private final Queue<ByteBuffer>[] classes;
+  private final AtomicInteger[] retained;
+  private final int[] maxRetained;
+  private final LongAdder hits;
+  private final LongAdder misses;
+  private final LongAdder outstanding;
+
+  /**
+   * Constructor of BufferPool
+   *
+   * @param direct represented as boolean, true for direct buffers and false for heap buffers
+   * @param minSize represented as int, smallest size class, a power of two
+   * @param maxSize represented as int, biggest size class, a power of two
+   * @param maxRetainedBytesPerClass represented as long, bytes each size class keeps for reuse
+   */
+  @SuppressWarnings("unchecked")
+  public BufferPool(boolean direct, int minSize, int maxSize, long maxRetainedBytesPerClass) {
+    if (Integer.bitCount(minSize) != 1 || Integer.bitCount(maxSize) != 1 || minSize > maxSize) {
+      throw new InvalidArgException("Buffer pool sizes should be powers of two with min not above max!");
+    }
+    this.direct = direct;
+    this.minSizeShift = Integer.numberOfTrailingZeros(minSize);
+    this.maxSize = maxSize;
+    int classCount = Integer.numberOfTrailingZeros(maxSize) - this.minSizeShift + 1;
+    this.classes = (Queue<ByteBuffer>[]) new Queue<?>[classCount];
+    this.retained = new AtomicInteger[classCount];
+    this.maxRetained = new int[classCount];
+    for (int i = 0; i < classCount; i++) {
+      this.classes[i] = new ConcurrentLinkedQueue<>();
+      this.retained[i] = new AtomicInteger();
+      this.maxRetained[i] = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxRetainedBytesPerClass >> (i + this.minSizeShift)));
+    }
+    this.hits = new LongAdder();
+    this.misses = new LongAdder();
+    this.outstanding = new LongAdder();
+  }
+
+  /**
+   * This public method is used to take a cleared buffer of at least provided size
+   *
+   * @param size represented as int, minimum capacity needed
+   * @return represented as ByteBuffer, in write mode with position zero
+   */
+  public ByteBuffer acquire(int size) {
+    this.outstanding.increment();
+    if (size > this.maxSize) {
+      this.misses.increment();
+      return this.allocate(size);
+    }
+    int index = this.classIndex(size);
+    ByteBuffer buffer = this.classes[index].poll();
+    if (buffer == null) {
+      this.misses.increment();
+      return this.allocate(1 << (index + this.minSizeShift));
+    }
+    this.retained[index].decrementAndGet();
+    this.hits.increment();
+    return buffer.clear();
+  }
+
+  /**
+   * This public method is used to give a buffer back to pool. The caller must not use it afterwards.
+   *
+   * @param buffer represented as ByteBuffer, buffer taken from this pool
+   */
+  public void release(ByteBuffer buffer) {
+    this.outstanding.decrement();
+    int capacity = buffer.capacity();
+    if (capacity > this.maxSize || Integer.bitCount(capacity) != 1 || buffer.isDirect() != this.direct) {
+      return;
+    }
+    int index = Integer.numberOfTrailingZeros(capacity) - this.minSizeShift;
+    if (index < 0) {
+      return;
+    }
+    if (this.retained[index].incrementAndGet() > this.maxRetained[index]) {
+      this.retained[index].decrementAndGet();
+      return;
+    }
+    this.classes[index].add(buffer);
+  }
+
+  /**
+   * This public method is used to get number of buffers served from pool
+   *
+   * @return represented as long
+   */
+  public long getHits() {
+    return this.hits.sum();
+  }
+
+  /**
+   * This public method is used to get number of buffers that had to be allocated
+   *
+   * @return represented as long
+   */
+  public long getMisses() {
+    return this.misses.sum();
+  }
+
+  /**
+   * This public method is used to get number of buffers acquired and not yet released
+   *
+   * @return represented as long
+   */
+  public long getOutstanding() {
+    return this.outstanding.sum();
+  }
+
+  @Override
+  public String toString() {
+    return (this.direct ? "direct" : "heap") + " hits=" + this.getHits() + ", misses=" + this.getMisses()
+        + ", outstanding=" + this.getOutstanding();
+  }
+
+  /**
+   * This private method is used to find smallest size class that fits provided size
+   *
+   * @param size represented as int
+   * @return represented as int, index of size class
+   */
+  private int classIndex(int size) {
+    int shift = size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+    return Math.max(0, shift - this.minSizeShift);
+  }
+
+  /**
+   * This private method is used to allocate a new buffer of this pool's kind
+   *
+   * @param capacity represented as int
+   * @return represented as ByteBuffer
+   */
+  private ByteBuffer allocate(int capacity) {
+    return this.direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+}
@@ -1,3 +1,5 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -21,6 +23,14 @@ public class ChatRoomClient {
    * Constant for login string
    */
   private static final String LOGIN_MESSAGE = "login";
+  /**
+   * Constant for resume session string
+   */
+  private static final String RESUME_MESSAGE = "resume ";
+  /**
+   * Constant for system property holding protocol version asked for, 1 to skip negotiation
+   */
+  private static final String PROTOCOL_VERSION_PROPERTY = "chatroom.protocolVersion";
   /**
    * Constant for two in validation of args length
    */
@@ -54,9 +64,11 @@ public class ChatRoomClient {
     try {
       String readMessage;
       this.clientSocket = new Socket(hostName, port);
-      this.dataInputStream = new DataInputStream(this.clientSocket.getInputStream());
-      this.dataOutputStream = new DataOutputStream(this.clientSocket.getOutputStream());
+      this.clientSocket.setTcpNoDelay(true);
+      this.dataInputStream = new DataInputStream(new BufferedInputStream(this.clientSocket.getInputStream()));
+      this.dataOutputStream = new DataOutputStream(new BufferedOutputStream(this.clientSocket.getOutputStream()));
       this.messageCodec = new MessageCodec(this.dataOutputStream);
+      this.negotiateVersion(); // compact frames once the server accepts them, before anything else is sent
 
       do {
         this.initiateUsername(in); //Ask for username from user and validate as if unique
@@ -93,7 +105,10 @@ public class ChatRoomClient {
     Thread printMsgThread = new Thread(() -> {
       while(this.messageCodec.isConnected()) {
         try {
-          System.out.println(this.messageCodec.decodeMessage(dataInputStream));
+          String message = this.messageCodec.decodeMessage(dataInputStream);
+          if (!message.isEmpty()) {
+            System.out.println(message); // heartbeat frames decode to nothing to print
+          }
         } catch (IOException e) {
           this.messageCodec.setConnected(Boolean.FALSE);
         }
@@ -125,33 +140,62 @@ public class ChatRoomClient {
         All available commands to interact in chatroom:
         logoff: sends a DISCONNECT_MESSAGE to the server
         who:    sends a QUERY_CONNECTED_USERS to the server
+        users prefix: sends a QUERY_USERS_PAGE to the server, first page of users whose name starts with prefix
+        more:   sends a QUERY_USERS_PAGE to the server for the next page of users
+        presence: sends a PRESENCE_SUBSCRIBE to the server, users joining and leaving are shown as they happen
+        presence off: sends a PRESENCE_UNSUBSCRIBE to the server
         @user:  sends a DIRECT_MESSAGE to the specified user to the server
         @all:   sends a BROADCAST_MESSAGE to the server, to be sent to all users connected
         !user:  sends a SEND_INSULT message to the server, to be sent to the specified user
+        join room:  sends a JOIN_ROOM to the server, room is created if nobody is in it
+        join room last N:  joins room and replays its last N messages
+        join room after S: joins room and replays its messages after sequence number S
+        leave room: sends a LEAVE_ROOM to the server
+        rooms:  sends a LIST_ROOMS to the server
+        ping:   sends a PING to the server, which answers with a PONG
+        stats:  sends an ADMIN_QUERY to the server, which answers with server metrics if you are an admin
+        #room:  sends a ROOM_MESSAGE to the server, to be sent to all members of the room
         ?:      see all the available commands to interact in chatroom
         Example:
         SAMPLE                            Result
         @bob hello bob, how are you?      hello bob, how are you? is sent to user bob
         @all Hello Everyone!              Hello Everyone! sent to all connected clients
         !bob                              You are not good at this job! randomly generated insult
-                                           sent to user bob                                                                         
+                                           sent to user bob
+        #java hi all                      hi all sent to all members of room java                                                                         
         """);
   }
 
   /**
-   * This private method is used to ask user for username in terminal and validate for unique name in chatroom
+   * This private method is used to ask the server for the protocol version of chatroom.protocolVersion, version 2 by
+   * default, and wait for its answer. Messages stay version 1 if the server does not accept a newer one.
+   *
+   * @throws IOException exception produced by failed or interrupted I/O operations while writing or reading
+   */
+  private void negotiateVersion() throws IOException {
+    int version = Integer.getInteger(PROTOCOL_VERSION_PROPERTY, WireFormat.VERSION_2);
+    if (version != WireFormat.VERSION_1) {
+      this.messageCodec.encodeProtocolVersion(version);
+      this.messageCodec.decodeResponse(this.dataInputStream);
+    }
+  }
+
+  /**
+   * This private method is used to ask user for username in terminal and validate for unique name in chatroom.
+   * A username followed by a session token resumes that session instead of logging in.
    *
    * @param in represented as InputStream
    * @throws IOException exception produced by failed or interrupted I/O operations while reading from bufferReader
    */
   private void initiateUsername(InputStream in) throws IOException {
-      System.out.println("Enter your username for chatroom:");
+      System.out.println("Enter your username for chatroom, followed by your session token to resume a session:");
       this.bufferedReader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
       String name =  this.bufferedReader.readLine();
-      this.username = name;
+      String[] nameAndToken = name.trim().split("\\s+");
+      this.username = nameAndToken.length == TWO_ARGS ? nameAndToken[0] : name;
       this.messageCodec.setUsername(this.username);
-      this.messageCodec.encodeMessage(LOGIN_MESSAGE);
-      System.out.println(this.messageCodec.decodeMessage(this.dataInputStream));
+      this.messageCodec.encodeMessage(nameAndToken.length == TWO_ARGS ? RESUME_MESSAGE + nameAndToken[1] : LOGIN_MESSAGE);
+      System.out.println(this.messageCodec.decodeResponse(this.dataInputStream));
   }
 
   /**
@@ -1,59 +1,264 @@
-import assignment4.problem1.Grammar;
-import assignment4.problem1.JSONFileParser;
-import assignment4.problem1.SentenceGenerator;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ObjLongConsumer;
 
 /**
  * Converts client data packet readable to server, performs tasks accordingly and send response to client if needed.
+ * Every outgoing frame is first encoded in full and then queued on the recipient's ClientConnection,
+ * so frames from concurrent senders never interleave on a socket. Fields are framed by WireFormat as UTF-8 bytes
+ * with byte length prefixes. Message bodies are relayed as opaque bytes read straight into a pooled frame buffer,
+ * so the server never allocates a String or an intermediate array for message content. Name fields are read into a
+ * reused scratch array and matched against cached username bytes, and a broadcast frame is shared by reference count
+ * until every recipient has written it. Broadcast and room frames are also kept in a MessageHistory, and a client can
+ * ask for them when it connects or joins a room; stored frames are copied back out as they are, never encoded again.
+ * Direct messages to a user who is offline go to the user's MailboxStore mailbox and are delivered at the next login.
+ * With resumable sessions, a login also gets a session token. A lost connection then keeps the user registered for the
+ * resume window, and a new connection presenting the token takes over the session: it gets the history it missed,
+ * the rooms it was in and its presence subscription, with no leave and join seen by anyone else.
+ * A client can negotiate protocol version 2 before it logs in. Its frames then have a one byte message identifier and
+ * varint field lengths, and only the frames that log in carry a username; the others are sent by the logged in user.
+ * Version 2 only covers frames sent by clients: frames sent by the server stay version 1 for every client, since one
+ * encoded frame is shared by every recipient whatever its version and is kept as it is in history, log and mailboxes.
  */
 public class ChatRoomProtocol {
+  private volatile String username;
+
+  /**
+   * UTF-8 bytes of username, cached at login
+   */
+  private byte[] usernameBytes;
+
   /**
-   * Constant for insult grammar file
+   * Username bytes exactly as received in the frame being processed
    */
-  public static final String GRAMMAR_JSON = "src/main/resources/insult_grammar.json";
-  private String username;
+  private byte[] senderBytes;
+
+  /**
+   * Scratch array name fields of incoming frames are read into, reused across frames
+   */
+  private byte[] field;
+
+  /**
+   * History request of the frame being processed, messages after this sequence number and at most this many of them
+   */
+  private long replayAfter;
+  private int replayLimit;
+
+  /**
+   * Token of session opened at login or taken over by resume, null if sessions cannot be resumed
+   */
+  private volatile String sessionToken;
+
+  /**
+   * Protocol version of frames read from the client, only the thread reading this client's input uses it
+   */
+  private int version;
   private DataInputStream in;
+  private final ClientConnection connection;
+  private final FrameBuffer frameBuffer;
+
+  /**
+   * Names of rooms this client is in, also read by the thread that closes the connection
+   */
+  private final Set<String> joinedRooms;
+
+  /**
+   * Encodes the frame being built into frameBuffer. Only the thread reading this client's input uses it.
+   */
   private final DataOutputStream out;
   private ChatRoomServer server;
 
   /**
-   * Only up to 10 clients can be connected in a chat room at one time
+   * Initial size of scratch array for name fields
    */
-  private static final Integer MAX_CLIENTS_ALLOWED = 10;
+  private static final int INITIAL_FIELD_SIZE = 64;
+
+  /**
+   * Room name used in HISTORY_MESSAGE and HISTORY_END for broadcast messages
+   */
+  private static final byte[] LOBBY = new byte[0];
+
+  /**
+   * Sender of a version 2 frame from a client that is not logged in
+   */
+  private static final byte[] NO_SENDER = new byte[0];
 
   /**
    * Chatroom protocol constructor
    * @param in server data input stream
-   * @param out server data output stream
+   * @param connection client connection this protocol serves, responses are queued on it
    * @param server server object
    */
-  public ChatRoomProtocol(DataInputStream in, DataOutputStream out, ChatRoomServer server) {
+  public ChatRoomProtocol(DataInputStream in, ClientConnection connection, ChatRoomServer server) {
     this.username = null;
+    this.version = WireFormat.VERSION_1;
     this.in = in;
-    this.out = out;
+    this.connection = connection;
+    this.field = new byte[INITIAL_FIELD_SIZE];
+    this.frameBuffer = new FrameBuffer(server.getBufferPool());
+    this.joinedRooms = ConcurrentHashMap.newKeySet();
+    this.out = new DataOutputStream(this.frameBuffer);
     this.server = server;
   }
 
   /**
-   * Processes the client request
+   * Processes the client request, counting it and its processing time in server metrics
    * @param messageIdentifier message identifier
    * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
    */
    public void processInput(Integer messageIdentifier) throws IOException {
-     int usernameLength = this.in.readInt();
-     String user = bytesToString(this.in.readNBytes(usernameLength));
-    switch (messageIdentifier){
-      case MessageIdentifier.CONNECT_MESSAGE: synchronized (this.out) {this.login(user);}break;
-      case MessageIdentifier.BROADCAST_MESSAGE: synchronized (this.out) {this.broadcast(user);}break;
-      case MessageIdentifier.QUERY_CONNECTED_USERS: synchronized (this.out) {this.queryResponse(user);}break;
-      case MessageIdentifier.DIRECT_MESSAGE: synchronized (this.out) {this.directMessage(user);}break;
-      case MessageIdentifier.DISCONNECT_MESSAGE: synchronized (this.out) {this.logoff(user);}break;
-      case MessageIdentifier.SEND_INSULT: synchronized (this.out) {this.sendInsult(user);}break;
-      default:  throw new IllegalStateException("Unexpected value: " + messageIdentifier);
+    long start = System.nanoTime();
+    try {
+      String user;
+      if (!FrameDecoder.hasSenderField(messageIdentifier, this.version)) {
+        this.senderBytes = this.usernameBytes != null ? this.usernameBytes : NO_SENDER;
+        user = this.username != null ? this.username : "";
+      }
+      else {
+        int senderLength = this.readField();
+        if (this.usernameBytes != null
+            && Arrays.equals(this.field, 0, senderLength, this.usernameBytes, 0, this.usernameBytes.length)) {
+          this.senderBytes = this.usernameBytes;
+          user = this.username;
+        }
+        else {
+          this.senderBytes = Arrays.copyOf(this.field, senderLength);
+          user = WireFormat.decode(this.senderBytes);
+        }
+      }
+      switch (messageIdentifier){
+        case MessageIdentifier.CONNECT_MESSAGE: this.login(user, false);break;
+        case MessageIdentifier.CONNECT_WITH_HISTORY: this.login(user, this.readHistoryRequest());break;
+        case MessageIdentifier.BROADCAST_MESSAGE: this.broadcast(user);break;
+        case MessageIdentifier.QUERY_CONNECTED_USERS: this.queryResponse(user);break;
+        case MessageIdentifier.DIRECT_MESSAGE: this.directMessage(user);break;
+        case MessageIdentifier.DISCONNECT_MESSAGE: this.logoff(user);break;
+        case MessageIdentifier.SEND_INSULT: this.sendInsult(user);break;
+        case MessageIdentifier.JOIN_ROOM: this.joinRoom(user, false);break;
+        case MessageIdentifier.JOIN_ROOM_WITH_HISTORY: this.joinRoom(user, true);break;
+        case MessageIdentifier.LEAVE_ROOM: this.leaveRoom(user);break;
+        case MessageIdentifier.LIST_ROOMS: this.listRooms(user);break;
+        case MessageIdentifier.ROOM_MESSAGE: this.roomMessage(user);break;
+        case MessageIdentifier.QUERY_USERS_PAGE: this.queryPage(user);break;
+        case MessageIdentifier.PRESENCE_SUBSCRIBE: this.subscribePresence(user);break;
+        case MessageIdentifier.PRESENCE_UNSUBSCRIBE: this.unsubscribePresence(user);break;
+        case MessageIdentifier.RESUME_SESSION: this.resume(user);break;
+        case MessageIdentifier.PING: this.pong();break;
+        case MessageIdentifier.PONG: break; // answer to a PING of ConnectionReaper, reading it was enough
+        case MessageIdentifier.ADMIN_QUERY: this.adminResponse(user);break;
+        case MessageIdentifier.PROTOCOL_VERSION: this.negotiate();break;
+        default:  throw new IllegalStateException("Unexpected value: " + messageIdentifier);
+      }
+      if (this.server.getLog().sampleDebug()) {
+        this.server.getLog().debug("frame.processed", "user", user, "id", messageIdentifier, "nanos", System.nanoTime() - start);
+      }
+    } catch (IOException | RuntimeException e) {
+      this.frameBuffer.discard(); // give back buffer of a frame cut off by the failure
+      this.server.getMetrics().recordFailedRequest();
+      throw e;
     }
+    this.server.getMetrics().recordRequest(messageIdentifier, System.nanoTime() - start);
+  }
+
+  /**
+   * Reads message identifier of the next client frame, an int in version 1 and one unsigned byte in version 2
+   * @return message identifier
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from in
+   */
+  public int readMessageIdentifier() throws IOException {
+    return this.version == WireFormat.VERSION_1 ? this.in.readInt() : this.in.readUnsignedByte();
+  }
+
+  /**
+   * Returns protocol version of frames read from the client
+   * @return protocol version
+   */
+  public int getVersion() {
+    return this.version;
+  }
+
+  /**
+   * Reads a length prefixed name field into the scratch array, growing it if needed
+   * @return length of field in bytes
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from in
+   */
+  private int readField() throws IOException {
+    int length = WireFormat.readLength(this.in, this.version);
+    if (length > this.field.length) {
+      this.field = new byte[Math.max(length, this.field.length * 2)];
+    }
+    this.in.readFully(this.field, 0, length);
+    return length;
+  }
+
+  /**
+   * Decodes name field last read into the scratch array
+   * @param length length of field in bytes
+   * @return name as String
+   */
+  private String fieldString(int length) {
+    return WireFormat.decode(this.field, 0, length);
+  }
+
+  /**
+   * Reads a history request field, a kind byte followed by a count of last messages or a sequence number to start after
+   * @return true if request is well formed, false if it should be ignored
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from in
+   */
+  private boolean readHistoryRequest() throws IOException {
+    int length = this.readField();
+    if (length != MessageHistory.REQUEST_BYTES) {
+      return false;
+    }
+    long value = 0;
+    for (int i = 1; i < MessageHistory.REQUEST_BYTES; i++) {
+      value = (value << 8) | (this.field[i] & 0xFF);
+    }
+    if (this.field[0] == MessageHistory.LAST && value >= 0) {
+      this.replayAfter = 0;
+      this.replayLimit = (int) Math.min(value, this.server.getConfig().getHistoryEntries());
+      return true;
+    }
+    if (this.field[0] == MessageHistory.AFTER && value >= 0) {
+      this.replayAfter = value;
+      this.replayLimit = Integer.MAX_VALUE;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Queues a HISTORY_MESSAGE for every stored frame matching the history request, followed by a HISTORY_END.
+   * Stored frames are copied into the reply as they are.
+   * @param history history to replay
+   * @param roomName UTF-8 bytes of room name, empty for broadcast messages
+   * @param through sequence number last stored before the client could receive new frames, later ones are not replayed
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void replay(MessageHistory history, byte[] roomName, long through) throws IOException {
+    int[] replayed = new int[1];
+    long last = history.replay(this.replayAfter, through, this.replayLimit, (sequence, stored) -> {
+      this.out.writeInt(MessageIdentifier.HISTORY_MESSAGE);
+      WireFormat.writeBytes(this.out, roomName);
+      this.out.writeLong(sequence);
+      this.out.writeInt(stored.remaining());
+      this.frameBuffer.write(stored);
+      Frame frame = this.takeFrame();
+      frame.setSequence(sequence);
+      this.connection.send(frame);
+      replayed[0]++;
+    });
+    this.out.writeInt(MessageIdentifier.HISTORY_END);
+    WireFormat.writeBytes(this.out, roomName);
+    this.out.writeInt(replayed[0]);
+    this.out.writeLong(last);
+    this.reply();
   }
 
   /**
@@ -66,21 +271,18 @@ public class ChatRoomProtocol {
       if (!this.server.hasClient(user)) {
         this.failedMessage("sender: " + user + " doesn't exist.");
       }
-      String target = bytesToString(this.in.readNBytes(this.in.readInt()));
-      if (!this.server.hasClient(target)) {
+      String target = this.fieldString(this.readField());
+      ClientConnection recipient = this.server.getClients().get(target);
+      if (recipient == null) {
         this.failedMessage("Receiver: " + target + " doesn't exist.");
       } else {
         String insult = this.createInsult();
         message = target + " " + insult;
-        ClientInterface recipient = this.server.getClients().get(target);
-        recipient.getDataOutputStream().writeInt(MessageIdentifier.SEND_INSULT);
-        recipient.getDataOutputStream().writeInt(user.length());
-        recipient.getDataOutputStream().writeBytes(user);
-        recipient.getDataOutputStream().writeInt(target.length());
-        recipient.getDataOutputStream().writeBytes(target);
-        recipient.getDataOutputStream().writeInt(message.length());
-        recipient.getDataOutputStream().writeBytes(message);
-
+        this.out.writeInt(MessageIdentifier.SEND_INSULT);
+        WireFormat.writeBytes(this.out, this.senderBytes);
+        WireFormat.writeBytes(this.out, recipient.getProtocol().getUsernameBytes());
+        WireFormat.writeString(this.out, message);
+        recipient.send(this.takeFrame());
       }
     } catch (IOException e) {
       this.failedMessage("The format of SEND_INSULT is incorrect.");
@@ -88,45 +290,174 @@ public class ChatRoomProtocol {
   }
 
   /**
-   * This private method creates insult using assignment4 jar
+   * This private method takes insult from insult pool of server, or creates one using cached grammar if pool is disabled
    * @return represented as String, random insult
    */
   private String createInsult() {
-    String insultMessage = "";
-    JSONFileParser jsonFileParser = new JSONFileParser(GRAMMAR_JSON);
-    Grammar insult = jsonFileParser.processJsonFile();
-    SentenceGenerator generator = new SentenceGenerator(insult, null);
-    insultMessage = generator.generateRandomSentence();
-    return insultMessage;
+    InsultPool pool = this.server.getInsultPool();
+    return pool != null ? pool.take() : this.server.getInsultGenerator().generate();
   }
 
   /**
-   * sends a CONNECT_RESPONSE to the client
+   * sends a CONNECT_RESPONSE to the client. A slot is reserved in server registry before the user is registered,
+   * so concurrent logins can never go beyond capacity of the chat room. Only the response is queued while the username
+   * is being taken; the SESSION_TOKEN, if sessions can be resumed, and requested broadcast history follow once the client
+   * is registered. History is replayed up to the last message sequenced before that, the client gets later ones live.
+   * Registering and the replay hold the publish lock of the server, so no message is both replayed and sent live.
+   * A connection logs in once: a login on a connection that already has a username only gets a FAILED_MESSAGE.
+   * @param withHistory true if broadcast history should be replayed
    * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
    */
-  private void login(String user) throws IOException {
-    Boolean success = Boolean.FALSE;
-    String message;
-    if(this.server.hasClient(user)){
-      this.out.writeInt(MessageIdentifier.CONNECT_RESPONSE);
-      message = "Username already exist";
+  private void login(String user, boolean withHistory) throws IOException {
+    ClientRegistry clients = this.server.getClients();
+    if (this.username != null) {
+      this.failedMessage("You are already logged in as " + this.username);
     }
-    else if (this.server.getClients().size() == MAX_CLIENTS_ALLOWED) {
-      this.out.writeInt(MessageIdentifier.DISCONNECT_RESPONSE);
-      message = "Chatroom is full. Please try later";
-      this.out.writeBoolean(Boolean.TRUE);
-      this.out.writeInt(message.length());
-      this.out.writeBytes(message);
+    else if(clients.contains(user)){
+      this.connectResponse(MessageIdentifier.CONNECT_RESPONSE, Boolean.FALSE, "Username already exist");
+    }
+    else if (!clients.tryReserve()) {
+      this.connectResponse(MessageIdentifier.DISCONNECT_RESPONSE, Boolean.TRUE, "Chatroom is full. Please try later");
     }
     else{
       this.out.writeInt(MessageIdentifier.CONNECT_RESPONSE);
-      this.username = user;
-      success = Boolean.TRUE;
-      message = "There are " + this.server.clientCount() + " other connected clients";
+      this.out.writeBoolean(Boolean.TRUE);
+      WireFormat.writeString(this.out, "There are " + (clients.size() - 1) + " other connected clients");
+      Frame response = this.takeFrame();
+      byte[] bytes = this.senderBytes;
+      long[] joined = new long[1];
+      synchronized (this.server.getPublishLock()) {
+        boolean registered = clients.register(user, this.connection, () -> {
+          this.username = user;
+          this.usernameBytes = bytes;
+          this.connection.send(response); // queued before anyone else can find this client
+          joined[0] = this.server.getHistorySequence(); // anything sequenced later is sent to this client live
+        });
+        if (!registered) {
+          clients.cancelReservation();
+          response.release();
+          this.connectResponse(MessageIdentifier.CONNECT_RESPONSE, Boolean.FALSE, "Username already exist");
+          return;
+        }
+        if (this.server.getSessions() != null) {
+          this.sessionToken = this.server.getSessions().open(user, this.connection);
+          this.out.writeInt(MessageIdentifier.SESSION_TOKEN);
+          WireFormat.writeString(this.out, this.sessionToken);
+          this.out.writeLong(joined[0]);
+          this.reply();
+        }
+        if (withHistory) {
+          this.replay(this.server.getLobbyHistory(), LOBBY, joined[0]);
+        }
+      }
+      if (this.server.getMailboxes() != null) {
+        this.server.getMailboxes().deliver(user, this.connection);
+      }
+    }
+  }
+
+  /**
+   * takes over a session whose connection was lost or is about to be, and sends a RESUME_RESPONSE. The old connection
+   * is closed, and username, rooms and presence subscription move to this connection without a leave and join, so the
+   * roster is not rebuilt. Broadcast and room messages after the last one written to the old connection are replayed up
+   * to the last one sequenced when the username moved, later ones reach this connection live, and direct messages stored
+   * while it was gone are delivered. The move and the replay hold the publish lock of the server, so every replayed
+   * frame is queued ahead of the first live one.
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void resume(String user) throws IOException {
+    String token = this.fieldString(this.readField());
+    SessionManager sessions = this.server.getSessions();
+    ClientConnection previous = this.username != null || sessions == null ? null : sessions.resume(user, token, this.connection);
+    if (previous == null) {
+      this.resumeResponse(Boolean.FALSE, 0, "Session cannot be resumed, please log in");
+      return;
+    }
+    previous.close(); // evicts the dead socket, its session now belongs to this connection
+    ChatRoomProtocol state = previous.getProtocol();
+    long after = previous.writtenSequence();
+    this.replayAfter = after;
+    this.replayLimit = Integer.MAX_VALUE;
+    byte[] bytes = this.senderBytes;
+    long[] moved = new long[1];
+    Frame response = this.resumeFrame(Boolean.TRUE, after, "Session resumed");
+    synchronized (this.server.getPublishLock()) {
+      boolean replaced = this.server.getClients().replace(user, previous, this.connection, () -> {
+        this.username = user;
+        this.usernameBytes = bytes;
+        this.sessionToken = token;
+        this.connection.send(response); // queued before anyone else can find this connection
+        moved[0] = this.server.getHistorySequence(); // anything sequenced later is sent to this connection live
+      });
+      if (!replaced) {
+        response.release();
+        sessions.close(token, this.connection);
+        this.resumeResponse(Boolean.FALSE, 0, "Session cannot be resumed, please log in");
+        return;
+      }
+      this.replay(this.server.getLobbyHistory(), LOBBY, moved[0]);
+      Room[] joinedRoom = new Room[1];
+      long[] joinedAt = new long[1];
+      ObjLongConsumer<Room> onJoined = (room, sequence) -> {
+        joinedRoom[0] = room;
+        joinedAt[0] = sequence;
+      };
+      for (String roomName : state.joinedRooms) {
+        state.joinedRooms.remove(roomName);
+        if (this.server.getRooms().replace(roomName, previous, this.connection, onJoined)) {
+          this.joinedRooms.add(roomName);
+          this.replay(joinedRoom[0].getHistory(), joinedRoom[0].getNameBytes(), joinedAt[0]);
+        }
+      }
     }
+    if (this.server.getPresenceBroker().unsubscribe(previous)) {
+      this.server.getPresenceBroker().subscribe(this.connection, this.out);
+      this.reply();
+    }
+    if (this.server.getMailboxes() != null) {
+      this.server.getMailboxes().deliver(user, this.connection);
+    }
+  }
+
+  /**
+   * sends a RESUME_RESPONSE to the client
+   * @param success success flag
+   * @param after sequence number messages are replayed after
+   * @param message response message
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void resumeResponse(Boolean success, long after, String message) throws IOException {
+    this.connection.send(this.resumeFrame(success, after, message));
+  }
+
+  /**
+   * encodes a RESUME_RESPONSE without sending it
+   * @param success success flag
+   * @param after sequence number messages are replayed after
+   * @param message response message
+   * @return encoded frame, owned by caller
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private Frame resumeFrame(Boolean success, long after, String message) throws IOException {
+    this.out.writeInt(MessageIdentifier.RESUME_RESPONSE);
+    this.out.writeBoolean(success);
+    this.out.writeLong(after);
+    WireFormat.writeString(this.out, message);
+    return this.takeFrame();
+  }
+
+  /**
+   * sends a response made of identifier, success flag and message to the client
+   * @param messageIdentifier message identifier of response
+   * @param success success flag
+   * @param message response message
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void connectResponse(int messageIdentifier, Boolean success, String message) throws IOException {
+    this.out.writeInt(messageIdentifier);
     this.out.writeBoolean(success);
-    this.out.writeInt(message.length());
-    this.out.writeBytes(message);
+    WireFormat.writeString(this.out, message);
+    this.reply();
   }
 
   /**
@@ -134,19 +465,18 @@ public class ChatRoomProtocol {
    * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
    */
   private void broadcast(String user) throws IOException {
-    int msgLen = this.in.readInt();
-    byte[] msg = this.in.readNBytes(msgLen);
     if(!this.server.hasClient(user)){
+      WireFormat.skipBytes(this.in, this.version);
       this.failedMessage("You are not authorized to send messages");
     }
     else {
-      for (ClientInterface client : this.server.getClients().values()) {
-        client.getDataOutputStream().writeInt(MessageIdentifier.BROADCAST_MESSAGE);
-        client.getDataOutputStream().writeInt(user.length());
-        client.getDataOutputStream().writeBytes(user);
-        client.getDataOutputStream().writeInt(msgLen);
-        client.getDataOutputStream().write(msg);
-      }
+      this.out.writeInt(MessageIdentifier.BROADCAST_MESSAGE);
+      WireFormat.writeBytes(this.out, this.senderBytes);
+      WireFormat.relayBytes(this.in, this.version, this.out, this.frameBuffer);
+      Frame frame = this.takeFrame();
+      int recipients = this.server.publish(this.server.getLobbyHistory(), frame, this.server.getClients());
+      this.server.getFanoutStats().record(frame, recipients);
+      frame.release();
     }
   }
 
@@ -155,29 +485,113 @@ public class ChatRoomProtocol {
    * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
    */
   private void directMessage(String user) throws IOException {
-    int recipientLength = this.in.readInt();
-    String recipientName = bytesToString(this.in.readNBytes(recipientLength));
-    int msgSize = this.in.readInt();
-    String message = bytesToString(this.in.readNBytes(msgSize));
+    String recipientName = this.fieldString(this.readField());
     if(!this.server.hasClient(user)){
+      WireFormat.skipBytes(this.in, this.version);
       this.failedMessage("You are not authorized to send messages");
       return;
     }
-    if(this.server.hasClient(recipientName)){
-      ClientInterface recipient = this.server.getClients().get(recipientName);
-      recipient.getDataOutputStream().writeInt(MessageIdentifier.DIRECT_MESSAGE);
-      recipient.getDataOutputStream().writeInt(user.length());
-      recipient.getDataOutputStream().writeBytes(user);
-      recipient.getDataOutputStream().writeInt(recipientLength);
-      recipient.getDataOutputStream().writeBytes(recipientName);
-      recipient.getDataOutputStream().writeInt(msgSize);
-      recipient.getDataOutputStream().writeBytes(message);
+    ClientConnection recipient = this.server.getClients().get(recipientName);
+    MailboxStore mailboxes = this.server.getMailboxes();
+    if ((recipient == null || recipient.isClosed()) && mailboxes != null && mailboxes.hasMailbox(recipientName)) {
+      this.storeOffline(recipientName); // also covers a recipient whose session waits to be resumed
+    }
+    else if(recipient != null){
+      this.out.writeInt(MessageIdentifier.DIRECT_MESSAGE);
+      WireFormat.writeBytes(this.out, this.senderBytes);
+      WireFormat.writeBytes(this.out, recipient.getProtocol().getUsernameBytes());
+      WireFormat.relayBytes(this.in, this.version, this.out, this.frameBuffer);
+      recipient.send(this.takeFrame());
     }
     else{
+      WireFormat.skipBytes(this.in, this.version);
       this.failedMessage("Recipient does not exists");
     }
   }
 
+  /**
+   * stores a DIRECT_MESSAGE in the mailbox of a recipient who is offline, and sends a FAILED_MESSAGE telling the sender
+   * whether it will be delivered at the recipient's next login. The mailbox stores it on its own thread, which sends
+   * that answer once the message is stored, so the thread of this client never waits for the disk.
+   * @param recipientName username of recipient, who logged in before
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void storeOffline(String recipientName) throws IOException {
+    MailboxStore mailboxes = this.server.getMailboxes();
+    this.out.writeInt(MessageIdentifier.DIRECT_MESSAGE);
+    WireFormat.writeBytes(this.out, this.senderBytes);
+    WireFormat.writeString(this.out, recipientName);
+    WireFormat.relayBytes(this.in, this.version, this.out, this.frameBuffer);
+    Frame frame = this.takeFrame();
+    ClientConnection sender = this.connection;
+    mailboxes.offer(recipientName, frame).thenAccept(stored -> {
+      ClientConnection recipient = this.server.getClients().get(recipientName);
+      if (stored && recipient != null && !recipient.isClosed()) {
+        mailboxes.deliver(recipientName, recipient); // recipient logged in while message was stored
+      }
+      sender.send(this.encodeFailed(stored ? "Recipient is offline, message will be delivered at their next login"
+          : "Recipient is offline and their mailbox is full"));
+    });
+    frame.release();
+  }
+
+  /**
+   * encodes a FAILED_MESSAGE in a frame of its own, for answers sent from another thread than the one of this client
+   * @param message text of the FAILED_MESSAGE
+   * @return complete encoded frame holding one reference
+   */
+  private Frame encodeFailed(String message) {
+    FrameBuffer frame = new FrameBuffer(this.server.getBufferPool());
+    DataOutputStream out = new DataOutputStream(frame);
+    try {
+      out.writeInt(MessageIdentifier.FAILED_MESSAGE);
+      WireFormat.writeString(out, message);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return frame.takeFrame();
+  }
+
+  /**
+   * sends a PROTOCOL_VERSION_RESPONSE with the version of frames the client sends from now on. A client that is not
+   * logged in and still on version 1 gets the version it asked for, up to the newest one ServerConfig allows; any other
+   * client keeps its version. The response itself is sent before the switch, like every server frame, as version 1.
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void negotiate() throws IOException {
+    int length = this.readField();
+    int accepted = this.version;
+    if (this.username == null && this.version == WireFormat.VERSION_1 && length == 1) {
+      accepted = Math.max(WireFormat.VERSION_1, Math.min(this.field[0] & 0xFF, this.server.getConfig().getMaxProtocolVersion()));
+    }
+    this.out.writeInt(MessageIdentifier.PROTOCOL_VERSION_RESPONSE);
+    this.out.writeInt(accepted);
+    this.reply();
+    this.version = accepted;
+  }
+
+  /**
+   * sends a PONG to the client, which can send a PING at any time to check that the server is alive
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void pong() throws IOException {
+    this.out.writeInt(MessageIdentifier.PONG);
+    this.reply();
+  }
+
+  /**
+   * sends an ADMIN_RESPONSE with a snapshot of server metrics, if the user is logged in and listed as admin in ServerConfig
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void adminResponse(String user) throws IOException {
+    boolean allowed = this.isLoggedIn(user) && this.server.getConfig().getAdminUsers().contains(user);
+    this.out.writeInt(MessageIdentifier.ADMIN_RESPONSE);
+    this.out.writeBoolean(allowed);
+    WireFormat.writeString(this.out, allowed ? this.server.getMetrics().snapshot(this.server)
+        : "You are not authorized to query server metrics");
+    this.reply();
+  }
+
   /**
    * sends a FAILED_MESSAGE to the client
    * @param message failure message
@@ -185,32 +599,90 @@ public class ChatRoomProtocol {
    */
   private void failedMessage(String message) throws IOException {
     this.out.writeInt(MessageIdentifier.FAILED_MESSAGE);
-    this.out.writeInt(message.length());
-    this.out.writeBytes(message);
+    WireFormat.writeString(this.out, message);
+    this.reply();
   }
 
   /**
-   * sends a QUERY_USER_RESPONSE to the client
+   * sends a QUERY_USER_RESPONSE to the client, every other user of the shared roster snapshot.
+   * Count and names come from one immutable snapshot, so they always agree.
    * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
    */
   private void queryResponse(String user) throws IOException {
-    int noOfUsers = 0;
     this.out.writeInt(MessageIdentifier.QUERY_USER_RESPONSE);
-    if(!this.server.getClients().get(user).getSocket().isClosed()){
-      noOfUsers = this.server.clientCount() - 1;
-      this.out.writeInt(noOfUsers);
-      if (noOfUsers > 0){
-        for(String i: this.server.getClients().keySet()){
-          if(i.equals(user)){
-            continue;
-          }
-          this.out.writeInt(i.length());
-          this.out.writeBytes(i);
-        }
+    ClientConnection self = this.server.getClients().get(user);
+    if(self == null || self.isClosed()){
+      this.out.writeInt(0);
+    }
+    else {
+      RosterSnapshot roster = this.server.getClients().getRoster();
+      int index = roster.indexOf(user);
+      if (index < 0) {
+        this.out.writeInt(roster.size());
+        roster.writeEntries(this.out, 0, roster.size());
+      }
+      else {
+        this.out.writeInt(roster.size() - 1);
+        roster.writeEntries(this.out, 0, index);
+        roster.writeEntries(this.out, index + 1, roster.size());
       }
     }
-    else{
-      this.out.writeInt(noOfUsers);
+    this.reply();
+  }
+
+  /**
+   * sends a QUERY_USERS_PAGE_RESPONSE with one page of users whose names start with a prefix, in sorted order,
+   * starting after a cursor username. Paging goes on by name, so it continues correctly across roster changes.
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void queryPage(String user) throws IOException {
+    String prefix = this.fieldString(this.readField());
+    String cursor = this.fieldString(this.readField());
+    if (!this.isLoggedIn(user)) {
+      this.failedMessage("You are not authorized to query users");
+      return;
+    }
+    RosterSnapshot roster = this.server.getClients().getRoster();
+    int first = roster.lowerBound(prefix);
+    int end = roster.prefixEnd(first, prefix);
+    int from = first;
+    if (!cursor.isEmpty()) {
+      int afterCursor = roster.lowerBound(cursor);
+      if (afterCursor < roster.size() && roster.get(afterCursor).equals(cursor)) {
+        afterCursor++;
+      }
+      from = Math.min(end, Math.max(first, afterCursor));
+    }
+    int to = Math.min(end, from + this.server.getConfig().getRosterPageSize());
+    this.out.writeInt(MessageIdentifier.QUERY_USERS_PAGE_RESPONSE);
+    this.out.writeLong(roster.getVersion());
+    this.out.writeInt(end - first);
+    this.out.writeInt(to - from);
+    roster.writeEntries(this.out, from, to);
+    WireFormat.writeString(this.out, to < end ? roster.get(to - 1) : "");
+    this.reply();
+  }
+
+  /**
+   * subscribes the client to presence changes and sends a PRESENCE_SNAPSHOT, later changes arrive as PRESENCE_DELTA.
+   * Subscribing again sends a new snapshot, which is how a client resyncs after missing a delta.
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void subscribePresence(String user) throws IOException {
+    if (!this.isLoggedIn(user)) {
+      this.failedMessage("You are not authorized to subscribe to presence");
+      return;
+    }
+    this.server.getPresenceBroker().subscribe(this.connection, this.out);
+    this.reply();
+  }
+
+  /**
+   * stops PRESENCE_DELTA frames to the client, nothing is sent back
+   */
+  private void unsubscribePresence(String user) {
+    if (this.isLoggedIn(user)) {
+      this.server.getPresenceBroker().unsubscribe(this.connection);
     }
   }
 
@@ -221,21 +693,182 @@ public class ChatRoomProtocol {
   private void logoff(String user) throws IOException {
     this.out.writeInt(MessageIdentifier.DISCONNECT_RESPONSE);
     String message;
-    if(!this.server.hasClient(user) || this.server.getClients().get(user).getSocket().isClosed()){
+    if(this.server.getClients().get(user) != this.connection || this.connection.isClosed()){
       message = "Already disconnected!";
       this.out.writeBoolean(Boolean.FALSE);
-      this.out.writeInt(message.length());
-      this.out.writeBytes(message);
+      WireFormat.writeString(this.out, message);
     }
     else{
-      System.out.println(user + " left the chat!");
+      this.server.getLog().info("client.left", "user", user);
       message = "You are no longer connected";
       this.out.writeBoolean(Boolean.TRUE);
-      this.out.writeInt(message.length());
-      this.out.writeBytes(message);
-      this.server.getClients().remove(user);
+      WireFormat.writeString(this.out, message);
+      if (this.sessionToken != null) {
+        this.server.getSessions().close(this.sessionToken, this.connection);
+      }
+      this.disconnected();
     }
+    this.reply();
+  }
 
+  /**
+   * adds the client to a room, creating the room if nobody is in it, and sends a ROOM_RESPONSE. Requested room history
+   * is queued right after the response, up to the last message sequenced when the client became a member; the client
+   * gets later room messages live. Joining and the replay hold the publish lock of the server, so no room message is
+   * both replayed and sent live.
+   * @param withHistory true if frame carries a history request
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void joinRoom(String user, boolean withHistory) throws IOException {
+    String roomName = this.fieldString(this.readField());
+    boolean validRequest = withHistory && this.readHistoryRequest();
+    Room[] joinedRoom = new Room[1];
+    long[] joinedAt = new long[1];
+    ObjLongConsumer<Room> onJoined = (room, sequence) -> {
+      joinedRoom[0] = room;
+      joinedAt[0] = sequence;
+    };
+    if (!this.isLoggedIn(user)) {
+      this.failedMessage("You are not authorized to join rooms");
+    }
+    else if (!RoomRegistry.isValidName(roomName)) {
+      this.roomResponse(Boolean.FALSE, roomName, "Room name should be 1 to " + RoomRegistry.MAX_ROOM_NAME_BYTES + " bytes");
+    }
+    else if (this.joinedRooms.size() >= this.server.getConfig().getMaxRoomsPerClient()) {
+      this.roomResponse(Boolean.FALSE, roomName, "You are already in " + this.joinedRooms.size() + " rooms");
+    }
+    else if (withHistory && !validRequest) {
+      this.roomResponse(Boolean.FALSE, roomName, "The format of history request is incorrect");
+    }
+    else {
+      synchronized (this.server.getPublishLock()) {
+        if (!this.server.getRooms().join(roomName, this.connection, onJoined)) {
+          this.roomResponse(Boolean.FALSE, roomName, "You are already in this room");
+          return;
+        }
+        this.joinedRooms.add(roomName);
+        this.roomResponse(Boolean.TRUE, roomName, "You joined the room");
+        if (validRequest) {
+          this.replay(joinedRoom[0].getHistory(), joinedRoom[0].getNameBytes(), joinedAt[0]);
+        }
+      }
+      if (this.connection.isClosed()) {
+        this.connectionLost(); // connection closed while joining, do not leave a stale member behind
+      }
+    }
+  }
+
+  /**
+   * removes the client from a room, removing the room once it is empty, and sends a ROOM_RESPONSE
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void leaveRoom(String user) throws IOException {
+    String roomName = this.fieldString(this.readField());
+    if (!this.isLoggedIn(user)) {
+      this.failedMessage("You are not authorized to leave rooms");
+    }
+    else if (!this.server.getRooms().leave(roomName, this.connection)) {
+      this.roomResponse(Boolean.FALSE, roomName, "You are not in this room");
+    }
+    else {
+      this.joinedRooms.remove(roomName);
+      this.roomResponse(Boolean.TRUE, roomName, "You left the room");
+    }
+  }
+
+  /**
+   * sends a LIST_ROOMS_RESPONSE with every room and its number of members
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void listRooms(String user) throws IOException {
+    List<Room> rooms = new ArrayList<>();
+    if (this.isLoggedIn(user)) {
+      rooms.addAll(this.server.getRooms().getRooms());
+    }
+    this.out.writeInt(MessageIdentifier.LIST_ROOMS_RESPONSE);
+    this.out.writeInt(rooms.size());
+    for (Room room : rooms) {
+      WireFormat.writeBytes(this.out, room.getNameBytes());
+      this.out.writeInt(room.size());
+    }
+    this.reply();
+  }
+
+  /**
+   * sends a ROOM_MESSAGE to every member of a room the sender is in
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void roomMessage(String user) throws IOException {
+    String roomName = this.fieldString(this.readField());
+    Room room = this.server.getRooms().get(roomName);
+    if (!this.isLoggedIn(user)) {
+      WireFormat.skipBytes(this.in, this.version);
+      this.failedMessage("You are not authorized to send messages");
+    }
+    else if (room == null || !room.contains(this.connection)) {
+      WireFormat.skipBytes(this.in, this.version);
+      this.failedMessage("You are not in room " + roomName);
+    }
+    else {
+      this.out.writeInt(MessageIdentifier.ROOM_MESSAGE);
+      WireFormat.writeBytes(this.out, this.senderBytes);
+      WireFormat.writeBytes(this.out, room.getNameBytes());
+      WireFormat.relayBytes(this.in, this.version, this.out, this.frameBuffer);
+      Frame frame = this.takeFrame();
+      int recipients = this.server.publish(room.getHistory(), frame, room);
+      this.server.getFanoutStats().record(frame, recipients);
+      frame.release();
+    }
+  }
+
+  /**
+   * sends a ROOM_RESPONSE to the client
+   * @param success success flag
+   * @param roomName name of room
+   * @param message response message
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void roomResponse(Boolean success, String roomName, String message) throws IOException {
+    this.out.writeInt(MessageIdentifier.ROOM_RESPONSE);
+    this.out.writeBoolean(success);
+    WireFormat.writeString(this.out, roomName);
+    WireFormat.writeString(this.out, message);
+    this.reply();
+  }
+
+  /**
+   * Checks that sender is the user logged in on this connection
+   * @param user sender username
+   * @return true if user is logged in on this connection
+   */
+  private boolean isLoggedIn(String user) {
+    return this.server.getClients().get(user) == this.connection;
+  }
+
+  /**
+   * Handles loss of the connection. A client with a session stays registered until the session expires or is resumed
+   * on another connection, any other client, or any client of a stopping server, is removed right away.
+   * Can be called from any thread and more than once.
+   */
+  public void connectionLost() {
+    String token = this.sessionToken;
+    if (token == null || this.server.isStopping()
+        || !this.server.getSessions().detach(token, this.connection, this::disconnected)) {
+      this.disconnected();
+    }
+  }
+
+  /**
+   * Removes this client from server registry and from every room it is in, once it logs off or its session ends.
+   * Can be called from any thread and more than once.
+   */
+  public void disconnected() {
+    this.server.getPresenceBroker().unsubscribe(this.connection);
+    this.server.getClients().unregister(this.username, this.connection);
+    for (String roomName : this.joinedRooms) {
+      this.joinedRooms.remove(roomName);
+      this.server.getRooms().leave(roomName, this.connection);
+    }
   }
 
   /**
@@ -247,11 +880,25 @@ public class ChatRoomProtocol {
   }
 
   /**
-   * Converts byte array to string
-   * @param str byte array of sting
-   * @return string
+   * Returns UTF-8 bytes of username, cached at login
+   * @return username bytes, null before login
+   */
+  public byte[] getUsernameBytes() {
+    return this.usernameBytes;
+  }
+
+  /**
+   * Takes the frame encoded so far and starts a new one in frame buffer
+   * @return complete encoded frame holding one reference
+   */
+  private Frame takeFrame() {
+    return this.frameBuffer.takeFrame();
+  }
+
+  /**
+   * Queues the frame encoded so far to the client this protocol serves
    */
-  private String bytesToString(byte[] str){
-    return new String(str, StandardCharsets.UTF_8);
+  private void reply() {
+    this.connection.send(this.takeFrame());
   }
 }
@@ -1,58 +1,674 @@
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * ChatRoomServer is a class responsible for creating a new server and starting the ChatRoomProtocol service.
+ * Connections are served by one platform or virtual thread per socket, or by a fixed set of NIO event loops, as chosen in ServerConfig.
  */
 public class ChatRoomServer {
   private ServerSocket server;
-  private ConcurrentMap<String, ClientInterface> clients;
+  private final ClientRegistry clients;
+  private final RoomRegistry rooms;
+  private final MessageHistory lobbyHistory;
+  private final MessageLog messageLog;
+  private final MailboxStore mailboxes;
+  private final SessionManager sessions;
+  private final ConnectionReaper reaper;
+  private final AtomicLong historySequencer;
+
+  /**
+   * Held while a broadcast or room frame is sequenced and queued to its recipients, and while a client starts receiving
+   * sequenced frames, so every client gets them in the order of their sequence numbers
+   */
+  private final Object publishLock;
+  private final PresenceBroker presenceBroker;
   private Integer port;
+  private final ServerConfig config;
+  private Executor writerExecutor;
+  private Executor handlerExecutor;
+  private NioEventLoop[] eventLoops;
+  private final Set<ClientConnection> connections;
+  private CompletableFuture<Integer> started;
+  private final CompletableFuture<Void> stopped;
+  private final CompletableFuture<Void> acceptorStopped;
+  private volatile boolean stopping;
+  private final FanoutStats fanoutStats;
+  private final WriteStats writeStats;
+  private final ServerMetrics metrics;
+  private final ServerLog log;
+  private final InsultGenerator insultGenerator;
+  private final InsultPool insultPool;
+  private final BufferPool bufferPool;
+  private final BufferPool readBufferPool;
+
+  /**
+   * Smallest and biggest size class of buffer pools
+   */
+  private static final int MIN_POOLED_BUFFER = 256;
+  private static final int MAX_POOLED_BUFFER = 2 * FrameDecoder.MAX_FRAME_BYTES;
+
+  /**
+   * How often a stopping server checks outbound queues, and how long it waits for each of its threads to end
+   */
+  private static final long DRAIN_POLL_MILLIS = 5;
+  private static final long THREAD_JOIN_MILLIS = 1000;
 
   /**
    * Server constructor
    */
   public ChatRoomServer(){
-    this.clients = new ConcurrentHashMap<>();
+    this(new ServerConfig());
   }
 
   /**
-   * Starts the server thread
+   * Server constructor with provided config
+   * @param config represented as ServerConfig, startup settings of server
+   */
+  public ChatRoomServer(ServerConfig config){
+    this.config = config;
+    this.log = new ServerLog(config.getLogLevel(), config.getLogQueueCapacity(), config.getLogSampleRate(), System.out);
+    this.connections = ConcurrentHashMap.newKeySet();
+    this.stopped = new CompletableFuture<>();
+    this.acceptorStopped = new CompletableFuture<>();
+    this.clients = new ClientRegistry(config.getMaxClients(), config.getRegistryShards());
+    this.historySequencer = new AtomicLong();
+    this.publishLock = new Object();
+    this.messageLog = this.openMessageLog(this.historySequencer);
+    this.rooms = new RoomRegistry(this.historySequencer, this.messageLog, config.getHistoryEntries(), config.getHistoryBytes());
+    this.lobbyHistory = new MessageHistory(this.historySequencer, this.messageLog, new byte[0],
+        config.getHistoryEntries(), config.getHistoryBytes());
+    this.recoverHistory();
+    this.fanoutStats = new FanoutStats();
+    this.writeStats = new WriteStats();
+    this.metrics = new ServerMetrics();
+    this.insultGenerator = InsultGenerator.fromClasspath();
+    this.insultPool = config.getInsultPoolSize() > 0
+        ? new InsultPool(this.insultGenerator, config.getInsultPoolSize(), config.getInsultPoolLowWaterMark())
+        : null;
+    this.bufferPool = new BufferPool(false, MIN_POOLED_BUFFER, MAX_POOLED_BUFFER, config.getBufferPoolRetainedBytes());
+    this.readBufferPool = new BufferPool(config.isDirectReadBuffers(), MIN_POOLED_BUFFER, MAX_POOLED_BUFFER, config.getBufferPoolRetainedBytes());
+    this.mailboxes = this.openMailboxes();
+    this.sessions = config.getSessionResumeMillis() > 0 ? new SessionManager(config.getSessionResumeMillis()) : null;
+    this.reaper = config.getIdleTimeoutMillis() > 0
+        ? new ConnectionReaper(config.getIdleTimeoutMillis(), config.getReaperTickMillis())
+        : null;
+    if (this.reaper != null) {
+      this.reaper.start();
+    }
+    this.presenceBroker = new PresenceBroker(this.clients, this.bufferPool, this.fanoutStats, config.getPresenceBatchMillis());
+    if (config.getMetricsDumpMillis() > 0) {
+      this.metrics.startDump(this, config.getMetricsDumpMillis());
+    }
+  }
+
+  /**
+   * Opens message log in configured directory, or returns null if messages are not logged
+   * @param sequencer represented as AtomicLong, sequence numbers of histories, moved past the last logged record
+   * @return represented as MessageLog
+   */
+  private MessageLog openMessageLog(AtomicLong sequencer) {
+    if (this.config.getLogDirectory() == null) {
+      return null;
+    }
+    if (this.config.getLogSegmentBytes() < this.config.getHistoryBytes() + LogSegment.HEADER_BYTES + RoomRegistry.MAX_ROOM_NAME_BYTES) {
+      throw new InvalidArgException("Log segment bytes should be larger than history bytes!");
+    }
+    try {
+      return new MessageLog(Paths.get(this.config.getLogDirectory()), sequencer, this.config.getLogSegmentBytes(),
+          this.config.getLogRetentionSegments(), this.config.getLogFlushMillis());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Opens offline mailboxes in configured directory, or returns null if direct messages to offline users are not kept
+   * @return represented as MailboxStore
+   */
+  private MailboxStore openMailboxes() {
+    if (this.config.getMailboxDirectory() == null) {
+      return null;
+    }
+    try {
+      return new MailboxStore(Paths.get(this.config.getMailboxDirectory()), this.config.getMailboxMaxMessages(),
+          this.config.getMailboxMaxBytes(), this.config.getMailboxMaxAgeMillis(), this.config.getMailboxBatchMessages(),
+          this.config.getOutboundQueueCapacity(), this.bufferPool, this.log);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Reads newest records of message log back into lobby and room histories
+   */
+  private void recoverHistory() {
+    if (this.messageLog == null || this.config.getLogRecoverRecords() == 0) {
+      return;
+    }
+    try {
+      this.messageLog.read(this.messageLog.getLastSequence() - this.config.getLogRecoverRecords(), (sequence, timestamp, room, frame) -> {
+        if (room.hasRemaining()) {
+          byte[] name = new byte[room.remaining()];
+          room.get(name);
+          this.rooms.restore(WireFormat.decode(name), sequence, frame);
+        }
+        else {
+          this.lobbyHistory.restore(sequence, frame);
+        }
+      });
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Starts the server and serves clients from calling thread until the server is stopped
    * @param port represented as int, port number
    * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
    */
   public void run(int port) throws IOException {
+    this.claimStart();
+    this.serve(port);
+  }
+
+  /**
+   * This public method is used to start the server on its own acceptor thread, so it can be embedded in tests and benchmarks
+   *
+   * @param port represented as int, port number, zero for any free port
+   * @return represented as CompletableFuture, completed with the bound port once clients are accepted, or with the
+   * exception that prevented binding
+   */
+  public CompletableFuture<Integer> start(int port) {
+    CompletableFuture<Integer> started = this.claimStart();
+    Thread acceptor = new Thread(() -> {
+      try {
+        this.serve(port);
+      } catch (IOException | RuntimeException e) {
+        started.completeExceptionally(e);
+      }
+    }, "chatroom-acceptor");
+    acceptor.start();
+    return started;
+  }
+
+  /**
+   * This private method is used to make sure the server is started only once
+   *
+   * @return represented as CompletableFuture, completed once the server socket is bound
+   */
+  private synchronized CompletableFuture<Integer> claimStart() {
+    if (this.started != null || this.stopping) {
+      throw new IllegalStateException("Server can only be started once");
+    }
+    this.started = new CompletableFuture<>();
+    return this.started;
+  }
+
+  /**
+   * Serves clients in configured mode until the server is stopped. Virtual mode on a JDK without virtual threads fails
+   * here, before the port is bound, even if handlers run on a configured executor.
+   * @param port represented as int, port number
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void serve(int port) throws IOException {
+    try {
+      if (this.config.getMode() == ServerMode.VIRTUAL) {
+        VirtualThreads.requireSupported();
+      }
+      if (this.config.getMode() == ServerMode.NIO) {
+        this.runEventLoops(port);
+      }
+      else {
+        this.runThreadPerConnection(port);
+      }
+    } finally {
+      this.acceptorStopped.complete(null);
+    }
+  }
+
+  /**
+   * Accepts sockets and serves each of them from a new thread, a new virtual thread or a task of configured executor
+   * @param port represented as int, port number
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void runThreadPerConnection(int port) throws IOException {
+    Executor handlers = this.handlerExecutor();
+    ServerSocket serverSocket = new ServerSocket();
     try {
-      this.server = new ServerSocket(port);
-      this.port = this.server.getLocalPort();
-      System.out.println("Server connected to "+this.port);
-      while(true){
-        Socket client = server.accept();
+      serverSocket.bind(new InetSocketAddress(port));
+      if (!this.bound(serverSocket)) {
+        return;
+      }
+      this.log.info("server.started", "port", this.port, "mode", this.config.getMode().name().toLowerCase());
+      while(!this.stopping){
+        Socket client = serverSocket.accept();
         ClientInterface handler = new ClientInterface(client, this);
-        Thread ch = new Thread(handler);
-        ch.start();
+        if (handlers == null) {
+          Thread ch = new Thread(handler);
+          ch.start();
+        }
+        else {
+          handlers.execute(handler);
+        }
       }
 
     }
     catch (IOException e) {
-      this.server.close();
+      serverSocket.close();
+      if (!this.stopping) {
+        throw new RuntimeException(e);
+      }
+    }
+
+  }
+
+  /**
+   * Returns executor for client handlers, or null if each handler gets a new platform thread
+   * @return represented as Executor
+   */
+  private Executor handlerExecutor() {
+    if (this.config.getHandlerExecutor() != null) {
+      return this.config.getHandlerExecutor();
+    }
+    if (this.config.getMode() == ServerMode.VIRTUAL) {
+      this.handlerExecutor = VirtualThreads.newPerTaskExecutor();
+      return this.handlerExecutor;
+    }
+    return null;
+  }
+
+  /**
+   * Accepts non-blocking channels and hands them to event loops in round robin order
+   * @param port represented as int, port number
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void runEventLoops(int port) throws IOException {
+    ServerSocketChannel serverChannel = ServerSocketChannel.open();
+    try {
+      serverChannel.bind(new InetSocketAddress(port));
+      NioEventLoop[] eventLoops = new NioEventLoop[this.config.getEventLoopThreads()];
+      this.eventLoops = eventLoops;
+      for (int i = 0; i < eventLoops.length; i++) {
+        eventLoops[i] = new NioEventLoop(this, "chatroom-event-loop-" + i);
+        eventLoops[i].start();
+      }
+      if (!this.bound(serverChannel.socket())) {
+        return;
+      }
+      this.log.info("server.started", "port", this.port, "mode", "nio", "eventLoops", eventLoops.length);
+      int next = 0;
+      while(!this.stopping){
+        SocketChannel client = serverChannel.accept();
+        eventLoops[next].register(client);
+        next = (next + 1) % eventLoops.length;
+      }
+    }
+    catch (IOException e) {
+      serverChannel.close();
+      if (!this.stopping) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Publishes the bound server socket so stop can close it, and completes the start future
+   * @param serverSocket represented as ServerSocket, bound server socket
+   * @return represented as boolean, false if the server was stopped while binding and the socket is closed
+   * @throws IOException if the socket cannot be closed
+   */
+  private boolean bound(ServerSocket serverSocket) throws IOException {
+    synchronized (this) {
+      if (this.stopping) {
+        serverSocket.close();
+        return false;
+      }
+      this.server = serverSocket;
+      this.port = serverSocket.getLocalPort();
+    }
+    this.started.complete(this.port);
+    return true;
+  }
+
+  /**
+   * This public method is used to stop the server gracefully, waiting as long as configured for clients to receive
+   * their queued frames
+   *
+   * @return represented as CompletableFuture, completed once every client is closed and every server thread is stopped
+   */
+  public CompletableFuture<Void> stop() {
+    return this.stop(this.config.getShutdownDrainMillis());
+  }
+
+  /**
+   * This public method is used to stop the server gracefully. The server stops accepting, tells every client with a
+   * DISCONNECT_RESPONSE, waits until their outbound queues are written or the drain deadline passes, closes them and
+   * then stops its event loops, writers and background threads. Calling it again returns the same future.
+   *
+   * @param drainMillis represented as long, longest time to wait for outbound queues to be written
+   * @return represented as CompletableFuture, completed once every client is closed and every server thread is stopped
+   */
+  public CompletableFuture<Void> stop(long drainMillis) {
+    ServerSocket serverSocket;
+    boolean accepting;
+    synchronized (this) {
+      if (this.stopping) {
+        return this.stopped;
+      }
+      this.stopping = true;
+      serverSocket = this.server;
+      accepting = this.started != null;
+    }
+    Thread stopper = new Thread(() -> {
+      try {
+        this.shutdown(serverSocket, accepting, drainMillis);
+        this.stopped.complete(null);
+      } catch (IOException | InterruptedException | RuntimeException e) {
+        this.stopped.completeExceptionally(e);
+      }
+    }, "chatroom-shutdown");
+    stopper.start();
+    return this.stopped;
+  }
+
+  /**
+   * This public method is used to get port the server is bound to
+   *
+   * @return represented as Integer, null until the server socket is bound
+   */
+  public Integer getPort() {
+    return this.port;
+  }
+
+  /**
+   * This public method is used to check if the server is stopping or stopped
+   *
+   * @return represented as boolean
+   */
+  public boolean isStopping() {
+    return this.stopping;
+  }
+
+  /**
+   * Runs the steps of a graceful stop on the shutdown thread
+   * @param serverSocket represented as ServerSocket, bound server socket, null if the server never bound one
+   * @param accepting represented as boolean, true if the server was started and has an acceptor to wait for
+   * @param drainMillis represented as long, longest time to wait for outbound queues to be written
+   * @throws IOException if the server socket or message log cannot be closed
+   * @throws InterruptedException if interrupted while waiting for clients or threads
+   */
+  private void shutdown(ServerSocket serverSocket, boolean accepting, long drainMillis) throws IOException, InterruptedException {
+    if (serverSocket != null) {
+      serverSocket.close(); // acceptor leaves its loop
+    }
+    if (accepting) {
+      this.acceptorStopped.join(); // event loops and handler executor are set by now
+      this.started.completeExceptionally(new IllegalStateException("Server was stopped"));
+    }
+    Frame goodbye = this.goodbyeFrame();
+    for (ClientConnection connection : this.connections) {
+      connection.send(goodbye.retain());
+    }
+    goodbye.release();
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainMillis);
+    while (this.hasQueuedFrames() && System.nanoTime() - deadline < 0) {
+      Thread.sleep(DRAIN_POLL_MILLIS);
+    }
+    for (ClientConnection connection : this.connections) {
+      try {
+        connection.evict(); // an event loop closes its clients itself, before it stops below
+      } catch (RuntimeException e) {
+        // connection is closed as far as it can be, go on with the others
+      }
+    }
+    if (this.eventLoops != null) {
+      for (NioEventLoop eventLoop : this.eventLoops) {
+        if (eventLoop != null) {
+          eventLoop.shutdown(THREAD_JOIN_MILLIS);
+        }
+      }
+    }
+    Executor writers;
+    synchronized (this) {
+      writers = this.writerExecutor;
+    }
+    this.shutdownExecutor(this.handlerExecutor);
+    this.shutdownExecutor(writers);
+    if (this.reaper != null) {
+      this.reaper.stop();
+    }
+    this.metrics.stopDump();
+    if (this.sessions != null) {
+      this.sessions.shutdown();
+    }
+    this.presenceBroker.shutdown();
+    if (this.insultPool != null) {
+      this.insultPool.shutdown();
+    }
+    if (this.mailboxes != null) {
+      this.mailboxes.close(THREAD_JOIN_MILLIS);
+    }
+    if (this.messageLog != null) {
+      this.messageLog.close();
+    }
+    this.log.info("server.stopped", "port", this.port);
+    this.log.close(THREAD_JOIN_MILLIS);
+  }
+
+  /**
+   * Encodes the DISCONNECT_RESPONSE shared by every client of a stopping server
+   * @return represented as Frame, holding one reference
+   */
+  private Frame goodbyeFrame() {
+    FrameBuffer frame = new FrameBuffer(this.bufferPool);
+    DataOutputStream out = new DataOutputStream(frame);
+    try {
+      out.writeInt(MessageIdentifier.DISCONNECT_RESPONSE);
+      out.writeBoolean(Boolean.TRUE);
+      WireFormat.writeString(out, "Server is shutting down");
+    } catch (IOException e) {
       throw new RuntimeException(e);
     }
+    return frame.takeFrame();
+  }
 
+  /**
+   * Checks if any open client still has frames that are not written
+   * @return represented as boolean
+   */
+  private boolean hasQueuedFrames() {
+    for (ClientConnection connection : this.connections) {
+      if (!connection.isClosed() && connection.queuedFrames() > 0) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
-   * This public method is used to get clients map
+   * Stops an executor this server created and waits for its running tasks
+   * @param executor represented as Executor, null or an executor that is not an ExecutorService are left alone
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private void shutdownExecutor(Executor executor) throws InterruptedException {
+    if (executor instanceof ExecutorService) {
+      ExecutorService service = (ExecutorService) executor;
+      service.shutdown();
+      if (!service.awaitTermination(THREAD_JOIN_MILLIS, TimeUnit.MILLISECONDS)) {
+        service.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * This method is used by a client connection once it is set up, a connection of a stopping server is closed right away
    *
-   * @return represented as ConcurrentMap where key is String,username of client and value is object of ClientInterface
+   * @param connection represented as ClientConnection, new connection
    */
-  public ConcurrentMap<String, ClientInterface> getClients() {
+  void connectionOpened(ClientConnection connection) {
+    this.connections.add(connection);
+    if (this.stopping) {
+      connection.evict();
+    }
+  }
+
+  /**
+   * This method is used by a client connection once it is closed
+   *
+   * @param connection represented as ClientConnection, closed connection
+   */
+  void connectionClosed(ClientConnection connection) {
+    this.connections.remove(connection);
+  }
+
+  /**
+   * This method is used to get open client connections, logged in or not
+   *
+   * @return represented as Set of ClientConnection, read-only live view
+   */
+  Set<ClientConnection> getConnections() {
+    return Collections.unmodifiableSet(this.connections);
+  }
+
+  /**
+   * This public method is used to get number of open client connections, logged in or not
+   *
+   * @return represented as int
+   */
+  public int connectionCount() {
+    return this.connections.size();
+  }
+
+  /**
+   * This public method is used to get registry of logged in clients
+   *
+   * @return represented as ClientRegistry, clients by username
+   */
+  public ClientRegistry getClients() {
     return this.clients;
   }
 
+  /**
+   * This public method is used to get registry of chat rooms
+   *
+   * @return represented as RoomRegistry, rooms by name
+   */
+  public RoomRegistry getRooms() {
+    return this.rooms;
+  }
+
+  /**
+   * This public method is used to get recent BROADCAST_MESSAGE frames, sharing sequence numbers with room histories
+   *
+   * @return represented as MessageHistory
+   */
+  public MessageHistory getLobbyHistory() {
+    return this.lobbyHistory;
+  }
+
+  /**
+   * This public method is used to get durable log of broadcast and room messages
+   *
+   * @return represented as MessageLog, null if messages are not logged
+   */
+  public MessageLog getMessageLog() {
+    return this.messageLog;
+  }
+
+  /**
+   * This public method is used to get mailboxes of direct messages sent to offline users
+   *
+   * @return represented as MailboxStore, null if such messages are not kept
+   */
+  public MailboxStore getMailboxes() {
+    return this.mailboxes;
+  }
+
+  /**
+   * This public method is used to get resumable sessions of logged in clients
+   *
+   * @return represented as SessionManager, null if sessions cannot be resumed
+   */
+  public SessionManager getSessions() {
+    return this.sessions;
+  }
+
+  /**
+   * This public method is used to get reaper that closes connections idle for too long
+   *
+   * @return represented as ConnectionReaper, null if idle connections are never closed
+   */
+  public ConnectionReaper getReaper() {
+    return this.reaper;
+  }
+
+  /**
+   * This public method is used to get sequence number last given to a broadcast or room message
+   *
+   * @return represented as long
+   */
+  public long getHistorySequence() {
+    return this.historySequencer.get();
+  }
+
+  /**
+   * This public method is used to store a frame in a history and queue it to its recipients as one step. Frames are
+   * sequenced and queued one at a time server wide, so a client gets them in the order of their sequence numbers
+   * whichever threads sent them, and a resume after the last one it wrote never skips an earlier one. With BLOCK policy a
+   * full recipient holds up other senders of broadcast and room messages until it has room or times out.
+   *
+   * @param history represented as MessageHistory, history the frame is kept in
+   * @param frame represented as Frame, caller keeps its reference
+   * @param recipients represented as Iterable of ClientConnection
+   * @return represented as int, number of recipients the frame was queued to
+   */
+  public int publish(MessageHistory history, Frame frame, Iterable<ClientConnection> recipients) {
+    synchronized (this.publishLock) {
+      history.append(frame);
+      int count = 0;
+      for (ClientConnection recipient : recipients) {
+        recipient.send(frame.retain());
+        count++;
+      }
+      return count;
+    }
+  }
+
+  /**
+   * This public method is used to get lock publish holds. A client that starts receiving sequenced frames, on login,
+   * room join or resume, holds it while it joins and queues the history it missed, so no live frame is queued between those.
+   *
+   * @return represented as Object
+   */
+  public Object getPublishLock() {
+    return this.publishLock;
+  }
+
+  /**
+   * This public method is used to get broker that pushes roster changes to subscribed clients
+   *
+   * @return represented as PresenceBroker
+   */
+  public PresenceBroker getPresenceBroker() {
+    return this.presenceBroker;
+  }
+
   /**
    * This public method is used to check if username is present in client map
    *
@@ -60,25 +676,124 @@ public class ChatRoomServer {
    * @return represented as boolean
    */
   public boolean hasClient(String username) {
-    return this.clients.containsKey(username);
+    return this.clients.contains(username);
   }
 
   /**
-   * Returns number of connected clients
+   * Returns number of connected clients, counting logins in progress
    * @return number of connected clients
    */
   public Integer clientCount() {
     return this.clients.size();
   }
 
+  /**
+   * Returns executor that runs writer tasks of ClientInterface outbound queues, virtual threads in virtual mode
+   * and daemon platform threads otherwise. NIO clients are written by their event loop instead.
+   * @return represented as Executor
+   */
+  public synchronized Executor getWriterExecutor() {
+    if (this.writerExecutor == null) {
+      if (this.config.getMode() == ServerMode.VIRTUAL) {
+        this.writerExecutor = VirtualThreads.newPerTaskExecutor();
+      }
+      else {
+        AtomicInteger count = new AtomicInteger();
+        this.writerExecutor = Executors.newCachedThreadPool(task -> {
+          Thread writer = new Thread(task, "chatroom-writer-" + count.incrementAndGet());
+          writer.setDaemon(true);
+          return writer;
+        });
+      }
+    }
+    return this.writerExecutor;
+  }
+
+  /**
+   * Returns counters of broadcast frames shared between recipients
+   * @return represented as FanoutStats
+   */
+  public FanoutStats getFanoutStats() {
+    return this.fanoutStats;
+  }
+
+  /**
+   * Returns counters of frames and flushes written to client sockets
+   * @return represented as WriteStats
+   */
+  public WriteStats getWriteStats() {
+    return this.writeStats;
+  }
+
+  /**
+   * Returns counters and latencies of frames per message identifier
+   * @return represented as ServerMetrics
+   */
+  public ServerMetrics getMetrics() {
+    return this.metrics;
+  }
+
+  /**
+   * Returns log that server events are written to from a background thread
+   * @return represented as ServerLog
+   */
+  public ServerLog getLog() {
+    return this.log;
+  }
+
+  /**
+   * Returns generator of insults shared by all clients
+   * @return represented as InsultGenerator
+   */
+  public InsultGenerator getInsultGenerator() {
+    return this.insultGenerator;
+  }
+
+  /**
+   * Returns pool of pre generated insults
+   * @return represented as InsultPool, null if insult pool is disabled
+   */
+  public InsultPool getInsultPool() {
+    return this.insultPool;
+  }
+
+  /**
+   * Returns pool of heap buffers that outgoing frames are encoded in
+   * @return represented as BufferPool
+   */
+  public BufferPool getBufferPool() {
+    return this.bufferPool;
+  }
+
+  /**
+   * Returns pool of read buffers of NIO clients, direct unless disabled in ServerConfig
+   * @return represented as BufferPool
+   */
+  public BufferPool getReadBufferPool() {
+    return this.readBufferPool;
+  }
+
+  /**
+   * Returns startup settings of this server
+   * @return represented as ServerConfig
+   */
+  public ServerConfig getConfig() {
+    return this.config;
+  }
+
   /**
    * Enter point to start the server
-   * @param args user args (none expected)
+   * @param args user args, optional port number followed by optional server mode (thread, virtual or nio)
    * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
    */
   public static void main(String[] args) throws IOException {
-    ChatRoomServer s = new ChatRoomServer();
-    if(args.length == 1) {
+    ServerConfig config = ServerConfig.fromSystemProperties();
+    if(args.length >= 2) {
+      config.setMode(ServerMode.fromString(args[1]));
+    }
+    ChatRoomServer s = new ChatRoomServer(config);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> s.stop().join(), "chatroom-shutdown-hook"));
+    if(args.length >= 1) {
       s.run(Integer.parseInt(args[0]));
     }
     else {
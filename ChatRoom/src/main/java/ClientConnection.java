@@ -0,0 +1,61 @@
+/**
+ * ClientConnection interface represents one connected client as seen by the ChatRoomProtocol,
+ * independent of whether the server serves it from a dedicated thread or from a NIO event loop.
+ */
+public interface ClientConnection {
+
+  /**
+   * This method is used to queue an encoded frame for this client. It never writes to the socket itself,
+   * a single writer of this client does that, so it can be called from any thread. The connection takes over one
+   * reference of the frame and releases it once the frame is written or dropped. A tracked frame is marked written once
+   * it is on the socket, never when it is dropped.
+   *
+   * @param frame represented as Frame, complete encoded frame which may be shared with other clients
+   */
+  void send(Frame frame);
+
+  /**
+   * This method is used to get number of frames queued for this client and not written yet
+   *
+   * @return represented as int
+   */
+  int queuedFrames();
+
+  /**
+   * This method is used to get history sequence number of the last sequenced frame written to the socket of this client.
+   * Live frames are queued in sequence order and a replay is queued ahead of the live frames after it, so every
+   * sequenced frame up to this number was written. A replay queued behind higher live frames, such as the history of a
+   * room joined later, only lowers it, so a resume after it may send a frame twice but never skips one.
+   *
+   * @return represented as long, zero if no history frame was written
+   */
+  long writtenSequence();
+
+  /**
+   * This method is used to get protocol of this client
+   *
+   * @return represented as ChatRoomProtocol, protocol serving this client
+   */
+  ChatRoomProtocol getProtocol();
+
+  /**
+   * This method is used to check if underlying connection of this client is closed
+   *
+   * @return represented as boolean, true if connection is closed
+   */
+  boolean isClosed();
+
+  /**
+   * This method is used to close underlying connection of this client
+   */
+  void close();
+
+  /**
+   * This method is used to close this client from a thread that does not serve it, such as the idle reaper. A client
+   * served by an event loop is closed on that loop, so its protocol never sees the connection lost from another thread;
+   * the close may then happen a little later.
+   */
+  default void evict() {
+    this.close();
+  }
+}
@@ -1,20 +1,48 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * ClientInterface class implements Runnable interface which represents each client.
- * this class overrides run method and print in server terminal according to commands of that client and escalate identifier to protocol for processing input
+ * this class overrides run method and escalate identifier to protocol for processing input, which counts every frame in ServerMetrics.
+ * Frames for this client are queued in an OutboundQueue and written by one writer task at a time, so senders never touch the socket.
+ * The writer coalesces queued frames in a buffered stream and flushes when the queue is empty or the flush linger has passed.
  *
  * @author kabraambika19
  */
-public class ClientInterface implements Runnable {
+public class ClientInterface implements Runnable, ClientConnection {
   private Socket socket;
   private DataInputStream dataInputStream;
   private DataOutputStream dataOutputStream;
   private ChatRoomProtocol protocol;
   private ChatRoomServer server;
+  private final OutboundQueue outboundQueue;
+  private final Executor writerExecutor;
+  private final AtomicBoolean writerScheduled;
+  private final WriteStats writeStats;
+  private final ServerMetrics metrics;
+  private final long flushLingerNanos;
+  private final ConnectionReaper.Entry idleEntry;
+
+  /**
+   * History sequence number of the last sequenced frame flushed to the socket, and of the last one written to the
+   * buffered stream, only the writer updates them
+   */
+  private volatile long writtenSequence;
+  private long bufferedSequence;
+
+  /**
+   * Tracked frames written to the buffered stream but not flushed yet, only the writer uses it
+   */
+  private final List<Frame> unflushedTracked;
 
   /**
    * Constructor of ClientInterface with two provided parameters
@@ -26,9 +54,19 @@ public class ClientInterface implements Runnable {
     try {
       this.socket = socket;
       this.server = server;
-      this.dataInputStream = new DataInputStream(socket.getInputStream());
-      this.dataOutputStream = new DataOutputStream(socket.getOutputStream());
-      this.protocol = new ChatRoomProtocol(dataInputStream, dataOutputStream, server);
+      this.outboundQueue = server.getConfig().newOutboundQueue();
+      this.writerExecutor = server.getWriterExecutor();
+      this.writerScheduled = new AtomicBoolean();
+      this.unflushedTracked = new ArrayList<>();
+      this.writeStats = server.getWriteStats();
+      this.metrics = server.getMetrics();
+      this.flushLingerNanos = TimeUnit.MICROSECONDS.toNanos(server.getConfig().getFlushLingerMicros());
+      server.getConfig().configure(socket);
+      this.dataInputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      this.dataOutputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), server.getConfig().getOutputBufferBytes()));
+      this.protocol = new ChatRoomProtocol(dataInputStream, this, server);
+      this.idleEntry = server.getReaper() != null ? server.getReaper().register(this) : null;
+      server.connectionOpened(this);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -52,50 +90,176 @@ public class ClientInterface implements Runnable {
     return this.dataOutputStream;
   }
 
+  @Override
+  public int queuedFrames() {
+    // a running writer may hold frames it has not flushed yet
+    return this.outboundQueue.size() + (this.writerScheduled.get() ? 1 : 0);
+  }
+
+  @Override
+  public long writtenSequence() {
+    return this.writtenSequence;
+  }
+
   /**
    * This public method is used to get protocol
    *
    * @return represented as ChatRoomProtocol, this.protocol
    */
+  @Override
   public ChatRoomProtocol getProtocol() {
     return this.protocol;
   }
 
+  @Override
+  public boolean isClosed() {
+    return this.socket.isClosed();
+  }
+
+  @Override
+  public void send(Frame frame) {
+    if (this.isClosed()) {
+      frame.release();
+      return;
+    }
+    if (!this.outboundQueue.offer(frame)) {
+      frame.release();
+      this.server.getMetrics().recordSlowConsumer();
+      this.server.getLog().warn("client.slowConsumer", "user", this.protocol.getUsername());
+      this.close(); // slow consumer
+      return;
+    }
+    this.scheduleWriter();
+  }
+
+  @Override
+  public void close() {
+    try {
+      this.socket.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e.getMessage());
+    } finally {
+      this.outboundQueue.clear();
+      if (this.idleEntry != null) {
+        this.idleEntry.cancel();
+      }
+      this.protocol.connectionLost();
+      this.server.connectionClosed(this);
+    }
+  }
+
   @Override
   public void run() {
+    OutboundQueue.allowBlocking(); // this thread only serves its own client, it may wait for a full recipient
+
     //Process new connection in chatroom for a new client
     this.processNewConnect();
 
     //Once new connection setup, now process other commands
     while (!this.socket.isClosed()) {
       try {
-        int msgIdentifier = this.dataInputStream.readInt();
-        System.out.println("Client: " + protocol.getUsername() + ", requesting message identifier: " + msgIdentifier); //This will be printed in server terminal
+        int msgIdentifier = this.protocol.readMessageIdentifier();
+        this.touch();
         this.protocol.processInput(msgIdentifier);
       } catch (IOException e) {
-        try {
-          socket.close();
-        } catch (IOException ex) {
-          throw new RuntimeException(ex.getMessage());
-        }
+        this.close();
       }
     }
   }
 
   /**
-   * This private method is used to process new connection with server for a new client
+   * This private method is used to process new connection with server for a new client, protocol adds it to server registry
    */
   private void processNewConnect() {
     do {
       try {
-        int msgIdentifier = this.dataInputStream.readInt();
+        int msgIdentifier = this.protocol.readMessageIdentifier();
+        this.touch();
         protocol.processInput(msgIdentifier);
       } catch (IOException e) {
-        throw new RuntimeException(e.getMessage());
+        this.close(); // closed before login, such as by a stopping server
+        return;
       }
     } while (protocol.getUsername() == null);
 
-    this.server.getClients().put(protocol.getUsername(), this); // add user in server map
-    System.out.println("New client " + protocol.getUsername() + " has joined the chat room!"); //this will be printed in server terminal
+    this.server.getLog().info("client.joined", "user", this.protocol.getUsername());
+  }
+
+  /**
+   * This private method is used to tell idle connection reaper that a frame arrived
+   */
+  private void touch() {
+    if (this.idleEntry != null) {
+      this.idleEntry.touch();
+    }
+  }
+
+  /**
+   * This private method is used to flush buffered frames to socket
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void flush() throws IOException {
+    this.dataOutputStream.flush();
+    this.writeStats.recordFlush();
+    this.writtenSequence = this.bufferedSequence;
+    for (Frame frame : this.unflushedTracked) {
+      frame.markWritten();
+    }
+    this.unflushedTracked.clear();
+  }
+
+  /**
+   * This private method is used to start a writer task unless one is already running for this client
+   */
+  private void scheduleWriter() {
+    if (this.writerScheduled.compareAndSet(false, true)) {
+      this.writerExecutor.execute(this::drainOutboundQueue);
+    }
+  }
+
+  /**
+   * This private method is used by the single writer to write queued frames to socket until queue is empty.
+   * Frames are flushed at the message boundary where the queue runs empty, or earlier once the oldest unflushed
+   * frame has waited for the flush linger, so a burst goes out in a few large packets.
+   */
+  private void drainOutboundQueue() {
+    do {
+      try {
+        Frame frame;
+        long firstUnflushed = 0;
+        boolean unflushed = false;
+        while ((frame = this.outboundQueue.poll()) != null) {
+          try {
+            frame.writeTo(this.dataOutputStream);
+            this.writeStats.recordFrame(frame);
+            this.metrics.recordFrameOut(frame);
+            if (frame.getSequence() != 0) {
+              this.bufferedSequence = frame.getSequence();
+            }
+            if (frame.isTracked()) {
+              this.unflushedTracked.add(frame); // marked once flushed, it is not read again after its release
+            }
+          } finally {
+            frame.release();
+          }
+          if (!unflushed) {
+            unflushed = true;
+            firstUnflushed = System.nanoTime();
+          }
+          if (System.nanoTime() - firstUnflushed >= this.flushLingerNanos) {
+            this.flush();
+            unflushed = false;
+          }
+        }
+        if (unflushed) {
+          this.flush();
+        }
+      } catch (IOException e) {
+        this.close();
+        return;
+      }
+      this.writerScheduled.set(false);
+      // a sender may have queued a frame after the last poll but before the flag was cleared
+    } while (!this.outboundQueue.isEmpty() && this.writerScheduled.compareAndSet(false, true));
   }
 }
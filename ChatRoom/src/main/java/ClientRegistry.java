@@ -0,0 +1,302 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * ClientRegistry class keeps every logged in client by username. Clients are spread over a fixed number of
+ * ConcurrentHashMap shards, each sized up front for its share of the capacity, so lookups and broadcast iteration
+ * never wait on a resize of one huge table. Capacity is enforced by reserving a slot with compare and set before a
+ * login is registered, so concurrent logins can never overshoot it. Every membership change bumps a version, and
+ * a RosterSnapshot of usernames is rebuilt at most once per version, on first request.
+ */
+public class ClientRegistry implements Iterable<ClientConnection> {
+  private final ConcurrentMap<String, ClientConnection>[] shards;
+  private final int shardMask;
+  private final int shardShift;
+  private final int capacity;
+
+  /**
+   * Registered clients plus reservations not yet registered or cancelled
+   */
+  private final AtomicInteger occupied;
+  private final AtomicLong version;
+  private final Object rosterLock;
+  private volatile RosterSnapshot roster;
+  private volatile PresenceBroker presenceBroker;
+
+  /**
+   * Constructor of ClientRegistry
+   *
+   * @param capacity represented as int, maximum number of clients logged in at one time
+   * @param shardCount represented as int, number of shards, rounded up to a power of two
+   */
+  @SuppressWarnings("unchecked")
+  public ClientRegistry(int capacity, int shardCount) {
+    if (capacity < 1 || shardCount < 1) {
+      throw new InvalidArgException("Registry capacity and shard count should be greater than zero!");
+    }
+    int shards = shardCount == 1 ? 1 : Integer.highestOneBit(Math.min(shardCount, 1 << 16) - 1) << 1;
+    this.shards = (ConcurrentMap<String, ClientConnection>[]) new ConcurrentMap<?, ?>[shards];
+    int perShard = Math.max(16, capacity / shards + 1);
+    for (int i = 0; i < shards; i++) {
+      this.shards[i] = new ConcurrentHashMap<>(Math.min(perShard, 1 << 20));
+    }
+    this.shardMask = shards - 1;
+    this.shardShift = 32 - Integer.numberOfTrailingZeros(shards);
+    this.capacity = capacity;
+    this.occupied = new AtomicInteger();
+    this.version = new AtomicLong();
+    this.rosterLock = new Object();
+    this.roster = new RosterSnapshot(0, new String[0]);
+  }
+
+  /**
+   * This public method is used to reserve room for one client before registering it
+   *
+   * @return represented as boolean, false if registry is full
+   */
+  public boolean tryReserve() {
+    int current;
+    do {
+      current = this.occupied.get();
+      if (current >= this.capacity) {
+        return false;
+      }
+    } while (!this.occupied.compareAndSet(current, current + 1));
+    return true;
+  }
+
+  /**
+   * This public method is used to give back a reservation that will not be registered
+   */
+  public void cancelReservation() {
+    this.occupied.decrementAndGet();
+  }
+
+  /**
+   * This public method is used to register a client on a reserved slot if its username is free.
+   * onRegistered runs before any other thread can find the new client, so a response queued there reaches
+   * the client ahead of any message sent to it by others. It runs while the username's bin is locked, so it should only
+   * publish state and queue that one response; anything that may close the connection, and so unregister it, has to
+   * wait until register returns.
+   *
+   * @param username represented as String, username of client
+   * @param connection represented as ClientConnection, connection of client
+   * @param onRegistered represented as Runnable, action run once username is taken
+   * @return represented as boolean, false if username is already taken, reservation is then still held
+   * @throws IllegalStateException if connection is already registered under a username
+   */
+  public boolean register(String username, ClientConnection connection, Runnable onRegistered) {
+    ChatRoomProtocol protocol = connection.getProtocol();
+    if (protocol != null && protocol.getUsername() != null) {
+      throw new IllegalStateException("Connection is already registered as " + protocol.getUsername());
+    }
+    boolean[] registered = new boolean[1];
+    this.shard(username).computeIfAbsent(username, name -> {
+      onRegistered.run();
+      registered[0] = true;
+      return connection;
+    });
+    if (registered[0]) {
+      this.changed(username, true);
+    }
+    return registered[0];
+  }
+
+  /**
+   * This public method is used to move a username to a new connection of the same client, as when a session is resumed.
+   * It is not a leave and a join: version is not bumped, so roster snapshot and presence subscribers see no change.
+   * onReplaced runs before any other thread can find the new connection, with the same limits as onRegistered.
+   *
+   * @param username represented as String, username of client
+   * @param previous represented as ClientConnection, connection username should still belong to
+   * @param connection represented as ClientConnection, new connection of client
+   * @param onReplaced represented as Runnable, action run right before username moves
+   * @return represented as boolean, false if username no longer belongs to previous connection
+   */
+  public boolean replace(String username, ClientConnection previous, ClientConnection connection, Runnable onReplaced) {
+    boolean[] replaced = new boolean[1];
+    this.shard(username).computeIfPresent(username, (name, current) -> {
+      if (current != previous) {
+        return current;
+      }
+      onReplaced.run();
+      replaced[0] = true;
+      return connection;
+    });
+    return replaced[0];
+  }
+
+  /**
+   * This public method is used to remove a client and free its slot, only if username still belongs to that connection
+   *
+   * @param username represented as String, username of client
+   * @param connection represented as ClientConnection, connection of client
+   * @return represented as boolean, true if client was removed
+   */
+  public boolean unregister(String username, ClientConnection connection) {
+    if (username != null && this.shard(username).remove(username, connection)) {
+      this.occupied.decrementAndGet();
+      this.changed(username, false);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * This public method is used to get connection of a client
+   *
+   * @param username represented as String, username of client
+   * @return represented as ClientConnection, null if no such client
+   */
+  public ClientConnection get(String username) {
+    return this.shard(username).get(username);
+  }
+
+  /**
+   * This public method is used to check if a client is registered
+   *
+   * @param username represented as String, username of client
+   * @return represented as boolean
+   */
+  public boolean contains(String username) {
+    return this.shard(username).containsKey(username);
+  }
+
+  /**
+   * This public method is used to get number of registered and reserved clients without counting any map
+   *
+   * @return represented as int
+   */
+  public int size() {
+    return this.occupied.get();
+  }
+
+  /**
+   * This public method is used to get maximum number of clients
+   *
+   * @return represented as int
+   */
+  public int getCapacity() {
+    return this.capacity;
+  }
+
+  /**
+   * This method is used by PresenceBroker to get every later join and leave of this registry
+   *
+   * @param presenceBroker represented as PresenceBroker
+   */
+  void setPresenceBroker(PresenceBroker presenceBroker) {
+    this.presenceBroker = presenceBroker;
+  }
+
+  /**
+   * This public method is used to get current version of membership, bumped by every register and unregister
+   *
+   * @return represented as long
+   */
+  public long getVersion() {
+    return this.version.get();
+  }
+
+  /**
+   * This public method is used to get sorted usernames of registered clients. The snapshot is shared by all callers
+   * until membership changes, and only one caller rebuilds it after a change.
+   *
+   * @return represented as RosterSnapshot
+   */
+  public RosterSnapshot getRoster() {
+    RosterSnapshot current = this.roster;
+    if (current.getVersion() == this.version.get()) {
+      return current;
+    }
+    synchronized (this.rosterLock) {
+      current = this.roster;
+      long latest = this.version.get();
+      if (current.getVersion() != latest) {
+        // names read after the version, a change during the walk bumps version again and is picked up next time
+        List<String> names = new ArrayList<>(this.occupied.get());
+        for (ConcurrentMap<String, ClientConnection> shard : this.shards) {
+          names.addAll(shard.keySet());
+        }
+        current = new RosterSnapshot(latest, names.toArray(new String[0]));
+        this.roster = current;
+      }
+      return current;
+    }
+  }
+
+  /**
+   * This public method is used to run an action for every registered client
+   *
+   * @param action represented as Consumer of ClientConnection
+   */
+  @Override
+  public void forEach(Consumer<? super ClientConnection> action) {
+    for (ConcurrentMap<String, ClientConnection> shard : this.shards) {
+      shard.values().forEach(action);
+    }
+  }
+
+  /**
+   * This public method is used to iterate over registered clients, shard by shard. Like ConcurrentHashMap iteration
+   * it is weakly consistent and never throws ConcurrentModificationException.
+   *
+   * @return represented as Iterator of ClientConnection
+   */
+  @Override
+  public Iterator<ClientConnection> iterator() {
+    return new Iterator<>() {
+      private int next = 0;
+      private Iterator<ClientConnection> current = shards[0].values().iterator();
+
+      @Override
+      public boolean hasNext() {
+        while (!this.current.hasNext() && this.next < shardMask) {
+          this.current = shards[++this.next].values().iterator();
+        }
+        return this.current.hasNext();
+      }
+
+      @Override
+      public ClientConnection next() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return this.current.next();
+      }
+    };
+  }
+
+  /**
+   * This private method is used to bump version after a join or leave and hand the change to presence broker
+   *
+   * @param username represented as String, user that joined or left
+   * @param joined represented as boolean, true for join and false for leave
+   */
+  private void changed(String username, boolean joined) {
+    long changeVersion = this.version.incrementAndGet();
+    PresenceBroker broker = this.presenceBroker;
+    if (broker != null) {
+      broker.record(username, joined, changeVersion);
+    }
+  }
+
+  /**
+   * This private method is used to find shard of a username. Shard is picked from high bits of a multiplicative hash,
+   * so keys of one shard still spread over all bins of that shard's table, which are picked from low bits.
+   *
+   * @param username represented as String
+   * @return represented as ConcurrentMap, shard holding username
+   */
+  private ConcurrentMap<String, ClientConnection> shard(String username) {
+    int mixed = username.hashCode() * 0x9E3779B9;
+    return this.shards[(mixed >>> this.shardShift) & this.shardMask];
+  }
+}
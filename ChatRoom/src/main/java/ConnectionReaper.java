@@ -0,0 +1,253 @@
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * ConnectionReaper class finds connections nothing was read from for too long, such as half-open TCP connections whose
+ * peer is gone, and closes them. Every connection is one Entry in a hashed timer wheel turned by a single thread, never
+ * one scheduled task per connection. Reading from a connection only stores a timestamp in its entry; the entry stays in
+ * its wheel slot, and when the wheel reaches that slot the entry is checked and, if it saw activity, put back in the slot
+ * of its new deadline. A tick therefore only visits the entries of one slot. A connection idle for half the timeout gets a
+ * PING, which a live client answers with a PONG, and one still idle at the full timeout is closed.
+ */
+public class ConnectionReaper {
+
+  /**
+   * Number of slots of timer wheel, a power of two
+   */
+  private static final int WHEEL_SLOTS = 512;
+
+  /**
+   * PING frame shared by every connection, never given back to a pool
+   */
+  private static final Frame PING = new Frame(ByteBuffer.allocate(Integer.BYTES).putInt(MessageIdentifier.PING).array());
+  private final Entry[] wheel;
+  private final Queue<Entry> added;
+  private final long idleNanos;
+  private final long pingNanos;
+  private final long tickNanos;
+  private final long startNanos;
+  private final LongSupplier clock;
+  private final AtomicLong pings;
+  private final AtomicLong evictions;
+  private ScheduledExecutorService ticker;
+
+  /**
+   * Number of ticks processed so far, only used by the thread turning the wheel
+   */
+  private long tick;
+
+  /**
+   * Constructor of ConnectionReaper
+   *
+   * @param idleMillis represented as long, how long a connection can stay silent before it is closed
+   * @param tickMillis represented as long, how often the wheel turns, bounds how late a deadline is noticed
+   */
+  public ConnectionReaper(long idleMillis, long tickMillis) {
+    this(idleMillis, tickMillis, System::nanoTime);
+  }
+
+  /**
+   * Constructor of ConnectionReaper with a provided clock
+   *
+   * @param idleMillis represented as long, how long a connection can stay silent before it is closed
+   * @param tickMillis represented as long, how often the wheel turns
+   * @param clock represented as LongSupplier, current time in nanoseconds
+   */
+  ConnectionReaper(long idleMillis, long tickMillis, LongSupplier clock) {
+    if (idleMillis < 1 || tickMillis < 1) {
+      throw new InvalidArgException("Idle timeout and reaper tick should be greater than zero!");
+    }
+    this.wheel = new Entry[WHEEL_SLOTS];
+    this.added = new ConcurrentLinkedQueue<>();
+    this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+    this.pingNanos = this.idleNanos / 2;
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    this.clock = clock;
+    this.startNanos = clock.getAsLong();
+    this.pings = new AtomicLong();
+    this.evictions = new AtomicLong();
+  }
+
+  /**
+   * This public method is used to start the thread that turns the wheel once per tick
+   */
+  public synchronized void start() {
+    if (this.ticker == null) {
+      this.ticker = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "chatroom-reaper");
+        thread.setDaemon(true);
+        return thread;
+      });
+      long tickMillis = TimeUnit.NANOSECONDS.toMillis(this.tickNanos);
+      this.ticker.scheduleAtFixedRate(() -> this.expire(this.clock.getAsLong()), tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * This public method is used to stop the thread that turns the wheel, connections are left as they are
+   */
+  public synchronized void stop() {
+    if (this.ticker != null) {
+      this.ticker.shutdownNow();
+      this.ticker = null;
+    }
+  }
+
+  /**
+   * This public method is used to start watching a connection, can be called from any thread
+   *
+   * @param connection represented as ClientConnection, connection that was just accepted
+   * @return represented as Entry, touched by the connection whenever it reads and cancelled once it closes
+   */
+  public Entry register(ClientConnection connection) {
+    Entry entry = new Entry(connection, this.clock.getAsLong());
+    this.added.add(entry);
+    return entry;
+  }
+
+  /**
+   * This public method is used to get number of PING frames sent to idle connections
+   *
+   * @return represented as long
+   */
+  public long getPings() {
+    return this.pings.get();
+  }
+
+  /**
+   * This public method is used to get number of connections closed for being idle
+   *
+   * @return represented as long
+   */
+  public long getEvictions() {
+    return this.evictions.get();
+  }
+
+  /**
+   * This method is used by the wheel thread to process every tick up to a point in time
+   *
+   * @param now represented as long, current time in nanoseconds
+   */
+  void expire(long now) {
+    Entry entry;
+    while ((entry = this.added.poll()) != null) {
+      this.schedule(entry, entry.lastActivity + this.pingNanos);
+    }
+    long target = (now - this.startNanos) / this.tickNanos;
+    while (this.tick <= target) {
+      int slot = (int) (this.tick & (WHEEL_SLOTS - 1));
+      Entry due = this.wheel[slot];
+      this.wheel[slot] = null;
+      while (due != null) {
+        Entry next = due.next;
+        due.next = null;
+        if (due.deadlineTick > this.tick) {
+          this.link(due, slot); // deadline is a later turn of the wheel
+        }
+        else {
+          this.check(due, now);
+        }
+        due = next;
+      }
+      this.tick++;
+    }
+  }
+
+  /**
+   * This private method is used to decide about an entry whose deadline passed: drop it, ping it, close it or
+   * put it back for its new deadline
+   *
+   * @param entry represented as Entry
+   * @param now represented as long, current time in nanoseconds
+   */
+  private void check(Entry entry, long now) {
+    if (entry.cancelled || entry.connection.isClosed()) {
+      return;
+    }
+    long lastActivity = entry.lastActivity;
+    long idle = now - lastActivity;
+    if (idle >= this.idleNanos) {
+      this.evictions.incrementAndGet();
+      try {
+        entry.connection.evict(); // an event loop client is closed on its loop, not on the wheel thread
+      } catch (RuntimeException e) {
+        // connection is closed as far as it can be, the wheel thread must go on
+      }
+      return;
+    }
+    if (idle >= this.pingNanos && entry.pingedFor != lastActivity) {
+      entry.pingedFor = lastActivity;
+      this.pings.incrementAndGet();
+      entry.connection.send(PING.retain());
+    }
+    this.schedule(entry, lastActivity + (idle >= this.pingNanos ? this.idleNanos : this.pingNanos));
+  }
+
+  /**
+   * This private method is used to put an entry in the slot of a deadline, never in a tick already processed
+   *
+   * @param entry represented as Entry
+   * @param deadline represented as long, time in nanoseconds
+   */
+  private void schedule(Entry entry, long deadline) {
+    long deadlineTick = Math.max(this.tick + 1, (deadline - this.startNanos + this.tickNanos - 1) / this.tickNanos);
+    entry.deadlineTick = deadlineTick;
+    this.link(entry, (int) (deadlineTick & (WHEEL_SLOTS - 1)));
+  }
+
+  /**
+   * This private method is used to add an entry to the list of a slot
+   *
+   * @param entry represented as Entry
+   * @param slot represented as int
+   */
+  private void link(Entry entry, int slot) {
+    entry.next = this.wheel[slot];
+    this.wheel[slot] = entry;
+  }
+
+  /**
+   * Entry class is one watched connection. Connection threads only write its activity time and cancelled flag,
+   * everything else belongs to the wheel thread.
+   */
+  public final class Entry {
+    private final ClientConnection connection;
+    private volatile long lastActivity;
+    private volatile boolean cancelled;
+    private long pingedFor;
+    private long deadlineTick;
+    private Entry next;
+
+    /**
+     * Constructor of Entry
+     *
+     * @param connection represented as ClientConnection
+     * @param now represented as long, time in nanoseconds
+     */
+    private Entry(ClientConnection connection, long now) {
+      this.connection = connection;
+      this.lastActivity = now;
+      this.pingedFor = Long.MIN_VALUE;
+    }
+
+    /**
+     * This public method is used to record that something was read from the connection
+     */
+    public void touch() {
+      this.lastActivity = clock.getAsLong();
+    }
+
+    /**
+     * This public method is used to stop watching a connection that closed, the wheel drops it at its next deadline
+     */
+    public void cancel() {
+      this.cancelled = true;
+    }
+  }
+}
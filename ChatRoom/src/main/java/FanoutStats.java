@@ -0,0 +1,79 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * FanoutStats class counts how broadcast frames are shared between recipients. Counters are striped LongAdders,
+ * so every sender thread can update them without contention.
+ */
+public class FanoutStats {
+  private final LongAdder broadcasts;
+  private final LongAdder deliveries;
+  private final LongAdder bytesEncoded;
+  private final LongAdder bytesSaved;
+
+  /**
+   * Constructor of FanoutStats with all counters at zero
+   */
+  public FanoutStats() {
+    this.broadcasts = new LongAdder();
+    this.deliveries = new LongAdder();
+    this.bytesEncoded = new LongAdder();
+    this.bytesSaved = new LongAdder();
+  }
+
+  /**
+   * This public method is used to record one frame encoded once and queued to some recipients
+   *
+   * @param frame represented as Frame, shared frame
+   * @param recipients represented as int, number of clients the frame was queued to
+   */
+  public void record(Frame frame, int recipients) {
+    this.broadcasts.increment();
+    this.deliveries.add(recipients);
+    this.bytesEncoded.add(frame.length());
+    if (recipients > 1) {
+      this.bytesSaved.add((long) frame.length() * (recipients - 1));
+    }
+  }
+
+  /**
+   * This public method is used to get number of broadcast frames encoded
+   *
+   * @return represented as long
+   */
+  public long getBroadcasts() {
+    return this.broadcasts.sum();
+  }
+
+  /**
+   * This public method is used to get number of times a shared frame was queued to a recipient
+   *
+   * @return represented as long
+   */
+  public long getDeliveries() {
+    return this.deliveries.sum();
+  }
+
+  /**
+   * This public method is used to get number of bytes actually encoded for broadcasts
+   *
+   * @return represented as long
+   */
+  public long getBytesEncoded() {
+    return this.bytesEncoded.sum();
+  }
+
+  /**
+   * This public method is used to get number of bytes that encoding once per recipient would have added
+   *
+   * @return represented as long
+   */
+  public long getBytesSaved() {
+    return this.bytesSaved.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "broadcasts=" + this.getBroadcasts() + ", deliveries=" + this.getDeliveries()
+        + ", bytesEncoded=" + this.getBytesEncoded() + ", bytesSaved=" + this.getBytesSaved();
+  }
+}
@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Frame class is one complete encoded protocol frame. Its bytes never change once created, so one instance can be queued
+ * to any number of clients; every writer reads it through its own view and the bytes are never copied per recipient.
+ * A frame built in a pooled buffer is reference counted: every holder releases it once, and the last release gives the
+ * buffer back to its pool.
+ */
+public final class Frame {
+  private final ByteBuffer bytes;
+  private final int length;
+  private final BufferPool pool;
+  private final AtomicInteger references;
+
+  /**
+   * History sequence number of this frame, zero if it is not kept in a MessageHistory
+   */
+  private long sequence;
+
+  /**
+   * Set for a frame whose sender needs to know once it is written, such as a mailbox delivery, which is never shared
+   */
+  private boolean tracked;
+
+  /**
+   * Set by the writer once a tracked frame is written to the socket of its client, a dropped frame never gets it
+   */
+  private volatile boolean written;
+
+  /**
+   * Constructor of Frame over a plain array, which must not be changed afterwards
+   *
+   * @param bytes represented as array of byte, complete encoded frame
+   */
+  public Frame(byte[] bytes) {
+    this(ByteBuffer.wrap(bytes), bytes.length, null);
+  }
+
+  /**
+   * Constructor of Frame over a buffer, holding one reference
+   *
+   * @param bytes represented as ByteBuffer, frame occupies index zero up to length
+   * @param length represented as int, number of bytes in frame
+   * @param pool represented as BufferPool, pool the buffer goes back to, or null if it is not pooled
+   */
+  public Frame(ByteBuffer bytes, int length, BufferPool pool) {
+    this.bytes = bytes;
+    this.length = length;
+    this.pool = pool;
+    this.references = new AtomicInteger(1);
+  }
+
+  /**
+   * This public method is used to get length of frame
+   *
+   * @return represented as int, number of bytes
+   */
+  public int length() {
+    return this.length;
+  }
+
+  /**
+   * This public method is used to get history sequence number of frame
+   *
+   * @return represented as long, zero if frame is not kept in a MessageHistory
+   */
+  public long getSequence() {
+    return this.sequence;
+  }
+
+  /**
+   * This public method is used to set history sequence number of frame, before it is queued to any client
+   *
+   * @param sequence represented as long
+   */
+  public void setSequence(long sequence) {
+    this.sequence = sequence;
+  }
+
+  /**
+   * This public method is used to ask writers to report when frame is written, before it is queued to its client
+   */
+  public void track() {
+    this.tracked = true;
+  }
+
+  /**
+   * This public method is used to check if writers report when frame is written
+   *
+   * @return represented as boolean
+   */
+  public boolean isTracked() {
+    return this.tracked;
+  }
+
+  /**
+   * This public method is used by a writer once frame is written to the socket of its client. Frames nobody tracks are
+   * left untouched, so writers of a shared frame do not contend on it.
+   */
+  public void markWritten() {
+    if (this.tracked) {
+      this.written = true;
+    }
+  }
+
+  /**
+   * This public method is used to check if a tracked frame was written to the socket of its client
+   *
+   * @return represented as boolean, false until then, and forever if frame was dropped
+   */
+  public boolean isWritten() {
+    return this.written;
+  }
+
+  /**
+   * This public method is used to get message identifier the frame starts with, without creating a view
+   *
+   * @return represented as int, zero if frame is too short to hold one
+   */
+  public int messageIdentifier() {
+    return this.length < Integer.BYTES ? 0 : this.bytes.getInt(0);
+  }
+
+  /**
+   * This public method is used to get a read-only view of frame with its own position and limit
+   *
+   * @return represented as ByteBuffer, view over shared bytes
+   */
+  public ByteBuffer buffer() {
+    ByteBuffer view = this.bytes.asReadOnlyBuffer();
+    view.clear().limit(this.length);
+    return view;
+  }
+
+  /**
+   * This public method is used to write whole frame to a stream in one call
+   *
+   * @param out represented as OutputStream
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in out
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    if (this.bytes.hasArray()) {
+      out.write(this.bytes.array(), this.bytes.arrayOffset(), this.length);
+    }
+    else {
+      Channels.newChannel(out).write(this.buffer());
+    }
+  }
+
+  /**
+   * This public method is used to add one holder of this frame, before it is handed to another recipient
+   *
+   * @return represented as Frame, this frame
+   */
+  public Frame retain() {
+    if (this.references.getAndIncrement() <= 0) {
+      throw new IllegalStateException("Frame was already released");
+    }
+    return this;
+  }
+
+  /**
+   * This public method is used by a holder to say it is done with this frame
+   */
+  public void release() {
+    int left = this.references.decrementAndGet();
+    if (left == 0 && this.pool != null) {
+      this.pool.release(this.bytes);
+    }
+    else if (left < 0) {
+      throw new IllegalStateException("Frame was released too many times");
+    }
+  }
+}
@@ -0,0 +1,103 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * FrameBuffer class is the stream a protocol encodes outgoing frames into. Frames are built directly in heap buffers
+ * taken from a BufferPool, and a finished frame takes that buffer over without copying. Besides normal writes it can
+ * read an opaque field straight from the client's input, so relayed message bodies are never copied into an
+ * intermediate array or decoded into a String.
+ */
+public class FrameBuffer extends OutputStream {
+
+  /**
+   * Smallest buffer taken for a new frame
+   */
+  private static final int INITIAL_SIZE = 256;
+  private final BufferPool pool;
+  private ByteBuffer buffer;
+
+  /**
+   * Constructor of FrameBuffer
+   *
+   * @param pool represented as BufferPool, heap buffer pool frames are built in
+   */
+  public FrameBuffer(BufferPool pool) {
+    this.pool = pool;
+  }
+
+  @Override
+  public void write(int b) {
+    this.ensureRoom(1).put((byte) b);
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int length) {
+    this.ensureRoom(length).put(bytes, offset, length);
+  }
+
+  /**
+   * This public method is used to append bytes read directly from input
+   *
+   * @param in represented as DataInputStream, input positioned at the bytes
+   * @param length represented as int, number of bytes to read
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from in
+   */
+  public void readFrom(DataInputStream in, int length) throws IOException {
+    ByteBuffer target = this.ensureRoom(length);
+    in.readFully(target.array(), target.arrayOffset() + target.position(), length);
+    target.position(target.position() + length);
+  }
+
+  /**
+   * This public method is used to append remaining bytes of a buffer, such as a stored frame copied back out of history
+   *
+   * @param bytes represented as ByteBuffer, its position is moved to its limit
+   */
+  public void write(ByteBuffer bytes) {
+    this.ensureRoom(bytes.remaining()).put(bytes);
+  }
+
+  /**
+   * This public method is used to take encoded bytes as an immutable frame, holding one reference.
+   * The next write starts a new frame in a new buffer.
+   *
+   * @return represented as Frame
+   */
+  public Frame takeFrame() {
+    ByteBuffer frameBytes = this.ensureRoom(0);
+    this.buffer = null;
+    return new Frame(frameBytes, frameBytes.position(), this.pool);
+  }
+
+  /**
+   * This public method is used to throw away a partly encoded frame
+   */
+  public void discard() {
+    if (this.buffer != null) {
+      this.pool.release(this.buffer);
+      this.buffer = null;
+    }
+  }
+
+  /**
+   * This private method is used to make sure current buffer has room, moving to a bigger pooled buffer if needed
+   *
+   * @param length represented as int, number of bytes about to be written
+   * @return represented as ByteBuffer, current buffer in write mode
+   */
+  private ByteBuffer ensureRoom(int length) {
+    if (this.buffer == null) {
+      this.buffer = this.pool.acquire(Math.max(INITIAL_SIZE, length));
+    }
+    else if (this.buffer.remaining() < length) {
+      ByteBuffer larger = this.pool.acquire(Math.max(this.buffer.capacity() * 2, this.buffer.position() + length));
+      this.buffer.flip();
+      larger.put(this.buffer);
+      this.pool.release(this.buffer);
+      this.buffer = larger;
+    }
+    return this.buffer;
+  }
+}
@@ -0,0 +1,140 @@
+import java.nio.ByteBuffer;
+
+/**
+ * FrameDecoder is a class used to find complete client frames inside a read buffer without consuming them,
+ * so a non-blocking connection only hands whole frames to ChatRoomProtocol. It knows both protocol versions of client
+ * frames: version 1 starts with an int message identifier and every field has an int length, version 2 starts with a
+ * one byte message identifier, every field has a varint length and the sender field is left out because the
+ * connection already knows who is logged in.
+ */
+public final class FrameDecoder {
+
+  /**
+   * Largest frame accepted from a client, protects the server from unbounded buffer growth
+   */
+  public static final int MAX_FRAME_BYTES = 1 << 20;
+
+  /**
+   * Private constructor of FrameDecoder
+   */
+  private FrameDecoder() {
+  }
+
+  /**
+   * This public static method is used to get number of length prefixed fields which follow a client message identifier
+   *
+   * @param messageIdentifier represented as int, message identifier sent by client
+   * @return represented as int, number of fields
+   */
+  public static int fieldCount(int messageIdentifier) {
+    return switch (messageIdentifier) {
+      case MessageIdentifier.PROTOCOL_VERSION -> 2;
+      case MessageIdentifier.CONNECT_MESSAGE, MessageIdentifier.DISCONNECT_MESSAGE,
+          MessageIdentifier.QUERY_CONNECTED_USERS, MessageIdentifier.LIST_ROOMS,
+          MessageIdentifier.PRESENCE_SUBSCRIBE, MessageIdentifier.PRESENCE_UNSUBSCRIBE,
+          MessageIdentifier.PING, MessageIdentifier.PONG, MessageIdentifier.ADMIN_QUERY -> 1;
+      case MessageIdentifier.BROADCAST_MESSAGE, MessageIdentifier.SEND_INSULT,
+          MessageIdentifier.JOIN_ROOM, MessageIdentifier.LEAVE_ROOM,
+          MessageIdentifier.CONNECT_WITH_HISTORY, MessageIdentifier.RESUME_SESSION -> 2;
+      case MessageIdentifier.DIRECT_MESSAGE, MessageIdentifier.ROOM_MESSAGE,
+          MessageIdentifier.QUERY_USERS_PAGE, MessageIdentifier.JOIN_ROOM_WITH_HISTORY -> 3;
+      default -> throw new IllegalStateException("Unexpected value: " + messageIdentifier);
+    };
+  }
+
+  /**
+   * This public static method is used to get number of length prefixed fields which follow a client message identifier
+   * in a protocol version
+   *
+   * @param messageIdentifier represented as int, message identifier sent by client
+   * @param version represented as int, protocol version of frame
+   * @return represented as int, number of fields
+   */
+  public static int fieldCount(int messageIdentifier, int version) {
+    int fields = fieldCount(messageIdentifier);
+    return hasSenderField(messageIdentifier, version) ? fields : fields - 1;
+  }
+
+  /**
+   * This public static method is used to check if a client frame starts with the username of its sender. Every version
+   * 1 frame does; in version 2 only the frames that log a user in do, the others are sent by the logged in user.
+   *
+   * @param messageIdentifier represented as int, message identifier sent by client
+   * @param version represented as int, protocol version of frame
+   * @return represented as boolean
+   */
+  public static boolean hasSenderField(int messageIdentifier, int version) {
+    return version == WireFormat.VERSION_1
+        || messageIdentifier == MessageIdentifier.CONNECT_MESSAGE
+        || messageIdentifier == MessageIdentifier.CONNECT_WITH_HISTORY
+        || messageIdentifier == MessageIdentifier.RESUME_SESSION;
+  }
+
+  /**
+   * This public static method is used to get length of the version 1 frame starting at buffer position.
+   * Buffer position and limit are not changed.
+   *
+   * @param buffer represented as ByteBuffer, buffer in read mode
+   * @return represented as int, frame length in bytes or -1 if frame is not complete yet
+   * @throws IllegalStateException if frame has unknown message identifier or invalid field length
+   */
+  public static int frameLength(ByteBuffer buffer) {
+    return frameLength(buffer, WireFormat.VERSION_1);
+  }
+
+  /**
+   * This public static method is used to get length of the frame of a protocol version starting at buffer position.
+   * Buffer position and limit are not changed.
+   *
+   * @param buffer represented as ByteBuffer, buffer in read mode
+   * @param version represented as int, protocol version of frame
+   * @return represented as int, frame length in bytes or -1 if frame is not complete yet
+   * @throws IllegalStateException if frame has unknown message identifier or invalid field length
+   */
+  public static int frameLength(ByteBuffer buffer, int version) {
+    int start = buffer.position();
+    int limit = buffer.limit();
+    int identifierBytes = version == WireFormat.VERSION_1 ? Integer.BYTES : 1;
+    if (limit - start < identifierBytes) {
+      return -1;
+    }
+    int messageIdentifier = version == WireFormat.VERSION_1 ? buffer.getInt(start) : buffer.get(start) & 0xFF;
+    int fields = fieldCount(messageIdentifier, version);
+    int offset = start + identifierBytes;
+    for (int i = 0; i < fields; i++) {
+      long length = 0;
+      if (version == WireFormat.VERSION_1) {
+        if (limit - offset < Integer.BYTES) {
+          return -1;
+        }
+        length = buffer.getInt(offset);
+        offset += Integer.BYTES;
+      } else {
+        int shift = 0;
+        int b;
+        do {
+          if (offset == limit) {
+            return -1;
+          }
+          if (shift > 28) {
+            throw new IllegalStateException("Varint is too long");
+          }
+          b = buffer.get(offset++);
+          length |= (long) (b & 0x7F) << shift;
+          shift += 7;
+        } while ((b & 0x80) != 0);
+      }
+      if (length < 0 || length > MAX_FRAME_BYTES) {
+        throw new IllegalStateException("Invalid field length: " + length);
+      }
+      if (limit - offset < length) {
+        return -1;
+      }
+      offset += (int) length;
+    }
+    if (offset - start > MAX_FRAME_BYTES) {
+      throw new IllegalStateException("Frame is too large: " + (offset - start));
+    }
+    return offset - start;
+  }
+}
@@ -0,0 +1,173 @@
+import assignment4.problem1.Grammar;
+import assignment4.problem1.JSONFileParser;
+import assignment4.problem1.SentenceGenerator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InsultGenerator class generates random insults from the insult grammar. The grammar file is parsed once, on first use,
+ * into a shared grammar that is only read afterwards; it is parsed again only when the file's modification time changes.
+ * Every thread gets its own SentenceGenerator, so threads never share random number generator state.
+ */
+public class InsultGenerator {
+
+  /**
+   * Classpath resource of insult grammar
+   */
+  public static final String GRAMMAR_RESOURCE = "/insult_grammar.json";
+
+  /**
+   * Insult grammar file relative to project folder, used when resource is not on classpath
+   */
+  public static final String GRAMMAR_FILE = "src/main/resources/insult_grammar.json";
+
+  /**
+   * How often the grammar file is checked for changes by default
+   */
+  private static final long DEFAULT_CHECK_INTERVAL_MILLIS = 1000;
+  private final Path grammarFile;
+  private final long checkIntervalNanos;
+  private volatile LoadedGrammar loaded;
+  private volatile long nextCheckNanos;
+
+  /**
+   * Constructor of InsultGenerator for provided grammar file
+   *
+   * @param grammarFile represented as Path, insult grammar json file
+   */
+  public InsultGenerator(Path grammarFile) {
+    this(grammarFile, DEFAULT_CHECK_INTERVAL_MILLIS);
+  }
+
+  /**
+   * Constructor of InsultGenerator for provided grammar file and change check interval
+   *
+   * @param grammarFile represented as Path, insult grammar json file
+   * @param checkIntervalMillis represented as long, how often file is checked for changes
+   */
+  InsultGenerator(Path grammarFile, long checkIntervalMillis) {
+    this.grammarFile = grammarFile;
+    this.checkIntervalNanos = TimeUnit.MILLISECONDS.toNanos(checkIntervalMillis);
+  }
+
+  /**
+   * This public static method is used to create generator for grammar on classpath. A grammar inside a jar is copied
+   * once to a temporary file, since the grammar parser reads from a file path.
+   *
+   * @return represented as InsultGenerator
+   */
+  public static InsultGenerator fromClasspath() {
+    URL resource = InsultGenerator.class.getResource(GRAMMAR_RESOURCE);
+    if (resource == null) {
+      return new InsultGenerator(Paths.get(GRAMMAR_FILE));
+    }
+    try {
+      if ("file".equals(resource.getProtocol())) {
+        return new InsultGenerator(Paths.get(resource.toURI()));
+      }
+      Path copy = Files.createTempFile("insult_grammar", ".json");
+      copy.toFile().deleteOnExit();
+      try (InputStream in = resource.openStream()) {
+        Files.copy(in, copy, StandardCopyOption.REPLACE_EXISTING);
+      }
+      return new InsultGenerator(copy);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (URISyntaxException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * This public method is used to generate a random insult
+   *
+   * @return represented as String, random insult
+   */
+  public String generate() {
+    return this.grammar().generators.get().generateRandomSentence();
+  }
+
+  /**
+   * This public method is used to get how many times grammar file has been parsed
+   *
+   * @return represented as int, zero before first insult
+   */
+  public int getLoadCount() {
+    LoadedGrammar current = this.loaded;
+    return current == null ? 0 : current.version;
+  }
+
+  /**
+   * This private method is used to get current grammar, parsing the file on first use or after it changed
+   *
+   * @return represented as LoadedGrammar
+   */
+  private LoadedGrammar grammar() {
+    LoadedGrammar current = this.loaded;
+    if (current != null && System.nanoTime() - this.nextCheckNanos < 0) {
+      return current;
+    }
+    return this.reloadIfChanged();
+  }
+
+  /**
+   * This private method is used to parse grammar file if it was not parsed yet or changed since
+   *
+   * @return represented as LoadedGrammar
+   */
+  private synchronized LoadedGrammar reloadIfChanged() {
+    LoadedGrammar current = this.loaded;
+    FileTime modified = this.lastModified();
+    if (current == null || (modified != null && !modified.equals(current.modified))) {
+      JSONFileParser jsonFileParser = new JSONFileParser(this.grammarFile.toString());
+      current = new LoadedGrammar(jsonFileParser.processJsonFile(), modified, current == null ? 1 : current.version + 1);
+      this.loaded = current;
+    }
+    this.nextCheckNanos = System.nanoTime() + this.checkIntervalNanos;
+    return current;
+  }
+
+  /**
+   * This private method is used to get modification time of grammar file
+   *
+   * @return represented as FileTime, or null if it cannot be read
+   */
+  private FileTime lastModified() {
+    try {
+      return Files.getLastModifiedTime(this.grammarFile);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * LoadedGrammar holds one parsed version of the grammar and the per thread generators over it
+   */
+  private static final class LoadedGrammar {
+    private final FileTime modified;
+    private final int version;
+    private final ThreadLocal<SentenceGenerator> generators;
+
+    /**
+     * Constructor of LoadedGrammar
+     *
+     * @param grammar represented as Grammar, parsed grammar
+     * @param modified represented as FileTime, modification time of parsed file
+     * @param version represented as int, how many times grammar has been parsed
+     */
+    private LoadedGrammar(Grammar grammar, FileTime modified, int version) {
+      this.modified = modified;
+      this.version = version;
+      this.generators = ThreadLocal.withInitial(() -> new SentenceGenerator(grammar, null));
+    }
+  }
+}
@@ -0,0 +1,167 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * InsultPool class keeps a bounded ring of insults generated ahead of time, so a SEND_INSULT request only takes the next
+ * one. A background thread refills the ring whenever it drops to the low water mark; if the ring is ever empty the
+ * insult is generated on the request thread and counted as a miss.
+ */
+public class InsultPool {
+  private final InsultGenerator generator;
+  private final ArrayBlockingQueue<String> insults;
+  private final int lowWaterMark;
+  private final Executor refiller;
+  private final AtomicBoolean refillScheduled;
+  private final LongAdder hits;
+  private final LongAdder misses;
+  private final LongAdder generated;
+
+  /**
+   * Constructor of InsultPool, starts filling the pool in background right away
+   *
+   * @param generator represented as InsultGenerator, generator of insults
+   * @param capacity represented as int, maximum number of pre generated insults
+   * @param lowWaterMark represented as int, pool is refilled when it has this many insults or fewer
+   */
+  public InsultPool(InsultGenerator generator, int capacity, int lowWaterMark) {
+    this(generator, capacity, lowWaterMark, Executors.newSingleThreadExecutor(task -> {
+      Thread thread = new Thread(task, "chatroom-insult-refill");
+      thread.setDaemon(true);
+      return thread;
+    }));
+  }
+
+  /**
+   * Constructor of InsultPool with given refill executor, used by tests to run refills on their own thread
+   *
+   * @param generator represented as InsultGenerator, generator of insults
+   * @param capacity represented as int, maximum number of pre generated insults
+   * @param lowWaterMark represented as int, pool is refilled when it has this many insults or fewer
+   * @param refiller represented as Executor, runs refill tasks one at a time
+   */
+  InsultPool(InsultGenerator generator, int capacity, int lowWaterMark, Executor refiller) {
+    if (capacity < 1 || lowWaterMark < 0 || lowWaterMark >= capacity) {
+      throw new InvalidArgException("Insult pool needs capacity greater than zero and low water mark below capacity!");
+    }
+    this.generator = generator;
+    this.insults = new ArrayBlockingQueue<>(capacity);
+    this.lowWaterMark = lowWaterMark;
+    this.refiller = refiller;
+    this.refillScheduled = new AtomicBoolean();
+    this.hits = new LongAdder();
+    this.misses = new LongAdder();
+    this.generated = new LongAdder();
+    this.scheduleRefill();
+  }
+
+  /**
+   * This public method is used to take next insult from pool, or generate one if pool is empty
+   *
+   * @return represented as String, random insult
+   */
+  public String take() {
+    String insult = this.insults.poll();
+    if (insult != null) {
+      this.hits.increment();
+    }
+    else {
+      this.misses.increment();
+      insult = this.generator.generate();
+    }
+    if (this.insults.size() <= this.lowWaterMark) {
+      this.scheduleRefill();
+    }
+    return insult;
+  }
+
+  /**
+   * This public method is used to stop background refill thread
+   */
+  public void shutdown() {
+    if (this.refiller instanceof ExecutorService) {
+      ((ExecutorService) this.refiller).shutdownNow();
+    }
+  }
+
+  /**
+   * This public method is used to get number of insults currently in pool
+   *
+   * @return represented as int
+   */
+  public int size() {
+    return this.insults.size();
+  }
+
+  /**
+   * This public method is used to get number of insults taken from pool
+   *
+   * @return represented as long
+   */
+  public long getHits() {
+    return this.hits.sum();
+  }
+
+  /**
+   * This public method is used to get number of insults generated on request thread because pool was empty
+   *
+   * @return represented as long
+   */
+  public long getMisses() {
+    return this.misses.sum();
+  }
+
+  /**
+   * This public method is used to get number of insults generated by background refill
+   *
+   * @return represented as long
+   */
+  public long getGenerated() {
+    return this.generated.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "size=" + this.size() + ", hits=" + this.getHits() + ", misses=" + this.getMisses()
+        + ", generated=" + this.getGenerated();
+  }
+
+  /**
+   * This private method is used to start a refill task unless one is already running. Once the pool is shut down the
+   * flag stays set, so no further refill is attempted.
+   */
+  private void scheduleRefill() {
+    if (this.refillScheduled.compareAndSet(false, true)) {
+      try {
+        this.refiller.execute(this::refill);
+      } catch (RejectedExecutionException e) {
+        // pool is shut down
+      }
+    }
+  }
+
+  /**
+   * This private method is used by refill thread to generate insults until pool is full. A take that drops the pool to
+   * the low water mark while the flag is still set does not schedule anything, so the size is checked again once the
+   * flag is cleared.
+   */
+  private void refill() {
+    try {
+      while (this.insults.remainingCapacity() > 0 && !Thread.currentThread().isInterrupted()) {
+        if (!this.insults.offer(this.generator.generate())) {
+          break;
+        }
+        this.generated.increment();
+      }
+    } finally {
+      this.refillScheduled.set(false);
+    }
+    if (this.insults.size() <= this.lowWaterMark && !Thread.currentThread().isInterrupted()) {
+      this.scheduleRefill();
+    }
+  }
+}
@@ -0,0 +1,145 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram class counts latencies in log-linear buckets, the layout HdrHistogram uses. Values below 128 have a
+ * bucket each; above that every power of two is split into 64 buckets, so a percentile is never off by more than 1/64 of
+ * its value, whatever the range, with a fixed array of counters. Recording is lock-free and can be done from any thread;
+ * count and sum are striped LongAdders, and min and max are only written when a value goes past them.
+ */
+public class LatencyHistogram {
+
+  /**
+   * Values below 2^SUB_BUCKET_BITS are counted exactly, each power of two above that gets half as many buckets
+   */
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int HALF_SUB_BUCKETS = 1 << (SUB_BUCKET_BITS - 1);
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+  private final AtomicLongArray counts;
+  private final LongAdder count;
+  private final LongAdder sum;
+  private final AtomicLong min;
+  private final AtomicLong max;
+
+  /**
+   * Constructor of LatencyHistogram, empty
+   */
+  public LatencyHistogram() {
+    this.counts = new AtomicLongArray(BUCKETS);
+    this.count = new LongAdder();
+    this.sum = new LongAdder();
+    this.min = new AtomicLong(Long.MAX_VALUE);
+    this.max = new AtomicLong();
+  }
+
+  /**
+   * This public method is used to count one value, negative values are counted as zero
+   *
+   * @param value represented as long, such as a latency in nanoseconds
+   */
+  public void record(long value) {
+    long recorded = Math.max(0, value);
+    this.counts.incrementAndGet(index(recorded));
+    this.count.increment();
+    this.sum.add(recorded);
+    if (recorded < this.min.get()) {
+      this.min.accumulateAndGet(recorded, Math::min);
+    }
+    if (recorded > this.max.get()) {
+      this.max.accumulateAndGet(recorded, Math::max);
+    }
+  }
+
+  /**
+   * This public method is used to get number of recorded values
+   *
+   * @return represented as long
+   */
+  public long getCount() {
+    return this.count.sum();
+  }
+
+  /**
+   * This public method is used to get smallest recorded value
+   *
+   * @return represented as long, zero if nothing was recorded
+   */
+  public long getMin() {
+    return this.getCount() == 0 ? 0 : this.min.get();
+  }
+
+  /**
+   * This public method is used to get largest recorded value
+   *
+   * @return represented as long, zero if nothing was recorded
+   */
+  public long getMax() {
+    return this.max.get();
+  }
+
+  /**
+   * This public method is used to get mean of recorded values
+   *
+   * @return represented as double, zero if nothing was recorded
+   */
+  public double getMean() {
+    long values = this.getCount();
+    return values == 0 ? 0 : (double) this.sum.sum() / values;
+  }
+
+  /**
+   * This public method is used to get the value below or at which a percentage of recorded values fall
+   *
+   * @param percentile represented as double, from 0 to 100
+   * @return represented as long, highest value of the bucket holding the percentile, never above the largest value,
+   * zero if nothing was recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new InvalidArgException("Percentile should be between 0 and 100!");
+    }
+    long values = this.getCount();
+    if (values == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * values));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += this.counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestValue(i), this.getMax());
+      }
+    }
+    return this.getMax();
+  }
+
+  /**
+   * This private static method is used to get bucket of a value
+   *
+   * @param value represented as long, not negative
+   * @return represented as int
+   */
+  private static int index(long value) {
+    if (value < 2 * HALF_SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+  }
+
+  /**
+   * This private static method is used to get highest value counted in a bucket
+   *
+   * @param index represented as int, bucket
+   * @return represented as long
+   */
+  private static long highestValue(int index) {
+    if (index < 2 * HALF_SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / HALF_SUB_BUCKETS - 1;
+    long subBucket = index - (long) shift * HALF_SUB_BUCKETS;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,528 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LoadGenerator is a headless client that simulates many users against a ChatRoomServer, a running one or one embedded
+ * in the same process. Every user has its own socket and MessageCodec, logs in, then sends a mix of broadcast, direct,
+ * who and insult messages at a fixed rate. Broadcast and direct messages carry the time they were sent, so each delivery
+ * gives an end-to-end latency; who queries give a round trip latency, and so does the login. Latencies after the warmup
+ * are recorded in histograms and written, with message counts and bytes of requests sent and of frames received, to a
+ * JSON report, so runs in different server modes or protocol versions can be compared. Only requests shrink in protocol
+ * version 2, frames sent by the server stay version 1.
+ */
+public class LoadGenerator {
+
+  /**
+   * Kinds of messages users send, indexes of counters
+   */
+  private static final int BROADCAST = 0;
+  private static final int DIRECT = 1;
+  private static final int WHO = 2;
+  private static final int INSULT = 3;
+  private static final String[] KIND_NAMES = {"broadcast", "direct", "who", "insult"};
+
+  /**
+   * Marker in front of the send time carried by broadcast and direct messages
+   */
+  private static final String TIMESTAMP_MARKER = ": ts=";
+  private static final long READER_STACK_BYTES = 256 << 10;
+  private static final long LOGIN_TIMEOUT_SECONDS = 30;
+
+  /**
+   * How long deliveries still on their way are waited for once users stop sending
+   */
+  private static final long DRAIN_MILLIS = 1000;
+  private final LoadGeneratorConfig config;
+  private final LatencyHistogram deliveryLatency;
+  private final LatencyHistogram whoLatency;
+  private final LatencyHistogram loginLatency;
+  private final AtomicLongArray sent;
+  private final AtomicLongArray received;
+
+  /**
+   * Bytes of requests sent after the warmup, per kind of message
+   */
+  private final AtomicLongArray requestBytes;
+
+  /**
+   * Bytes of frames received after the warmup, by every user
+   */
+  private final AtomicLong receivedBytes;
+  private final AtomicLong otherMessages;
+  private final AtomicLong errors;
+  private final String text;
+  private final int totalWeight;
+  private final List<SimulatedUser> users;
+  private CountDownLatch loginsDone;
+
+  /**
+   * Send time from which messages are counted and their latencies recorded, none until the warmup is over
+   */
+  private volatile long recordFromNanos;
+
+  /**
+   * Constructor of LoadGenerator
+   *
+   * @param config represented as LoadGeneratorConfig, settings of the run
+   */
+  public LoadGenerator(LoadGeneratorConfig config) {
+    this.config = config;
+    this.deliveryLatency = new LatencyHistogram();
+    this.whoLatency = new LatencyHistogram();
+    this.loginLatency = new LatencyHistogram();
+    this.sent = new AtomicLongArray(KIND_NAMES.length);
+    this.received = new AtomicLongArray(KIND_NAMES.length);
+    this.requestBytes = new AtomicLongArray(KIND_NAMES.length);
+    this.receivedBytes = new AtomicLong();
+    this.otherMessages = new AtomicLong();
+    this.errors = new AtomicLong();
+    this.text = "x".repeat(config.getMessageBytes());
+    this.totalWeight = config.getBroadcastWeight() + config.getDirectWeight() + config.getWhoWeight() + config.getInsultWeight();
+    this.users = new ArrayList<>();
+    this.recordFromNanos = Long.MAX_VALUE;
+  }
+
+  /**
+   * This public method is used to run the load: start the embedded server if no port is set, log every user in,
+   * send for the warmup and the duration, then log everyone off
+   *
+   * @return represented as String, JSON report of the run
+   * @throws IOException if a user cannot connect
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public String run() throws IOException, InterruptedException {
+    ChatRoomServer server = null;
+    int port = this.config.getPort();
+    if (port == 0) {
+      ServerConfig serverConfig = ServerConfig.fromSystemProperties();
+      serverConfig.setMode(this.config.getMode());
+      serverConfig.setMaxClients(Math.max(serverConfig.getMaxClients(), this.config.getUsers()));
+      server = new ChatRoomServer(serverConfig);
+      port = server.start(0).join();
+    }
+    ScheduledExecutorService senders = null;
+    try {
+      this.login(port);
+      AtomicInteger count = new AtomicInteger();
+      senders = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+        Thread thread = new Thread(task, "load-sender-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+      long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / this.config.getMessagesPerSecond());
+      for (SimulatedUser user : this.users) {
+        senders.scheduleAtFixedRate(user::sendNext, ThreadLocalRandom.current().nextLong(periodNanos), periodNanos,
+            TimeUnit.NANOSECONDS);
+      }
+      Thread.sleep(TimeUnit.SECONDS.toMillis(this.config.getWarmupSeconds()));
+      long start = System.nanoTime();
+      this.recordFromNanos = start;
+      Thread.sleep(TimeUnit.SECONDS.toMillis(this.config.getDurationSeconds()));
+      senders.shutdownNow();
+      senders.awaitTermination(LOGIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      long measuredNanos = System.nanoTime() - start;
+      Thread.sleep(DRAIN_MILLIS);
+      return this.report(port, measuredNanos);
+    } finally {
+      if (senders != null) {
+        senders.shutdownNow();
+      }
+      for (SimulatedUser user : this.users) {
+        user.close();
+      }
+      if (server != null) {
+        server.stop(0).join();
+      }
+    }
+  }
+
+  /**
+   * This private method is used to connect every user and wait until all of them are logged in
+   *
+   * @param port represented as int, port of server
+   * @throws IOException if a user cannot connect
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private void login(int port) throws IOException, InterruptedException {
+    this.loginsDone = new CountDownLatch(this.config.getUsers());
+    for (int i = 0; i < this.config.getUsers(); i++) {
+      SimulatedUser user = new SimulatedUser(i, port);
+      this.users.add(user);
+      user.send("login");
+    }
+    if (!this.loginsDone.await(LOGIN_TIMEOUT_SECONDS, TimeUnit.SECONDS) || this.errors.get() > 0) {
+      throw new IllegalStateException("Only " + this.loginLatency.getCount() + " of " + this.users.size() + " users logged in");
+    }
+  }
+
+  /**
+   * This private method is used to pick kind of next message by the weights of the mix
+   *
+   * @return represented as int, kind of message
+   */
+  private int nextKind() {
+    int pick = ThreadLocalRandom.current().nextInt(this.totalWeight);
+    if ((pick -= this.config.getBroadcastWeight()) < 0) {
+      return BROADCAST;
+    }
+    if ((pick -= this.config.getDirectWeight()) < 0) {
+      return DIRECT;
+    }
+    return pick < this.config.getWhoWeight() ? WHO : INSULT;
+  }
+
+  /**
+   * This private method is used by the reader of a user to count a decoded message and record its latency
+   *
+   * @param user represented as SimulatedUser, user that received the message
+   * @param message represented as String, message decoded by MessageCodec
+   * @param now represented as long, time the message was decoded in nanoseconds
+   */
+  private void onMessage(SimulatedUser user, String message, long now) {
+    int marker = message.indexOf(TIMESTAMP_MARKER);
+    if (marker >= 0) {
+      int from = marker + TIMESTAMP_MARKER.length();
+      int to = message.indexOf(' ', from);
+      long sentAt = Long.parseLong(message, from, to < 0 ? message.length() : to, 10);
+      if (sentAt >= this.recordFromNanos) {
+        this.deliveryLatency.record(now - sentAt);
+        this.received.incrementAndGet(message.lastIndexOf("->", marker) >= 0 ? DIRECT : BROADCAST);
+      }
+    }
+    else if (message.startsWith("There are ") && message.contains(" connected users")) {
+      Long sentAt = user.whoSent.poll();
+      if (sentAt != null && sentAt >= this.recordFromNanos) {
+        this.whoLatency.record(now - sentAt);
+        this.received.incrementAndGet(WHO);
+      }
+    }
+    else if (message.startsWith("Connection request is ")) {
+      if (user.codec.isConnected()) {
+        this.loginLatency.record(now - user.loginSent);
+      }
+      else {
+        this.errors.incrementAndGet();
+      }
+      this.loginsDone.countDown();
+    }
+    else if (message.contains("->")) {
+      if (now >= this.recordFromNanos) {
+        this.received.incrementAndGet(INSULT);
+      }
+    }
+    else if (!message.isEmpty()) {
+      this.otherMessages.incrementAndGet(); // failed messages and responses that are not measured
+    }
+  }
+
+  /**
+   * This private method is used to write results of the run as JSON
+   *
+   * @param port represented as int, port of server
+   * @param measuredNanos represented as long, how long latencies were recorded
+   * @return represented as String
+   */
+  private String report(int port, long measuredNanos) {
+    double seconds = measuredNanos / 1e9;
+    long expected = this.sent.get(BROADCAST) * this.users.size() + this.sent.get(DIRECT);
+    long delivered = this.received.get(BROADCAST) + this.received.get(DIRECT);
+    StringBuilder json = new StringBuilder("{\n");
+    json.append("  \"server\": \"").append(this.config.getPort() == 0 ? "embedded" : this.config.getHost() + ":" + port).append("\",\n");
+    json.append("  \"mode\": \"").append(this.config.getMode().name().toLowerCase(Locale.ROOT)).append("\",\n");
+    json.append("  \"users\": ").append(this.users.size()).append(",\n");
+    json.append("  \"messagesPerSecondPerUser\": ").append(this.config.getMessagesPerSecond()).append(",\n");
+    json.append("  \"messageBytes\": ").append(this.config.getMessageBytes()).append(",\n");
+    json.append("  \"protocolVersion\": ").append(this.config.getProtocolVersion()).append(",\n");
+    json.append(String.format(Locale.ROOT, "  \"measuredSeconds\": %.3f,%n", seconds));
+    json.append("  \"sent\": ").append(this.counters(this.sent)).append(",\n");
+    json.append("  \"received\": ").append(this.counters(this.received)).append(",\n");
+    json.append("  \"requestBytes\": ").append(this.counters(this.requestBytes)).append(",\n");
+    json.append("  \"requestBytesPerMessage\": ").append(this.bytesPerMessage()).append(",\n");
+    json.append("  \"receivedBytes\": ").append(this.receivedBytes.get()).append(",\n");
+    json.append("  \"otherMessages\": ").append(this.otherMessages.get()).append(",\n");
+    json.append("  \"errors\": ").append(this.errors.get()).append(",\n");
+    json.append("  \"expectedDeliveries\": ").append(expected).append(",\n");
+    json.append("  \"deliveries\": ").append(delivered).append(",\n");
+    json.append(String.format(Locale.ROOT, "  \"deliveriesPerSecond\": %.1f,%n", delivered / seconds));
+    json.append("  \"latencyMicros\": {\n");
+    json.append("    \"delivery\": ").append(this.percentiles(this.deliveryLatency)).append(",\n");
+    json.append("    \"who\": ").append(this.percentiles(this.whoLatency)).append(",\n");
+    json.append("    \"login\": ").append(this.percentiles(this.loginLatency)).append("\n");
+    json.append("  }\n}\n");
+    return json.toString();
+  }
+
+  /**
+   * This private method is used to write counters of each kind of message as a JSON object
+   *
+   * @param counters represented as AtomicLongArray, counter per kind
+   * @return represented as String
+   */
+  private String counters(AtomicLongArray counters) {
+    StringBuilder json = new StringBuilder("{");
+    for (int i = 0; i < KIND_NAMES.length; i++) {
+      json.append(i == 0 ? "" : ", ").append('"').append(KIND_NAMES[i]).append("\": ").append(counters.get(i));
+    }
+    return json.append('}').toString();
+  }
+
+  /**
+   * This private method is used to write mean bytes of a request of each kind of message as a JSON object
+   *
+   * @return represented as String
+   */
+  private String bytesPerMessage() {
+    StringBuilder json = new StringBuilder("{");
+    for (int i = 0; i < KIND_NAMES.length; i++) {
+      long count = this.sent.get(i);
+      json.append(i == 0 ? "" : ", ").append('"').append(KIND_NAMES[i]).append("\": ")
+          .append(String.format(Locale.ROOT, "%.1f", count == 0 ? 0.0 : (double) this.requestBytes.get(i) / count));
+    }
+    return json.append('}').toString();
+  }
+
+  /**
+   * This private method is used to write percentiles of a histogram of nanoseconds as a JSON object in microseconds
+   *
+   * @param histogram represented as LatencyHistogram
+   * @return represented as String
+   */
+  private String percentiles(LatencyHistogram histogram) {
+    return String.format(Locale.ROOT,
+        "{\"count\": %d, \"min\": %.1f, \"p50\": %.1f, \"p90\": %.1f, \"p99\": %.1f, \"p999\": %.1f, \"max\": %.1f, \"mean\": %.1f}",
+        histogram.getCount(), histogram.getMin() / 1e3, histogram.getValueAtPercentile(50) / 1e3,
+        histogram.getValueAtPercentile(90) / 1e3, histogram.getValueAtPercentile(99) / 1e3,
+        histogram.getValueAtPercentile(99.9) / 1e3, histogram.getMax() / 1e3, histogram.getMean() / 1e3);
+  }
+
+  /**
+   * Enter point to run load, settings come from load.* system properties
+   *
+   * @param args user args, optional port number of a running server followed by optional hostname
+   * @throws IOException if a user cannot connect or report cannot be written
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    LoadGeneratorConfig config = LoadGeneratorConfig.fromSystemProperties();
+    if (args.length >= 1) {
+      config.setPort(Integer.parseInt(args[0]));
+    }
+    if (args.length >= 2) {
+      config.setHost(args[1]);
+    }
+    String report = new LoadGenerator(config).run();
+    Files.write(Paths.get(config.getReportFile()), report.getBytes(StandardCharsets.UTF_8));
+    System.out.print(report);
+  }
+
+  /**
+   * SimulatedUser class is one user with its own socket, codec and reader thread
+   */
+  private final class SimulatedUser implements Runnable {
+    private final int index;
+    private final Socket socket;
+    private final DataInputStream in;
+
+    /**
+     * Stream under the reader, its count is the number of bytes received so far
+     */
+    private final CountingInputStream counted;
+
+    /**
+     * Stream under the codec, its size is the number of bytes sent so far
+     */
+    private final DataOutputStream out;
+    private final MessageCodec codec;
+    private final Queue<Long> whoSent;
+    private volatile long loginSent;
+    private volatile boolean closing;
+
+    /**
+     * Constructor of SimulatedUser, connects, negotiates the protocol version of the config and starts reading
+     *
+     * @param index represented as int, number of user, part of its username
+     * @param port represented as int, port of server
+     * @throws IOException if socket cannot connect or the server does not accept the protocol version
+     */
+    private SimulatedUser(int index, int port) throws IOException {
+      this.index = index;
+      this.socket = new Socket(config.getHost(), port);
+      this.socket.setTcpNoDelay(true);
+      this.counted = new CountingInputStream(new BufferedInputStream(this.socket.getInputStream()));
+      this.in = new DataInputStream(this.counted);
+      this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+      this.codec = new MessageCodec(this.out);
+      this.codec.setUsername(username(index));
+      if (config.getProtocolVersion() != WireFormat.VERSION_1) {
+        this.codec.encodeProtocolVersion(config.getProtocolVersion());
+        this.codec.decodeMessage(this.in); // answered before the reader starts, so nothing else is sent before it
+        if (this.codec.getProtocolVersion() != config.getProtocolVersion()) {
+          throw new IOException("Server did not accept protocol version " + config.getProtocolVersion());
+        }
+      }
+      this.whoSent = new ConcurrentLinkedQueue<>();
+      Thread reader = new Thread(null, this, "load-reader-" + index, READER_STACK_BYTES);
+      reader.setDaemon(true);
+      reader.start();
+    }
+
+    /**
+     * This private method is used to send a terminal command
+     *
+     * @param command represented as String, terminal command
+     * @throws IOException if command cannot be written
+     */
+    private void send(String command) throws IOException {
+      if ("login".equals(command)) {
+        this.loginSent = System.nanoTime();
+      }
+      this.codec.encodeMessage(command);
+    }
+
+    /**
+     * This private method is used by a sender thread to send next message of the mix
+     */
+    private void sendNext() {
+      int kind = nextKind();
+      long now = System.nanoTime();
+      String command;
+      switch (kind) {
+        case BROADCAST: command = "@all ts=" + now + " " + text; break;
+        case DIRECT: command = "@" + username(this.target()) + " ts=" + now + " " + text; break;
+        case WHO: command = "who"; this.whoSent.add(now); break;
+        default: command = "!" + username(this.target()); break;
+      }
+      int before = this.out.size();
+      try {
+        this.send(command);
+      } catch (IOException e) {
+        errors.incrementAndGet();
+        throw new RuntimeException(e); // stops sending for this user
+      }
+      if (now >= recordFromNanos) {
+        sent.incrementAndGet(kind);
+        requestBytes.addAndGet(kind, this.out.size() - before);
+      }
+    }
+
+    /**
+     * This private method is used to pick another user at random
+     *
+     * @return represented as int, index of that user
+     */
+    private int target() {
+      int target = ThreadLocalRandom.current().nextInt(users.size() - 1);
+      return target >= this.index ? target + 1 : target;
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          long before = this.counted.count;
+          String message = this.codec.decodeMessage(this.in);
+          long now = System.nanoTime();
+          if (now >= recordFromNanos) {
+            receivedBytes.addAndGet(this.counted.count - before);
+          }
+          onMessage(this, message, now);
+        }
+      } catch (IOException | RuntimeException e) {
+        if (!this.closing) {
+          errors.incrementAndGet();
+          loginsDone.countDown();
+        }
+      }
+    }
+
+    /**
+     * This private method is used to log off and close the socket
+     */
+    private void close() {
+      this.closing = true;
+      try {
+        this.codec.encodeMessage("logoff");
+      } catch (IOException e) {
+        // server is gone already
+      }
+      try {
+        this.socket.close();
+      } catch (IOException e) {
+        // socket is closed as far as it can be
+      }
+    }
+  }
+
+  /**
+   * This private static method is used to get username of a simulated user
+   *
+   * @param index represented as int, number of user
+   * @return represented as String
+   */
+  private static String username(int index) {
+    return "load" + index;
+  }
+
+  /**
+   * CountingInputStream counts bytes read through it, by the single reader thread of a user
+   */
+  private static final class CountingInputStream extends FilterInputStream {
+    private long count;
+
+    /**
+     * Constructor of CountingInputStream
+     *
+     * @param in represented as InputStream, stream bytes are read from
+     */
+    private CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int read = this.in.read();
+      if (read >= 0) {
+        this.count++;
+      }
+      return read;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      int read = this.in.read(bytes, offset, length);
+      if (read > 0) {
+        this.count += read;
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = this.in.skip(n);
+      this.count += skipped;
+      return skipped;
+    }
+  }
+}
@@ -0,0 +1,341 @@
+/**
+ * LoadGeneratorConfig class holds settings of a LoadGenerator run: where the server is, how many users are simulated,
+ * how fast and with which mix of messages they send, and where the report goes. Every setting can also be given as a
+ * load.* system property.
+ */
+public class LoadGeneratorConfig {
+
+  /**
+   * Prefix of system properties read by fromSystemProperties
+   */
+  private static final String PROPERTY_PREFIX = "load.";
+
+  private String host;
+  private int port;
+  private ServerMode mode;
+  private int users;
+  private double messagesPerSecond;
+  private long durationSeconds;
+  private long warmupSeconds;
+  private int messageBytes;
+  private int broadcastWeight;
+  private int directWeight;
+  private int whoWeight;
+  private int insultWeight;
+  private int protocolVersion;
+  private String reportFile;
+
+  /**
+   * Constructor of LoadGeneratorConfig with default settings
+   */
+  public LoadGeneratorConfig() {
+    this.host = "localhost";
+    this.mode = ServerMode.THREAD;
+    this.users = 100;
+    this.messagesPerSecond = 1;
+    this.durationSeconds = 10;
+    this.warmupSeconds = 2;
+    this.messageBytes = 64;
+    this.broadcastWeight = 10;
+    this.directWeight = 70;
+    this.whoWeight = 10;
+    this.insultWeight = 10;
+    this.protocolVersion = WireFormat.VERSION_2;
+    this.reportFile = "load-report.json";
+  }
+
+  /**
+   * This public static method is used to create config from default settings and load.* system properties
+   *
+   * @return represented as LoadGeneratorConfig
+   */
+  public static LoadGeneratorConfig fromSystemProperties() {
+    LoadGeneratorConfig config = new LoadGeneratorConfig();
+    config.setHost(System.getProperty(PROPERTY_PREFIX + "host", config.getHost()));
+    config.setPort(Integer.getInteger(PROPERTY_PREFIX + "port", config.getPort()));
+    String mode = System.getProperty(PROPERTY_PREFIX + "mode");
+    if (mode != null) {
+      config.setMode(ServerMode.fromString(mode));
+    }
+    config.setUsers(Integer.getInteger(PROPERTY_PREFIX + "users", config.getUsers()));
+    String rate = System.getProperty(PROPERTY_PREFIX + "messagesPerSecond");
+    if (rate != null) {
+      config.setMessagesPerSecond(Double.parseDouble(rate));
+    }
+    config.setDurationSeconds(Long.getLong(PROPERTY_PREFIX + "durationSeconds", config.getDurationSeconds()));
+    config.setWarmupSeconds(Long.getLong(PROPERTY_PREFIX + "warmupSeconds", config.getWarmupSeconds()));
+    config.setMessageBytes(Integer.getInteger(PROPERTY_PREFIX + "messageBytes", config.getMessageBytes()));
+    config.setMix(Integer.getInteger(PROPERTY_PREFIX + "broadcastWeight", config.getBroadcastWeight()),
+        Integer.getInteger(PROPERTY_PREFIX + "directWeight", config.getDirectWeight()),
+        Integer.getInteger(PROPERTY_PREFIX + "whoWeight", config.getWhoWeight()),
+        Integer.getInteger(PROPERTY_PREFIX + "insultWeight", config.getInsultWeight()));
+    config.setProtocolVersion(Integer.getInteger(PROPERTY_PREFIX + "protocolVersion", config.getProtocolVersion()));
+    config.setReportFile(System.getProperty(PROPERTY_PREFIX + "reportFile", config.getReportFile()));
+    return config;
+  }
+
+  /**
+   * This getter method is used to get host of server
+   *
+   * @return represented as String
+   */
+  public String getHost() {
+    return this.host;
+  }
+
+  /**
+   * This setter method is used to set host of server
+   *
+   * @param host represented as String, should not be null
+   */
+  public void setHost(String host) {
+    if (host == null) {
+      throw new InvalidArgException("Host should not be null!");
+    }
+    this.host = host;
+  }
+
+  /**
+   * This getter method is used to get port of server
+   *
+   * @return represented as int, zero to run an embedded server
+   */
+  public int getPort() {
+    return this.port;
+  }
+
+  /**
+   * This setter method is used to set port of server
+   *
+   * @param port represented as int, zero to run an embedded server on a free port
+   */
+  public void setPort(int port) {
+    if (port < 0 || port > 65535) {
+      throw new InvalidArgException("Port should be between 0 and 65535!");
+    }
+    this.port = port;
+  }
+
+  /**
+   * This getter method is used to get mode of embedded server, also written to the report
+   *
+   * @return represented as ServerMode
+   */
+  public ServerMode getMode() {
+    return this.mode;
+  }
+
+  /**
+   * This setter method is used to set mode of embedded server, also written to the report
+   *
+   * @param mode represented as ServerMode, should not be null
+   */
+  public void setMode(ServerMode mode) {
+    if (mode == null) {
+      throw new InvalidArgException("Server mode should not be null!");
+    }
+    this.mode = mode;
+  }
+
+  /**
+   * This getter method is used to get number of simulated users
+   *
+   * @return represented as int
+   */
+  public int getUsers() {
+    return this.users;
+  }
+
+  /**
+   * This setter method is used to set number of simulated users
+   *
+   * @param users represented as int, at least two so direct messages and insults have a target
+   */
+  public void setUsers(int users) {
+    if (users < 2) {
+      throw new InvalidArgException("Users should be at least two!");
+    }
+    this.users = users;
+  }
+
+  /**
+   * This getter method is used to get how many messages each user sends per second
+   *
+   * @return represented as double
+   */
+  public double getMessagesPerSecond() {
+    return this.messagesPerSecond;
+  }
+
+  /**
+   * This setter method is used to set how many messages each user sends per second
+   *
+   * @param messagesPerSecond represented as double, should be greater than zero
+   */
+  public void setMessagesPerSecond(double messagesPerSecond) {
+    if (!(messagesPerSecond > 0)) {
+      throw new InvalidArgException("Messages per second should be greater than zero!");
+    }
+    this.messagesPerSecond = messagesPerSecond;
+  }
+
+  /**
+   * This getter method is used to get how long latencies are recorded, after the warmup
+   *
+   * @return represented as long, seconds
+   */
+  public long getDurationSeconds() {
+    return this.durationSeconds;
+  }
+
+  /**
+   * This setter method is used to set how long latencies are recorded, after the warmup
+   *
+   * @param durationSeconds represented as long, seconds, should be greater than zero
+   */
+  public void setDurationSeconds(long durationSeconds) {
+    if (durationSeconds < 1) {
+      throw new InvalidArgException("Duration seconds should be greater than zero!");
+    }
+    this.durationSeconds = durationSeconds;
+  }
+
+  /**
+   * This getter method is used to get how long users send before latencies are recorded
+   *
+   * @return represented as long, seconds
+   */
+  public long getWarmupSeconds() {
+    return this.warmupSeconds;
+  }
+
+  /**
+   * This setter method is used to set how long users send before latencies are recorded
+   *
+   * @param warmupSeconds represented as long, seconds, should not be negative
+   */
+  public void setWarmupSeconds(long warmupSeconds) {
+    if (warmupSeconds < 0) {
+      throw new InvalidArgException("Warmup seconds should not be negative!");
+    }
+    this.warmupSeconds = warmupSeconds;
+  }
+
+  /**
+   * This getter method is used to get length of text of broadcast and direct messages
+   *
+   * @return represented as int, bytes
+   */
+  public int getMessageBytes() {
+    return this.messageBytes;
+  }
+
+  /**
+   * This setter method is used to set length of text of broadcast and direct messages, the timestamp comes on top
+   *
+   * @param messageBytes represented as int, bytes, should not be negative
+   */
+  public void setMessageBytes(int messageBytes) {
+    if (messageBytes < 0) {
+      throw new InvalidArgException("Message bytes should not be negative!");
+    }
+    this.messageBytes = messageBytes;
+  }
+
+  /**
+   * This getter method is used to get share of broadcast messages in the mix
+   *
+   * @return represented as int
+   */
+  public int getBroadcastWeight() {
+    return this.broadcastWeight;
+  }
+
+  /**
+   * This getter method is used to get share of direct messages in the mix
+   *
+   * @return represented as int
+   */
+  public int getDirectWeight() {
+    return this.directWeight;
+  }
+
+  /**
+   * This getter method is used to get share of who queries in the mix
+   *
+   * @return represented as int
+   */
+  public int getWhoWeight() {
+    return this.whoWeight;
+  }
+
+  /**
+   * This getter method is used to get share of insults in the mix
+   *
+   * @return represented as int
+   */
+  public int getInsultWeight() {
+    return this.insultWeight;
+  }
+
+  /**
+   * This setter method is used to set mix of messages, each kind is sent with a probability of its weight over the sum
+   *
+   * @param broadcastWeight represented as int, weight of broadcast messages
+   * @param directWeight represented as int, weight of direct messages
+   * @param whoWeight represented as int, weight of who queries
+   * @param insultWeight represented as int, weight of insults
+   */
+  public void setMix(int broadcastWeight, int directWeight, int whoWeight, int insultWeight) {
+    if (broadcastWeight < 0 || directWeight < 0 || whoWeight < 0 || insultWeight < 0
+        || broadcastWeight + directWeight + whoWeight + insultWeight == 0) {
+      throw new InvalidArgException("Weights should not be negative and should not all be zero!");
+    }
+    this.broadcastWeight = broadcastWeight;
+    this.directWeight = directWeight;
+    this.whoWeight = whoWeight;
+    this.insultWeight = insultWeight;
+  }
+
+  /**
+   * This getter method is used to get protocol version users negotiate for the messages they send
+   *
+   * @return represented as int
+   */
+  public int getProtocolVersion() {
+    return this.protocolVersion;
+  }
+
+  /**
+   * This setter method is used to set protocol version users negotiate for the messages they send
+   *
+   * @param protocolVersion represented as int, 1 to skip negotiation, or 2
+   */
+  public void setProtocolVersion(int protocolVersion) {
+    if (protocolVersion < WireFormat.VERSION_1 || protocolVersion > WireFormat.VERSION_2) {
+      throw new InvalidArgException("Protocol version should be 1 or 2!");
+    }
+    this.protocolVersion = protocolVersion;
+  }
+
+  /**
+   * This getter method is used to get file the JSON report is written to
+   *
+   * @return represented as String
+   */
+  public String getReportFile() {
+    return this.reportFile;
+  }
+
+  /**
+   * This setter method is used to set file the JSON report is written to
+   *
+   * @param reportFile represented as String, should not be null
+   */
+  public void setReportFile(String reportFile) {
+    if (reportFile == null) {
+      throw new InvalidArgException("Report file should not be null!");
+    }
+    this.reportFile = reportFile;
+  }
+}
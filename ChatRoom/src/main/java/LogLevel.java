@@ -0,0 +1,40 @@
+/**
+ * LogLevel enum represents how important a ServerLog event is, from least to most important.
+ */
+public enum LogLevel {
+  /**
+   * Per frame details, sampled so they can stay on under load
+   */
+  DEBUG,
+
+  /**
+   * Lifecycle of server and clients, such as start, stop, joins and leaves
+   */
+  INFO,
+
+  /**
+   * Something went wrong for one client or one event, such as a dropped log line
+   */
+  WARN,
+
+  /**
+   * Something went wrong for the whole server
+   */
+  ERROR;
+
+  /**
+   * This public method is used to parse level from a system property, ignoring case
+   *
+   * @param level represented as String, name of level
+   * @return represented as LogLevel
+   * @throws InvalidArgException if level is not a known log level
+   */
+  public static LogLevel fromString(String level) {
+    for (LogLevel value : values()) {
+      if (value.name().equalsIgnoreCase(level)) {
+        return value;
+      }
+    }
+    throw new InvalidArgException("Unknown log level " + level + "!.");
+  }
+}
@@ -0,0 +1,314 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * LogSegment class is one file of MessageLog, memory-mapped at its full size when opened. Records are appended with
+ * plain memory writes and made durable by force. Every record carries a CRC32C of its content, so a record torn by a
+ * crash ends the segment when it is opened again. A sparse index of sequence number, timestamp and file position,
+ * one entry every few KiB, lets a reader start close to a sequence number or a point in time.
+ *
+ * Record layout: int record length, int crc, long sequence, long timestamp, int room name length, room name bytes,
+ * frame bytes.
+ */
+public class LogSegment {
+
+  /**
+   * Bytes of a record before room name and frame
+   */
+  public static final int HEADER_BYTES = 2 * Integer.BYTES + 2 * Long.BYTES + Integer.BYTES;
+
+  /**
+   * Distance in bytes between entries of sparse index
+   */
+  private static final int INDEX_INTERVAL_BYTES = 4096;
+  private static final int LENGTH_OFFSET = 0;
+  private static final int CRC_OFFSET = 4;
+  private static final int SEQUENCE_OFFSET = 8;
+  private static final int TIMESTAMP_OFFSET = 16;
+  private static final int ROOM_LENGTH_OFFSET = 24;
+
+  private final Path path;
+  private final long baseSequence;
+  private final FileChannel channel;
+  private final MappedByteBuffer map;
+  private final CRC32C crc;
+  private int writePosition;
+  private long lastSequence;
+  private long lastTimestamp;
+  private long[] indexSequences;
+  private long[] indexTimestamps;
+  private int[] indexPositions;
+  private int indexCount;
+
+  /**
+   * Constructor of LogSegment, opens or creates the file and finds the end of its valid records
+   *
+   * @param path represented as Path, segment file
+   * @param baseSequence represented as long, sequence number of first record the segment was created for
+   * @param capacity represented as int, size of file in bytes
+   * @throws IOException if file cannot be opened or mapped
+   */
+  public LogSegment(Path path, long baseSequence, int capacity) throws IOException {
+    this.path = path;
+    this.baseSequence = baseSequence;
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.map = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, this.channel.size()));
+    this.crc = new CRC32C();
+    this.indexSequences = new long[16];
+    this.indexTimestamps = new long[16];
+    this.indexPositions = new int[16];
+    this.lastSequence = baseSequence - 1;
+    this.recover();
+  }
+
+  /**
+   * This public static method is used to get file name of the segment starting at a sequence number, names sort in sequence order
+   *
+   * @param baseSequence represented as long
+   * @return represented as String
+   */
+  public static String fileName(long baseSequence) {
+    return String.format("%020d.log", baseSequence);
+  }
+
+  /**
+   * This public method is used to append a record
+   *
+   * @param sequence represented as long, greater than sequence of every record already in segment
+   * @param timestamp represented as long, milliseconds, not lower than timestamp of every record already in segment
+   * @param room represented as array of byte, UTF-8 room name, empty for broadcast messages
+   * @param frame represented as ByteBuffer, remaining bytes are the frame, position is not changed
+   * @return represented as boolean, false if the segment has no room for the record
+   */
+  public boolean append(long sequence, long timestamp, byte[] room, ByteBuffer frame) {
+    int length = HEADER_BYTES + room.length + frame.remaining();
+    int start = this.writePosition;
+    if (length > this.map.capacity() - start) {
+      return false;
+    }
+    this.map.putLong(start + SEQUENCE_OFFSET, sequence);
+    this.map.putLong(start + TIMESTAMP_OFFSET, timestamp);
+    this.map.putInt(start + ROOM_LENGTH_OFFSET, room.length);
+    this.map.put(start + HEADER_BYTES, room);
+    this.map.put(start + HEADER_BYTES + room.length, frame, frame.position(), frame.remaining());
+    this.map.putInt(start + CRC_OFFSET, this.checksum(start, length));
+    this.map.putInt(start + LENGTH_OFFSET, length);
+    this.addRecord(start, length, sequence, timestamp);
+    return true;
+  }
+
+  /**
+   * This public method is used to visit records in order, starting close to a sequence number
+   *
+   * @param afterSequence represented as long, only records with a greater sequence number are visited
+   * @param visitor represented as MessageLog.Visitor
+   * @throws IOException exceptions thrown by visitor
+   */
+  public void read(long afterSequence, MessageLog.Visitor visitor) throws IOException {
+    int entry = this.floor(this.indexSequences, afterSequence + 1);
+    this.scan(entry < 0 ? 0 : this.indexPositions[entry], afterSequence, Long.MIN_VALUE, visitor);
+  }
+
+  /**
+   * This public method is used to visit records in order, starting close to a point in time
+   *
+   * @param timestamp represented as long, milliseconds, only records at or after this time are visited
+   * @param visitor represented as MessageLog.Visitor
+   * @throws IOException exceptions thrown by visitor
+   */
+  public void readSince(long timestamp, MessageLog.Visitor visitor) throws IOException {
+    int entry = this.floor(this.indexTimestamps, timestamp - 1); // records of the same millisecond can span index entries
+    this.scan(entry < 0 ? 0 : this.indexPositions[entry], Long.MIN_VALUE, timestamp, visitor);
+  }
+
+  /**
+   * This public method is used to write mapped bytes of a range to disk
+   *
+   * @param from represented as int, first byte
+   * @param to represented as int, end of range
+   */
+  public void force(int from, int to) {
+    if (to > from) {
+      this.map.force(from, to - from);
+    }
+  }
+
+  /**
+   * This public method is used to close file, mapped bytes are forced first
+   *
+   * @throws IOException if file cannot be closed
+   */
+  public void close() throws IOException {
+    this.map.force();
+    this.channel.close();
+  }
+
+  /**
+   * This public method is used to close and delete file
+   *
+   * @throws IOException if file cannot be deleted
+   */
+  public void delete() throws IOException {
+    this.channel.close();
+    Files.deleteIfExists(this.path);
+  }
+
+  /**
+   * This public method is used to get sequence number segment was created for
+   *
+   * @return represented as long
+   */
+  public long getBaseSequence() {
+    return this.baseSequence;
+  }
+
+  /**
+   * This public method is used to get sequence number of last record, base sequence minus one if segment is empty
+   *
+   * @return represented as long
+   */
+  public long getLastSequence() {
+    return this.lastSequence;
+  }
+
+  /**
+   * This public method is used to get timestamp of last record, zero if segment is empty
+   *
+   * @return represented as long, milliseconds
+   */
+  public long getLastTimestamp() {
+    return this.lastTimestamp;
+  }
+
+  /**
+   * This public method is used to get end of valid records
+   *
+   * @return represented as int, bytes
+   */
+  public int getWritePosition() {
+    return this.writePosition;
+  }
+
+  /**
+   * This private method is used to find valid records of an existing file and build the sparse index,
+   * zeroing whatever follows them so stale bytes can never pass as records later
+   */
+  private void recover() {
+    int position = 0;
+    int capacity = this.map.capacity();
+    while (capacity - position >= HEADER_BYTES) {
+      int length = this.map.getInt(position + LENGTH_OFFSET);
+      if (length < HEADER_BYTES || length > capacity - position
+          || this.map.getInt(position + CRC_OFFSET) != this.checksum(position, length)) {
+        break;
+      }
+      long sequence = this.map.getLong(position + SEQUENCE_OFFSET);
+      if (sequence <= this.lastSequence) {
+        break;
+      }
+      this.addRecord(position, length, sequence, this.map.getLong(position + TIMESTAMP_OFFSET));
+      position += length;
+    }
+    for (int i = this.writePosition; i < capacity; i++) {
+      if (capacity - i >= Long.BYTES && i % Long.BYTES == 0 && this.map.getLong(i) == 0) {
+        i += Long.BYTES - 1;
+      }
+      else if (this.map.get(i) != 0) {
+        this.map.put(i, (byte) 0);
+      }
+    }
+  }
+
+  /**
+   * This private method is used to account for a record written at the end of valid records
+   *
+   * @param position represented as int, start of record
+   * @param length represented as int, length of record
+   * @param sequence represented as long
+   * @param timestamp represented as long
+   */
+  private void addRecord(int position, int length, long sequence, long timestamp) {
+    if (this.indexCount == 0 || position - this.indexPositions[this.indexCount - 1] >= INDEX_INTERVAL_BYTES) {
+      if (this.indexCount == this.indexPositions.length) {
+        this.indexSequences = Arrays.copyOf(this.indexSequences, this.indexCount * 2);
+        this.indexTimestamps = Arrays.copyOf(this.indexTimestamps, this.indexCount * 2);
+        this.indexPositions = Arrays.copyOf(this.indexPositions, this.indexCount * 2);
+      }
+      this.indexSequences[this.indexCount] = sequence;
+      this.indexTimestamps[this.indexCount] = timestamp;
+      this.indexPositions[this.indexCount] = position;
+      this.indexCount++;
+    }
+    this.writePosition = position + length;
+    this.lastSequence = sequence;
+    this.lastTimestamp = timestamp;
+  }
+
+  /**
+   * This private method is used to visit records from a position to end of valid records
+   *
+   * @param position represented as int, start of a record
+   * @param afterSequence represented as long, records with a lower or equal sequence number are skipped
+   * @param sinceTimestamp represented as long, records with a lower timestamp are skipped
+   * @param visitor represented as MessageLog.Visitor
+   * @throws IOException exceptions thrown by visitor
+   */
+  private void scan(int position, long afterSequence, long sinceTimestamp, MessageLog.Visitor visitor) throws IOException {
+    ByteBuffer records = this.map.asReadOnlyBuffer();
+    while (position < this.writePosition) {
+      int length = records.getInt(position + LENGTH_OFFSET);
+      long sequence = records.getLong(position + SEQUENCE_OFFSET);
+      long timestamp = records.getLong(position + TIMESTAMP_OFFSET);
+      if (sequence > afterSequence && timestamp >= sinceTimestamp) {
+        int roomLength = records.getInt(position + ROOM_LENGTH_OFFSET);
+        int frameStart = position + HEADER_BYTES + roomLength;
+        ByteBuffer room = records.slice(position + HEADER_BYTES, roomLength);
+        ByteBuffer frame = records.slice(frameStart, position + length - frameStart);
+        visitor.visit(sequence, timestamp, room, frame);
+      }
+      position += length;
+    }
+  }
+
+  /**
+   * This private method is used to compute checksum of a record, everything after its length and crc fields
+   *
+   * @param position represented as int, start of record
+   * @param length represented as int, length of record
+   * @return represented as int
+   */
+  private int checksum(int position, int length) {
+    this.crc.reset();
+    this.crc.update(this.map.slice(position + SEQUENCE_OFFSET, length - SEQUENCE_OFFSET));
+    return (int) this.crc.getValue();
+  }
+
+  /**
+   * This private method is used to find last index entry not greater than a key
+   *
+   * @param keys represented as array of long, ascending keys of index entries
+   * @param key represented as long
+   * @return represented as int, entry number or -1 if every entry is greater
+   */
+  private int floor(long[] keys, long key) {
+    int low = 0;
+    int high = this.indexCount - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (keys[middle] <= key) {
+        low = middle + 1;
+      }
+      else {
+        high = middle - 1;
+      }
+    }
+    return high;
+  }
+}
@@ -0,0 +1,757 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * MailboxStore class keeps direct messages sent to users who are offline, one file per user on local disk, and
+ * delivers them at the user's next login. Messages are stored as the DIRECT_MESSAGE frames a live recipient would get.
+ * A mailbox file is created at a user's first login, so messages to names that never logged in still fail; the names
+ * that have one are listed once at startup and kept in memory, so that check never touches the disk.
+ * Every file access runs on a single background thread, which owns all mailbox state: storing a message, so a slow disk
+ * never holds up the thread of the sender, and delivery, in small batches that wait while the client's outbound queue is
+ * more than half full, so a large backlog neither holds up the login nor floods a slow client. Delivered frames are
+ * tracked, and a message leaves the mailbox only once its frame was written to the client's socket. A frame the
+ * outbound queue dropped is sent again, and if the connection drops first, messages not written are kept for the next
+ * login, so a message may be delivered twice but is never lost. A failed delivery is logged and tried again.
+ * A mailbox is kept in memory, with its file open, only while it holds messages, and remembers the time of its oldest
+ * message, so an offer to a full mailbox with nothing expired is rejected without touching the file.
+ *
+ * Record layout: int frame length, long timestamp, frame bytes.
+ */
+public class MailboxStore {
+  private static final int RECORD_HEADER_BYTES = Integer.BYTES + Long.BYTES;
+
+  /**
+   * Longest username in UTF-8 bytes that gets a mailbox, keeps file names within file system limits
+   */
+  private static final int MAX_NAME_BYTES = 128;
+
+  /**
+   * Delay before looking again at a client whose outbound queue is too full for the next batch
+   */
+  private static final long PACE_MILLIS = 10;
+
+  /**
+   * Delay before trying again a delivery that failed to read the mailbox file
+   */
+  private static final long RETRY_MILLIS = 200;
+
+  /**
+   * Failed attempts in a row after which delivery gives up until next login, keeping every message not written
+   */
+  private static final int MAX_DELIVERY_ATTEMPTS = 10;
+
+  private final Path directory;
+  private final int maxMessages;
+  private final long maxBytes;
+  private final long maxAgeMillis;
+  private final int batchMessages;
+  private final int queueLimit;
+  private final BufferPool pool;
+  private final ServerLog log;
+
+  /**
+   * Users who have a mailbox file, whether or not it holds messages
+   */
+  private final Set<String> owners;
+
+  /**
+   * Mailboxes holding messages or being delivered, only the delivery thread uses it
+   */
+  private final Map<String, Mailbox> mailboxes;
+  private final ScheduledExecutorService deliverer;
+
+  /**
+   * Constructor of MailboxStore
+   *
+   * @param directory represented as Path, directory of mailbox files, created if needed
+   * @param maxMessages represented as int, most messages kept per user
+   * @param maxBytes represented as long, most bytes of messages kept per user
+   * @param maxAgeMillis represented as long, messages older than this are dropped
+   * @param batchMessages represented as int, most messages queued to a client at once
+   * @param queueCapacity represented as int, capacity of client outbound queues, delivery waits above half of it
+   * @param pool represented as BufferPool, pool delivered frames are read into
+   * @param log represented as ServerLog, log of failed file access
+   * @throws IOException if directory cannot be created or listed
+   */
+  public MailboxStore(Path directory, int maxMessages, long maxBytes, long maxAgeMillis, int batchMessages,
+      int queueCapacity, BufferPool pool, ServerLog log) throws IOException {
+    this.directory = Files.createDirectories(directory);
+    this.maxMessages = maxMessages;
+    this.maxBytes = maxBytes;
+    this.maxAgeMillis = maxAgeMillis;
+    this.batchMessages = batchMessages;
+    this.queueLimit = Math.max(1, queueCapacity / 2);
+    this.pool = pool;
+    this.log = log;
+    this.owners = ConcurrentHashMap.newKeySet();
+    try (Stream<Path> files = Files.list(this.directory)) {
+      files.map(MailboxStore::ownerOf).filter(owner -> owner != null).forEach(this.owners::add);
+    }
+    this.mailboxes = new HashMap<>();
+    this.deliverer = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "chatroom-mailbox");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * This public method is used to check if a user has a mailbox, which means the user logged in before
+   *
+   * @param username represented as String
+   * @return represented as boolean
+   */
+  public boolean hasMailbox(String username) {
+    return this.owners.contains(username);
+  }
+
+  /**
+   * This public method is used to store a frame for an offline user on the delivery thread. Expired messages are dropped
+   * first when the mailbox is full and its oldest message has expired, unless it is being delivered.
+   *
+   * @param username represented as String, recipient
+   * @param frame represented as Frame, DIRECT_MESSAGE frame, caller keeps its reference
+   * @return represented as CompletableFuture of Boolean, completed on the delivery thread with false if user has no
+   * mailbox, mailbox is full or file cannot be written
+   */
+  public CompletableFuture<Boolean> offer(String username, Frame frame) {
+    CompletableFuture<Boolean> stored = new CompletableFuture<>();
+    if (!this.hasMailbox(username)) {
+      stored.complete(Boolean.FALSE);
+      return stored;
+    }
+    frame.retain();
+    try {
+      this.deliverer.execute(() -> {
+        try {
+          stored.complete(this.store(username, frame));
+        } catch (IOException e) {
+          this.log.warn("mailbox.storeFailed", "user", username, "error", e);
+          stored.complete(Boolean.FALSE);
+        } finally {
+          frame.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      frame.release(); // store is closed
+      stored.complete(Boolean.FALSE);
+    }
+    return stored;
+  }
+
+  /**
+   * This public method is used when a user logs in, creating the mailbox if the user never had one and starting
+   * delivery of stored messages in the background. Calling it while delivery runs does nothing.
+   *
+   * @param username represented as String, user who logged in
+   * @param connection represented as ClientConnection, connection messages are queued on
+   */
+  public void deliver(String username, ClientConnection connection) {
+    if (!this.isValidName(username)) {
+      return;
+    }
+    this.owners.add(username); // its file is created before any message to it is stored
+    try {
+      this.deliverer.execute(() -> this.startDelivery(username, connection));
+    } catch (RejectedExecutionException e) {
+      // store is closed, messages wait for the next start
+    }
+  }
+
+  /**
+   * This public method is used to stop the delivery thread once every client is closed. Batches already scheduled still
+   * run, they find their connection closed and keep what was not written for next login.
+   *
+   * @param timeoutMillis represented as long, how long to wait for those batches
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void close(long timeoutMillis) throws InterruptedException {
+    this.deliverer.shutdown();
+    if (!this.deliverer.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+      this.deliverer.shutdownNow();
+      this.deliverer.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    for (Mailbox mailbox : this.mailboxes.values()) {
+      mailbox.closeChannel();
+    }
+    this.mailboxes.clear();
+  }
+
+  /**
+   * This public method is used to get number of messages waiting for a user, once every message offered before is stored
+   *
+   * @param username represented as String
+   * @return represented as int, zero if user has no mailbox
+   */
+  public int size(String username) {
+    if (!this.hasMailbox(username)) {
+      return 0;
+    }
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        Mailbox mailbox = this.mailbox(username);
+        int messages = mailbox.messages;
+        this.prune(username, mailbox);
+        return messages;
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }, this.deliverer).join();
+  }
+
+  /**
+   * This method is used to get number of mailboxes kept in memory, which are the ones holding messages or being delivered
+   *
+   * @return represented as int
+   */
+  int loadedMailboxes() {
+    return CompletableFuture.supplyAsync(this.mailboxes::size, this.deliverer).join();
+  }
+
+  /**
+   * This private method is used to store a frame in a mailbox. Runs on the delivery thread only.
+   *
+   * @param username represented as String, recipient
+   * @param frame represented as Frame, DIRECT_MESSAGE frame
+   * @return represented as boolean, false if mailbox is full
+   * @throws IOException if mailbox file cannot be written
+   */
+  private boolean store(String username, Frame frame) throws IOException {
+    Mailbox mailbox = this.mailbox(username);
+    try {
+      long now = System.currentTimeMillis();
+      if (!mailbox.hasRoom(frame.length())) {
+        long oldest = now - this.maxAgeMillis;
+        if (mailbox.delivering || mailbox.oldestTimestamp >= oldest) {
+          return false; // nothing can be dropped, so the file is left alone
+        }
+        mailbox.rewrite(0, oldest);
+        if (!mailbox.hasRoom(frame.length())) {
+          return false;
+        }
+      }
+      mailbox.append(frame, now);
+      return true;
+    } finally {
+      this.prune(username, mailbox);
+    }
+  }
+
+  /**
+   * This private method is used to create the mailbox of a user who logged in, if the user never had one, and to start
+   * delivery of its messages unless delivery already runs. Runs on the delivery thread only.
+   *
+   * @param username represented as String, user who logged in
+   * @param connection represented as ClientConnection, connection messages are queued on
+   */
+  private void startDelivery(String username, ClientConnection connection) {
+    Mailbox mailbox;
+    try {
+      mailbox = this.mailbox(username);
+    } catch (IOException e) {
+      this.log.warn("mailbox.openFailed", "user", username, "error", e);
+      return;
+    }
+    if (mailbox.delivering || mailbox.messages == 0) {
+      this.prune(username, mailbox);
+      return;
+    }
+    mailbox.delivering = true;
+    mailbox.delivered = 0;
+    mailbox.failures = 0;
+    this.deliverBatch(username, mailbox, connection);
+  }
+
+  /**
+   * This private method is used to queue next batch of messages to a client, then to schedule the batch after it.
+   * The written position moves past messages whose frames were written, in order. Once the client's outbound queue is
+   * seen empty while the connection is open, a frame sent but not written was dropped, and reading starts again from it.
+   * Runs on the delivery thread only.
+   *
+   * @param username represented as String, owner of mailbox
+   * @param mailbox represented as Mailbox
+   * @param connection represented as ClientConnection
+   */
+  private void deliverBatch(String username, Mailbox mailbox, ClientConnection connection) {
+    // read before the written marks and isClosed: a frame leaves the queue once written or dropped, and a close empties
+    // the queue only after the connection reports closed
+    int queued = connection.queuedFrames();
+    boolean paced;
+    try {
+      mailbox.confirmWritten();
+      if (connection.isClosed()) {
+        mailbox.rewrite(mailbox.writtenPosition, Long.MIN_VALUE); // keep what was not written for next login
+        this.stopDelivery(username, mailbox);
+        return;
+      }
+      if (mailbox.writtenPosition >= mailbox.bytes) {
+        int delivered = mailbox.delivered;
+        mailbox.clear();
+        this.stopDelivery(username, mailbox);
+        this.sendDelivered(connection, delivered);
+        return;
+      }
+      paced = queued >= this.queueLimit || mailbox.readPosition >= mailbox.bytes;
+      if (queued == 0 && mailbox.hasUnwritten()) {
+        mailbox.rewind(); // dropped frames are sent again by a later batch
+        paced = true;
+      }
+      if (!paced) {
+        this.readBatch(mailbox, connection);
+      }
+      mailbox.failures = 0;
+    } catch (IOException e) {
+      if (++mailbox.failures < MAX_DELIVERY_ATTEMPTS) {
+        this.log.warn("mailbox.deliveryFailed", "user", username, "attempt", mailbox.failures, "error", e);
+        this.schedule(username, mailbox, connection, RETRY_MILLIS);
+      }
+      else {
+        this.log.error("mailbox.deliveryAbandoned", "user", username, "error", e);
+        mailbox.abandon(); // every message stays in the file for next login
+        this.stopDelivery(username, mailbox);
+      }
+      return;
+    }
+    this.schedule(username, mailbox, connection, paced ? PACE_MILLIS : 0);
+  }
+
+  /**
+   * This private method is used to schedule next batch of a delivery
+   *
+   * @param username represented as String, owner of mailbox
+   * @param mailbox represented as Mailbox
+   * @param connection represented as ClientConnection
+   * @param delayMillis represented as long
+   */
+  private void schedule(String username, Mailbox mailbox, ClientConnection connection, long delayMillis) {
+    try {
+      this.deliverer.schedule(() -> this.deliverBatch(username, mailbox, connection), delayMillis, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      mailbox.abandon(); // store is closed, every message not written stays in the file
+      this.stopDelivery(username, mailbox);
+    }
+  }
+
+  /**
+   * This private method is used to end a delivery, and to forget the mailbox if it has nothing left
+   *
+   * @param username represented as String, owner of mailbox
+   * @param mailbox represented as Mailbox
+   */
+  private void stopDelivery(String username, Mailbox mailbox) {
+    mailbox.delivering = false;
+    this.prune(username, mailbox);
+  }
+
+  /**
+   * This private method is used to forget a mailbox that holds no messages and is not delivered, closing its file. Its
+   * file stays on disk, empty, and the mailbox is created again from it when needed.
+   *
+   * @param username represented as String, owner of mailbox
+   * @param mailbox represented as Mailbox
+   */
+  private void prune(String username, Mailbox mailbox) {
+    if (!mailbox.delivering && mailbox.messages == 0) {
+      mailbox.closeChannel();
+      this.mailboxes.remove(username);
+    }
+  }
+
+  /**
+   * This private method is used to read up to one batch of messages from read position and queue them to a client as
+   * tracked frames, skipping expired ones
+   *
+   * @param mailbox represented as Mailbox
+   * @param connection represented as ClientConnection
+   * @throws IOException if mailbox file cannot be read
+   */
+  private void readBatch(Mailbox mailbox, ClientConnection connection) throws IOException {
+    long oldest = System.currentTimeMillis() - this.maxAgeMillis;
+    ByteBuffer header = mailbox.header;
+    FileChannel channel = mailbox.channel();
+    for (int i = 0; i < this.batchMessages && mailbox.readPosition < mailbox.bytes; i++) {
+      header.clear();
+      readFully(channel, header, mailbox.readPosition);
+      int length = header.getInt(0);
+      long timestamp = header.getLong(Integer.BYTES);
+      long end = mailbox.readPosition + RECORD_HEADER_BYTES + length;
+      if (timestamp >= oldest) {
+        ByteBuffer bytes = this.pool.acquire(length);
+        bytes.limit(length);
+        Frame frame = new Frame(bytes, length, this.pool);
+        try {
+          readFully(channel, bytes, mailbox.readPosition + RECORD_HEADER_BYTES);
+        } catch (IOException e) {
+          frame.release();
+          throw e;
+        }
+        frame.track();
+        mailbox.sent(frame, end);
+        connection.send(frame);
+      }
+      else {
+        mailbox.skipped(end);
+      }
+      mailbox.readPosition = end;
+    }
+  }
+
+  /**
+   * This private method is used to tell a client how many stored messages were delivered
+   *
+   * @param connection represented as ClientConnection
+   * @param delivered represented as int
+   */
+  private void sendDelivered(ClientConnection connection, int delivered) {
+    ByteBuffer bytes = ByteBuffer.allocate(2 * Integer.BYTES);
+    bytes.putInt(MessageIdentifier.MAILBOX_DELIVERED).putInt(delivered);
+    connection.send(new Frame(bytes.array()));
+  }
+
+  /**
+   * This private method is used to get state of a mailbox, counting its stored messages when it is not in memory.
+   * Runs on the delivery thread only.
+   *
+   * @param username represented as String
+   * @return represented as Mailbox
+   * @throws IOException if mailbox file cannot be created or read
+   */
+  private Mailbox mailbox(String username) throws IOException {
+    Mailbox mailbox = this.mailboxes.get(username);
+    if (mailbox == null) {
+      mailbox = new Mailbox(this.fileOf(username));
+      this.mailboxes.put(username, mailbox);
+    }
+    return mailbox;
+  }
+
+  /**
+   * This private method is used to get mailbox file of a user, named by URL safe Base64 of the UTF-8 name
+   *
+   * @param username represented as String
+   * @return represented as Path
+   */
+  private Path fileOf(String username) {
+    String name = Base64.getUrlEncoder().withoutPadding().encodeToString(username.getBytes(StandardCharsets.UTF_8));
+    return this.directory.resolve(name + ".mbox");
+  }
+
+  /**
+   * This private static method is used to get owner of a mailbox file from its name
+   *
+   * @param file represented as Path
+   * @return represented as String, null if file is not a mailbox
+   */
+  private static String ownerOf(Path file) {
+    String name = file.getFileName().toString();
+    if (!name.endsWith(".mbox")) {
+      return null;
+    }
+    try {
+      byte[] owner = Base64.getUrlDecoder().decode(name.substring(0, name.length() - ".mbox".length()));
+      return new String(owner, StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * This private method is used to check if a username can have a mailbox
+   *
+   * @param username represented as String
+   * @return represented as boolean
+   */
+  private boolean isValidName(String username) {
+    return username != null && !username.isEmpty() && WireFormat.encode(username).length <= MAX_NAME_BYTES;
+  }
+
+  /**
+   * This private static method is used to fill a buffer from a file position
+   *
+   * @param channel represented as FileChannel
+   * @param buffer represented as ByteBuffer, filled up to its limit
+   * @param position represented as long
+   * @throws IOException if file ends first
+   */
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new IOException("Mailbox file ended inside a record");
+      }
+      position += read;
+    }
+  }
+
+  /**
+   * Mailbox class is state of one user's mailbox, used by the delivery thread only
+   */
+  private final class Mailbox {
+    private final Path file;
+    private final ByteBuffer header;
+    private FileChannel channel;
+    private int messages;
+    private long bytes;
+    private long readPosition;
+
+    /**
+     * End of the records known to be written to the client, at most readPosition
+     */
+    private long writtenPosition;
+
+    /**
+     * Frames queued to the client and not known to be written yet, in file order, with the end of the records they cover
+     */
+    private final ArrayDeque<Frame> unwrittenFrames;
+    private final ArrayDeque<Long> unwrittenEnds;
+
+    /**
+     * Time of the first stored message, Long.MAX_VALUE if there is none. Messages are appended in time order, so no
+     * stored message is older.
+     */
+    private long oldestTimestamp;
+    private int delivered;
+    private boolean delivering;
+
+    /**
+     * Failed delivery attempts in a row
+     */
+    private int failures;
+
+    /**
+     * Constructor of Mailbox, creates file if needed and counts records already in it
+     *
+     * @param file represented as Path
+     * @throws IOException if file cannot be created or read
+     */
+    private Mailbox(Path file) throws IOException {
+      this.file = file;
+      this.header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+      this.oldestTimestamp = Long.MAX_VALUE;
+      this.unwrittenFrames = new ArrayDeque<>();
+      this.unwrittenEnds = new ArrayDeque<>();
+      FileChannel channel = this.channel();
+      long size = channel.size();
+      while (size - this.bytes >= RECORD_HEADER_BYTES) {
+        this.header.clear();
+        readFully(channel, this.header, this.bytes);
+        long end = this.bytes + RECORD_HEADER_BYTES + this.header.getInt(0);
+        if (this.header.getInt(0) < 0 || end > size) {
+          break;
+        }
+        if (this.messages == 0) {
+          this.oldestTimestamp = this.header.getLong(Integer.BYTES);
+        }
+        this.bytes = end;
+        this.messages++;
+      }
+      channel.truncate(this.bytes); // drop a record cut off by a crash
+      if (this.messages == 0) {
+        this.closeChannel(); // most users have nothing waiting, they should not hold a file open
+      }
+    }
+
+    /**
+     * This private method is used to get open channel of file, opening it if needed
+     *
+     * @return represented as FileChannel
+     * @throws IOException if file cannot be opened
+     */
+    private FileChannel channel() throws IOException {
+      if (this.channel == null) {
+        this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+      }
+      return this.channel;
+    }
+
+    /**
+     * This private method is used to close channel of file, it is opened again when needed
+     */
+    private void closeChannel() {
+      if (this.channel != null) {
+        try {
+          this.channel.close();
+        } catch (IOException e) {
+          // nothing was buffered, the file keeps every record written
+        }
+        this.channel = null;
+      }
+    }
+
+    /**
+     * This private method is used to append a record at end of file
+     *
+     * @param frame represented as Frame, frame stored
+     * @param timestamp represented as long, milliseconds, time message was stored
+     * @throws IOException if file cannot be written
+     */
+    private void append(Frame frame, long timestamp) throws IOException {
+      this.header.clear();
+      this.header.putInt(frame.length()).putLong(timestamp).flip();
+      ByteBuffer[] record = {this.header, frame.buffer()};
+      FileChannel channel = this.channel();
+      channel.position(this.bytes);
+      while (record[1].hasRemaining()) {
+        channel.write(record);
+      }
+      if (this.messages == 0) {
+        this.oldestTimestamp = timestamp;
+      }
+      this.messages++;
+      this.bytes += RECORD_HEADER_BYTES + frame.length();
+    }
+
+    /**
+     * This private method is used to remember a frame queued to the client
+     *
+     * @param frame represented as Frame, tracked frame
+     * @param end represented as long, end of its record
+     */
+    private void sent(Frame frame, long end) {
+      this.unwrittenFrames.add(frame);
+      this.unwrittenEnds.add(end);
+    }
+
+    /**
+     * This private method is used to pass over an expired record, which is written as soon as the frames before it are
+     *
+     * @param end represented as long, end of the record
+     */
+    private void skipped(long end) {
+      if (this.unwrittenEnds.isEmpty()) {
+        this.writtenPosition = end;
+      }
+      else {
+        this.unwrittenEnds.pollLast();
+        this.unwrittenEnds.add(end);
+      }
+    }
+
+    /**
+     * This private method is used to move written position past frames written to the client, stopping at the first
+     * one that was not
+     */
+    private void confirmWritten() {
+      while (!this.unwrittenFrames.isEmpty() && this.unwrittenFrames.peek().isWritten()) {
+        this.unwrittenFrames.poll();
+        this.writtenPosition = this.unwrittenEnds.poll();
+        this.delivered++;
+      }
+    }
+
+    /**
+     * This private method is used to check if a frame queued to the client is not known to be written
+     *
+     * @return represented as boolean
+     */
+    private boolean hasUnwritten() {
+      return !this.unwrittenFrames.isEmpty();
+    }
+
+    /**
+     * This private method is used to read again from the first record not written
+     */
+    private void rewind() {
+      this.readPosition = this.writtenPosition;
+      this.unwrittenFrames.clear();
+      this.unwrittenEnds.clear();
+    }
+
+    /**
+     * This private method is used to give up a delivery, so every record is read again at next one, and to close file
+     */
+    private void abandon() {
+      this.writtenPosition = 0;
+      this.rewind();
+      this.closeChannel();
+    }
+
+    /**
+     * This private method is used to forget every record once all were delivered, and to close file
+     *
+     * @throws IOException if file cannot be truncated
+     */
+    private void clear() throws IOException {
+      this.channel().truncate(0);
+      this.closeChannel();
+      this.messages = 0;
+      this.bytes = 0;
+      this.writtenPosition = 0;
+      this.rewind();
+      this.oldestTimestamp = Long.MAX_VALUE;
+    }
+
+    /**
+     * This private method is used to check if a message fits
+     *
+     * @param length represented as int, frame length
+     * @return represented as boolean
+     */
+    private boolean hasRoom(int length) {
+      return this.messages < MailboxStore.this.maxMessages
+          && this.bytes + RECORD_HEADER_BYTES + length <= MailboxStore.this.maxBytes;
+    }
+
+    /**
+     * This private method is used to rewrite file keeping records from a position that are not older than a time
+     *
+     * @param from represented as long, first record kept
+     * @param oldest represented as long, milliseconds, older records are dropped
+     * @throws IOException if file cannot be rewritten
+     */
+    private void rewrite(long from, long oldest) throws IOException {
+      Path temporary = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+      int kept = 0;
+      long keptBytes = 0;
+      long keptOldest = Long.MAX_VALUE;
+      FileChannel source = this.channel();
+      try (FileChannel target = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        long position = from;
+        while (position < this.bytes) {
+          this.header.clear();
+          readFully(source, this.header, position);
+          int recordBytes = RECORD_HEADER_BYTES + this.header.getInt(0);
+          long timestamp = this.header.getLong(Integer.BYTES);
+          if (timestamp >= oldest) {
+            for (long copied = 0; copied < recordBytes; ) {
+              copied += source.transferTo(position + copied, recordBytes - copied, target);
+            }
+            if (kept == 0) {
+              keptOldest = timestamp;
+            }
+            kept++;
+            keptBytes += recordBytes;
+          }
+          position += recordBytes;
+        }
+      }
+      this.closeChannel(); // the old file is replaced, next access opens the new one
+      Files.move(temporary, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      this.messages = kept;
+      this.bytes = keptBytes;
+      this.writtenPosition = 0;
+      this.rewind();
+      this.oldestTimestamp = keptOldest;
+    }
+  }
+}
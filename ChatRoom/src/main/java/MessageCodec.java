@@ -1,13 +1,16 @@
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 /**
- * MessageCodec is a class used encode and decode message sent or received from other clients.
+ * MessageCodec is a class used encode and decode message sent or received from other clients. Messages are encoded in
+ * protocol version 1 until the server accepts a newer version asked for with encodeProtocolVersion; in version 2 they
+ * have a one byte message identifier, varint field lengths and no username once logged in. Server messages are always
+ * version 1.
  *
  * @author kabraambika19
  */
@@ -43,14 +46,106 @@ public class MessageCodec {
    */
   private static final String INSULT_COMMAND = "!";
 
+  /**
+   * Constant for string join room command
+   */
+  private static final String JOIN_COMMAND = "join";
+
+  /**
+   * Constant for string leave room command
+   */
+  private static final String LEAVE_COMMAND = "leave";
+
+  /**
+   * Constant for string list rooms command
+   */
+  private static final String ROOMS_COMMAND = "rooms";
+
+  /**
+   * Constant for string room specific command
+   */
+  private static final String ROOM_SPEC_COMMAND = "#";
+
+  /**
+   * Constant for string paged users command
+   */
+  private static final String USERS_COMMAND = "users";
+
+  /**
+   * Constant for string next page command
+   */
+  private static final String MORE_COMMAND = "more";
+
+  /**
+   * Constant for string presence subscription command
+   */
+  private static final String PRESENCE_COMMAND = "presence";
+
+  /**
+   * Constant for argument that turns presence subscription off
+   */
+  private static final String OFF_ARGUMENT = "off";
+
+  /**
+   * Constant for history argument asking for the last N messages
+   */
+  private static final String LAST_ARGUMENT = "last";
+
+  /**
+   * Constant for history argument asking for messages after sequence number S
+   */
+  private static final String AFTER_ARGUMENT = "after";
+
+  /**
+   * Constant for string resume session command
+   */
+  private static final String RESUME_COMMAND = "resume";
+
+  /**
+   * Constant for string ping command
+   */
+  private static final String PING_COMMAND = "ping";
+
+  /**
+   * Constant for string server metrics command
+   */
+  private static final String STATS_COMMAND = "stats";
+
   /**
    * Constant for regex for whitespace
    */
   private static final String WHITESPACE_REGEX = "\\s+";
+
+  /**
+   * Constant for username field of a message encoded before a username is set
+   */
+  private static final byte[] NO_USERNAME = new byte[0];
   private String username;
+  private byte[] usernameBytes;
   private DataOutputStream dataOutputStream;
   private boolean isConnected;
 
+  /**
+   * Prefix and cursor of last paged users query, cursor is updated by the printing thread when a page arrives
+   */
+  private volatile String pagePrefix = "";
+  private volatile String pageCursor = "";
+
+  /**
+   * Roster version of last presence snapshot or delta applied, -1 until a snapshot arrives. Only the printing thread uses it.
+   */
+  private long presenceVersion = -1;
+
+  /**
+   * Token of session given by server at login, null if server does not keep sessions
+   */
+  private volatile String sessionToken;
+
+  /**
+   * Protocol version of encoded messages, set when the server answers a PROTOCOL_VERSION request
+   */
+  private volatile int version = WireFormat.VERSION_1;
+
   /**
    * Constructor of MessageCodec
    *
@@ -85,20 +180,57 @@ public class MessageCodec {
    */
   public void setUsername(String username) {
     this.username = username;
+    this.usernameBytes = WireFormat.encode(username);
+  }
+
+  /**
+   * This getter method is used to get token of session given by server at login
+   *
+   * @return represented as String, null if server does not keep sessions
+   */
+  public String getSessionToken() {
+    return this.sessionToken;
+  }
+
+  /**
+   * This getter method is used to get protocol version of encoded messages
+   *
+   * @return represented as int
+   */
+  public int getProtocolVersion() {
+    return this.version;
   }
 
   /**
-   * This public method is used to encodeMessage and convert according to protocol
+   * This public method is used to ask the server for a protocol version of encoded messages, before logging in. The
+   * request is encoded in the current version, and no other message should be encoded until its
+   * PROTOCOL_VERSION_RESPONSE is decoded, since the server reads every later message in the version it accepts.
+   *
+   * @param version represented as int, requested protocol version
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  public void encodeProtocolVersion(int version) throws IOException {
+    synchronized (this.dataOutputStream) {
+      this.writeHeader(MessageIdentifier.PROTOCOL_VERSION);
+      WireFormat.writeBytes(this.dataOutputStream, new byte[] {(byte) version}, this.version);
+      this.dataOutputStream.flush();
+    }
+  }
+
+  /**
+   * This public method is used to encodeMessage and convert according to protocol. Writing is locked on the stream,
+   * since the decoding thread answers a PING of the server on the same stream.
    *
    * @param msgFromUser represented as String, terminal command with message written by user
    * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
    */
   public void encodeMessage(String msgFromUser) throws IOException {
-    int usernameLength = username.length();
-    byte[] usernameToByte = this.convertStringToBytes(username);
     String[] msgTokens = msgFromUser.split(WHITESPACE_REGEX);
     if(this.validMsgToken(msgTokens)) {
-      this.convertIntoProtocol(usernameLength, usernameToByte, msgTokens);
+      synchronized (this.dataOutputStream) {
+        this.convertIntoProtocol(msgTokens);
+        this.dataOutputStream.flush(); // one message is one flush, even over a buffered stream
+      }
     }
   }
 
@@ -115,13 +247,10 @@ public class MessageCodec {
   /**
    * This private method converts string message into primitive data types and write in dataOutputStream
    *
-   * @param usernameLength represented as int, username length
-   * @param usernameToByte represented as Array of byte, username in bytes
    * @param msgTokens represented as Array of String, terminal command by user along with messages
    * @throws IOException exception produced by failed or interrupted I/O operations while writing in dataOutputStream
    */
-  private void convertIntoProtocol(int usernameLength, byte[] usernameToByte, String[] msgTokens)
-      throws IOException {
+  private void convertIntoProtocol(String[] msgTokens) throws IOException {
     String msgCommand = msgTokens[0];
     String receiverName = null;
     if(!msgCommand.equals(ALL_COMMAND) && msgCommand.startsWith(USER_SPEC_COMMAND)) {
@@ -130,38 +259,88 @@ public class MessageCodec {
     } else if (msgCommand.startsWith(INSULT_COMMAND)) {
       receiverName = msgCommand.substring(1);
       msgCommand = INSULT_COMMAND;
+    } else if (msgCommand.startsWith(ROOM_SPEC_COMMAND)) {
+      receiverName = msgCommand.substring(1);
+      msgCommand = ROOM_SPEC_COMMAND;
+    } else if ((msgCommand.equals(JOIN_COMMAND) || msgCommand.equals(LEAVE_COMMAND)) && msgTokens.length > 1) {
+      receiverName = msgTokens[1];
     }
 
     switch (msgCommand) {
       case LOGOFF_COMMAND -> {
-        this.dataOutputStream.writeInt(MessageIdentifier.DISCONNECT_MESSAGE);
-        this.addUserDetails(usernameLength, usernameToByte);
+        this.writeHeader(MessageIdentifier.DISCONNECT_MESSAGE);
       }
       case WHO_COMMAND -> {
-        this.dataOutputStream.writeInt(MessageIdentifier.QUERY_CONNECTED_USERS);
-        this.addUserDetails(usernameLength, usernameToByte);
+        this.writeHeader(MessageIdentifier.QUERY_CONNECTED_USERS);
       }
       case USER_SPEC_COMMAND -> {
-        this.dataOutputStream.writeInt(MessageIdentifier.DIRECT_MESSAGE);
-        this.addUserDetails(usernameLength, usernameToByte);
-        this.addUserDetails(receiverName.length(), convertStringToBytes(receiverName));
+        this.writeHeader(MessageIdentifier.DIRECT_MESSAGE);
+        this.writeField(receiverName);
         String message = getAllMessages(msgTokens, 1);
-        this.addUserDetails(message.length(), convertStringToBytes(message));
+        this.writeField(message);
       }
       case INSULT_COMMAND -> {
-        this.dataOutputStream.writeInt(MessageIdentifier.SEND_INSULT);
-        this.addUserDetails(usernameLength, usernameToByte);
-        this.addUserDetails(receiverName.length(), convertStringToBytes(receiverName));
+        this.writeHeader(MessageIdentifier.SEND_INSULT);
+        this.writeField(receiverName);
       }
       case ALL_COMMAND -> {
-        this.dataOutputStream.writeInt(MessageIdentifier.BROADCAST_MESSAGE);
-        this.addUserDetails(usernameLength, usernameToByte);
+        this.writeHeader(MessageIdentifier.BROADCAST_MESSAGE);
         String message = getAllMessages(msgTokens, 1);
-        this.addUserDetails(message.length(), convertStringToBytes(message));
+        this.writeField(message);
+      }
+      case JOIN_COMMAND, LEAVE_COMMAND -> {
+        if (receiverName == null) {
+          throw new IOException("Room name is missing in " + msgCommand + "!.");
+        }
+        boolean withHistory = msgCommand.equals(JOIN_COMMAND) && msgTokens.length > 2;
+        this.writeHeader(!msgCommand.equals(JOIN_COMMAND) ? MessageIdentifier.LEAVE_ROOM
+            : withHistory ? MessageIdentifier.JOIN_ROOM_WITH_HISTORY : MessageIdentifier.JOIN_ROOM);
+        this.writeField(receiverName);
+        if (withHistory) {
+          this.writeHistoryRequest(msgTokens, 2);
+        }
+      }
+      case USERS_COMMAND, MORE_COMMAND -> {
+        if (msgCommand.equals(USERS_COMMAND)) {
+          this.pagePrefix = msgTokens.length > 1 ? msgTokens[1] : "";
+          this.pageCursor = "";
+        }
+        this.writeHeader(MessageIdentifier.QUERY_USERS_PAGE);
+        this.writeField(this.pagePrefix);
+        this.writeField(this.pageCursor);
+      }
+      case PRESENCE_COMMAND -> {
+        boolean off = msgTokens.length > 1 && OFF_ARGUMENT.equals(msgTokens[1]);
+        this.writeHeader(off ? MessageIdentifier.PRESENCE_UNSUBSCRIBE : MessageIdentifier.PRESENCE_SUBSCRIBE);
+      }
+      case ROOMS_COMMAND -> {
+        this.writeHeader(MessageIdentifier.LIST_ROOMS);
+      }
+      case ROOM_SPEC_COMMAND -> {
+        this.writeHeader(MessageIdentifier.ROOM_MESSAGE);
+        this.writeField(receiverName);
+        String message = getAllMessages(msgTokens, 1);
+        this.writeField(message);
       }
       case LOGIN_COMMAND -> {
-        this.dataOutputStream.writeInt(MessageIdentifier.CONNECT_MESSAGE);
-        this.addUserDetails(usernameLength, usernameToByte);
+        boolean withHistory = msgTokens.length > 1;
+        this.writeHeader(withHistory ? MessageIdentifier.CONNECT_WITH_HISTORY : MessageIdentifier.CONNECT_MESSAGE);
+        if (withHistory) {
+          this.writeHistoryRequest(msgTokens, 1);
+        }
+      }
+      case PING_COMMAND -> {
+        this.writeHeader(MessageIdentifier.PING);
+      }
+      case STATS_COMMAND -> {
+        this.writeHeader(MessageIdentifier.ADMIN_QUERY);
+      }
+      case RESUME_COMMAND -> {
+        if (msgTokens.length != 2) {
+          throw new IOException("Session token is missing in " + msgCommand + "!.");
+        }
+        this.writeHeader(MessageIdentifier.RESUME_SESSION);
+        this.writeField(msgTokens[1]);
       }
       default -> {
         throw new IOException("Invalid command " + msgCommand + "!.");
@@ -170,15 +349,54 @@ public class MessageCodec {
   }
 
   /**
-   * This private method is used to add user details, username length and username to byte in dataOutputStream
+   * This private method is used to write message identifier in protocol version of this codec, followed by username
+   * if messages of this identifier carry it in that version
    *
-   * @param usernameLength represented as int, username length
-   * @param usernameToByte represented as Array of byte, username in bytes
-   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in dataOutputStream
+   * @param messageIdentifier represented as int
+   * @throws IOException exception produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void writeHeader(int messageIdentifier) throws IOException {
+    if (this.version == WireFormat.VERSION_1) {
+      this.dataOutputStream.writeInt(messageIdentifier);
+    } else {
+      this.dataOutputStream.writeByte(messageIdentifier);
+    }
+    if (FrameDecoder.hasSenderField(messageIdentifier, this.version)) {
+      WireFormat.writeBytes(this.dataOutputStream, this.usernameBytes != null ? this.usernameBytes : NO_USERNAME, this.version);
+    }
+  }
+
+  /**
+   * This private method is used to write a string field in protocol version of this codec
+   *
+   * @param str represented as String
+   * @throws IOException exception produced by failed or interrupted I/O operations while writing in dataOutputStream
+   */
+  private void writeField(String str) throws IOException {
+    WireFormat.writeString(this.dataOutputStream, str, this.version);
+  }
+
+  /**
+   * This private method is used to write a history request field from 'last N' or 'after S' arguments
+   *
+   * @param msgTokens represented as Array of String, terminal command by user along with arguments
+   * @param startIndex represented as int, index of 'last' or 'after'
+   * @throws IOException if arguments are not a valid history request, or writing in dataOutputStream fails
    */
-  private void addUserDetails(int usernameLength, byte[] usernameToByte) throws IOException {
-    this.dataOutputStream.writeInt(usernameLength);
-    this.dataOutputStream.write(usernameToByte);
+  private void writeHistoryRequest(String[] msgTokens, int startIndex) throws IOException {
+    if (msgTokens.length != startIndex + 2
+        || !(msgTokens[startIndex].equals(LAST_ARGUMENT) || msgTokens[startIndex].equals(AFTER_ARGUMENT))) {
+      throw new IOException("History should be 'last N' or 'after S'!.");
+    }
+    long value;
+    try {
+      value = Long.parseLong(msgTokens[startIndex + 1]);
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid history count " + msgTokens[startIndex + 1] + "!.");
+    }
+    WireFormat.writeLength(this.dataOutputStream, MessageHistory.REQUEST_BYTES, this.version);
+    this.dataOutputStream.writeByte(msgTokens[startIndex].equals(LAST_ARGUMENT) ? MessageHistory.LAST : MessageHistory.AFTER);
+    this.dataOutputStream.writeLong(value);
   }
 
   /**
@@ -194,17 +412,40 @@ public class MessageCodec {
   }
 
   /**
-   * This private method is used to convert String to Array of byte
+   * This private method is used to read a count followed by that many usernames
    *
-   * @param str represented as String
-   * @return represented as array of byte
+   * @param dataInputStream represented as DataInputStream
+   * @return represented as Array of String, usernames
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from dataInputStream
+   */
+  private String[] readNames(DataInputStream dataInputStream) throws IOException {
+    String[] names = new String[dataInputStream.readInt()];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = WireFormat.readString(dataInputStream);
+    }
+    return names;
+  }
+
+  /**
+   * This public method is used to wait for the answer to a request, for example a login. PINGs that arrive before it are
+   * answered and skipped, so the first frame that decodes to something is returned.
+   *
+   * @param dataInputStream represented as DataInputStream, read primitive data types from an underlying input stream in a machine-independent way
+   * @return represented as String, decoded answer
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from dataInputStream
    */
-  private byte[] convertStringToBytes(String str) {
-    return str.getBytes(StandardCharsets.UTF_8);
+  public String decodeResponse(DataInputStream dataInputStream) throws IOException {
+    String message;
+    do {
+      message = this.decodeMessage(dataInputStream);
+    }
+    while (message.isEmpty());
+    return message;
   }
 
   /**
-   * This public method is used to decode message by reading from dataInputStream and return decoded message as String
+   * This public method is used to decode message by reading from dataInputStream and return decoded message as String.
+   * A PING of the server is answered with a PONG right away and decodes to an empty string.
    *
    * @param dataInputStream represented as DataInputStream, read primitive data types from an underlying input stream in a machine-independent way
    * @return represented as String, decoded message
@@ -216,15 +457,15 @@ public class MessageCodec {
     switch (msgIdentifier) {
       case MessageIdentifier.CONNECT_RESPONSE -> {
         this.setConnected(dataInputStream.readBoolean());
-        sb.append("Connection request is ").append(isConnected ? "successful." : "fail.").append(this.convertBytesToString(dataInputStream, dataInputStream.readInt()));
+        sb.append("Connection request is ").append(isConnected ? "successful." : "fail.").append(WireFormat.readString(dataInputStream));
       }
       case MessageIdentifier.DISCONNECT_RESPONSE -> {
         boolean isConnect = dataInputStream.readBoolean();
         this.setConnected(!isConnect);
-        sb.append("Disconnecting request is ").append(isConnected ? "fail." : "successful.").append(convertBytesToString(dataInputStream, dataInputStream.readInt()));
+        sb.append("Disconnecting request is ").append(isConnected ? "fail." : "successful.").append(WireFormat.readString(dataInputStream));
       }
       case MessageIdentifier.FAILED_MESSAGE ->
-          sb.append(convertBytesToString(dataInputStream, dataInputStream.readInt()));
+          sb.append(WireFormat.readString(dataInputStream));
       case MessageIdentifier.QUERY_USER_RESPONSE -> {
         int userConnectedCount = dataInputStream.readInt();
         sb.append("There are ").append(userConnectedCount).append(" connected users: ");
@@ -232,32 +473,116 @@ public class MessageCodec {
           sb.append("[");
           String[] usersList = new String[userConnectedCount];
           for(int i = 0; i< userConnectedCount; i++) {
-            usersList[i] = convertBytesToString(dataInputStream, dataInputStream.readInt());
+            usersList[i] = WireFormat.readString(dataInputStream);
           }
           sb.append(getAllMessages(usersList, 0)).append("]");
         }
       }
       case MessageIdentifier.BROADCAST_MESSAGE ->
-          sb.append(convertBytesToString(dataInputStream, dataInputStream.readInt())).append(": ").append(convertBytesToString(dataInputStream, dataInputStream.readInt()));
+          sb.append(WireFormat.readString(dataInputStream)).append(": ").append(WireFormat.readString(dataInputStream));
       case MessageIdentifier.DIRECT_MESSAGE, MessageIdentifier.SEND_INSULT ->
-          sb.append(convertBytesToString(dataInputStream, dataInputStream.readInt())).append("->").append(convertBytesToString(dataInputStream, dataInputStream.readInt())).append(": ").append(convertBytesToString(dataInputStream, dataInputStream.readInt()));
+          sb.append(WireFormat.readString(dataInputStream)).append("->").append(WireFormat.readString(dataInputStream)).append(": ").append(WireFormat.readString(dataInputStream));
+      case MessageIdentifier.ROOM_RESPONSE -> {
+        boolean success = dataInputStream.readBoolean();
+        sb.append("Room ").append(WireFormat.readString(dataInputStream)).append(" request is ")
+            .append(success ? "successful." : "fail.").append(WireFormat.readString(dataInputStream));
+      }
+      case MessageIdentifier.LIST_ROOMS_RESPONSE -> {
+        int roomCount = dataInputStream.readInt();
+        sb.append("There are ").append(roomCount).append(" rooms: ");
+        if(roomCount > 0) {
+          String[] roomList = new String[roomCount];
+          for(int i = 0; i < roomCount; i++) {
+            roomList[i] = WireFormat.readString(dataInputStream) + "(" + dataInputStream.readInt() + ")";
+          }
+          sb.append("[").append(getAllMessages(roomList, 0)).append("]");
+        }
+      }
+      case MessageIdentifier.QUERY_USERS_PAGE_RESPONSE -> {
+        dataInputStream.readLong(); // roster version
+        int matching = dataInputStream.readInt();
+        int pageCount = dataInputStream.readInt();
+        String[] usersList = new String[pageCount];
+        for(int i = 0; i < pageCount; i++) {
+          usersList[i] = WireFormat.readString(dataInputStream);
+        }
+        this.pageCursor = WireFormat.readString(dataInputStream);
+        sb.append("There are ").append(matching).append(" users matching '").append(this.pagePrefix).append("': [")
+            .append(getAllMessages(usersList, 0)).append("]");
+        if (!this.pageCursor.isEmpty()) {
+          sb.append(" Type 'more' for the next page.");
+        }
+      }
+      case MessageIdentifier.PRESENCE_SNAPSHOT -> {
+        this.presenceVersion = dataInputStream.readLong();
+        String[] usersList = this.readNames(dataInputStream);
+        sb.append("Presence: ").append(usersList.length).append(" users online: [").append(getAllMessages(usersList, 0)).append("]");
+      }
+      case MessageIdentifier.PRESENCE_DELTA -> {
+        long fromVersion = dataInputStream.readLong();
+        long toVersion = dataInputStream.readLong();
+        String[] joined = this.readNames(dataInputStream);
+        String[] left = this.readNames(dataInputStream);
+        if (this.presenceVersion < 0 || toVersion <= this.presenceVersion) {
+          sb.append("Presence: already up to date");
+        }
+        else if (fromVersion > this.presenceVersion) {
+          this.presenceVersion = -1;
+          sb.append("Presence: missed some updates, type 'presence' to resync");
+        }
+        else {
+          this.presenceVersion = toVersion;
+          sb.append("Presence: joined [").append(getAllMessages(joined, 0)).append("] left [").append(getAllMessages(left, 0)).append("]");
+        }
+      }
+      case MessageIdentifier.ROOM_MESSAGE ->
+          sb.append(WireFormat.readString(dataInputStream)).append("#").append(WireFormat.readString(dataInputStream)).append(": ").append(WireFormat.readString(dataInputStream));
+      case MessageIdentifier.HISTORY_MESSAGE -> {
+        WireFormat.readString(dataInputStream); // room name, also inside the stored frame
+        long sequence = dataInputStream.readLong();
+        byte[] stored = WireFormat.readBytes(dataInputStream);
+        sb.append("[").append(sequence).append("] ").append(this.decodeMessage(new DataInputStream(new ByteArrayInputStream(stored))));
+      }
+      case MessageIdentifier.PING -> {
+        synchronized (this.dataOutputStream) {
+          this.writeHeader(MessageIdentifier.PONG);
+          this.dataOutputStream.flush();
+        }
+      }
+      case MessageIdentifier.PONG -> sb.append("Server is alive");
+      case MessageIdentifier.SESSION_TOKEN -> {
+        this.sessionToken = WireFormat.readString(dataInputStream);
+        sb.append("Your session token is ").append(this.sessionToken).append(", latest message is ").append(dataInputStream.readLong())
+            .append(". If your connection is lost, enter '").append(this.username).append(" ").append(this.sessionToken)
+            .append("' as username to resume.");
+      }
+      case MessageIdentifier.RESUME_RESPONSE -> {
+        this.setConnected(dataInputStream.readBoolean());
+        long after = dataInputStream.readLong();
+        sb.append("Resume request is ").append(isConnected ? "successful." : "fail.").append(WireFormat.readString(dataInputStream));
+        if (isConnected) {
+          sb.append(", messages after ").append(after).append(" follow");
+        }
+      }
+      case MessageIdentifier.ADMIN_RESPONSE -> {
+        boolean success = dataInputStream.readBoolean();
+        sb.append(success ? "Server metrics:\n" : "").append(WireFormat.readString(dataInputStream));
+      }
+      case MessageIdentifier.PROTOCOL_VERSION_RESPONSE -> {
+        this.version = dataInputStream.readInt();
+        sb.append("Server accepted protocol version ").append(this.version);
+      }
+      case MessageIdentifier.MAILBOX_DELIVERED ->
+          sb.append("Delivered ").append(dataInputStream.readInt()).append(" messages sent while you were offline");
+      case MessageIdentifier.HISTORY_END -> {
+        String room = WireFormat.readString(dataInputStream);
+        int replayed = dataInputStream.readInt();
+        long lastSequence = dataInputStream.readLong();
+        sb.append("Replayed ").append(replayed).append(" messages of ").append(room.isEmpty() ? "the chatroom" : "room " + room)
+            .append(", latest is ").append(lastSequence);
+      }
       default -> throw new IllegalStateException("Unexpected value: " + msgIdentifier);
     }
     return sb.toString();
   }
-
-  /**
-   * This private method is used to convert array of byte to String
-   *
-   * @param dataInputStream represented as DataInputStream, read primitive data types from an underlying input stream in a machine-independent way
-   * @param length represented as int, length of array
-   * @return represented as String
-   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from dataInputStream
-   */
-  private String convertBytesToString(DataInputStream dataInputStream, int length)
-      throws IOException {
-    byte[] stringBytes = new byte[length];
-    dataInputStream.readFully(stringBytes);
-    return new String(stringBytes, StandardCharsets.UTF_8);
-  }
 }
@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MessageHistory class keeps the most recent encoded frames of one room in a fixed size off-heap ring, indexed by
+ * primitive arrays of sequence number, offset and length. Frames are stored exactly as they were sent, so a replay
+ * copies stored bytes and never encodes a message again. The ring and the index start small on first append and double
+ * as frames are stored, up to the configured bytes and entries, so rooms nobody writes in cost nothing and quiet rooms
+ * cost about what they hold. With a MessageLog, every stored frame is also appended to the log, which hands out the sequence
+ * numbers, and history can be restored from the log after a restart.
+ */
+public class MessageHistory {
+
+  /**
+   * Kind byte of a history request asking for the last N messages
+   */
+  public static final byte LAST = 0;
+
+  /**
+   * Kind byte of a history request asking for every message after sequence number S
+   */
+  public static final byte AFTER = 1;
+
+  /**
+   * Length of a history request field, a kind byte followed by a long
+   */
+  public static final int REQUEST_BYTES = 1 + Long.BYTES;
+
+  /**
+   * Size of a new ring and of a new index, before they grow
+   */
+  private static final int INITIAL_RING_BYTES = 1 << 10;
+  private static final int INITIAL_ENTRIES = 16;
+  private final AtomicLong sequencer;
+  private final MessageLog log;
+  private final byte[] logName;
+  private final int capacityBytes;
+  private final int maxEntries;
+  private long[] sequences;
+  private int[] offsets;
+  private int[] lengths;
+  private ByteBuffer ring;
+  private int oldest;
+  private int count;
+  private int writePosition;
+
+  /**
+   * Constructor of MessageHistory
+   *
+   * @param sequencer represented as AtomicLong, source of sequence numbers shared by every history of the server
+   * @param maxEntries represented as int, most frames kept
+   * @param capacityBytes represented as int, most bytes of frames kept
+   */
+  public MessageHistory(AtomicLong sequencer, int maxEntries, int capacityBytes) {
+    this(sequencer, null, null, maxEntries, capacityBytes);
+  }
+
+  /**
+   * Constructor of MessageHistory that also appends stored frames to a log
+   *
+   * @param sequencer represented as AtomicLong, source of sequence numbers shared by every history of the server
+   * @param log represented as MessageLog, log given the same sequencer, may be null
+   * @param logName represented as array of byte, UTF-8 room name logged with frames, empty for broadcast messages
+   * @param maxEntries represented as int, most frames kept
+   * @param capacityBytes represented as int, most bytes of frames kept
+   */
+  public MessageHistory(AtomicLong sequencer, MessageLog log, byte[] logName, int maxEntries, int capacityBytes) {
+    this.sequencer = sequencer;
+    this.log = log;
+    this.logName = logName;
+    this.capacityBytes = capacityBytes;
+    this.maxEntries = maxEntries;
+    this.sequences = new long[0];
+    this.offsets = new int[0];
+    this.lengths = new int[0];
+  }
+
+  /**
+   * This public method is used to store a frame, dropping oldest frames to make room. Frame is given its sequence
+   * number, so writers can tell how far a client has received history.
+   *
+   * @param frame represented as Frame, frame as sent to clients, not queued to anyone yet
+   * @return represented as long, sequence number of stored frame, or zero if frame is larger than the ring
+   */
+  public synchronized long append(Frame frame) {
+    if (frame.length() > this.capacityBytes) {
+      return 0;
+    }
+    long sequence = this.log != null ? this.log.append(this.logName, frame.buffer()) : this.sequencer.incrementAndGet();
+    this.store(sequence, frame.buffer());
+    frame.setSequence(sequence);
+    return sequence;
+  }
+
+  /**
+   * This public method is used to store a frame read back from a log, keeping its sequence number
+   *
+   * @param sequence represented as long, greater than sequence of every frame already stored
+   * @param frame represented as ByteBuffer, remaining bytes are the frame
+   */
+  public synchronized void restore(long sequence, ByteBuffer frame) {
+    if (frame.remaining() <= this.capacityBytes) {
+      this.sequencer.accumulateAndGet(sequence, Math::max);
+      this.store(sequence, frame);
+    }
+  }
+
+  /**
+   * This private method is used to copy a frame into the ring, dropping oldest frames to make room
+   *
+   * @param sequence represented as long, sequence number of frame
+   * @param frame represented as ByteBuffer, remaining bytes are the frame, at most capacity of ring
+   */
+  private void store(long sequence, ByteBuffer frame) {
+    int length = frame.remaining();
+    if (this.ring == null || (this.ring.capacity() < this.capacityBytes && this.writePosition + length > this.ring.capacity())) {
+      this.growRing(length);
+    }
+    if (this.count == this.sequences.length && this.sequences.length < this.maxEntries) {
+      this.growEntries();
+    }
+    if (this.writePosition + length > this.ring.capacity()) {
+      // frames are never split, the rest of the ring is skipped once frames of the previous lap there are dropped
+      while (this.count > 0 && this.offsets[this.oldest] >= this.writePosition) {
+        this.dropOldest();
+      }
+      this.writePosition = 0;
+    }
+    while (this.count > 0 && (this.count == this.sequences.length || this.overlapsOldest(this.writePosition, length))) {
+      this.dropOldest();
+    }
+    int slot = (this.oldest + this.count) % this.sequences.length;
+    this.sequences[slot] = sequence;
+    this.offsets[slot] = this.writePosition;
+    this.lengths[slot] = length;
+    this.ring.put(this.writePosition, frame, frame.position(), length);
+    this.writePosition += length;
+    this.count++;
+  }
+
+  /**
+   * This private method is used to move stored frames, oldest first, to the start of a ring at least twice as large, or
+   * as large as the configured bytes
+   *
+   * @param length represented as int, length of frame about to be stored
+   */
+  private void growRing(int length) {
+    long needed = length;
+    for (int i = 0; i < this.count; i++) {
+      needed += this.lengths[this.slot(i)];
+    }
+    long size = this.ring == null ? INITIAL_RING_BYTES : 2L * this.ring.capacity();
+    while (size < needed) {
+      size *= 2;
+    }
+    ByteBuffer grown = ByteBuffer.allocateDirect((int) Math.min(size, this.capacityBytes));
+    int position = 0;
+    for (int i = 0; i < this.count; i++) {
+      int slot = this.slot(i);
+      grown.put(position, this.ring, this.offsets[slot], this.lengths[slot]);
+      this.offsets[slot] = position;
+      position += this.lengths[slot];
+    }
+    this.ring = grown;
+    this.writePosition = position;
+  }
+
+  /**
+   * This private method is used to move the index, oldest first, to arrays twice as long, or as long as the configured
+   * entries
+   */
+  private void growEntries() {
+    int size = (int) Math.min(this.maxEntries, Math.max(INITIAL_ENTRIES, 2L * this.sequences.length));
+    long[] sequences = new long[size];
+    int[] offsets = new int[size];
+    int[] lengths = new int[size];
+    for (int i = 0; i < this.count; i++) {
+      int slot = this.slot(i);
+      sequences[i] = this.sequences[slot];
+      offsets[i] = this.offsets[slot];
+      lengths[i] = this.lengths[slot];
+    }
+    this.sequences = sequences;
+    this.offsets = offsets;
+    this.lengths = lengths;
+    this.oldest = 0;
+  }
+
+  /**
+   * This public method is used to get off-heap bytes taken by the ring, which grows up to the configured bytes
+   *
+   * @return represented as int, zero before the first frame is stored
+   */
+  public synchronized int getRingBytes() {
+    return this.ring == null ? 0 : this.ring.capacity();
+  }
+
+  /**
+   * This public method is used to visit stored frames in order, either the last ones or the ones after a sequence number.
+   * The visitor runs while history is locked and gets views that are only valid during the call.
+   *
+   * @param afterSequence represented as long, only frames with a greater sequence number are visited
+   * @param limit represented as int, at most this many of the newest matching frames are visited
+   * @param visitor represented as Visitor
+   * @return represented as long, sequence number of newest stored frame, zero if nothing was ever stored
+   * @throws IOException exceptions thrown by visitor
+   */
+  public long replay(long afterSequence, int limit, Visitor visitor) throws IOException {
+    return this.replay(afterSequence, Long.MAX_VALUE, limit, visitor);
+  }
+
+  /**
+   * This public method is used to visit stored frames in order up to a sequence number, such as the last one stored
+   * before a client could receive new frames. Frames stored later are left out, since the client gets them as they are sent.
+   *
+   * @param afterSequence represented as long, only frames with a greater sequence number are visited
+   * @param throughSequence represented as long, only frames with this or a lower sequence number are visited
+   * @param limit represented as int, at most this many of the newest matching frames are visited
+   * @param visitor represented as Visitor
+   * @return represented as long, sequence number of newest visitable frame, zero if there is none
+   * @throws IOException exceptions thrown by visitor
+   */
+  public synchronized long replay(long afterSequence, long throughSequence, int limit, Visitor visitor) throws IOException {
+    int end = this.count;
+    while (end > 0 && this.sequences[this.slot(end - 1)] > throughSequence) {
+      end--;
+    }
+    int first = end;
+    while (first > 0 && this.sequences[this.slot(first - 1)] > afterSequence) {
+      first--;
+    }
+    first = Math.max(first, end - Math.max(0, limit));
+    for (int i = first; i < end; i++) {
+      int slot = this.slot(i);
+      ByteBuffer view = this.ring.asReadOnlyBuffer();
+      view.limit(this.offsets[slot] + this.lengths[slot]).position(this.offsets[slot]);
+      visitor.visit(this.sequences[slot], view);
+    }
+    return end > 0 ? this.sequences[this.slot(end - 1)] : 0;
+  }
+
+  /**
+   * This public method is used to get number of stored frames
+   *
+   * @return represented as int
+   */
+  public synchronized int size() {
+    return this.count;
+  }
+
+  /**
+   * This private method is used to find slot of the i-th oldest stored frame
+   *
+   * @param index represented as int, zero for oldest
+   * @return represented as int
+   */
+  private int slot(int index) {
+    return (this.oldest + index) % this.sequences.length;
+  }
+
+  /**
+   * This private method is used to check if oldest stored frame overlaps a byte range
+   *
+   * @param offset represented as int, start of range
+   * @param length represented as int, length of range
+   * @return represented as boolean
+   */
+  private boolean overlapsOldest(int offset, int length) {
+    int oldestOffset = this.offsets[this.oldest];
+    return oldestOffset < offset + length && oldestOffset + this.lengths[this.oldest] > offset;
+  }
+
+  /**
+   * This private method is used to forget oldest stored frame
+   */
+  private void dropOldest() {
+    this.oldest = (this.oldest + 1) % this.sequences.length;
+    this.count--;
+  }
+
+  /**
+   * Visitor interface receives stored frames during a replay
+   */
+  public interface Visitor {
+
+    /**
+     * This method is used to receive one stored frame
+     *
+     * @param sequence represented as long, sequence number of frame
+     * @param frame represented as ByteBuffer, read-only view of stored frame bytes
+     * @throws IOException exceptions produced by failed or interrupted I/O operations while using frame
+     */
+    void visit(long sequence, ByteBuffer frame) throws IOException;
+  }
+}
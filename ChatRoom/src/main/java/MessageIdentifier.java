@@ -55,6 +55,136 @@ public class MessageIdentifier {
    */
   public static final int DISCONNECT_RESPONSE = 28;
 
+  /**
+   * Constant for JOIN_ROOM command = 29
+   */
+  public static final int JOIN_ROOM = 29;
+
+  /**
+   * Constant for LEAVE_ROOM command = 30
+   */
+  public static final int LEAVE_ROOM = 30;
+
+  /**
+   * Constant for ROOM_RESPONSE command = 31
+   */
+  public static final int ROOM_RESPONSE = 31;
+
+  /**
+   * Constant for LIST_ROOMS command = 32
+   */
+  public static final int LIST_ROOMS = 32;
+
+  /**
+   * Constant for LIST_ROOMS_RESPONSE command = 33
+   */
+  public static final int LIST_ROOMS_RESPONSE = 33;
+
+  /**
+   * Constant for ROOM_MESSAGE command = 34
+   */
+  public static final int ROOM_MESSAGE = 34;
+
+  /**
+   * Constant for QUERY_USERS_PAGE command = 35
+   */
+  public static final int QUERY_USERS_PAGE = 35;
+
+  /**
+   * Constant for QUERY_USERS_PAGE_RESPONSE command = 36
+   */
+  public static final int QUERY_USERS_PAGE_RESPONSE = 36;
+
+  /**
+   * Constant for PRESENCE_SUBSCRIBE command = 37
+   */
+  public static final int PRESENCE_SUBSCRIBE = 37;
+
+  /**
+   * Constant for PRESENCE_UNSUBSCRIBE command = 38
+   */
+  public static final int PRESENCE_UNSUBSCRIBE = 38;
+
+  /**
+   * Constant for PRESENCE_SNAPSHOT command = 39
+   */
+  public static final int PRESENCE_SNAPSHOT = 39;
+
+  /**
+   * Constant for PRESENCE_DELTA command = 40
+   */
+  public static final int PRESENCE_DELTA = 40;
+
+  /**
+   * Constant for CONNECT_WITH_HISTORY command = 41
+   */
+  public static final int CONNECT_WITH_HISTORY = 41;
+
+  /**
+   * Constant for JOIN_ROOM_WITH_HISTORY command = 42
+   */
+  public static final int JOIN_ROOM_WITH_HISTORY = 42;
+
+  /**
+   * Constant for HISTORY_MESSAGE command = 43
+   */
+  public static final int HISTORY_MESSAGE = 43;
+
+  /**
+   * Constant for HISTORY_END command = 44
+   */
+  public static final int HISTORY_END = 44;
+
+  /**
+   * Constant for MAILBOX_DELIVERED command = 45
+   */
+  public static final int MAILBOX_DELIVERED = 45;
+
+  /**
+   * Constant for SESSION_TOKEN command = 46
+   */
+  public static final int SESSION_TOKEN = 46;
+
+  /**
+   * Constant for RESUME_SESSION command = 47
+   */
+  public static final int RESUME_SESSION = 47;
+
+  /**
+   * Constant for RESUME_RESPONSE command = 48
+   */
+  public static final int RESUME_RESPONSE = 48;
+
+  /**
+   * Constant for PING command = 49
+   */
+  public static final int PING = 49;
+
+  /**
+   * Constant for PONG command = 50
+   */
+  public static final int PONG = 50;
+
+  /**
+   * Constant for ADMIN_QUERY command = 51
+   */
+  public static final int ADMIN_QUERY = 51;
+
+  /**
+   * Constant for ADMIN_RESPONSE command = 52
+   */
+  public static final int ADMIN_RESPONSE = 52;
+
+  /**
+   * Constant for PROTOCOL_VERSION command = 53
+   */
+  public static final int PROTOCOL_VERSION = 53;
+
+  /**
+   * Constant for PROTOCOL_VERSION_RESPONSE command = 54
+   */
+  public static final int PROTOCOL_VERSION_RESPONSE = 54;
+
   /**
    * Private constructor of MessageIdentifier
    */
@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MessageLog class is an append-only log of the broadcast and room frames kept in MessageHistory, split into
+ * memory-mapped LogSegment files named after their first sequence number. Appending is a copy into mapped memory
+ * under a short lock, so senders never wait for the disk: a background thread forces everything written since its
+ * last run once per flush interval, making one fsync cover every message of that interval. A full segment rolls over
+ * to a new one, and segments beyond the retention limit are deleted oldest first.
+ *
+ * Data written to mapped memory survives a crash of the server process as soon as it is written; the flush interval
+ * only bounds what a crash of the machine can lose.
+ */
+public class MessageLog {
+  private final Path directory;
+  private final AtomicLong sequencer;
+  private final int segmentBytes;
+  private final int retentionSegments;
+  private final List<LogSegment> segments;
+  private final ScheduledExecutorService flusher;
+  private LogSegment active;
+  private long lastTimestamp;
+
+  /**
+   * Start of bytes of active segment not forced yet
+   */
+  private int flushedPosition;
+
+  /**
+   * Constructor of MessageLog, opens every segment in directory and moves sequencer past the last logged record
+   *
+   * @param directory represented as Path, directory of segment files, created if needed
+   * @param sequencer represented as AtomicLong, source of sequence numbers shared with MessageHistory
+   * @param segmentBytes represented as int, size of each segment file
+   * @param retentionSegments represented as int, most segment files kept
+   * @param flushMillis represented as long, how often written records are forced to disk, zero forces every append
+   * @throws IOException if directory or segments cannot be opened
+   */
+  public MessageLog(Path directory, AtomicLong sequencer, int segmentBytes, int retentionSegments, long flushMillis)
+      throws IOException {
+    this.directory = Files.createDirectories(directory);
+    this.sequencer = sequencer;
+    this.segmentBytes = segmentBytes;
+    this.retentionSegments = retentionSegments;
+    this.segments = new ArrayList<>();
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, "*.log")) {
+      stream.forEach(files::add);
+    }
+    files.sort(null);
+    for (Path file : files) {
+      String name = file.getFileName().toString();
+      this.segments.add(new LogSegment(file, Long.parseLong(name.substring(0, name.length() - 4)), segmentBytes));
+    }
+    if (this.segments.isEmpty()) {
+      this.roll();
+    }
+    else {
+      this.active = this.segments.get(this.segments.size() - 1);
+      this.flushedPosition = this.active.getWritePosition();
+    }
+    for (LogSegment segment : this.segments) {
+      this.sequencer.accumulateAndGet(segment.getLastSequence(), Math::max);
+      this.lastTimestamp = Math.max(this.lastTimestamp, segment.getLastTimestamp());
+    }
+    if (flushMillis > 0) {
+      this.flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "chatroom-log-flush");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+    else {
+      this.flusher = null;
+    }
+  }
+
+  /**
+   * This public method is used to append a frame and give it the next sequence number. MessageHistory calls it while
+   * holding its own lock, so sequence numbers of one history are logged in order.
+   *
+   * @param room represented as array of byte, UTF-8 room name, empty for broadcast messages
+   * @param frame represented as ByteBuffer, remaining bytes are the frame, position is not changed
+   * @return represented as long, sequence number of frame
+   */
+  public synchronized long append(byte[] room, ByteBuffer frame) {
+    long sequence = this.sequencer.incrementAndGet();
+    this.lastTimestamp = Math.max(this.lastTimestamp, System.currentTimeMillis()); // keeps timestamp index sorted
+    try {
+      if (!this.active.append(sequence, this.lastTimestamp, room, frame)) {
+        this.roll();
+        if (!this.active.append(sequence, this.lastTimestamp, room, frame)) {
+          throw new IllegalStateException("Frame of " + frame.remaining() + " bytes is larger than a log segment");
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    if (this.flusher == null) {
+      this.active.force(this.flushedPosition, this.active.getWritePosition());
+      this.flushedPosition = this.active.getWritePosition();
+    }
+    return sequence;
+  }
+
+  /**
+   * This public method is used to visit logged records in order, starting after a sequence number
+   *
+   * @param afterSequence represented as long, only records with a greater sequence number are visited
+   * @param visitor represented as Visitor
+   * @throws IOException exceptions thrown by visitor
+   */
+  public synchronized void read(long afterSequence, Visitor visitor) throws IOException {
+    int first = 0;
+    while (first + 1 < this.segments.size() && this.segments.get(first + 1).getBaseSequence() <= afterSequence + 1) {
+      first++;
+    }
+    for (int i = first; i < this.segments.size(); i++) {
+      this.segments.get(i).read(afterSequence, visitor);
+    }
+  }
+
+  /**
+   * This public method is used to visit logged records in order, starting at a point in time
+   *
+   * @param timestamp represented as long, milliseconds, only records at or after this time are visited
+   * @param visitor represented as Visitor
+   * @throws IOException exceptions thrown by visitor
+   */
+  public synchronized void readSince(long timestamp, Visitor visitor) throws IOException {
+    for (LogSegment segment : this.segments) {
+      if (segment.getLastTimestamp() >= timestamp) {
+        segment.readSince(timestamp, visitor);
+      }
+    }
+  }
+
+  /**
+   * This public method is used to force records written since last flush to disk. Only the range is taken under lock,
+   * the fsync itself runs while senders keep appending.
+   */
+  public void flush() {
+    LogSegment segment;
+    int from;
+    int to;
+    synchronized (this) {
+      segment = this.active;
+      from = this.flushedPosition;
+      to = segment.getWritePosition();
+      this.flushedPosition = to;
+    }
+    segment.force(from, to);
+  }
+
+  /**
+   * This public method is used to stop flushing and close every segment, forcing what is left
+   *
+   * @throws IOException if a segment cannot be closed
+   */
+  public synchronized void close() throws IOException {
+    if (this.flusher != null) {
+      this.flusher.shutdownNow();
+    }
+    for (LogSegment segment : this.segments) {
+      segment.close();
+    }
+  }
+
+  /**
+   * This public method is used to get number of segment files
+   *
+   * @return represented as int
+   */
+  public synchronized int segmentCount() {
+    return this.segments.size();
+  }
+
+  /**
+   * This public method is used to get sequence number of last logged record
+   *
+   * @return represented as long, zero if nothing was ever logged
+   */
+  public synchronized long getLastSequence() {
+    return this.active.getLastSequence();
+  }
+
+  /**
+   * This private method is used to start a new active segment, forcing the full one and applying retention
+   *
+   * @throws IOException if segment cannot be created or an old one deleted
+   */
+  private void roll() throws IOException {
+    if (this.active != null) {
+      this.active.force(this.flushedPosition, this.active.getWritePosition());
+    }
+    long baseSequence = this.sequencer.get() + (this.active != null ? 0 : 1);
+    this.active = new LogSegment(this.directory.resolve(LogSegment.fileName(baseSequence)), baseSequence, this.segmentBytes);
+    this.segments.add(this.active);
+    this.flushedPosition = 0;
+    while (this.segments.size() > this.retentionSegments) {
+      this.segments.remove(0).delete();
+    }
+  }
+
+  /**
+   * Visitor interface receives logged records during a read
+   */
+  public interface Visitor {
+
+    /**
+     * This method is used to receive one record
+     *
+     * @param sequence represented as long, sequence number of record
+     * @param timestamp represented as long, milliseconds when record was logged
+     * @param room represented as ByteBuffer, UTF-8 room name, empty for broadcast messages
+     * @param frame represented as ByteBuffer, frame as it was sent
+     * @throws IOException exceptions produced by failed or interrupted I/O operations while using record
+     */
+    void visit(long sequence, long timestamp, ByteBuffer room, ByteBuffer frame) throws IOException;
+  }
+}
@@ -0,0 +1,313 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * NioClientInterface class represents a client served by a NioEventLoop. Bytes are read without blocking,
+ * complete frames are found with FrameDecoder and only then handed to ChatRoomProtocol, so the same protocol
+ * code serves both server modes.
+ */
+public class NioClientInterface implements ClientConnection {
+
+  /**
+   * Initial size of read buffer of a client
+   */
+  private static final int INITIAL_BUFFER_SIZE = 8192;
+
+  /**
+   * Most queued frames handed to the socket in one gathering write
+   */
+  private static final int MAX_GATHERED_FRAMES = 64;
+  private final SocketChannel channel;
+  private final ChatRoomServer server;
+  private final NioEventLoop eventLoop;
+  private final ChatRoomProtocol protocol;
+  private final OutboundQueue outboundQueue;
+  private final AtomicBoolean writeRequested;
+  private final AtomicBoolean releaseRequested;
+
+  /**
+   * Set once another thread handed the close of this client to the event loop, frames sent meanwhile are dropped
+   */
+  private final AtomicBoolean evictRequested;
+  private final WriteStats writeStats;
+  private final ServerMetrics metrics;
+  private final ConnectionReaper.Entry idleEntry;
+  private ByteBuffer readBuffer;
+  private final BufferPool readBufferPool;
+  private final ByteBuffer[] gathered;
+  private final Frame[] gatheredFrames;
+  private int gatherCount;
+
+  /**
+   * Number of gathered frames the socket did not take yet, published by the event loop after each write
+   */
+  private volatile int unwrittenFrames;
+  private SelectionKey key;
+  private boolean joined;
+
+  /**
+   * History sequence number of the last sequenced frame fully written to the channel, only the event loop updates it
+   */
+  private volatile long writtenSequence;
+
+  /**
+   * Constructor of NioClientInterface
+   *
+   * @param channel represented as SocketChannel, non-blocking client channel
+   * @param server represented as ChatRoomServer, server for chat room
+   * @param eventLoop represented as NioEventLoop, event loop serving this client
+   */
+  public NioClientInterface(SocketChannel channel, ChatRoomServer server, NioEventLoop eventLoop) {
+    this.channel = channel;
+    this.server = server;
+    this.eventLoop = eventLoop;
+    this.readBufferPool = server.getReadBufferPool();
+    this.readBuffer = this.readBufferPool.acquire(INITIAL_BUFFER_SIZE);
+    this.outboundQueue = server.getConfig().newOutboundQueue();
+    this.writeRequested = new AtomicBoolean();
+    this.releaseRequested = new AtomicBoolean();
+    this.evictRequested = new AtomicBoolean();
+    this.writeStats = server.getWriteStats();
+    this.metrics = server.getMetrics();
+    this.gathered = new ByteBuffer[MAX_GATHERED_FRAMES];
+    this.gatheredFrames = new Frame[MAX_GATHERED_FRAMES];
+    this.protocol = new ChatRoomProtocol(new DataInputStream(new ReadBufferInputStream()), this, server);
+    this.idleEntry = server.getReaper() != null ? server.getReaper().register(this) : null;
+    server.connectionOpened(this);
+  }
+
+  @Override
+  public void send(Frame frame) {
+    if (this.isClosed() || this.evictRequested.get()) {
+      frame.release();
+      return;
+    }
+    if (!this.outboundQueue.offer(frame)) {
+      frame.release();
+      this.server.getMetrics().recordSlowConsumer();
+      this.server.getLog().warn("client.slowConsumer", "user", this.protocol.getUsername());
+      this.evict(); // slow consumer, sender may run on another event loop or a background thread
+      return;
+    }
+    if (this.writeRequested.compareAndSet(false, true)) {
+      this.eventLoop.requestWrite(this);
+    }
+  }
+
+  @Override
+  public int queuedFrames() {
+    return this.outboundQueue.size() + this.unwrittenFrames;
+  }
+
+  @Override
+  public long writtenSequence() {
+    return this.writtenSequence;
+  }
+
+  @Override
+  public ChatRoomProtocol getProtocol() {
+    return this.protocol;
+  }
+
+  @Override
+  public boolean isClosed() {
+    return !this.channel.isOpen();
+  }
+
+  /**
+   * This method is used by event loop to set selection key of this client
+   *
+   * @param key represented as SelectionKey
+   */
+  void setKey(SelectionKey key) {
+    this.key = key;
+  }
+
+  /**
+   * This method is called by event loop when channel has bytes to read, every complete frame is processed
+   */
+  void onReadable() {
+    try {
+      int read = this.channel.read(this.readBuffer);
+      if (read < 0) {
+        this.close();
+        return;
+      }
+      if (read > 0 && this.idleEntry != null) {
+        this.idleEntry.touch();
+      }
+      this.readBuffer.flip();
+      int frameLength;
+      while ((frameLength = FrameDecoder.frameLength(this.readBuffer, this.protocol.getVersion())) >= 0) {
+        int frameEnd = this.readBuffer.position() + frameLength;
+        this.protocol.processInput(this.protocol.readMessageIdentifier());
+        this.readBuffer.position(frameEnd);
+        this.processNewConnect();
+      }
+      this.readBuffer.compact();
+      if (!this.readBuffer.hasRemaining()) {
+        this.readBuffer = this.grow(this.readBuffer.capacity() * 2);
+      }
+    } catch (IOException | IllegalStateException e) {
+      this.close();
+    }
+  }
+
+  /**
+   * This method is called by event loop when channel can accept more bytes or when new frames are queued.
+   * Event loop is the single writer of this client, it writes queued frames until queue is empty or socket is full.
+   * Several frames go out in one gathering write, each through its own read-only view of the shared frame bytes.
+   */
+  void onWritable() {
+    try {
+      this.writeRequested.set(false);
+      while (true) {
+        Frame frame;
+        while (this.gatherCount < MAX_GATHERED_FRAMES && (frame = this.outboundQueue.poll()) != null) {
+          this.gathered[this.gatherCount] = frame.buffer();
+          this.gatheredFrames[this.gatherCount++] = frame;
+          this.writeStats.recordFrame(frame);
+          this.metrics.recordFrameOut(frame);
+        }
+        if (this.gatherCount == 0) {
+          break;
+        }
+        this.channel.write(this.gathered, 0, this.gatherCount);
+        this.writeStats.recordFlush();
+        this.dropWrittenFrames();
+        if (this.gatherCount > 0) {
+          break; // socket send buffer is full, wait for OP_WRITE
+        }
+      }
+      this.unwrittenFrames = this.gatherCount;
+      if (this.key.isValid()) {
+        this.key.interestOps(this.gatherCount > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+      }
+    } catch (IOException e) {
+      this.close();
+    }
+  }
+
+  @Override
+  public void evict() {
+    if (this.eventLoop.inEventLoop()) {
+      this.close();
+    }
+    else if (this.evictRequested.compareAndSet(false, true)) {
+      this.eventLoop.requestClose(this);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      this.channel.close();
+      if (this.key != null) {
+        this.key.cancel();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e.getMessage());
+    } finally {
+      this.outboundQueue.clear();
+      if (this.idleEntry != null) {
+        this.idleEntry.cancel();
+      }
+      this.protocol.connectionLost();
+      this.server.connectionClosed(this);
+      if (this.releaseRequested.compareAndSet(false, true)) {
+        this.eventLoop.requestWrite(this); // event loop releases buffers of this client
+      }
+    }
+  }
+
+  /**
+   * This method is called by event loop once the channel is closed and its key is cancelled, so no read or write of
+   * this client can follow. Buffers still held by this client go back to their pools.
+   */
+  void release() {
+    for (int i = 0; i < this.gatherCount; i++) {
+      this.gatheredFrames[i].release();
+      this.gatheredFrames[i] = null;
+      this.gathered[i] = null;
+    }
+    this.gatherCount = 0;
+    this.unwrittenFrames = 0;
+    if (this.readBuffer != null) {
+      this.readBufferPool.release(this.readBuffer);
+      this.readBuffer = null;
+    }
+  }
+
+  /**
+   * This private method is used to announce user once login succeeded, protocol has added it to server registry
+   */
+  private void processNewConnect() {
+    if (!this.joined && this.protocol.getUsername() != null) {
+      this.joined = true;
+      this.server.getLog().info("client.joined", "user", this.protocol.getUsername());
+    }
+  }
+
+  /**
+   * This private method is used to remove fully written frame views from front of gathered array and release their frames
+   */
+  private void dropWrittenFrames() {
+    int written = 0;
+    while (written < this.gatherCount && !this.gathered[written].hasRemaining()) {
+      if (this.gatheredFrames[written].getSequence() != 0) {
+        this.writtenSequence = this.gatheredFrames[written].getSequence();
+      }
+      this.gatheredFrames[written].markWritten();
+      this.gatheredFrames[written].release();
+      written++;
+    }
+    System.arraycopy(this.gathered, written, this.gathered, 0, this.gatherCount - written);
+    System.arraycopy(this.gatheredFrames, written, this.gatheredFrames, 0, this.gatherCount - written);
+    Arrays.fill(this.gathered, this.gatherCount - written, this.gatherCount, null);
+    Arrays.fill(this.gatheredFrames, this.gatherCount - written, this.gatherCount, null);
+    this.gatherCount -= written;
+  }
+
+  /**
+   * This private method is used to move read buffer in write mode into a larger pooled one
+   *
+   * @param capacity represented as int, new capacity
+   * @return represented as ByteBuffer, larger buffer in write mode
+   */
+  private ByteBuffer grow(int capacity) {
+    if (capacity > 2 * FrameDecoder.MAX_FRAME_BYTES) {
+      throw new IllegalStateException("Buffer is too large: " + capacity);
+    }
+    ByteBuffer larger = this.readBufferPool.acquire(capacity);
+    this.readBuffer.flip();
+    larger.put(this.readBuffer);
+    this.readBufferPool.release(this.readBuffer);
+    return larger;
+  }
+
+  /**
+   * ReadBufferInputStream reads the frame currently being processed straight from read buffer
+   */
+  private class ReadBufferInputStream extends InputStream {
+    @Override
+    public int read() {
+      return readBuffer.hasRemaining() ? readBuffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (!readBuffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, readBuffer.remaining());
+      readBuffer.get(bytes, offset, count);
+      return count;
+    }
+  }
+}
@@ -0,0 +1,260 @@
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * NioEventLoop class runs one selector on its own thread and serves every non-blocking client channel registered to it.
+ * Other threads never touch the selector directly, they hand over channels and pending writes through queues.
+ * A failure while serving one client closes only that client; the loop itself only stops when its selector fails.
+ */
+public class NioEventLoop implements Runnable {
+  private final Selector selector;
+  private final ChatRoomServer server;
+  private final Queue<SocketChannel> pendingChannels;
+  private final Queue<NioClientInterface> pendingWrites;
+  private final Queue<NioClientInterface> pendingCloses;
+  private final Thread thread;
+  private volatile boolean running;
+
+  /**
+   * Constructor of NioEventLoop
+   *
+   * @param server represented as ChatRoomServer, server for chat room
+   * @param name represented as String, name of event loop thread
+   * @throws IOException if selector cannot be opened
+   */
+  public NioEventLoop(ChatRoomServer server, String name) throws IOException {
+    this.selector = Selector.open();
+    this.server = server;
+    this.pendingChannels = new ConcurrentLinkedQueue<>();
+    this.pendingWrites = new ConcurrentLinkedQueue<>();
+    this.pendingCloses = new ConcurrentLinkedQueue<>();
+    this.thread = new Thread(this, name);
+    this.running = true;
+  }
+
+  /**
+   * This public method is used to start event loop thread
+   */
+  public void start() {
+    this.thread.start();
+  }
+
+  /**
+   * This public method is used to stop event loop, it closes every client left and its selector before the thread ends
+   *
+   * @param timeoutMillis represented as long, how long to wait for event loop thread
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void shutdown(long timeoutMillis) throws InterruptedException {
+    this.running = false;
+    this.selector.wakeup();
+    this.thread.join(timeoutMillis);
+  }
+
+  /**
+   * This public method is used to hand over an accepted channel to this event loop, can be called from any thread
+   *
+   * @param channel represented as SocketChannel, accepted client channel
+   */
+  public void register(SocketChannel channel) {
+    this.pendingChannels.add(channel);
+    this.selector.wakeup();
+  }
+
+  /**
+   * This public method is used to ask event loop to flush pending output of a client, can be called from any thread
+   *
+   * @param client represented as NioClientInterface, client with pending output
+   */
+  public void requestWrite(NioClientInterface client) {
+    this.pendingWrites.add(client);
+    if (Thread.currentThread() != this.thread) {
+      this.selector.wakeup();
+    }
+  }
+
+  /**
+   * This public method is used to ask event loop to close a client, can be called from any thread
+   *
+   * @param client represented as NioClientInterface, client of this event loop
+   */
+  public void requestClose(NioClientInterface client) {
+    this.pendingCloses.add(client);
+    this.selector.wakeup();
+  }
+
+  /**
+   * This public method is used to check if the calling thread is the thread of this event loop
+   *
+   * @return represented as boolean
+   */
+  public boolean inEventLoop() {
+    return Thread.currentThread() == this.thread;
+  }
+
+  @Override
+  public void run() {
+    while (this.running) {
+      try {
+        this.selector.select();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      this.registerPendingChannels();
+      this.closePendingClients();
+      Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+      while (keys.hasNext()) {
+        SelectionKey key = keys.next();
+        keys.remove();
+        this.processKey(key);
+      }
+      this.flushPendingWrites();
+    }
+    this.closeAll();
+  }
+
+  /**
+   * This private method is used once event loop stops to close channels it still serves, including ones never
+   * registered, and to release their buffers
+   */
+  private void closeAll() {
+    SocketChannel channel;
+    while ((channel = this.pendingChannels.poll()) != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // channel is closed as far as it can be
+      }
+    }
+    this.pendingCloses.clear(); // every client left is closed below
+    for (SelectionKey key : this.selector.keys()) {
+      NioClientInterface client = (NioClientInterface) key.attachment();
+      if (!client.isClosed()) { // keys of clients closed since last select are still in the set
+        this.closeQuietly(client);
+      }
+    }
+    this.flushPendingWrites();
+    try {
+      this.selector.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * This private method is used to register channels accepted since last select. A channel that cannot be configured
+   * or registered is closed, the others are still served.
+   */
+  private void registerPendingChannels() {
+    SocketChannel channel;
+    while ((channel = this.pendingChannels.poll()) != null) {
+      NioClientInterface client = null;
+      try {
+        channel.configureBlocking(false);
+        this.server.getConfig().configure(channel.socket());
+        client = new NioClientInterface(channel, this.server, this);
+        if (!client.isClosed()) { // a stopping server closes new connections right away
+          client.setKey(channel.register(this.selector, SelectionKey.OP_READ, client));
+        }
+      } catch (IOException | RuntimeException e) {
+        this.server.getLog().warn("client.registerFailed", "error", e);
+        if (client != null) {
+          this.closeQuietly(client);
+        }
+        else {
+          try {
+            channel.close();
+          } catch (IOException closeFailure) {
+            // channel is closed as far as it can be
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * This private method is used to close clients other threads asked to close since last select
+   */
+  private void closePendingClients() {
+    NioClientInterface client;
+    while ((client = this.pendingCloses.poll()) != null) {
+      if (!client.isClosed()) {
+        this.closeQuietly(client);
+      }
+    }
+  }
+
+  /**
+   * This private method is used to dispatch a ready key to its client
+   *
+   * @param key represented as SelectionKey, ready key
+   */
+  private void processKey(SelectionKey key) {
+    NioClientInterface client = (NioClientInterface) key.attachment();
+    try {
+      if (!key.isValid()) {
+        client.close();
+        return;
+      }
+      if (key.isReadable()) {
+        client.onReadable();
+      }
+      if (key.isValid() && key.isWritable()) {
+        client.onWritable();
+      }
+    } catch (RuntimeException e) {
+      this.fail(client, e);
+    }
+  }
+
+  /**
+   * This private method is used to close a client whose frame could not be served, keeping the loop running for the others
+   *
+   * @param client represented as NioClientInterface, failed client
+   * @param failure represented as RuntimeException, what went wrong
+   */
+  private void fail(NioClientInterface client, RuntimeException failure) {
+    this.server.getLog().error("client.failed", "user", client.getProtocol().getUsername(), "error", failure);
+    if (!client.isClosed()) {
+      this.closeQuietly(client);
+    }
+  }
+
+  /**
+   * This private method is used to close a client, a failure while closing is not allowed to stop the loop
+   *
+   * @param client represented as NioClientInterface
+   */
+  private void closeQuietly(NioClientInterface client) {
+    try {
+      client.close();
+    } catch (RuntimeException e) {
+      // channel is closed as far as it can be, the rest of this client is released by flushPendingWrites
+    }
+  }
+
+  /**
+   * This private method is used to flush output that was written to clients of this loop since last select,
+   * and to release buffers of clients closed since then
+   */
+  private void flushPendingWrites() {
+    NioClientInterface client;
+    while ((client = this.pendingWrites.poll()) != null) {
+      try {
+        if (client.isClosed()) {
+          client.release();
+        }
+        else {
+          client.onWritable();
+        }
+      } catch (RuntimeException e) {
+        this.fail(client, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,163 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * OutboundQueue class is a bounded queue of encoded frames waiting to be written to one client.
+ * Any number of sender threads may offer frames without taking a lock, and a single writer polls them.
+ * The bound is kept by reserving a slot with compare and set before the frame is linked in.
+ * The queue holds one reference of every queued frame; frames it drops or clears are released here.
+ * With BLOCK policy only threads that called allowBlocking wait for room. An NIO event loop or a shared background
+ * thread must never park, because every other client it serves would stall with it, and the full client may be one of
+ * them; for those threads BLOCK behaves like DISCONNECT.
+ */
+public class OutboundQueue {
+
+  /**
+   * How long a blocked sender parks before checking for room again
+   */
+  private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  /**
+   * True on threads that may park while offering with BLOCK policy
+   */
+  private static final ThreadLocal<Boolean> BLOCKING_ALLOWED = ThreadLocal.withInitial(() -> Boolean.FALSE);
+  private final Queue<Frame> frames;
+  private final AtomicInteger size;
+  private final AtomicLong dropped;
+  private final int capacity;
+  private final SlowConsumerPolicy policy;
+  private final long blockTimeoutNanos;
+
+  /**
+   * Constructor of OutboundQueue
+   *
+   * @param capacity represented as int, maximum number of queued frames
+   * @param policy represented as SlowConsumerPolicy, what to do when queue is full
+   * @param blockTimeoutMillis represented as long, how long a sender waits for room with BLOCK policy
+   */
+  public OutboundQueue(int capacity, SlowConsumerPolicy policy, long blockTimeoutMillis) {
+    this.frames = new ConcurrentLinkedQueue<>();
+    this.size = new AtomicInteger();
+    this.dropped = new AtomicLong();
+    this.capacity = capacity;
+    this.policy = policy;
+    this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+  }
+
+  /**
+   * This public method is used to queue a frame for the writer, can be called from any thread
+   *
+   * @param frame represented as Frame, encoded frame
+   * @return represented as boolean, false if client is too slow and should be disconnected
+   */
+  public boolean offer(Frame frame) {
+    if (!this.tryReserve()) {
+      switch (this.policy) {
+        case DROP_OLDEST -> {
+          do {
+            Frame oldest = this.poll();
+            if (oldest != null) {
+              oldest.release();
+              this.dropped.incrementAndGet();
+            }
+          } while (!this.tryReserve());
+        }
+        case BLOCK -> {
+          if (!BLOCKING_ALLOWED.get()) {
+            return false;
+          }
+          long deadline = System.nanoTime() + this.blockTimeoutNanos;
+          do {
+            if (System.nanoTime() - deadline >= 0) {
+              return false;
+            }
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+          } while (!this.tryReserve());
+        }
+        default -> {
+          return false;
+        }
+      }
+    }
+    this.frames.add(frame);
+    return true;
+  }
+
+  /**
+   * This public static method is used to let the current thread wait for room with BLOCK policy. It should only be called
+   * by a thread serving a single client, such as the reading thread of a client in thread mode.
+   */
+  public static void allowBlocking() {
+    BLOCKING_ALLOWED.set(Boolean.TRUE);
+  }
+
+  /**
+   * This public method is used by the writer to take next frame
+   *
+   * @return represented as Frame, next frame or null if queue is empty
+   */
+  public Frame poll() {
+    Frame frame = this.frames.poll();
+    if (frame != null) {
+      this.size.decrementAndGet();
+    }
+    return frame;
+  }
+
+  /**
+   * This public method is used to release every queued frame once client is closed
+   */
+  public void clear() {
+    Frame frame;
+    while ((frame = this.poll()) != null) {
+      frame.release();
+    }
+  }
+
+  /**
+   * This public method is used to check if there are no frames queued
+   *
+   * @return represented as boolean
+   */
+  public boolean isEmpty() {
+    return this.frames.isEmpty();
+  }
+
+  /**
+   * This public method is used to get number of queued frames
+   *
+   * @return represented as int
+   */
+  public int size() {
+    return this.size.get();
+  }
+
+  /**
+   * This public method is used to get number of frames dropped by DROP_OLDEST policy
+   *
+   * @return represented as long
+   */
+  public long droppedCount() {
+    return this.dropped.get();
+  }
+
+  /**
+   * This private method is used to reserve room for one frame
+   *
+   * @return represented as boolean, true if room was reserved
+   */
+  private boolean tryReserve() {
+    int current;
+    do {
+      current = this.size.get();
+      if (current >= this.capacity) {
+        return false;
+      }
+    } while (!this.size.compareAndSet(current, current + 1));
+    return true;
+  }
+}
@@ -0,0 +1,219 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * PresenceBroker class pushes roster changes to subscribed clients. A subscriber gets one PRESENCE_SNAPSHOT and then
+ * only PRESENCE_DELTA frames. Joins and leaves recorded by ClientRegistry are collected for a short batch window and
+ * published as one delta, encoded once and shared by every subscriber. Each delta carries the roster version it
+ * starts from and the version it brings the roster to, so a client can tell when it missed one and subscribe again.
+ */
+public class PresenceBroker {
+  private final ClientRegistry registry;
+  private final Set<ClientConnection> subscribers;
+  private final Queue<Change> changes;
+  private final ScheduledExecutorService publisher;
+  private final AtomicBoolean publishScheduled;
+  private final long batchMillis;
+  private final FanoutStats fanoutStats;
+
+  /**
+   * Encodes delta frames, only used by the publisher thread
+   */
+  private final FrameBuffer frameBuffer;
+  private final DataOutputStream out;
+
+  /**
+   * Roster version the next delta starts from, only used by the publisher thread
+   */
+  private long publishedVersion;
+
+  /**
+   * Changes taken from the queue but not published yet because an earlier version has not arrived,
+   * only used by the publisher thread
+   */
+  private final PriorityQueue<Change> pending;
+
+  /**
+   * Constructor of PresenceBroker, records changes of provided registry from now on
+   *
+   * @param registry represented as ClientRegistry, registry whose changes are published
+   * @param pool represented as BufferPool, pool delta frames are encoded in
+   * @param fanoutStats represented as FanoutStats, counters of shared frames
+   * @param batchMillis represented as long, how long changes are collected before a delta is published
+   */
+  public PresenceBroker(ClientRegistry registry, BufferPool pool, FanoutStats fanoutStats, long batchMillis) {
+    this.registry = registry;
+    this.subscribers = ConcurrentHashMap.newKeySet();
+    this.changes = new ConcurrentLinkedQueue<>();
+    this.publisher = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "chatroom-presence");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.publishScheduled = new AtomicBoolean();
+    this.batchMillis = batchMillis;
+    this.fanoutStats = fanoutStats;
+    this.frameBuffer = new FrameBuffer(pool);
+    this.out = new DataOutputStream(this.frameBuffer);
+    this.publishedVersion = registry.getVersion();
+    this.pending = new PriorityQueue<>((first, second) -> Long.compare(first.version, second.version));
+    registry.setPresenceBroker(this);
+  }
+
+  /**
+   * This public method is used to subscribe a client. Client is added before its snapshot is taken, so no change
+   * falls between the two; deltas it receives before the snapshot end at or below snapshot version.
+   *
+   * @param connection represented as ClientConnection, subscribing client
+   * @param out represented as DataOutputStream, stream of the frame being encoded for that client
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in out
+   */
+  public void subscribe(ClientConnection connection, DataOutputStream out) throws IOException {
+    this.subscribers.add(connection);
+    RosterSnapshot roster = this.registry.getRoster();
+    out.writeInt(MessageIdentifier.PRESENCE_SNAPSHOT);
+    out.writeLong(roster.getVersion());
+    out.writeInt(roster.size());
+    roster.writeEntries(out, 0, roster.size());
+  }
+
+  /**
+   * This public method is used to stop sending deltas to a client
+   *
+   * @param connection represented as ClientConnection
+   * @return represented as boolean, true if client was subscribed
+   */
+  public boolean unsubscribe(ClientConnection connection) {
+    return this.subscribers.remove(connection);
+  }
+
+  /**
+   * This public method is used to get number of subscribed clients
+   *
+   * @return represented as int
+   */
+  public int subscriberCount() {
+    return this.subscribers.size();
+  }
+
+  /**
+   * This method is used by ClientRegistry to record a join or leave, can be called from any thread
+   *
+   * @param username represented as String, user that joined or left
+   * @param joined represented as boolean, true for join and false for leave
+   * @param version represented as long, roster version after the change
+   */
+  void record(String username, boolean joined, long version) {
+    this.changes.add(new Change(username, joined, version));
+    if (!this.publisher.isShutdown() && this.publishScheduled.compareAndSet(false, true)) {
+      this.publisher.schedule(this::publish, this.batchMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * This public method is used to stop the publisher thread, changes recorded afterwards are never published
+   */
+  public void shutdown() {
+    this.publisher.shutdownNow();
+  }
+
+  /**
+   * This private method is used by the publisher thread to send changes collected in the batch window as one delta.
+   * Two logins can bump the version in one order and record their changes in the other, so a delta only covers the
+   * unbroken run of versions after the last one published; later versions wait for the missing one.
+   * Only the last change of each user counts, so a client applying leaves and joins of the delta always ends with the
+   * roster of its to version.
+   */
+  private void publish() {
+    this.publishScheduled.set(false); // changes recorded from now on schedule the next batch
+    Change change;
+    while ((change = this.changes.poll()) != null) {
+      this.pending.add(change);
+    }
+    Map<String, Boolean> latest = new LinkedHashMap<>();
+    long fromVersion = this.publishedVersion;
+    while ((change = this.pending.peek()) != null && change.version <= this.publishedVersion + 1) {
+      this.pending.poll();
+      if (change.version == this.publishedVersion + 1) {
+        latest.remove(change.username);
+        latest.put(change.username, change.joined);
+        this.publishedVersion = change.version;
+      }
+    }
+    if (!this.pending.isEmpty() && this.publishScheduled.compareAndSet(false, true)) {
+      this.publisher.schedule(this::publish, this.batchMillis, TimeUnit.MILLISECONDS);
+    }
+    if (latest.isEmpty() || this.subscribers.isEmpty()) {
+      return;
+    }
+    List<String> joined = new ArrayList<>();
+    List<String> left = new ArrayList<>();
+    latest.forEach((username, isJoin) -> (isJoin ? joined : left).add(username));
+    try {
+      this.out.writeInt(MessageIdentifier.PRESENCE_DELTA);
+      this.out.writeLong(fromVersion);
+      this.out.writeLong(this.publishedVersion);
+      this.writeNames(joined);
+      this.writeNames(left);
+    } catch (IOException e) {
+      this.frameBuffer.discard();
+      throw new RuntimeException(e);
+    }
+    Frame frame = this.frameBuffer.takeFrame();
+    int recipients = 0;
+    for (ClientConnection subscriber : this.subscribers) {
+      subscriber.send(frame.retain());
+      recipients++;
+    }
+    this.fanoutStats.record(frame, recipients);
+    frame.release();
+  }
+
+  /**
+   * This private method is used to write a count followed by usernames
+   *
+   * @param names represented as List of String
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in out
+   */
+  private void writeNames(List<String> names) throws IOException {
+    this.out.writeInt(names.size());
+    for (String name : names) {
+      WireFormat.writeString(this.out, name);
+    }
+  }
+
+  /**
+   * Change class is one join or leave waiting to be published
+   */
+  private static final class Change {
+    private final String username;
+    private final boolean joined;
+    private final long version;
+
+    /**
+     * Constructor of Change
+     *
+     * @param username represented as String
+     * @param joined represented as boolean
+     * @param version represented as long
+     */
+    private Change(String username, boolean joined, long version) {
+      this.username = username;
+      this.joined = joined;
+      this.version = version;
+    }
+  }
+}
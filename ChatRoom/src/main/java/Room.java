@@ -0,0 +1,113 @@
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Room class is one named chat room with its own membership set, so a room message costs the size of the room and
+ * not the size of the server. Members are added and removed through RoomRegistry; senders iterate members without
+ * taking a lock.
+ */
+public class Room implements Iterable<ClientConnection> {
+  private final String name;
+  private final byte[] nameBytes;
+  private final Set<ClientConnection> members;
+  private final MessageHistory history;
+
+  /**
+   * Constructor of Room
+   *
+   * @param name represented as String, name of room
+   * @param history represented as MessageHistory, recent messages of room, dropped with the room
+   */
+  public Room(String name, MessageHistory history) {
+    this.name = name;
+    this.nameBytes = WireFormat.encode(name);
+    this.members = ConcurrentHashMap.newKeySet(4);
+    this.history = history;
+  }
+
+  /**
+   * This public method is used to get name of room
+   *
+   * @return represented as String
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * This public method is used to get UTF-8 bytes of room name, encoded once
+   *
+   * @return represented as array of byte
+   */
+  public byte[] getNameBytes() {
+    return this.nameBytes;
+  }
+
+  /**
+   * This public method is used to get recent messages of room
+   *
+   * @return represented as MessageHistory
+   */
+  public MessageHistory getHistory() {
+    return this.history;
+  }
+
+  /**
+   * This public method is used to check if a client is member of room
+   *
+   * @param connection represented as ClientConnection
+   * @return represented as boolean
+   */
+  public boolean contains(ClientConnection connection) {
+    return this.members.contains(connection);
+  }
+
+  /**
+   * This public method is used to get number of members
+   *
+   * @return represented as int
+   */
+  public int size() {
+    return this.members.size();
+  }
+
+  /**
+   * This public method is used to iterate over members, weakly consistent with concurrent joins and leaves
+   *
+   * @return represented as Iterator of ClientConnection
+   */
+  @Override
+  public Iterator<ClientConnection> iterator() {
+    return this.members.iterator();
+  }
+
+  /**
+   * This method is used by RoomRegistry to add a member
+   *
+   * @param connection represented as ClientConnection
+   * @return represented as boolean, false if already a member
+   */
+  boolean add(ClientConnection connection) {
+    return this.members.add(connection);
+  }
+
+  /**
+   * This method is used by RoomRegistry to remove a member
+   *
+   * @param connection represented as ClientConnection
+   * @return represented as boolean, false if not a member
+   */
+  boolean remove(ClientConnection connection) {
+    return this.members.remove(connection);
+  }
+
+  /**
+   * This method is used by RoomRegistry to check if room has no members left
+   *
+   * @return represented as boolean
+   */
+  boolean isEmpty() {
+    return this.members.isEmpty();
+  }
+}
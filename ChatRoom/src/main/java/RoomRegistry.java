@@ -0,0 +1,205 @@
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * RoomRegistry class keeps every room by name. A room is created by the first join and removed by the last leave,
+ * so rooms nobody sits in cost no memory. Joins and leaves of one room run inside ConcurrentHashMap compute calls,
+ * which makes creating, emptying and removing a room atomic against each other.
+ */
+public class RoomRegistry {
+
+  /**
+   * Longest room name in UTF-8 bytes
+   */
+  public static final int MAX_ROOM_NAME_BYTES = 64;
+  private final ConcurrentMap<String, Room> rooms;
+  private final AtomicLong sequencer;
+  private final MessageLog log;
+
+  /**
+   * Histories restored from a log for rooms nobody has joined yet since the restart
+   */
+  private final ConcurrentMap<String, MessageHistory> restored;
+  private final int historyEntries;
+  private final int historyBytes;
+
+  /**
+   * Constructor of RoomRegistry with default history size
+   */
+  public RoomRegistry() {
+    this(new AtomicLong(), null, 256, 64 << 10);
+  }
+
+  /**
+   * Constructor of RoomRegistry
+   *
+   * @param sequencer represented as AtomicLong, source of history sequence numbers shared with the lobby
+   * @param log represented as MessageLog, log room messages are also appended to, may be null
+   * @param historyEntries represented as int, most messages kept per room
+   * @param historyBytes represented as int, size of history ring per room
+   */
+  public RoomRegistry(AtomicLong sequencer, MessageLog log, int historyEntries, int historyBytes) {
+    this.rooms = new ConcurrentHashMap<>();
+    this.restored = new ConcurrentHashMap<>();
+    this.sequencer = sequencer;
+    this.log = log;
+    this.historyEntries = historyEntries;
+    this.historyBytes = historyBytes;
+  }
+
+  /**
+   * This public static method is used to check if a room name can be used
+   *
+   * @param name represented as String
+   * @return represented as boolean
+   */
+  public static boolean isValidName(String name) {
+    return !name.isBlank() && WireFormat.encode(name).length <= MAX_ROOM_NAME_BYTES;
+  }
+
+  /**
+   * This public method is used to add a client to a room, creating the room if needed
+   *
+   * @param name represented as String, name of room
+   * @param connection represented as ClientConnection, client joining
+   * @return represented as boolean, false if client was already a member
+   */
+  public boolean join(String name, ClientConnection connection) {
+    return this.join(name, connection, null);
+  }
+
+  /**
+   * This public method is used to add a client to a room, creating the room if needed, and to run a callback
+   * right after the client becomes a member. Callback gets the history sequence number reached at that moment: every
+   * room message sequenced later is sent to the client live, so a replay should stop there. Callback runs while the room
+   * is locked against other joins and leaves, so it should only record state; anything that may close the connection,
+   * and so leave the room, has to wait until join returns.
+   *
+   * @param name represented as String, name of room
+   * @param connection represented as ClientConnection, client joining
+   * @param onJoined represented as ObjLongConsumer of Room, called with the room and sequence number unless client is
+   *                 already a member, may be null
+   * @return represented as boolean, false if client was already a member
+   */
+  public boolean join(String name, ClientConnection connection, ObjLongConsumer<Room> onJoined) {
+    boolean[] joined = new boolean[1];
+    this.rooms.compute(name, (key, room) -> {
+      Room target = room != null ? room : new Room(key, this.takeHistory(key));
+      if (target.add(connection)) {
+        joined[0] = true;
+        if (onJoined != null) {
+          onJoined.accept(target, this.sequencer.get());
+        }
+      }
+      return target;
+    });
+    return joined[0];
+  }
+
+  /**
+   * This public method is used to move membership of a room to a new connection of the same client, as when a session
+   * is resumed, and to run a callback right after the new connection becomes a member, with the same limits as the one
+   * of join. Room is never empty in between.
+   *
+   * @param name represented as String, name of room
+   * @param previous represented as ClientConnection, connection that is a member
+   * @param connection represented as ClientConnection, new connection of client
+   * @param onJoined represented as ObjLongConsumer of Room, called with the room and sequence number if previous was
+   *                 a member, may be null
+   * @return represented as boolean, false if previous connection was not a member
+   */
+  public boolean replace(String name, ClientConnection previous, ClientConnection connection, ObjLongConsumer<Room> onJoined) {
+    boolean[] replaced = new boolean[1];
+    this.rooms.computeIfPresent(name, (key, room) -> {
+      if (room.remove(previous)) {
+        room.add(connection);
+        replaced[0] = true;
+        if (onJoined != null) {
+          onJoined.accept(room, this.sequencer.get());
+        }
+      }
+      return room;
+    });
+    return replaced[0];
+  }
+
+  /**
+   * This public method is used to put a frame read back from a log into history of a room, before the room exists
+   *
+   * @param name represented as String, name of room
+   * @param sequence represented as long, sequence number of frame
+   * @param frame represented as ByteBuffer, remaining bytes are the frame
+   */
+  public void restore(String name, long sequence, ByteBuffer frame) {
+    this.restored.computeIfAbsent(name, this::newHistory).restore(sequence, frame);
+  }
+
+  /**
+   * This private method is used to get history for a room being created, restored one if there is any
+   *
+   * @param name represented as String, name of room
+   * @return represented as MessageHistory
+   */
+  private MessageHistory takeHistory(String name) {
+    MessageHistory history = this.restored.remove(name);
+    return history != null ? history : this.newHistory(name);
+  }
+
+  /**
+   * This private method is used to create an empty history for a room
+   *
+   * @param name represented as String, name of room
+   * @return represented as MessageHistory
+   */
+  private MessageHistory newHistory(String name) {
+    return new MessageHistory(this.sequencer, this.log, WireFormat.encode(name), this.historyEntries, this.historyBytes);
+  }
+
+  /**
+   * This public method is used to remove a client from a room, removing the room once it is empty
+   *
+   * @param name represented as String, name of room
+   * @param connection represented as ClientConnection, client leaving
+   * @return represented as boolean, false if client was not a member
+   */
+  public boolean leave(String name, ClientConnection connection) {
+    boolean[] left = new boolean[1];
+    this.rooms.computeIfPresent(name, (key, room) -> {
+      left[0] = room.remove(connection);
+      return room.isEmpty() ? null : room;
+    });
+    return left[0];
+  }
+
+  /**
+   * This public method is used to get a room
+   *
+   * @param name represented as String, name of room
+   * @return represented as Room, null if nobody is in that room
+   */
+  public Room get(String name) {
+    return this.rooms.get(name);
+  }
+
+  /**
+   * This public method is used to get number of rooms with members
+   *
+   * @return represented as int
+   */
+  public int size() {
+    return this.rooms.size();
+  }
+
+  /**
+   * This public method is used to get a weakly consistent view of all rooms
+   *
+   * @return represented as Collection of Room
+   */
+  public Collection<Room> getRooms() {
+    return this.rooms.values();
+  }
+}
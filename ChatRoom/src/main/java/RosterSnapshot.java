@@ -0,0 +1,132 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * RosterSnapshot class is an immutable, sorted list of logged in usernames taken at one registry version.
+ * Names are encoded once as length prefixed UTF-8 entries in a single array, so every query response copies ranges
+ * of that array instead of encoding names again, and the count it writes always matches the entries that follow.
+ */
+public final class RosterSnapshot {
+  private final long version;
+  private final String[] names;
+  private final byte[] entries;
+
+  /**
+   * Offset of every entry in entries, with one extra offset at the end
+   */
+  private final int[] offsets;
+
+  /**
+   * Constructor of RosterSnapshot
+   *
+   * @param version represented as long, registry version the names were taken at
+   * @param names represented as array of String, usernames in any order, array is sorted in place
+   */
+  public RosterSnapshot(long version, String[] names) {
+    Arrays.sort(names);
+    byte[][] encoded = new byte[names.length][];
+    int[] offsets = new int[names.length + 1];
+    for (int i = 0; i < names.length; i++) {
+      encoded[i] = WireFormat.encode(names[i]);
+      offsets[i + 1] = offsets[i] + Integer.BYTES + encoded[i].length;
+    }
+    byte[] entries = new byte[offsets[names.length]];
+    for (int i = 0; i < names.length; i++) {
+      int offset = offsets[i];
+      int length = encoded[i].length;
+      entries[offset] = (byte) (length >>> 24);
+      entries[offset + 1] = (byte) (length >>> 16);
+      entries[offset + 2] = (byte) (length >>> 8);
+      entries[offset + 3] = (byte) length;
+      System.arraycopy(encoded[i], 0, entries, offset + Integer.BYTES, length);
+    }
+    this.version = version;
+    this.names = names;
+    this.entries = entries;
+    this.offsets = offsets;
+  }
+
+  /**
+   * This public method is used to get registry version of this snapshot
+   *
+   * @return represented as long
+   */
+  public long getVersion() {
+    return this.version;
+  }
+
+  /**
+   * This public method is used to get number of usernames
+   *
+   * @return represented as int
+   */
+  public int size() {
+    return this.names.length;
+  }
+
+  /**
+   * This public method is used to get username at an index
+   *
+   * @param index represented as int, index in sorted order
+   * @return represented as String
+   */
+  public String get(int index) {
+    return this.names[index];
+  }
+
+  /**
+   * This public method is used to find a username
+   *
+   * @param username represented as String
+   * @return represented as int, index of username or a negative number if it is not in snapshot
+   */
+  public int indexOf(String username) {
+    return Arrays.binarySearch(this.names, username);
+  }
+
+  /**
+   * This public method is used to find first username not before provided one in sorted order
+   *
+   * @param username represented as String
+   * @return represented as int, index between zero and size
+   */
+  public int lowerBound(String username) {
+    int index = Arrays.binarySearch(this.names, username);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  /**
+   * This public method is used to find end of a run of usernames starting with a prefix
+   *
+   * @param from represented as int, index of first username starting with prefix, or where it would be
+   * @param prefix represented as String
+   * @return represented as int, index after last username starting with prefix
+   */
+  public int prefixEnd(int from, String prefix) {
+    int low = from;
+    int high = this.names.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (this.names[middle].startsWith(prefix)) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * This public method is used to write already encoded entries of a range of usernames
+   *
+   * @param out represented as DataOutputStream
+   * @param from represented as int, index of first username
+   * @param to represented as int, index after last username
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in out
+   */
+  public void writeEntries(DataOutputStream out, int from, int to) throws IOException {
+    out.write(this.entries, this.offsets[from], this.offsets[to] - this.offsets[from]);
+  }
+}
@@ -0,0 +1,1063 @@
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ServerConfig class holds startup settings of ChatRoomServer. Every setting has a default and can be
+ * overridden from a system property, so the server can be tuned without changing command line arguments.
+ */
+public class ServerConfig {
+
+  /**
+   * System property prefix for all server settings
+   */
+  private static final String PROPERTY_PREFIX = "chatroom.";
+
+  private ServerMode mode;
+  private int eventLoopThreads;
+  private Executor handlerExecutor;
+  private int outboundQueueCapacity;
+  private SlowConsumerPolicy slowConsumerPolicy;
+  private long blockTimeoutMillis;
+  private boolean tcpNoDelay;
+  private int socketSendBufferBytes;
+  private int socketReceiveBufferBytes;
+  private int outputBufferBytes;
+  private long flushLingerMicros;
+  private int insultPoolSize;
+  private int insultPoolLowWaterMark;
+  private long bufferPoolRetainedBytes;
+  private boolean directReadBuffers;
+  private int maxClients;
+  private int registryShards;
+  private int maxRoomsPerClient;
+  private int rosterPageSize;
+  private long presenceBatchMillis;
+  private int historyEntries;
+  private int historyBytes;
+  private String logDirectory;
+  private int logSegmentBytes;
+  private int logRetentionSegments;
+  private long logFlushMillis;
+  private int logRecoverRecords;
+  private String mailboxDirectory;
+  private int mailboxMaxMessages;
+  private long mailboxMaxBytes;
+  private long mailboxMaxAgeMillis;
+  private int mailboxBatchMessages;
+  private long sessionResumeMillis;
+  private long idleTimeoutMillis;
+  private long reaperTickMillis;
+  private long shutdownDrainMillis;
+  private long metricsDumpMillis;
+  private Set<String> adminUsers;
+  private LogLevel logLevel;
+  private int logQueueCapacity;
+  private int logSampleRate;
+  private int maxProtocolVersion;
+
+  /**
+   * Constructor of ServerConfig with default settings
+   */
+  public ServerConfig() {
+    this.mode = ServerMode.THREAD;
+    this.eventLoopThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+    this.outboundQueueCapacity = 1024;
+    this.slowConsumerPolicy = SlowConsumerPolicy.DISCONNECT;
+    this.blockTimeoutMillis = 1000;
+    this.tcpNoDelay = true;
+    this.outputBufferBytes = 8192;
+    this.flushLingerMicros = 1000;
+    this.bufferPoolRetainedBytes = 4L << 20;
+    this.directReadBuffers = true;
+    this.maxClients = 10;
+    this.registryShards = 16;
+    this.maxRoomsPerClient = 100;
+    this.rosterPageSize = 100;
+    this.presenceBatchMillis = 50;
+    this.historyEntries = 256;
+    this.historyBytes = 64 << 10;
+    this.logSegmentBytes = 16 << 20;
+    this.logRetentionSegments = 8;
+    this.logFlushMillis = 10;
+    this.logRecoverRecords = 10000;
+    this.mailboxMaxMessages = 100;
+    this.mailboxMaxBytes = 1L << 20;
+    this.mailboxMaxAgeMillis = TimeUnit.DAYS.toMillis(7);
+    this.mailboxBatchMessages = 64;
+    this.reaperTickMillis = 100;
+    this.shutdownDrainMillis = 5000;
+    this.adminUsers = Set.of();
+    this.logLevel = LogLevel.INFO;
+    this.logQueueCapacity = 8192;
+    this.logSampleRate = 100;
+    this.maxProtocolVersion = WireFormat.VERSION_2;
+  }
+
+  /**
+   * This public static method is used to create config from default settings and chatroom.* system properties
+   *
+   * @return represented as ServerConfig
+   */
+  public static ServerConfig fromSystemProperties() {
+    ServerConfig config = new ServerConfig();
+    String mode = System.getProperty(PROPERTY_PREFIX + "mode");
+    if (mode != null) {
+      config.setMode(ServerMode.fromString(mode));
+    }
+    config.setEventLoopThreads(Integer.getInteger(PROPERTY_PREFIX + "eventLoops", config.getEventLoopThreads()));
+    config.setOutboundQueueCapacity(Integer.getInteger(PROPERTY_PREFIX + "outboundQueueCapacity", config.getOutboundQueueCapacity()));
+    String policy = System.getProperty(PROPERTY_PREFIX + "slowConsumerPolicy");
+    if (policy != null) {
+      config.setSlowConsumerPolicy(SlowConsumerPolicy.fromString(policy));
+    }
+    config.setBlockTimeoutMillis(Long.getLong(PROPERTY_PREFIX + "blockTimeoutMillis", config.getBlockTimeoutMillis()));
+    String tcpNoDelay = System.getProperty(PROPERTY_PREFIX + "tcpNoDelay");
+    if (tcpNoDelay != null) {
+      config.setTcpNoDelay(Boolean.parseBoolean(tcpNoDelay));
+    }
+    config.setSocketSendBufferBytes(Integer.getInteger(PROPERTY_PREFIX + "socketSendBufferBytes", config.getSocketSendBufferBytes()));
+    config.setSocketReceiveBufferBytes(Integer.getInteger(PROPERTY_PREFIX + "socketReceiveBufferBytes", config.getSocketReceiveBufferBytes()));
+    config.setOutputBufferBytes(Integer.getInteger(PROPERTY_PREFIX + "outputBufferBytes", config.getOutputBufferBytes()));
+    config.setFlushLingerMicros(Long.getLong(PROPERTY_PREFIX + "flushLingerMicros", config.getFlushLingerMicros()));
+    config.setInsultPoolSize(Integer.getInteger(PROPERTY_PREFIX + "insultPoolSize", config.getInsultPoolSize()));
+    config.setInsultPoolLowWaterMark(Integer.getInteger(PROPERTY_PREFIX + "insultPoolLowWaterMark", config.getInsultPoolLowWaterMark()));
+    config.setBufferPoolRetainedBytes(Long.getLong(PROPERTY_PREFIX + "bufferPoolRetainedBytes", config.getBufferPoolRetainedBytes()));
+    String directReadBuffers = System.getProperty(PROPERTY_PREFIX + "directReadBuffers");
+    if (directReadBuffers != null) {
+      config.setDirectReadBuffers(Boolean.parseBoolean(directReadBuffers));
+    }
+    config.setMaxClients(Integer.getInteger(PROPERTY_PREFIX + "maxClients", config.getMaxClients()));
+    config.setRegistryShards(Integer.getInteger(PROPERTY_PREFIX + "registryShards", config.getRegistryShards()));
+    config.setMaxRoomsPerClient(Integer.getInteger(PROPERTY_PREFIX + "maxRoomsPerClient", config.getMaxRoomsPerClient()));
+    config.setRosterPageSize(Integer.getInteger(PROPERTY_PREFIX + "rosterPageSize", config.getRosterPageSize()));
+    config.setPresenceBatchMillis(Long.getLong(PROPERTY_PREFIX + "presenceBatchMillis", config.getPresenceBatchMillis()));
+    config.setHistoryEntries(Integer.getInteger(PROPERTY_PREFIX + "historyEntries", config.getHistoryEntries()));
+    config.setHistoryBytes(Integer.getInteger(PROPERTY_PREFIX + "historyBytes", config.getHistoryBytes()));
+    config.setLogDirectory(System.getProperty(PROPERTY_PREFIX + "logDirectory", config.getLogDirectory()));
+    config.setLogSegmentBytes(Integer.getInteger(PROPERTY_PREFIX + "logSegmentBytes", config.getLogSegmentBytes()));
+    config.setLogRetentionSegments(Integer.getInteger(PROPERTY_PREFIX + "logRetentionSegments", config.getLogRetentionSegments()));
+    config.setLogFlushMillis(Long.getLong(PROPERTY_PREFIX + "logFlushMillis", config.getLogFlushMillis()));
+    config.setLogRecoverRecords(Integer.getInteger(PROPERTY_PREFIX + "logRecoverRecords", config.getLogRecoverRecords()));
+    config.setMailboxDirectory(System.getProperty(PROPERTY_PREFIX + "mailboxDirectory", config.getMailboxDirectory()));
+    config.setMailboxMaxMessages(Integer.getInteger(PROPERTY_PREFIX + "mailboxMaxMessages", config.getMailboxMaxMessages()));
+    config.setMailboxMaxBytes(Long.getLong(PROPERTY_PREFIX + "mailboxMaxBytes", config.getMailboxMaxBytes()));
+    config.setMailboxMaxAgeMillis(Long.getLong(PROPERTY_PREFIX + "mailboxMaxAgeMillis", config.getMailboxMaxAgeMillis()));
+    config.setMailboxBatchMessages(Integer.getInteger(PROPERTY_PREFIX + "mailboxBatchMessages", config.getMailboxBatchMessages()));
+    config.setSessionResumeMillis(Long.getLong(PROPERTY_PREFIX + "sessionResumeMillis", config.getSessionResumeMillis()));
+    config.setIdleTimeoutMillis(Long.getLong(PROPERTY_PREFIX + "idleTimeoutMillis", config.getIdleTimeoutMillis()));
+    config.setReaperTickMillis(Long.getLong(PROPERTY_PREFIX + "reaperTickMillis", config.getReaperTickMillis()));
+    config.setShutdownDrainMillis(Long.getLong(PROPERTY_PREFIX + "shutdownDrainMillis", config.getShutdownDrainMillis()));
+    config.setMetricsDumpMillis(Long.getLong(PROPERTY_PREFIX + "metricsDumpMillis", config.getMetricsDumpMillis()));
+    String adminUsers = System.getProperty(PROPERTY_PREFIX + "adminUsers");
+    if (adminUsers != null) {
+      config.setAdminUsers(adminUsers.isBlank() ? Set.of() : Set.copyOf(Arrays.asList(adminUsers.trim().split("\\s*,\\s*"))));
+    }
+    String logLevel = System.getProperty(PROPERTY_PREFIX + "logLevel");
+    if (logLevel != null) {
+      config.setLogLevel(LogLevel.fromString(logLevel));
+    }
+    config.setLogQueueCapacity(Integer.getInteger(PROPERTY_PREFIX + "logQueueCapacity", config.getLogQueueCapacity()));
+    config.setLogSampleRate(Integer.getInteger(PROPERTY_PREFIX + "logSampleRate", config.getLogSampleRate()));
+    config.setMaxProtocolVersion(Integer.getInteger(PROPERTY_PREFIX + "maxProtocolVersion", config.getMaxProtocolVersion()));
+    return config;
+  }
+
+  /**
+   * This getter method is used to get server mode
+   *
+   * @return represented as ServerMode
+   */
+  public ServerMode getMode() {
+    return this.mode;
+  }
+
+  /**
+   * This setter method is used to set server mode
+   *
+   * @param mode represented as ServerMode
+   */
+  public void setMode(ServerMode mode) {
+    this.mode = mode;
+  }
+
+  /**
+   * This getter method is used to get number of event loop threads used in NIO mode
+   *
+   * @return represented as int, number of event loop threads
+   */
+  public int getEventLoopThreads() {
+    return this.eventLoopThreads;
+  }
+
+  /**
+   * This setter method is used to set number of event loop threads used in NIO mode
+   *
+   * @param eventLoopThreads represented as int, should be greater than zero
+   */
+  public void setEventLoopThreads(int eventLoopThreads) {
+    if (eventLoopThreads < 1) {
+      throw new InvalidArgException("Event loop threads should be greater than zero!");
+    }
+    this.eventLoopThreads = eventLoopThreads;
+  }
+
+  /**
+   * This getter method is used to get executor that runs client handlers, null if server mode decides
+   *
+   * @return represented as Executor
+   */
+  public Executor getHandlerExecutor() {
+    return this.handlerExecutor;
+  }
+
+  /**
+   * This setter method is used to run every client handler as a task of provided executor instead of a new thread.
+   * Used in thread and virtual modes, ignored in nio mode.
+   *
+   * @param handlerExecutor represented as Executor, null to let server mode decide
+   */
+  public void setHandlerExecutor(Executor handlerExecutor) {
+    this.handlerExecutor = handlerExecutor;
+  }
+
+  /**
+   * This getter method is used to get maximum number of frames queued for one client
+   *
+   * @return represented as int
+   */
+  public int getOutboundQueueCapacity() {
+    return this.outboundQueueCapacity;
+  }
+
+  /**
+   * This setter method is used to set maximum number of frames queued for one client
+   *
+   * @param outboundQueueCapacity represented as int, should be greater than zero
+   */
+  public void setOutboundQueueCapacity(int outboundQueueCapacity) {
+    if (outboundQueueCapacity < 1) {
+      throw new InvalidArgException("Outbound queue capacity should be greater than zero!");
+    }
+    this.outboundQueueCapacity = outboundQueueCapacity;
+  }
+
+  /**
+   * This getter method is used to get what server does when outbound queue of a client is full
+   *
+   * @return represented as SlowConsumerPolicy
+   */
+  public SlowConsumerPolicy getSlowConsumerPolicy() {
+    return this.slowConsumerPolicy;
+  }
+
+  /**
+   * This setter method is used to set what server does when outbound queue of a client is full
+   *
+   * @param slowConsumerPolicy represented as SlowConsumerPolicy
+   */
+  public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+    this.slowConsumerPolicy = slowConsumerPolicy;
+  }
+
+  /**
+   * This getter method is used to get how long a sender waits for room with BLOCK policy. Only thread mode client
+   * threads wait; NIO event loops and shared background threads disconnect the slow client instead.
+   *
+   * @return represented as long, timeout in milliseconds
+   */
+  public long getBlockTimeoutMillis() {
+    return this.blockTimeoutMillis;
+  }
+
+  /**
+   * This setter method is used to set how long a sender waits for room with BLOCK policy
+   *
+   * @param blockTimeoutMillis represented as long, timeout in milliseconds
+   */
+  public void setBlockTimeoutMillis(long blockTimeoutMillis) {
+    if (blockTimeoutMillis < 0) {
+      throw new InvalidArgException("Block timeout should not be negative!");
+    }
+    this.blockTimeoutMillis = blockTimeoutMillis;
+  }
+
+  /**
+   * This getter method is used to check if Nagle's algorithm is disabled on client sockets
+   *
+   * @return represented as boolean, true if TCP_NODELAY is set
+   */
+  public boolean isTcpNoDelay() {
+    return this.tcpNoDelay;
+  }
+
+  /**
+   * This setter method is used to set TCP_NODELAY on client sockets. Writers already coalesce frames themselves,
+   * so by default Nagle's algorithm is disabled to avoid delaying the last packet of a batch.
+   *
+   * @param tcpNoDelay represented as boolean
+   */
+  public void setTcpNoDelay(boolean tcpNoDelay) {
+    this.tcpNoDelay = tcpNoDelay;
+  }
+
+  /**
+   * This getter method is used to get SO_SNDBUF of client sockets
+   *
+   * @return represented as int, size in bytes or zero for operating system default
+   */
+  public int getSocketSendBufferBytes() {
+    return this.socketSendBufferBytes;
+  }
+
+  /**
+   * This setter method is used to set SO_SNDBUF of client sockets
+   *
+   * @param socketSendBufferBytes represented as int, size in bytes or zero for operating system default
+   */
+  public void setSocketSendBufferBytes(int socketSendBufferBytes) {
+    if (socketSendBufferBytes < 0) {
+      throw new InvalidArgException("Socket send buffer should not be negative!");
+    }
+    this.socketSendBufferBytes = socketSendBufferBytes;
+  }
+
+  /**
+   * This getter method is used to get SO_RCVBUF of client sockets
+   *
+   * @return represented as int, size in bytes or zero for operating system default
+   */
+  public int getSocketReceiveBufferBytes() {
+    return this.socketReceiveBufferBytes;
+  }
+
+  /**
+   * This setter method is used to set SO_RCVBUF of client sockets
+   *
+   * @param socketReceiveBufferBytes represented as int, size in bytes or zero for operating system default
+   */
+  public void setSocketReceiveBufferBytes(int socketReceiveBufferBytes) {
+    if (socketReceiveBufferBytes < 0) {
+      throw new InvalidArgException("Socket receive buffer should not be negative!");
+    }
+    this.socketReceiveBufferBytes = socketReceiveBufferBytes;
+  }
+
+  /**
+   * This getter method is used to get size of buffer that coalesces frames before they are written to a socket
+   *
+   * @return represented as int, size in bytes
+   */
+  public int getOutputBufferBytes() {
+    return this.outputBufferBytes;
+  }
+
+  /**
+   * This setter method is used to set size of buffer that coalesces frames before they are written to a socket
+   *
+   * @param outputBufferBytes represented as int, should be greater than zero
+   */
+  public void setOutputBufferBytes(int outputBufferBytes) {
+    if (outputBufferBytes < 1) {
+      throw new InvalidArgException("Output buffer should be greater than zero!");
+    }
+    this.outputBufferBytes = outputBufferBytes;
+  }
+
+  /**
+   * This getter method is used to get longest time a written frame may wait in output buffer while more frames are queued
+   *
+   * @return represented as long, linger in microseconds
+   */
+  public long getFlushLingerMicros() {
+    return this.flushLingerMicros;
+  }
+
+  /**
+   * This setter method is used to set longest time a written frame may wait in output buffer while more frames are queued.
+   * Output is always flushed as soon as the queue is empty, zero flushes after every frame.
+   *
+   * @param flushLingerMicros represented as long, linger in microseconds
+   */
+  public void setFlushLingerMicros(long flushLingerMicros) {
+    if (flushLingerMicros < 0) {
+      throw new InvalidArgException("Flush linger should not be negative!");
+    }
+    this.flushLingerMicros = flushLingerMicros;
+  }
+
+  /**
+   * This getter method is used to get number of insults generated ahead of time
+   *
+   * @return represented as int, zero if insults are generated on request
+   */
+  public int getInsultPoolSize() {
+    return this.insultPoolSize;
+  }
+
+  /**
+   * This setter method is used to set number of insults generated ahead of time
+   *
+   * @param insultPoolSize represented as int, zero to generate insults on request
+   */
+  public void setInsultPoolSize(int insultPoolSize) {
+    if (insultPoolSize < 0) {
+      throw new InvalidArgException("Insult pool size should not be negative!");
+    }
+    this.insultPoolSize = insultPoolSize;
+  }
+
+  /**
+   * This getter method is used to get pool size at or below which insult pool is refilled
+   *
+   * @return represented as int
+   */
+  public int getInsultPoolLowWaterMark() {
+    return this.insultPoolLowWaterMark;
+  }
+
+  /**
+   * This setter method is used to set pool size at or below which insult pool is refilled
+   *
+   * @param insultPoolLowWaterMark represented as int, should be below insult pool size
+   */
+  public void setInsultPoolLowWaterMark(int insultPoolLowWaterMark) {
+    if (insultPoolLowWaterMark < 0) {
+      throw new InvalidArgException("Insult pool low water mark should not be negative!");
+    }
+    this.insultPoolLowWaterMark = insultPoolLowWaterMark;
+  }
+
+  /**
+   * This getter method is used to get number of free bytes each size class of a buffer pool keeps for reuse
+   *
+   * @return represented as long
+   */
+  public long getBufferPoolRetainedBytes() {
+    return this.bufferPoolRetainedBytes;
+  }
+
+  /**
+   * This setter method is used to set number of free bytes each size class of a buffer pool keeps for reuse
+   *
+   * @param bufferPoolRetainedBytes represented as long, zero keeps a single buffer per size class
+   */
+  public void setBufferPoolRetainedBytes(long bufferPoolRetainedBytes) {
+    if (bufferPoolRetainedBytes < 0) {
+      throw new InvalidArgException("Buffer pool retained bytes should not be negative!");
+    }
+    this.bufferPoolRetainedBytes = bufferPoolRetainedBytes;
+  }
+
+  /**
+   * This getter method is used to check if NIO clients read into direct buffers
+   *
+   * @return represented as boolean
+   */
+  public boolean isDirectReadBuffers() {
+    return this.directReadBuffers;
+  }
+
+  /**
+   * This setter method is used to set if NIO clients read into direct buffers instead of heap buffers
+   *
+   * @param directReadBuffers represented as boolean
+   */
+  public void setDirectReadBuffers(boolean directReadBuffers) {
+    this.directReadBuffers = directReadBuffers;
+  }
+
+  /**
+   * This getter method is used to get maximum number of clients logged in at one time
+   *
+   * @return represented as int
+   */
+  public int getMaxClients() {
+    return this.maxClients;
+  }
+
+  /**
+   * This setter method is used to set maximum number of clients logged in at one time
+   *
+   * @param maxClients represented as int, should be greater than zero
+   */
+  public void setMaxClients(int maxClients) {
+    if (maxClients < 1) {
+      throw new InvalidArgException("Max clients should be greater than zero!");
+    }
+    this.maxClients = maxClients;
+  }
+
+  /**
+   * This getter method is used to get number of shards of client registry
+   *
+   * @return represented as int
+   */
+  public int getRegistryShards() {
+    return this.registryShards;
+  }
+
+  /**
+   * This setter method is used to set number of shards of client registry
+   *
+   * @param registryShards represented as int, should be greater than zero, rounded up to a power of two
+   */
+  public void setRegistryShards(int registryShards) {
+    if (registryShards < 1) {
+      throw new InvalidArgException("Registry shards should be greater than zero!");
+    }
+    this.registryShards = registryShards;
+  }
+
+  /**
+   * This getter method is used to get number of rooms one client can be in at one time
+   *
+   * @return represented as int
+   */
+  public int getMaxRoomsPerClient() {
+    return this.maxRoomsPerClient;
+  }
+
+  /**
+   * This setter method is used to set number of rooms one client can be in at one time
+   *
+   * @param maxRoomsPerClient represented as int, should be greater than zero
+   */
+  public void setMaxRoomsPerClient(int maxRoomsPerClient) {
+    if (maxRoomsPerClient < 1) {
+      throw new InvalidArgException("Max rooms per client should be greater than zero!");
+    }
+    this.maxRoomsPerClient = maxRoomsPerClient;
+  }
+
+  /**
+   * This getter method is used to get most usernames sent in one page of QUERY_USERS_PAGE_RESPONSE
+   *
+   * @return represented as int
+   */
+  public int getRosterPageSize() {
+    return this.rosterPageSize;
+  }
+
+  /**
+   * This setter method is used to set most usernames sent in one page of QUERY_USERS_PAGE_RESPONSE
+   *
+   * @param rosterPageSize represented as int, should be greater than zero
+   */
+  public void setRosterPageSize(int rosterPageSize) {
+    if (rosterPageSize < 1) {
+      throw new InvalidArgException("Roster page size should be greater than zero!");
+    }
+    this.rosterPageSize = rosterPageSize;
+  }
+
+  /**
+   * This getter method is used to get how long presence changes are collected before one delta is published
+   *
+   * @return represented as long, milliseconds
+   */
+  public long getPresenceBatchMillis() {
+    return this.presenceBatchMillis;
+  }
+
+  /**
+   * This setter method is used to set how long presence changes are collected before one delta is published
+   *
+   * @param presenceBatchMillis represented as long, milliseconds, zero publishes right away
+   */
+  public void setPresenceBatchMillis(long presenceBatchMillis) {
+    if (presenceBatchMillis < 0) {
+      throw new InvalidArgException("Presence batch millis should not be negative!");
+    }
+    this.presenceBatchMillis = presenceBatchMillis;
+  }
+
+  /**
+   * This getter method is used to get most messages kept in history of the lobby and of each room
+   *
+   * @return represented as int
+   */
+  public int getHistoryEntries() {
+    return this.historyEntries;
+  }
+
+  /**
+   * This setter method is used to set most messages kept in history of the lobby and of each room. Each entry takes
+   * 16 bytes of heap once a history has grown to hold that many messages.
+   *
+   * @param historyEntries represented as int, should be greater than zero
+   */
+  public void setHistoryEntries(int historyEntries) {
+    if (historyEntries < 1) {
+      throw new InvalidArgException("History entries should be greater than zero!");
+    }
+    this.historyEntries = historyEntries;
+  }
+
+  /**
+   * This getter method is used to get size of off-heap ring holding history of the lobby and of each room
+   *
+   * @return represented as int, bytes
+   */
+  public int getHistoryBytes() {
+    return this.historyBytes;
+  }
+
+  /**
+   * This setter method is used to set size of off-heap ring holding history of the lobby and of each room.
+   * Messages larger than the ring are delivered but not kept. A ring starts at 1 KiB and doubles up to this size as
+   * messages are stored, so the off-heap memory of history is at most this size times the number of rooms written in,
+   * plus one for the lobby.
+   *
+   * @param historyBytes represented as int, bytes, should be greater than zero
+   */
+  public void setHistoryBytes(int historyBytes) {
+    if (historyBytes < 1) {
+      throw new InvalidArgException("History bytes should be greater than zero!");
+    }
+    this.historyBytes = historyBytes;
+  }
+
+  /**
+   * This getter method is used to get directory of durable message log
+   *
+   * @return represented as String, null if messages are not logged
+   */
+  public String getLogDirectory() {
+    return this.logDirectory;
+  }
+
+  /**
+   * This setter method is used to set directory of durable message log
+   *
+   * @param logDirectory represented as String, null or empty to not log messages
+   */
+  public void setLogDirectory(String logDirectory) {
+    this.logDirectory = logDirectory == null || logDirectory.isBlank() ? null : logDirectory;
+  }
+
+  /**
+   * This getter method is used to get size of each memory-mapped message log segment
+   *
+   * @return represented as int, bytes
+   */
+  public int getLogSegmentBytes() {
+    return this.logSegmentBytes;
+  }
+
+  /**
+   * This setter method is used to set size of each memory-mapped message log segment.
+   * A segment must fit the largest message history keeps.
+   *
+   * @param logSegmentBytes represented as int, bytes, at least 64 KiB
+   */
+  public void setLogSegmentBytes(int logSegmentBytes) {
+    if (logSegmentBytes < 64 << 10) {
+      throw new InvalidArgException("Log segment bytes should be at least 64 KiB!");
+    }
+    this.logSegmentBytes = logSegmentBytes;
+  }
+
+  /**
+   * This getter method is used to get most message log segments kept on disk
+   *
+   * @return represented as int
+   */
+  public int getLogRetentionSegments() {
+    return this.logRetentionSegments;
+  }
+
+  /**
+   * This setter method is used to set most message log segments kept on disk, oldest are deleted first
+   *
+   * @param logRetentionSegments represented as int, should be greater than zero
+   */
+  public void setLogRetentionSegments(int logRetentionSegments) {
+    if (logRetentionSegments < 1) {
+      throw new InvalidArgException("Log retention segments should be greater than zero!");
+    }
+    this.logRetentionSegments = logRetentionSegments;
+  }
+
+  /**
+   * This getter method is used to get how often logged messages are forced to disk together
+   *
+   * @return represented as long, milliseconds
+   */
+  public long getLogFlushMillis() {
+    return this.logFlushMillis;
+  }
+
+  /**
+   * This setter method is used to set how often logged messages are forced to disk together
+   *
+   * @param logFlushMillis represented as long, milliseconds, zero forces every message before it is sent
+   */
+  public void setLogFlushMillis(long logFlushMillis) {
+    if (logFlushMillis < 0) {
+      throw new InvalidArgException("Log flush millis should not be negative!");
+    }
+    this.logFlushMillis = logFlushMillis;
+  }
+
+  /**
+   * This getter method is used to get number of newest logged messages read back into history at startup
+   *
+   * @return represented as int
+   */
+  public int getLogRecoverRecords() {
+    return this.logRecoverRecords;
+  }
+
+  /**
+   * This setter method is used to set number of newest logged messages read back into history at startup
+   *
+   * @param logRecoverRecords represented as int, zero starts with empty history
+   */
+  public void setLogRecoverRecords(int logRecoverRecords) {
+    if (logRecoverRecords < 0) {
+      throw new InvalidArgException("Log recover records should not be negative!");
+    }
+    this.logRecoverRecords = logRecoverRecords;
+  }
+
+  /**
+   * This getter method is used to get directory of offline mailboxes
+   *
+   * @return represented as String, null if direct messages to offline users are not kept
+   */
+  public String getMailboxDirectory() {
+    return this.mailboxDirectory;
+  }
+
+  /**
+   * This setter method is used to set directory of offline mailboxes
+   *
+   * @param mailboxDirectory represented as String, null or empty to not keep direct messages to offline users
+   */
+  public void setMailboxDirectory(String mailboxDirectory) {
+    this.mailboxDirectory = mailboxDirectory == null || mailboxDirectory.isBlank() ? null : mailboxDirectory;
+  }
+
+  /**
+   * This getter method is used to get most messages kept in a mailbox
+   *
+   * @return represented as int
+   */
+  public int getMailboxMaxMessages() {
+    return this.mailboxMaxMessages;
+  }
+
+  /**
+   * This setter method is used to set most messages kept in a mailbox
+   *
+   * @param mailboxMaxMessages represented as int, should be greater than zero
+   */
+  public void setMailboxMaxMessages(int mailboxMaxMessages) {
+    if (mailboxMaxMessages < 1) {
+      throw new InvalidArgException("Mailbox max messages should be greater than zero!");
+    }
+    this.mailboxMaxMessages = mailboxMaxMessages;
+  }
+
+  /**
+   * This getter method is used to get most bytes kept in a mailbox
+   *
+   * @return represented as long
+   */
+  public long getMailboxMaxBytes() {
+    return this.mailboxMaxBytes;
+  }
+
+  /**
+   * This setter method is used to set most bytes kept in a mailbox
+   *
+   * @param mailboxMaxBytes represented as long, should be greater than zero
+   */
+  public void setMailboxMaxBytes(long mailboxMaxBytes) {
+    if (mailboxMaxBytes < 1) {
+      throw new InvalidArgException("Mailbox max bytes should be greater than zero!");
+    }
+    this.mailboxMaxBytes = mailboxMaxBytes;
+  }
+
+  /**
+   * This getter method is used to get age after which mailbox messages are dropped
+   *
+   * @return represented as long, milliseconds
+   */
+  public long getMailboxMaxAgeMillis() {
+    return this.mailboxMaxAgeMillis;
+  }
+
+  /**
+   * This setter method is used to set age after which mailbox messages are dropped
+   *
+   * @param mailboxMaxAgeMillis represented as long, milliseconds, should be greater than zero
+   */
+  public void setMailboxMaxAgeMillis(long mailboxMaxAgeMillis) {
+    if (mailboxMaxAgeMillis < 1) {
+      throw new InvalidArgException("Mailbox max age millis should be greater than zero!");
+    }
+    this.mailboxMaxAgeMillis = mailboxMaxAgeMillis;
+  }
+
+  /**
+   * This getter method is used to get most mailbox messages queued to a client at once
+   *
+   * @return represented as int
+   */
+  public int getMailboxBatchMessages() {
+    return this.mailboxBatchMessages;
+  }
+
+  /**
+   * This setter method is used to set most mailbox messages queued to a client at once
+   *
+   * @param mailboxBatchMessages represented as int, should be greater than zero
+   */
+  public void setMailboxBatchMessages(int mailboxBatchMessages) {
+    if (mailboxBatchMessages < 1) {
+      throw new InvalidArgException("Mailbox batch messages should be greater than zero!");
+    }
+    this.mailboxBatchMessages = mailboxBatchMessages;
+  }
+
+  /**
+   * This getter method is used to get how long a session is kept after its connection is lost
+   *
+   * @return represented as long, milliseconds, zero if sessions cannot be resumed
+   */
+  public long getSessionResumeMillis() {
+    return this.sessionResumeMillis;
+  }
+
+  /**
+   * This setter method is used to set how long a session is kept after its connection is lost
+   *
+   * @param sessionResumeMillis represented as long, milliseconds, zero to not hand out session tokens
+   */
+  public void setSessionResumeMillis(long sessionResumeMillis) {
+    if (sessionResumeMillis < 0) {
+      throw new InvalidArgException("Session resume millis should not be negative!");
+    }
+    this.sessionResumeMillis = sessionResumeMillis;
+  }
+
+  /**
+   * This getter method is used to get how long a connection can stay silent before it is closed
+   *
+   * @return represented as long, milliseconds, zero if idle connections are never closed
+   */
+  public long getIdleTimeoutMillis() {
+    return this.idleTimeoutMillis;
+  }
+
+  /**
+   * This setter method is used to set how long a connection can stay silent before it is closed, it gets a PING halfway
+   *
+   * @param idleTimeoutMillis represented as long, milliseconds, zero to never close idle connections
+   */
+  public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+    if (idleTimeoutMillis < 0) {
+      throw new InvalidArgException("Idle timeout millis should not be negative!");
+    }
+    this.idleTimeoutMillis = idleTimeoutMillis;
+  }
+
+  /**
+   * This getter method is used to get how often the idle connection reaper turns its timer wheel
+   *
+   * @return represented as long, milliseconds
+   */
+  public long getReaperTickMillis() {
+    return this.reaperTickMillis;
+  }
+
+  /**
+   * This setter method is used to set how often the idle connection reaper turns its timer wheel
+   *
+   * @param reaperTickMillis represented as long, milliseconds, should be greater than zero
+   */
+  public void setReaperTickMillis(long reaperTickMillis) {
+    if (reaperTickMillis < 1) {
+      throw new InvalidArgException("Reaper tick millis should be greater than zero!");
+    }
+    this.reaperTickMillis = reaperTickMillis;
+  }
+
+  /**
+   * This getter method is used to get how long a stopping server waits for clients to receive their queued frames
+   *
+   * @return represented as long, milliseconds
+   */
+  public long getShutdownDrainMillis() {
+    return this.shutdownDrainMillis;
+  }
+
+  /**
+   * This setter method is used to set how long a stopping server waits for clients to receive their queued frames
+   *
+   * @param shutdownDrainMillis represented as long, milliseconds, zero to close clients right away
+   */
+  public void setShutdownDrainMillis(long shutdownDrainMillis) {
+    if (shutdownDrainMillis < 0) {
+      throw new InvalidArgException("Shutdown drain millis should not be negative!");
+    }
+    this.shutdownDrainMillis = shutdownDrainMillis;
+  }
+
+  /**
+   * This getter method is used to get how often a metrics snapshot is written to the server log
+   *
+   * @return represented as long, milliseconds, zero if snapshots are only sent to admin queries
+   */
+  public long getMetricsDumpMillis() {
+    return this.metricsDumpMillis;
+  }
+
+  /**
+   * This setter method is used to set how often a metrics snapshot is written to the server log
+   *
+   * @param metricsDumpMillis represented as long, milliseconds, zero to never write snapshots
+   */
+  public void setMetricsDumpMillis(long metricsDumpMillis) {
+    if (metricsDumpMillis < 0) {
+      throw new InvalidArgException("Metrics dump millis should not be negative!");
+    }
+    this.metricsDumpMillis = metricsDumpMillis;
+  }
+
+  /**
+   * This getter method is used to get users allowed to query server metrics
+   *
+   * @return represented as Set of String, empty if nobody may query metrics
+   */
+  public Set<String> getAdminUsers() {
+    return this.adminUsers;
+  }
+
+  /**
+   * This setter method is used to set users allowed to query server metrics
+   *
+   * @param adminUsers represented as Set of String, should not be null
+   */
+  public void setAdminUsers(Set<String> adminUsers) {
+    if (adminUsers == null) {
+      throw new InvalidArgException("Admin users should not be null!");
+    }
+    this.adminUsers = Set.copyOf(adminUsers);
+  }
+
+  /**
+   * This getter method is used to get least important level of server log events that are written
+   *
+   * @return represented as LogLevel
+   */
+  public LogLevel getLogLevel() {
+    return this.logLevel;
+  }
+
+  /**
+   * This setter method is used to set least important level of server log events that are written
+   *
+   * @param logLevel represented as LogLevel, should not be null
+   */
+  public void setLogLevel(LogLevel logLevel) {
+    if (logLevel == null) {
+      throw new InvalidArgException("Log level should not be null!");
+    }
+    this.logLevel = logLevel;
+  }
+
+  /**
+   * This getter method is used to get how many server log events can wait for the log writer
+   *
+   * @return represented as int
+   */
+  public int getLogQueueCapacity() {
+    return this.logQueueCapacity;
+  }
+
+  /**
+   * This setter method is used to set how many server log events can wait for the log writer, more are dropped
+   *
+   * @param logQueueCapacity represented as int, should be greater than zero
+   */
+  public void setLogQueueCapacity(int logQueueCapacity) {
+    if (logQueueCapacity < 1) {
+      throw new InvalidArgException("Log queue capacity should be greater than zero!");
+    }
+    this.logQueueCapacity = logQueueCapacity;
+  }
+
+  /**
+   * This getter method is used to get how many per frame DEBUG events give one written event
+   *
+   * @return represented as int
+   */
+  public int getLogSampleRate() {
+    return this.logSampleRate;
+  }
+
+  /**
+   * This setter method is used to set how many per frame DEBUG events give one written event
+   *
+   * @param logSampleRate represented as int, one to write every event, should be greater than zero
+   */
+  public void setLogSampleRate(int logSampleRate) {
+    if (logSampleRate < 1) {
+      throw new InvalidArgException("Log sample rate should be greater than zero!");
+    }
+    this.logSampleRate = logSampleRate;
+  }
+
+  /**
+   * This getter method is used to get newest protocol version a client can negotiate for the frames it sends
+   *
+   * @return represented as int
+   */
+  public int getMaxProtocolVersion() {
+    return this.maxProtocolVersion;
+  }
+
+  /**
+   * This setter method is used to set newest protocol version a client can negotiate for the frames it sends
+   *
+   * @param maxProtocolVersion represented as int, 1 to keep every client on version 1, or 2
+   */
+  public void setMaxProtocolVersion(int maxProtocolVersion) {
+    if (maxProtocolVersion < WireFormat.VERSION_1 || maxProtocolVersion > WireFormat.VERSION_2) {
+      throw new InvalidArgException("Max protocol version should be 1 or 2!");
+    }
+    this.maxProtocolVersion = maxProtocolVersion;
+  }
+
+  /**
+   * This public method is used to apply socket options of these settings to an accepted client socket
+   *
+   * @param socket represented as Socket, accepted client socket
+   * @throws SocketException if an option cannot be set
+   */
+  public void configure(Socket socket) throws SocketException {
+    socket.setTcpNoDelay(this.tcpNoDelay);
+    if (this.socketSendBufferBytes > 0) {
+      socket.setSendBufferSize(this.socketSendBufferBytes);
+    }
+    if (this.socketReceiveBufferBytes > 0) {
+      socket.setReceiveBufferSize(this.socketReceiveBufferBytes);
+    }
+  }
+
+  /**
+   * This public method is used to create an empty outbound queue with these settings
+   *
+   * @return represented as OutboundQueue
+   */
+  public OutboundQueue newOutboundQueue() {
+    return new OutboundQueue(this.outboundQueueCapacity, this.slowConsumerPolicy, this.blockTimeoutMillis);
+  }
+}
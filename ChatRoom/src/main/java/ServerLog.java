@@ -0,0 +1,310 @@
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ServerLog class writes server events to a stream from one background thread, so a client thread that logs never
+ * formats text or waits for the lock of the stream. An event is a level, a name and key value fields; the caller only
+ * links it into a bounded lock-free queue, reserving a slot with compare and set like OutboundQueue does. When the queue
+ * is full the event is dropped and counted, and the writer reports how many were dropped. Events below the configured
+ * level cost one comparison, and per frame DEBUG events are sampled so they can stay on under load.
+ * Lines look like: 2026-01-01T10:00:00.123Z INFO main server.started port=12345 mode=thread
+ */
+public class ServerLog {
+
+  /**
+   * How long the writer parks when the queue is empty
+   */
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+  /**
+   * Most events formatted before they are printed in one call
+   */
+  private static final int MAX_BATCH = 512;
+  private final Queue<Entry> entries;
+  private final AtomicInteger size;
+  private final int capacity;
+  private final LogLevel level;
+  private final int sampleRate;
+  private final PrintStream out;
+  private final LongAdder written;
+  private final LongAdder dropped;
+  private final Thread writer;
+  private volatile boolean running;
+
+  /**
+   * Number of dropped events already reported, only the writer uses it
+   */
+  private long reportedDrops;
+
+  /**
+   * Constructor of ServerLog, starts its writer thread
+   *
+   * @param level represented as LogLevel, least important level written
+   * @param capacity represented as int, most events waiting for the writer, should be greater than zero
+   * @param sampleRate represented as int, one in this many sampled DEBUG events is written, should be greater than zero
+   * @param out represented as PrintStream, stream lines are written to
+   */
+  public ServerLog(LogLevel level, int capacity, int sampleRate, PrintStream out) {
+    if (level == null || out == null) {
+      throw new InvalidArgException("Log level and stream should not be null!");
+    }
+    if (capacity < 1 || sampleRate < 1) {
+      throw new InvalidArgException("Log capacity and sample rate should be greater than zero!");
+    }
+    this.entries = new ConcurrentLinkedQueue<>();
+    this.size = new AtomicInteger();
+    this.capacity = capacity;
+    this.level = level;
+    this.sampleRate = sampleRate;
+    this.out = out;
+    this.written = new LongAdder();
+    this.dropped = new LongAdder();
+    this.running = true;
+    this.writer = new Thread(this::drain, "chatroom-logger");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * This public method is used to check if events of a level are written
+   *
+   * @param level represented as LogLevel
+   * @return represented as boolean
+   */
+  public boolean isEnabled(LogLevel level) {
+    return level.compareTo(this.level) >= 0;
+  }
+
+  /**
+   * This public method is used before a per frame DEBUG event, to write only one in sample rate of them
+   *
+   * @return represented as boolean, true if the DEBUG event should be logged
+   */
+  public boolean sampleDebug() {
+    return this.isEnabled(LogLevel.DEBUG)
+        && (this.sampleRate == 1 || ThreadLocalRandom.current().nextInt(this.sampleRate) == 0);
+  }
+
+  /**
+   * This public method is used to log a DEBUG event
+   *
+   * @param event represented as String, name of event
+   * @param fields represented as array of Object, alternating keys and values
+   */
+  public void debug(String event, Object... fields) {
+    this.log(LogLevel.DEBUG, event, fields);
+  }
+
+  /**
+   * This public method is used to log an INFO event
+   *
+   * @param event represented as String, name of event
+   * @param fields represented as array of Object, alternating keys and values
+   */
+  public void info(String event, Object... fields) {
+    this.log(LogLevel.INFO, event, fields);
+  }
+
+  /**
+   * This public method is used to log a WARN event
+   *
+   * @param event represented as String, name of event
+   * @param fields represented as array of Object, alternating keys and values
+   */
+  public void warn(String event, Object... fields) {
+    this.log(LogLevel.WARN, event, fields);
+  }
+
+  /**
+   * This public method is used to log an ERROR event
+   *
+   * @param event represented as String, name of event
+   * @param fields represented as array of Object, alternating keys and values
+   */
+  public void error(String event, Object... fields) {
+    this.log(LogLevel.ERROR, event, fields);
+  }
+
+  /**
+   * This public method is used to hand an event to the writer, can be called from any thread. Values are turned into
+   * text by the writer later, so they should not change after the call.
+   *
+   * @param level represented as LogLevel, level of event
+   * @param event represented as String, name of event
+   * @param fields represented as array of Object, alternating keys and values
+   */
+  public void log(LogLevel level, String event, Object... fields) {
+    if (!this.isEnabled(level)) {
+      return;
+    }
+    if (fields.length % 2 != 0) {
+      throw new InvalidArgException("Log fields should be pairs of key and value!");
+    }
+    if (!this.running || !this.tryReserve()) {
+      this.dropped.increment();
+      return;
+    }
+    this.entries.add(new Entry(System.currentTimeMillis(), level, Thread.currentThread().getName(), event, fields));
+  }
+
+  /**
+   * This public method is used to get number of events written
+   *
+   * @return represented as long
+   */
+  public long getWritten() {
+    return this.written.sum();
+  }
+
+  /**
+   * This public method is used to get number of events dropped because the queue was full or the log was closed
+   *
+   * @return represented as long
+   */
+  public long getDropped() {
+    return this.dropped.sum();
+  }
+
+  /**
+   * This public method is used to stop the writer once it has written every queued event, later events are dropped
+   *
+   * @param timeoutMillis represented as long, longest time to wait for the writer
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void close(long timeoutMillis) throws InterruptedException {
+    this.running = false;
+    LockSupport.unpark(this.writer);
+    this.writer.join(timeoutMillis);
+  }
+
+  /**
+   * This private method is used to take a slot of the queue
+   *
+   * @return represented as boolean, false if queue is full
+   */
+  private boolean tryReserve() {
+    int current;
+    do {
+      current = this.size.get();
+      if (current >= this.capacity) {
+        return false;
+      }
+    } while (!this.size.compareAndSet(current, current + 1));
+    return true;
+  }
+
+  /**
+   * This private method is run by the writer thread, it prints queued events in batches until the log is closed
+   */
+  private void drain() {
+    StringBuilder sb = new StringBuilder();
+    boolean stopping;
+    do {
+      stopping = !this.running; // read first, so events queued before close are still written
+      int batch = 0;
+      Entry entry;
+      while (batch < MAX_BATCH && (entry = this.entries.poll()) != null) {
+        this.size.decrementAndGet();
+        entry.appendTo(sb);
+        batch++;
+      }
+      long drops = this.dropped.sum();
+      if (drops > this.reportedDrops) {
+        new Entry(System.currentTimeMillis(), LogLevel.WARN, this.writer.getName(), "log.dropped",
+            new Object[] {"count", drops - this.reportedDrops, "total", drops}).appendTo(sb);
+        this.reportedDrops = drops;
+      }
+      if (sb.length() > 0) {
+        this.out.print(sb);
+        this.out.flush();
+        this.written.add(batch);
+        sb.setLength(0);
+      }
+      if (batch < MAX_BATCH && !stopping) {
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+      }
+    } while (!stopping || !this.entries.isEmpty());
+  }
+
+  /**
+   * Entry class is one event waiting for the writer
+   */
+  private static final class Entry {
+    private final long timeMillis;
+    private final LogLevel level;
+    private final String thread;
+    private final String event;
+    private final Object[] fields;
+
+    /**
+     * Constructor of Entry
+     *
+     * @param timeMillis represented as long, when event happened
+     * @param level represented as LogLevel
+     * @param thread represented as String, name of thread that logged event
+     * @param event represented as String, name of event
+     * @param fields represented as array of Object, alternating keys and values
+     */
+    private Entry(long timeMillis, LogLevel level, String thread, String event, Object[] fields) {
+      this.timeMillis = timeMillis;
+      this.level = level;
+      this.thread = thread;
+      this.event = event;
+      this.fields = fields;
+    }
+
+    /**
+     * This private method is used to format this event as one line
+     *
+     * @param sb represented as StringBuilder, line is appended to it
+     */
+    private void appendTo(StringBuilder sb) {
+      sb.append(Instant.ofEpochMilli(this.timeMillis)).append(' ').append(this.level).append(' ')
+          .append(this.thread).append(' ').append(this.event);
+      for (int i = 0; i < this.fields.length; i += 2) {
+        sb.append(' ').append(this.fields[i]).append('=');
+        appendValue(sb, String.valueOf(this.fields[i + 1]));
+      }
+      sb.append(System.lineSeparator());
+    }
+
+    /**
+     * This private static method is used to append a value, quoted and escaped if it is empty or has spaces, quotes,
+     * equal signs or control characters
+     *
+     * @param sb represented as StringBuilder
+     * @param value represented as String
+     */
+    private static void appendValue(StringBuilder sb, String value) {
+      boolean quote = value.isEmpty();
+      for (int i = 0; i < value.length() && !quote; i++) {
+        char c = value.charAt(i);
+        quote = c <= ' ' || c == '"' || c == '=';
+      }
+      if (!quote) {
+        sb.append(value);
+        return;
+      }
+      sb.append('"');
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        switch (c) {
+          case '"' -> sb.append("\\\"");
+          case '\\' -> sb.append("\\\\");
+          case '\n' -> sb.append("\\n");
+          case '\r' -> sb.append("\\r");
+          case '\t' -> sb.append("\\t");
+          default -> sb.append(c);
+        }
+      }
+      sb.append('"');
+    }
+  }
+}
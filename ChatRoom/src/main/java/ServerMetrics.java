@@ -0,0 +1,258 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ServerMetrics class counts what the server does, per message identifier: frames read from clients, how long
+ * ChatRoomProtocol took to process them, and frames written to clients. Counters are striped LongAdders and latency
+ * histograms are created the first time a message identifier is seen, so recording from many client threads costs a
+ * few uncontended additions and never takes a lock or prints anything. Gauges such as connected users and outbound
+ * queue depth are not recorded at all; they are read from the server when a snapshot is taken.
+ */
+public class ServerMetrics {
+
+  /**
+   * Number of counter slots, message identifiers from 1 up to SLOTS - 1 have their own, any other one is counted in slot 0
+   */
+  static final int SLOTS = 64;
+
+  /**
+   * Names of message identifiers by slot, from the constants of MessageIdentifier
+   */
+  private static final String[] NAMES = names();
+  private static final long NANOS_PER_MICRO = 1000;
+  private final LongAdder[] framesIn;
+  private final LongAdder[] framesOut;
+  private final AtomicReferenceArray<LatencyHistogram> latencies;
+  private final LongAdder failedRequests;
+  private final LongAdder slowConsumers;
+  private final long startNanos;
+  private ScheduledExecutorService dumper;
+
+  /**
+   * Constructor of ServerMetrics with all counters at zero
+   */
+  public ServerMetrics() {
+    this.framesIn = new LongAdder[SLOTS];
+    this.framesOut = new LongAdder[SLOTS];
+    for (int i = 0; i < SLOTS; i++) {
+      this.framesIn[i] = new LongAdder();
+      this.framesOut[i] = new LongAdder();
+    }
+    this.latencies = new AtomicReferenceArray<>(SLOTS);
+    this.failedRequests = new LongAdder();
+    this.slowConsumers = new LongAdder();
+    this.startNanos = System.nanoTime();
+  }
+
+  /**
+   * This public method is used to record one frame read from a client and processed
+   *
+   * @param messageIdentifier represented as int, message identifier of frame
+   * @param nanos represented as long, time taken to process frame in nanoseconds
+   */
+  public void recordRequest(int messageIdentifier, long nanos) {
+    int slot = slot(messageIdentifier);
+    this.framesIn[slot].increment();
+    LatencyHistogram latency = this.latencies.get(slot);
+    if (latency == null) {
+      this.latencies.compareAndSet(slot, null, new LatencyHistogram());
+      latency = this.latencies.get(slot);
+    }
+    latency.record(nanos);
+  }
+
+  /**
+   * This public method is used to record one frame whose processing failed, such as a malformed or unknown frame
+   */
+  public void recordFailedRequest() {
+    this.failedRequests.increment();
+  }
+
+  /**
+   * This public method is used to record one frame handed to a client socket
+   *
+   * @param frame represented as Frame, written frame
+   */
+  public void recordFrameOut(Frame frame) {
+    this.framesOut[slot(frame.messageIdentifier())].increment();
+  }
+
+  /**
+   * This public method is used to record one client closed because its outbound queue was full
+   */
+  public void recordSlowConsumer() {
+    this.slowConsumers.increment();
+  }
+
+  /**
+   * This public method is used to get number of frames read from clients with a message identifier
+   *
+   * @param messageIdentifier represented as int
+   * @return represented as long
+   */
+  public long getFramesIn(int messageIdentifier) {
+    return this.framesIn[slot(messageIdentifier)].sum();
+  }
+
+  /**
+   * This public method is used to get number of frames written to clients with a message identifier
+   *
+   * @param messageIdentifier represented as int
+   * @return represented as long
+   */
+  public long getFramesOut(int messageIdentifier) {
+    return this.framesOut[slot(messageIdentifier)].sum();
+  }
+
+  /**
+   * This public method is used to get processing latencies of frames with a message identifier
+   *
+   * @param messageIdentifier represented as int
+   * @return represented as LatencyHistogram, in nanoseconds, null if no such frame was processed
+   */
+  public LatencyHistogram getLatency(int messageIdentifier) {
+    return this.latencies.get(slot(messageIdentifier));
+  }
+
+  /**
+   * This public method is used to get number of frames whose processing failed
+   *
+   * @return represented as long
+   */
+  public long getFailedRequests() {
+    return this.failedRequests.sum();
+  }
+
+  /**
+   * This public method is used to get number of clients closed because their outbound queue was full
+   *
+   * @return represented as long
+   */
+  public long getSlowConsumers() {
+    return this.slowConsumers.sum();
+  }
+
+  /**
+   * This public method is used to take a snapshot of these counters and of the gauges of a server, one line per group
+   * and one line per message identifier seen. Latencies are in microseconds.
+   *
+   * @param server represented as ChatRoomServer, server the gauges are read from
+   * @return represented as String
+   */
+  public String snapshot(ChatRoomServer server) {
+    int queuedFrames = 0;
+    int maxQueuedFrames = 0;
+    for (ClientConnection connection : server.getConnections()) {
+      int queued = connection.queuedFrames();
+      queuedFrames += queued;
+      maxQueuedFrames = Math.max(maxQueuedFrames, queued);
+    }
+    ConnectionReaper reaper = server.getReaper();
+    StringBuilder sb = new StringBuilder();
+    sb.append("uptimeSeconds=").append(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - this.startNanos)).append('\n');
+    sb.append("gauges: connections=").append(server.connectionCount())
+        .append(", users=").append(server.clientCount())
+        .append(", rooms=").append(server.getRooms().size())
+        .append(", queuedFrames=").append(queuedFrames)
+        .append(", maxQueuedFrames=").append(maxQueuedFrames).append('\n');
+    sb.append("failures: failedRequests=").append(this.getFailedRequests())
+        .append(", failedMessages=").append(this.getFramesOut(MessageIdentifier.FAILED_MESSAGE))
+        .append(", slowConsumers=").append(this.getSlowConsumers())
+        .append(", idleEvictions=").append(reaper == null ? 0 : reaper.getEvictions()).append('\n');
+    sb.append("writes: ").append(server.getWriteStats()).append('\n');
+    sb.append("fanout: ").append(server.getFanoutStats()).append('\n');
+    sb.append("log: written=").append(server.getLog().getWritten())
+        .append(", dropped=").append(server.getLog().getDropped()).append('\n');
+    for (int i = 0; i < SLOTS; i++) {
+      LatencyHistogram latency = this.latencies.get(i);
+      if (latency != null) {
+        sb.append("in ").append(NAMES[i]).append(": count=").append(this.framesIn[i].sum())
+            .append(", meanMicros=").append(String.format("%.1f", latency.getMean() / NANOS_PER_MICRO))
+            .append(", p50Micros=").append(latency.getValueAtPercentile(50) / NANOS_PER_MICRO)
+            .append(", p99Micros=").append(latency.getValueAtPercentile(99) / NANOS_PER_MICRO)
+            .append(", maxMicros=").append(latency.getMax() / NANOS_PER_MICRO).append('\n');
+      }
+    }
+    for (int i = 0; i < SLOTS; i++) {
+      long written = this.framesOut[i].sum();
+      if (written > 0) {
+        sb.append("out ").append(NAMES[i]).append(": count=").append(written).append('\n');
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * This public method is used to start a daemon thread that writes a snapshot to the server log periodically, one event per line
+   *
+   * @param server represented as ChatRoomServer, server the gauges are read from
+   * @param periodMillis represented as long, milliseconds between snapshots, should be greater than zero
+   */
+  public synchronized void startDump(ChatRoomServer server, long periodMillis) {
+    if (periodMillis < 1) {
+      throw new InvalidArgException("Metrics dump millis should be greater than zero!");
+    }
+    if (this.dumper == null) {
+      this.dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "chatroom-metrics");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.dumper.scheduleAtFixedRate(() -> {
+        for (String line : this.snapshot(server).split("\n")) {
+          server.getLog().info("metrics", "snapshot", line);
+        }
+      }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * This public method is used to stop writing snapshots
+   */
+  public synchronized void stopDump() {
+    if (this.dumper != null) {
+      this.dumper.shutdownNow();
+      this.dumper = null;
+    }
+  }
+
+  /**
+   * This private static method is used to get counter slot of a message identifier
+   *
+   * @param messageIdentifier represented as int
+   * @return represented as int
+   */
+  private static int slot(int messageIdentifier) {
+    return messageIdentifier > 0 && messageIdentifier < SLOTS ? messageIdentifier : 0;
+  }
+
+  /**
+   * This private static method is used to name every slot after its MessageIdentifier constant
+   *
+   * @return represented as array of String
+   */
+  private static String[] names() {
+    String[] names = new String[SLOTS];
+    for (int i = 0; i < SLOTS; i++) {
+      names[i] = i == 0 ? "UNKNOWN" : String.valueOf(i);
+    }
+    for (Field field : MessageIdentifier.class.getFields()) {
+      if (Modifier.isStatic(field.getModifiers()) && field.getType() == int.class) {
+        try {
+          int identifier = field.getInt(null);
+          if (slot(identifier) != 0) {
+            names[identifier] = field.getName();
+          }
+        } catch (IllegalAccessException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
+    return names;
+  }
+}
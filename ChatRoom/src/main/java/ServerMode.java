@@ -0,0 +1,35 @@
+/**
+ * ServerMode enum represents how ChatRoomServer serves accepted connections.
+ */
+public enum ServerMode {
+  /**
+   * One platform thread per connected socket, blocking on every read
+   */
+  THREAD,
+
+  /**
+   * One virtual thread, or one task of a configured executor, per connected socket
+   */
+  VIRTUAL,
+
+  /**
+   * Small fixed set of selector based event loop threads with non-blocking channels
+   */
+  NIO;
+
+  /**
+   * This public method is used to parse mode from command line argument, ignoring case
+   *
+   * @param mode represented as String, name of mode
+   * @return represented as ServerMode
+   * @throws InvalidArgException if mode is not a known server mode
+   */
+  public static ServerMode fromString(String mode) {
+    for (ServerMode value : values()) {
+      if (value.name().equalsIgnoreCase(mode)) {
+        return value;
+      }
+    }
+    throw new InvalidArgException("Unknown server mode " + mode + "!.");
+  }
+}
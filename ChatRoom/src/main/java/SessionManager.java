@@ -0,0 +1,210 @@
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SessionManager class keeps resumable sessions of logged in clients by token. A session outlives its connection for
+ * the resume window: when the socket is lost the user stays registered, so the roster does not change and nobody sees
+ * a leave, and a client presenting the token on a new connection takes the session over instead of logging in again.
+ * The dead connection is evicted by the takeover. A session nobody resumes in time expires, and only then is the user
+ * removed.
+ */
+public class SessionManager {
+
+  /**
+   * Random bytes of a token, encoded as URL-safe base64
+   */
+  private static final int TOKEN_BYTES = 16;
+  private final ConcurrentMap<String, Session> sessions;
+  private final ScheduledExecutorService expirer;
+  private final SecureRandom random;
+  private final long resumeMillis;
+
+  /**
+   * Constructor of SessionManager
+   *
+   * @param resumeMillis represented as long, how long a session is kept after its connection is lost
+   */
+  public SessionManager(long resumeMillis) {
+    if (resumeMillis < 1) {
+      throw new InvalidArgException("Session resume millis should be greater than zero!");
+    }
+    this.sessions = new ConcurrentHashMap<>();
+    this.expirer = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "chatroom-sessions");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.random = new SecureRandom();
+    this.resumeMillis = resumeMillis;
+  }
+
+  /**
+   * This public method is used to start a session for a client that just logged in
+   *
+   * @param username represented as String, username of client
+   * @param connection represented as ClientConnection, connection owning the session
+   * @return represented as String, token the client presents to resume the session
+   */
+  public String open(String username, ClientConnection connection) {
+    byte[] bytes = new byte[TOKEN_BYTES];
+    String token;
+    do {
+      this.random.nextBytes(bytes);
+      token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    } while (this.sessions.putIfAbsent(token, new Session(username, token, connection)) != null);
+    return token;
+  }
+
+  /**
+   * This public method is used once the connection of a session is lost, to keep the session for the resume window.
+   * onExpired runs if nobody resumes the session in time. Calling it again for the same connection keeps the first expiry.
+   *
+   * @param token represented as String, token of session
+   * @param connection represented as ClientConnection, connection that was lost
+   * @param onExpired represented as Runnable, action that removes the client for good
+   * @return represented as boolean, false if there is no such session and the client should be removed now
+   */
+  public boolean detach(String token, ClientConnection connection, Runnable onExpired) {
+    Session session = this.sessions.get(token);
+    if (session == null) {
+      return false;
+    }
+    synchronized (session) {
+      if (session.closed) {
+        return false;
+      }
+      if (session.connection == connection && session.expiry == null) {
+        session.expiry = this.expirer.schedule(() -> this.expire(session, connection, onExpired),
+            this.resumeMillis, TimeUnit.MILLISECONDS);
+      }
+      return true; // kept, or already taken over by a newer connection
+    }
+  }
+
+  /**
+   * This public method is used to move a session to a new connection, cancelling its expiry
+   *
+   * @param username represented as String, username presented with the token
+   * @param token represented as String, token of session
+   * @param connection represented as ClientConnection, new connection of client
+   * @return represented as ClientConnection, connection that owned the session, null if token is unknown, expired or
+   * belongs to another user
+   */
+  public ClientConnection resume(String username, String token, ClientConnection connection) {
+    Session session = this.sessions.get(token);
+    if (session == null || !session.username.equals(username)) {
+      return null;
+    }
+    synchronized (session) {
+      if (session.closed) {
+        return null;
+      }
+      if (session.expiry != null) {
+        session.expiry.cancel(false);
+        session.expiry = null;
+      }
+      ClientConnection previous = session.connection;
+      session.connection = connection;
+      return previous;
+    }
+  }
+
+  /**
+   * This public method is used to end a session when its client logs off
+   *
+   * @param token represented as String, token of session
+   * @param connection represented as ClientConnection, connection owning the session
+   * @return represented as boolean, false if connection does not own such a session
+   */
+  public boolean close(String token, ClientConnection connection) {
+    Session session = this.sessions.get(token);
+    if (session == null) {
+      return false;
+    }
+    synchronized (session) {
+      if (session.closed || session.connection != connection) {
+        return false;
+      }
+      this.end(session);
+      return true;
+    }
+  }
+
+  /**
+   * This public method is used to stop the expiry thread and forget every session, none can be resumed afterwards
+   */
+  public void shutdown() {
+    this.expirer.shutdownNow();
+    this.sessions.clear();
+  }
+
+  /**
+   * This public method is used to get number of open sessions, with or without a live connection
+   *
+   * @return represented as int
+   */
+  public int size() {
+    return this.sessions.size();
+  }
+
+  /**
+   * This private method is used by the expiry thread to end a session still owned by the connection that was lost
+   *
+   * @param session represented as Session
+   * @param connection represented as ClientConnection, connection the expiry was scheduled for
+   * @param onExpired represented as Runnable, action that removes the client for good
+   */
+  private void expire(Session session, ClientConnection connection, Runnable onExpired) {
+    synchronized (session) {
+      if (session.closed || session.connection != connection) {
+        return;
+      }
+      this.end(session);
+    }
+    onExpired.run();
+  }
+
+  /**
+   * This private method is used to mark a session closed and forget it, called while holding its lock
+   *
+   * @param session represented as Session
+   */
+  private void end(Session session) {
+    session.closed = true;
+    if (session.expiry != null) {
+      session.expiry.cancel(false);
+      session.expiry = null;
+    }
+    this.sessions.remove(session.token, session);
+  }
+
+  /**
+   * Session class is one resumable login, guarded by its own lock
+   */
+  private static final class Session {
+    private final String username;
+    private final String token;
+    private ClientConnection connection;
+    private ScheduledFuture<?> expiry;
+    private boolean closed;
+
+    /**
+     * Constructor of Session
+     *
+     * @param username represented as String
+     * @param token represented as String
+     * @param connection represented as ClientConnection
+     */
+    private Session(String username, String token, ClientConnection connection) {
+      this.username = username;
+      this.token = token;
+      this.connection = connection;
+    }
+  }
+}
@@ -0,0 +1,36 @@
+/**
+ * SlowConsumerPolicy enum represents what server does when outbound queue of a client is full.
+ */
+public enum SlowConsumerPolicy {
+  /**
+   * Oldest queued frames are dropped to make room for the new one
+   */
+  DROP_OLDEST,
+
+  /**
+   * Client is disconnected
+   */
+  DISCONNECT,
+
+  /**
+   * Sender waits for room up to the configured timeout, then client is disconnected. Only a thread serving a single
+   * client waits, any other sender disconnects the client right away.
+   */
+  BLOCK;
+
+  /**
+   * This public method is used to parse policy from a string, ignoring case
+   *
+   * @param policy represented as String, name of policy
+   * @return represented as SlowConsumerPolicy
+   * @throws InvalidArgException if policy is not known
+   */
+  public static SlowConsumerPolicy fromString(String policy) {
+    for (SlowConsumerPolicy value : values()) {
+      if (value.name().equalsIgnoreCase(policy)) {
+        return value;
+      }
+    }
+    throw new InvalidArgException("Unknown slow consumer policy " + policy + "!.");
+  }
+}
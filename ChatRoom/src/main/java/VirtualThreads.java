@@ -0,0 +1,72 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * VirtualThreads class is used to create a virtual thread per task executor. The factory method is looked up at
+ * runtime, so the server still compiles and runs its other modes on JDKs that do not have virtual threads.
+ */
+public final class VirtualThreads {
+
+  /**
+   * Handle of Executors.newVirtualThreadPerTaskExecutor, null if current JDK has no virtual threads
+   */
+  private static final MethodHandle NEW_EXECUTOR = findFactory();
+
+  /**
+   * Private constructor of VirtualThreads
+   */
+  private VirtualThreads() {
+  }
+
+  /**
+   * This public static method is used to check if current JDK supports virtual threads
+   *
+   * @return represented as boolean, true if virtual threads are available
+   */
+  public static boolean isSupported() {
+    return NEW_EXECUTOR != null;
+  }
+
+  /**
+   * This public static method is used to fail before anything is started on a JDK without virtual threads
+   *
+   * @throws UnsupportedOperationException if current JDK has no virtual threads
+   */
+  public static void requireSupported() {
+    if (!isSupported()) {
+      throw new UnsupportedOperationException("Virtual threads need JDK 21 or later, running on " + Runtime.version());
+    }
+  }
+
+  /**
+   * This public static method is used to create an executor that starts a new virtual thread for each task
+   *
+   * @return represented as ExecutorService
+   * @throws UnsupportedOperationException if current JDK has no virtual threads
+   */
+  public static ExecutorService newPerTaskExecutor() {
+    requireSupported();
+    try {
+      return (ExecutorService) NEW_EXECUTOR.invokeExact();
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * This private static method is used to look up virtual thread executor factory
+   *
+   * @return represented as MethodHandle, or null if not found
+   */
+  private static MethodHandle findFactory() {
+    try {
+      return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+          MethodType.methodType(ExecutorService.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      return null;
+    }
+  }
+}
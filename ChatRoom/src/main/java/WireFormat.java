@@ -0,0 +1,281 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * WireFormat class is the single place where strings and byte fields are framed on the wire, shared by MessageCodec and
+ * ChatRoomProtocol. A field is its length in bytes followed by that many bytes; strings are UTF-8, so the prefix always
+ * matches what follows even for non-ASCII names and messages. In protocol version 1 the length is an int. A client can
+ * negotiate version 2 for the frames it sends, where the length is a varint: seven bits per byte, low bits first, with
+ * the high bit set on every byte but the last, so a length below 128 takes one byte.
+ */
+public final class WireFormat {
+
+  /**
+   * Protocol version every connection starts with, and the only one of frames sent by the server
+   */
+  public static final int VERSION_1 = 1;
+
+  /**
+   * Protocol version of client frames with a one byte message identifier, varint lengths and no sender field
+   */
+  public static final int VERSION_2 = 2;
+
+  /**
+   * Most bytes of a varint holding an int
+   */
+  private static final int MAX_VARINT_BYTES = 5;
+
+  /**
+   * Private constructor of WireFormat
+   */
+  private WireFormat() {
+  }
+
+  /**
+   * This public static method is used to encode a string to UTF-8 bytes
+   *
+   * @param str represented as String
+   * @return represented as array of byte
+   */
+  public static byte[] encode(String str) {
+    return str.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * This public static method is used to decode UTF-8 bytes to a string
+   *
+   * @param bytes represented as array of byte
+   * @return represented as String
+   */
+  public static String decode(byte[] bytes) {
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * This public static method is used to decode part of an array of UTF-8 bytes to a string
+   *
+   * @param bytes represented as array of byte
+   * @param offset represented as int, index of first byte
+   * @param length represented as int, number of bytes
+   * @return represented as String
+   */
+  public static String decode(byte[] bytes, int offset, int length) {
+    return new String(bytes, offset, length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * This public static method is used to write a string as byte length followed by its UTF-8 bytes
+   *
+   * @param out represented as DataOutputStream
+   * @param str represented as String
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in out
+   */
+  public static void writeString(DataOutputStream out, String str) throws IOException {
+    writeBytes(out, encode(str));
+  }
+
+  /**
+   * This public static method is used to write already encoded bytes as byte length followed by the bytes
+   *
+   * @param out represented as DataOutputStream
+   * @param bytes represented as array of byte
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in out
+   */
+  public static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * This public static method is used to write a string as byte length of a protocol version followed by its UTF-8 bytes
+   *
+   * @param out represented as DataOutputStream
+   * @param str represented as String
+   * @param version represented as int, protocol version of frame
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in out
+   */
+  public static void writeString(DataOutputStream out, String str, int version) throws IOException {
+    writeBytes(out, encode(str), version);
+  }
+
+  /**
+   * This public static method is used to write already encoded bytes as byte length of a protocol version followed by the bytes
+   *
+   * @param out represented as DataOutputStream
+   * @param bytes represented as array of byte
+   * @param version represented as int, protocol version of frame
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in out
+   */
+  public static void writeBytes(DataOutputStream out, byte[] bytes, int version) throws IOException {
+    writeLength(out, bytes.length, version);
+    out.write(bytes);
+  }
+
+  /**
+   * This public static method is used to write a field length, an int in version 1 and a varint in version 2
+   *
+   * @param out represented as DataOutputStream
+   * @param length represented as int, not negative
+   * @param version represented as int, protocol version of frame
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while writing in out
+   */
+  public static void writeLength(DataOutputStream out, int length, int version) throws IOException {
+    if (version == VERSION_1) {
+      out.writeInt(length);
+      return;
+    }
+    int value = length;
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  /**
+   * This public static method is used to read a field length and check it is sane
+   *
+   * @param in represented as DataInputStream
+   * @return represented as int, field length in bytes
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from in, or invalid length
+   */
+  public static int readLength(DataInputStream in) throws IOException {
+    return readLength(in, VERSION_1);
+  }
+
+  /**
+   * This public static method is used to read a field length of a protocol version and check it is sane
+   *
+   * @param in represented as DataInputStream
+   * @param version represented as int, protocol version of frame
+   * @return represented as int, field length in bytes
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from in, or invalid length
+   */
+  public static int readLength(DataInputStream in, int version) throws IOException {
+    int length = version == VERSION_1 ? in.readInt() : readVarint(in);
+    if (length < 0 || length > FrameDecoder.MAX_FRAME_BYTES) {
+      throw new IOException("Invalid field length: " + length);
+    }
+    return length;
+  }
+
+  /**
+   * This private static method is used to read a varint
+   *
+   * @param in represented as DataInputStream
+   * @return represented as int
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from in, or a varint
+   * longer than an int
+   */
+  private static int readVarint(DataInputStream in) throws IOException {
+    int value = 0;
+    for (int i = 0; i < MAX_VARINT_BYTES; i++) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << (7 * i);
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Varint is too long");
+  }
+
+  /**
+   * This public static method is used to read a length prefixed field
+   *
+   * @param in represented as DataInputStream
+   * @return represented as array of byte, field bytes
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from in
+   */
+  public static byte[] readBytes(DataInputStream in) throws IOException {
+    return readBytes(in, VERSION_1);
+  }
+
+  /**
+   * This public static method is used to read a length prefixed field of a protocol version
+   *
+   * @param in represented as DataInputStream
+   * @param version represented as int, protocol version of input frame
+   * @return represented as array of byte, field bytes
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from in
+   */
+  public static byte[] readBytes(DataInputStream in, int version) throws IOException {
+    byte[] bytes = new byte[readLength(in, version)];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  /**
+   * This public static method is used to copy a length prefixed field from input into a frame being encoded,
+   * without looking at or allocating for its bytes
+   *
+   * @param in represented as DataInputStream, input positioned at field length
+   * @param out represented as DataOutputStream, stream writing into frame
+   * @param frame represented as FrameBuffer, buffer behind out
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from in
+   */
+  public static void relayBytes(DataInputStream in, DataOutputStream out, FrameBuffer frame) throws IOException {
+    relayBytes(in, VERSION_1, out, frame);
+  }
+
+  /**
+   * This public static method is used to copy a length prefixed field of a protocol version from input into a
+   * version 1 frame being encoded, without looking at or allocating for its bytes
+   *
+   * @param in represented as DataInputStream, input positioned at field length
+   * @param version represented as int, protocol version of input frame
+   * @param out represented as DataOutputStream, stream writing into frame
+   * @param frame represented as FrameBuffer, buffer behind out
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from in
+   */
+  public static void relayBytes(DataInputStream in, int version, DataOutputStream out, FrameBuffer frame) throws IOException {
+    int length = readLength(in, version);
+    out.writeInt(length);
+    frame.readFrom(in, length);
+  }
+
+  /**
+   * This public static method is used to skip a length prefixed field
+   *
+   * @param in represented as DataInputStream, input positioned at field length
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from in
+   */
+  public static void skipBytes(DataInputStream in) throws IOException {
+    skipBytes(in, VERSION_1);
+  }
+
+  /**
+   * This public static method is used to skip a length prefixed field of a protocol version
+   *
+   * @param in represented as DataInputStream, input positioned at field length
+   * @param version represented as int, protocol version of input frame
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from in
+   */
+  public static void skipBytes(DataInputStream in, int version) throws IOException {
+    in.skipNBytes(readLength(in, version));
+  }
+
+  /**
+   * This public static method is used to read a length prefixed UTF-8 string
+   *
+   * @param in represented as DataInputStream
+   * @return represented as String
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from in
+   */
+  public static String readString(DataInputStream in) throws IOException {
+    return decode(readBytes(in));
+  }
+
+  /**
+   * This public static method is used to read a length prefixed UTF-8 string of a protocol version
+   *
+   * @param in represented as DataInputStream
+   * @param version represented as int, protocol version of input frame
+   * @return represented as String
+   * @throws IOException exceptions produced by failed or interrupted I/O operations while reading from in
+   */
+  public static String readString(DataInputStream in, int version) throws IOException {
+    return decode(readBytes(in, version));
+  }
+}
@@ -0,0 +1,80 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WriteStats class counts frames written to client sockets and how many socket writes carried them.
+ * Frames per flush shows how well outgoing frames are coalesced into packets under load.
+ */
+public class WriteStats {
+  private final LongAdder framesWritten;
+  private final LongAdder bytesWritten;
+  private final LongAdder flushes;
+
+  /**
+   * Constructor of WriteStats with all counters at zero
+   */
+  public WriteStats() {
+    this.framesWritten = new LongAdder();
+    this.bytesWritten = new LongAdder();
+    this.flushes = new LongAdder();
+  }
+
+  /**
+   * This public method is used to record one frame handed to a socket buffer
+   *
+   * @param frame represented as Frame, written frame
+   */
+  public void recordFrame(Frame frame) {
+    this.framesWritten.increment();
+    this.bytesWritten.add(frame.length());
+  }
+
+  /**
+   * This public method is used to record one flush or write call to a socket
+   */
+  public void recordFlush() {
+    this.flushes.increment();
+  }
+
+  /**
+   * This public method is used to get number of frames written
+   *
+   * @return represented as long
+   */
+  public long getFramesWritten() {
+    return this.framesWritten.sum();
+  }
+
+  /**
+   * This public method is used to get number of bytes written
+   *
+   * @return represented as long
+   */
+  public long getBytesWritten() {
+    return this.bytesWritten.sum();
+  }
+
+  /**
+   * This public method is used to get number of flushes or write calls made to sockets
+   *
+   * @return represented as long
+   */
+  public long getFlushes() {
+    return this.flushes.sum();
+  }
+
+  /**
+   * This public method is used to get average number of frames carried by one flush
+   *
+   * @return represented as double, zero if nothing was flushed yet
+   */
+  public double getFramesPerFlush() {
+    long flushCount = this.getFlushes();
+    return flushCount == 0 ? 0 : (double) this.getFramesWritten() / flushCount;
+  }
+
+  @Override
+  public String toString() {
+    return "framesWritten=" + this.getFramesWritten() + ", bytesWritten=" + this.getBytesWritten()
+        + ", flushes=" + this.getFlushes() + ", framesPerFlush=" + String.format("%.2f", this.getFramesPerFlush());
+  }
+}
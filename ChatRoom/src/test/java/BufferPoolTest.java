@@ -0,0 +1,71 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+
+class BufferPoolTest {
+
+  @Test
+  void acquire_roundsUpToSizeClass() {
+    BufferPool pool = new BufferPool(false, 256, 4096, 1 << 16);
+    assertEquals(256, pool.acquire(1).capacity());
+    assertEquals(256, pool.acquire(256).capacity());
+    assertEquals(512, pool.acquire(257).capacity());
+    assertEquals(5000, pool.acquire(5000).capacity());
+    assertEquals(4, pool.getMisses());
+    assertEquals(4, pool.getOutstanding());
+  }
+
+  @Test
+  void release_reusesBuffer() {
+    BufferPool pool = new BufferPool(false, 256, 4096, 1 << 16);
+    ByteBuffer buffer = pool.acquire(300);
+    buffer.putInt(7);
+    pool.release(buffer);
+    ByteBuffer again = pool.acquire(400);
+    assertSame(buffer, again);
+    assertEquals(0, again.position());
+    assertEquals(1, pool.getHits());
+    assertEquals(1, pool.getMisses());
+    assertEquals(1, pool.getOutstanding());
+  }
+
+  @Test
+  void release_keepsRetainedBytesBound() {
+    BufferPool pool = new BufferPool(false, 256, 4096, 512);
+    ByteBuffer first = pool.acquire(256);
+    ByteBuffer second = pool.acquire(256);
+    ByteBuffer third = pool.acquire(256);
+    pool.release(first);
+    pool.release(second);
+    pool.release(third);
+    pool.acquire(256);
+    pool.acquire(256);
+    pool.acquire(256);
+    assertEquals(2, pool.getHits());
+  }
+
+  @Test
+  void direct() {
+    BufferPool pool = new BufferPool(true, 256, 4096, 1 << 16);
+    assertTrue(pool.acquire(10).isDirect());
+  }
+
+  @Test
+  void frame_overRelease() {
+    BufferPool pool = new BufferPool(false, 256, 4096, 1 << 16);
+    Frame frame = new Frame(pool.acquire(4), 4, pool);
+    frame.release();
+    assertThrows(IllegalStateException.class, frame::release);
+    assertThrows(IllegalStateException.class, frame::retain);
+  }
+
+  @Test
+  void constructor_invalidSizes() {
+    assertThrows(InvalidArgException.class, () -> new BufferPool(false, 300, 4096, 0));
+    assertThrows(InvalidArgException.class, () -> new BufferPool(false, 4096, 256, 0));
+  }
+}
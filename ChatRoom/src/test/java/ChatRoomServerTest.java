@@ -0,0 +1,528 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+class ChatRoomServerTest {
+
+  /**
+   * Starts a server in a mode, waiting for its port
+   */
+  private static ChatRoomServer startServer(ServerMode mode) throws Exception {
+    ServerConfig config = new ServerConfig();
+    config.setMode(mode);
+    config.setEventLoopThreads(2);
+    ChatRoomServer server = new ChatRoomServer(config);
+    server.start(0).get(5, TimeUnit.SECONDS);
+    return server;
+  }
+
+  /**
+   * Logs a client in to a server started from config, returning name of thread its handler ran on
+   */
+  private static String loginHandlerThread(ServerConfig config) throws Exception {
+    AtomicReference<String> handlerThread = new AtomicReference<>();
+    ChatRoomServer server = new ChatRoomServer(config) {
+      @Override
+      public long getHistorySequence() {
+        handlerThread.set(Thread.currentThread().getName()); // called by the handler while it logs the client in
+        return super.getHistorySequence();
+      }
+    };
+    server.start(0).get(5, TimeUnit.SECONDS);
+    try (Socket socket = new Socket("localhost", server.getPort())) {
+      socket.setSoTimeout(5000);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      MessageCodec codec = new MessageCodec(new DataOutputStream(socket.getOutputStream()));
+      codec.setUsername("amy");
+      codec.encodeMessage("login");
+      assertTrue(codec.decodeMessage(in).contains("other connected clients"));
+      codec.encodeMessage("logoff"); // answered by the same handler once login is done
+      assertEquals("Disconnecting request is successful.You are no longer connected", codec.decodeMessage(in));
+      return handlerThread.get();
+    } finally {
+      server.stop(0).get(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  void threadMode_noHandlerExecutor_handlerOnNewThread() throws Exception {
+    ServerConfig config = new ServerConfig();
+    config.setMode(ServerMode.THREAD);
+    assertTrue(loginHandlerThread(config).startsWith("Thread-"));
+  }
+
+  @Test
+  void threadMode_handlerExecutor_runsHandlers() throws Exception {
+    ExecutorService handlers = Executors.newSingleThreadExecutor(task -> new Thread(task, "chatroom-test-handler"));
+    try {
+      ServerConfig config = new ServerConfig();
+      config.setMode(ServerMode.THREAD);
+      config.setHandlerExecutor(handlers);
+      assertEquals("chatroom-test-handler", loginHandlerThread(config));
+    } finally {
+      handlers.shutdownNow();
+    }
+  }
+
+  @Test
+  void virtualMode_beforeJdk21_startFailsFast() throws Exception {
+    ServerConfig config = new ServerConfig();
+    config.setMode(ServerMode.VIRTUAL);
+    config.setHandlerExecutor(task -> new Thread(task).start()); // writers would still need virtual threads
+    ChatRoomServer server = new ChatRoomServer(config);
+    try {
+      if (VirtualThreads.isSupported()) {
+        assertTrue(server.start(0).get(5, TimeUnit.SECONDS) > 0);
+        return;
+      }
+      ExecutionException e = assertThrows(ExecutionException.class, () -> server.start(0).get(5, TimeUnit.SECONDS));
+      assertTrue(e.getCause() instanceof UnsupportedOperationException);
+      assertTrue(e.getCause().getMessage().contains("JDK 21"));
+      assertNull(server.getPort());
+    } finally {
+      server.stop(0).get(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  void stop_tellsClientsAndCloses() throws Exception {
+    for (ServerMode mode : new ServerMode[] {ServerMode.THREAD, ServerMode.NIO}) {
+      ChatRoomServer server = startServer(mode);
+      assertThrows(IllegalStateException.class, () -> server.start(0));
+      try (Socket socket = new Socket("localhost", server.getPort())) {
+        socket.setSoTimeout(5000);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        MessageCodec codec = new MessageCodec(new DataOutputStream(socket.getOutputStream()));
+        codec.setUsername("amy");
+        codec.encodeMessage("login");
+        assertTrue(codec.decodeMessage(in).contains("other connected clients"));
+        assertEquals(1, server.clientCount().intValue());
+
+        server.stop(1000).get(5, TimeUnit.SECONDS);
+        assertEquals("Disconnecting request is successful.Server is shutting down", codec.decodeMessage(in));
+        assertFalse(codec.isConnected());
+        assertThrows(EOFException.class, in::readInt);
+      }
+      assertEquals(0, server.clientCount().intValue());
+      assertEquals(0, server.connectionCount());
+      assertThrows(IOException.class, () -> new Socket("localhost", server.getPort()).close());
+    }
+  }
+
+  @Test
+  void stop_calledTwice_sameFuture() throws Exception {
+    ChatRoomServer server = startServer(ServerMode.THREAD);
+    CompletableFuture<Void> stopped = server.stop(0);
+    assertSame(stopped, server.stop(0));
+    stopped.get(5, TimeUnit.SECONDS);
+    assertTrue(server.isStopping());
+  }
+
+  @Test
+  void startStopCycles_noLeakedThreads() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      startServer(ServerMode.NIO).stop(0).get(5, TimeUnit.SECONDS);
+    }
+    int before = Thread.activeCount();
+    for (int i = 0; i < 20; i++) {
+      ChatRoomServer server = startServer(i % 2 == 0 ? ServerMode.NIO : ServerMode.THREAD);
+      new Socket("localhost", server.getPort()).close();
+      server.stop(0).get(5, TimeUnit.SECONDS);
+    }
+    Thread.sleep(200);
+    assertTrue(Thread.activeCount() <= before + 2);
+  }
+
+  @Test
+  void protocolVersions_mixedClients() throws Exception {
+    for (ServerMode mode : new ServerMode[] {ServerMode.THREAD, ServerMode.NIO}) {
+      ChatRoomServer server = startServer(mode);
+      try (Socket amySocket = new Socket("localhost", server.getPort());
+          Socket bobSocket = new Socket("localhost", server.getPort())) {
+        amySocket.setSoTimeout(5000);
+        bobSocket.setSoTimeout(5000);
+        DataInputStream amyIn = new DataInputStream(new BufferedInputStream(amySocket.getInputStream()));
+        DataInputStream bobIn = new DataInputStream(new BufferedInputStream(bobSocket.getInputStream()));
+        MessageCodec amy = new MessageCodec(new DataOutputStream(amySocket.getOutputStream()));
+        MessageCodec bob = new MessageCodec(new DataOutputStream(bobSocket.getOutputStream()));
+        amy.setUsername("amy");
+        bob.setUsername("bob");
+        amy.encodeProtocolVersion(WireFormat.VERSION_2);
+        assertEquals("Server accepted protocol version 2", amy.decodeMessage(amyIn));
+        amy.encodeMessage("@all too early");
+        assertEquals("You are not authorized to send messages", amy.decodeMessage(amyIn));
+        amy.encodeMessage("login");
+        assertTrue(amy.decodeMessage(amyIn).contains("other connected clients"));
+        bob.encodeMessage("login");
+        assertTrue(bob.decodeMessage(bobIn).contains("other connected clients"));
+
+        amy.encodeMessage("@bob hi bob");
+        assertEquals("amy->bob: hi bob", bob.decodeMessage(bobIn));
+        bob.encodeMessage("@all hello");
+        assertEquals("bob: hello", amy.decodeMessage(amyIn));
+        assertEquals("bob: hello", bob.decodeMessage(bobIn));
+        amy.encodeMessage("who");
+        assertEquals("There are 1 connected users: [bob]", amy.decodeMessage(amyIn));
+
+        bob.encodeProtocolVersion(WireFormat.VERSION_2); // too late, bob is logged in
+        assertEquals("Server accepted protocol version 1", bob.decodeMessage(bobIn));
+        amy.encodeProtocolVersion(WireFormat.VERSION_1);
+        assertEquals("Server accepted protocol version 2", amy.decodeMessage(amyIn));
+        bob.encodeMessage("!amy");
+        assertTrue(amy.decodeMessage(amyIn).startsWith("bob->amy: "));
+        amy.encodeMessage("logoff");
+        assertEquals("Disconnecting request is successful.You are no longer connected", amy.decodeMessage(amyIn));
+      } finally {
+        server.stop(0).get(5, TimeUnit.SECONDS);
+      }
+    }
+  }
+
+  @Test
+  void blockPolicy_nioFullRecipientOnSameEventLoop_disconnectsWithoutWaiting() throws Exception {
+    ServerConfig config = new ServerConfig();
+    config.setMode(ServerMode.NIO);
+    config.setEventLoopThreads(1);
+    config.setOutboundQueueCapacity(4);
+    config.setSlowConsumerPolicy(SlowConsumerPolicy.BLOCK);
+    config.setBlockTimeoutMillis(5000);
+    ChatRoomServer server = new ChatRoomServer(config);
+    server.start(0).get(5, TimeUnit.SECONDS);
+    try (Socket amySocket = new Socket("localhost", server.getPort());
+        Socket bobSocket = new Socket("localhost", server.getPort())) {
+      amySocket.setSoTimeout(5000);
+      DataInputStream amyIn = new DataInputStream(new BufferedInputStream(amySocket.getInputStream()));
+      DataInputStream bobIn = new DataInputStream(new BufferedInputStream(bobSocket.getInputStream()));
+      MessageCodec amy = new MessageCodec(new DataOutputStream(amySocket.getOutputStream()));
+      MessageCodec bob = new MessageCodec(new DataOutputStream(bobSocket.getOutputStream()));
+      amy.setUsername("amy");
+      bob.setUsername("bob");
+      amy.encodeMessage("login");
+      assertTrue(amy.decodeMessage(amyIn).contains("other connected clients"));
+      bob.encodeMessage("login");
+      assertTrue(bob.decodeMessage(bobIn).contains("other connected clients"));
+
+      // one write, so the event loop serving both clients overflows bob's queue before it can flush it
+      ByteArrayOutputStream burst = new ByteArrayOutputStream();
+      MessageCodec burstCodec = new MessageCodec(new DataOutputStream(burst));
+      burstCodec.setUsername("amy");
+      for (int i = 0; i < 6; i++) {
+        burstCodec.encodeMessage("@bob message " + i);
+      }
+      burstCodec.encodeMessage("who");
+      long start = System.nanoTime();
+      amySocket.getOutputStream().write(burst.toByteArray());
+      String reply;
+      do {
+        reply = amy.decodeMessage(amyIn);
+      } while (!reply.startsWith("There are"));
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+      assertEquals("There are 0 connected users: ", reply);
+      assertEquals(1, server.getMetrics().getSlowConsumers());
+    } finally {
+      server.stop(0).get(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  void idleTimeout_nioEvictionClosesOnEventLoop() throws Exception {
+    ServerConfig config = new ServerConfig();
+    config.setMode(ServerMode.NIO);
+    config.setEventLoopThreads(1);
+    config.setIdleTimeoutMillis(200);
+    config.setReaperTickMillis(10);
+    ChatRoomServer server = new ChatRoomServer(config);
+    server.start(0).get(5, TimeUnit.SECONDS);
+    try (Socket socket = new Socket("localhost", server.getPort())) {
+      socket.setSoTimeout(5000);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      MessageCodec codec = new MessageCodec(new DataOutputStream(socket.getOutputStream()));
+      codec.setUsername("amy");
+      codec.encodeMessage("login");
+      assertTrue(codec.decodeMessage(in).contains("other connected clients"));
+      while (in.read() >= 0) {
+        // PINGs are left unanswered until the server closes the connection
+      }
+      assertEquals(1, server.getReaper().getEvictions());
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (server.connectionCount() > 0 && System.nanoTime() < deadline) {
+        Thread.sleep(5);
+      }
+      assertEquals(0, server.connectionCount());
+      assertEquals(0, server.clientCount().intValue());
+    } finally {
+      server.stop(0).get(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  void stop_nioClientsClosedOnEventLoop() throws Exception {
+    ServerConfig config = new ServerConfig();
+    config.setMode(ServerMode.NIO);
+    config.setEventLoopThreads(1);
+    Queue<String> closingThreads = new ConcurrentLinkedQueue<>();
+    ChatRoomServer server = new ChatRoomServer(config) {
+      @Override
+      void connectionClosed(ClientConnection connection) {
+        closingThreads.add(Thread.currentThread().getName());
+        super.connectionClosed(connection);
+      }
+    };
+    server.start(0).get(5, TimeUnit.SECONDS);
+    try (Socket amySocket = new Socket("localhost", server.getPort());
+        Socket bobSocket = new Socket("localhost", server.getPort())) {
+      for (Socket socket : new Socket[]{amySocket, bobSocket}) {
+        socket.setSoTimeout(5000);
+        MessageCodec codec = new MessageCodec(new DataOutputStream(socket.getOutputStream()));
+        codec.setUsername(socket == amySocket ? "amy" : "bob");
+        codec.encodeMessage("login");
+        assertTrue(codec.decodeMessage(new DataInputStream(socket.getInputStream())).contains("other connected clients"));
+      }
+      server.stop(0).get(5, TimeUnit.SECONDS);
+      assertEquals(0, server.connectionCount());
+      assertEquals(2, closingThreads.size());
+      for (String thread : closingThreads) {
+        assertEquals("chatroom-event-loop-0", thread);
+      }
+    }
+  }
+
+  @Test
+  void nioFailingClient_closedWhileOthersOnLoopKeepWorking() throws Exception {
+    ServerConfig config = new ServerConfig();
+    config.setMode(ServerMode.NIO);
+    config.setEventLoopThreads(1);
+    config.setInsultPoolSize(0);
+    ChatRoomServer server = new ChatRoomServer(config) {
+      @Override
+      public InsultGenerator getInsultGenerator() {
+        return null; // serving SEND_INSULT fails with a NullPointerException on the event loop
+      }
+    };
+    server.start(0).get(5, TimeUnit.SECONDS);
+    try (Socket amySocket = new Socket("localhost", server.getPort());
+        Socket bobSocket = new Socket("localhost", server.getPort())) {
+      amySocket.setSoTimeout(5000);
+      bobSocket.setSoTimeout(5000);
+      DataInputStream amyIn = new DataInputStream(new BufferedInputStream(amySocket.getInputStream()));
+      DataInputStream bobIn = new DataInputStream(new BufferedInputStream(bobSocket.getInputStream()));
+      MessageCodec amy = new MessageCodec(new DataOutputStream(amySocket.getOutputStream()));
+      MessageCodec bob = new MessageCodec(new DataOutputStream(bobSocket.getOutputStream()));
+      amy.setUsername("amy");
+      bob.setUsername("bob");
+      amy.encodeMessage("login");
+      assertTrue(amy.decodeMessage(amyIn).contains("other connected clients"));
+      bob.encodeMessage("login");
+      assertTrue(bob.decodeMessage(bobIn).contains("other connected clients"));
+
+      amy.encodeMessage("!bob");
+      assertEquals(-1, amyIn.read());
+      bob.encodeMessage("who");
+      assertEquals("There are 0 connected users: ", bob.decodeMessage(bobIn));
+      try (Socket carlSocket = new Socket("localhost", server.getPort())) {
+        carlSocket.setSoTimeout(5000);
+        DataInputStream carlIn = new DataInputStream(new BufferedInputStream(carlSocket.getInputStream()));
+        MessageCodec carl = new MessageCodec(new DataOutputStream(carlSocket.getOutputStream()));
+        carl.setUsername("carl");
+        carl.encodeMessage("login");
+        assertTrue(carl.decodeMessage(carlIn).contains("1 other connected clients"));
+      }
+    } finally {
+      server.stop(0).get(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  void secondLogin_onLoggedInConnection_rejected() throws Exception {
+    for (ServerMode mode : new ServerMode[] {ServerMode.THREAD, ServerMode.NIO}) {
+      ChatRoomServer server = startServer(mode);
+      try (Socket socket = new Socket("localhost", server.getPort())) {
+        socket.setSoTimeout(5000);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        MessageCodec codec = new MessageCodec(new DataOutputStream(socket.getOutputStream()));
+        codec.setUsername("amy");
+        codec.encodeMessage("login");
+        assertTrue(codec.decodeMessage(in).contains("other connected clients"));
+        codec.setUsername("zed");
+        codec.encodeMessage("login");
+        assertEquals("You are already logged in as amy", codec.decodeMessage(in));
+        assertTrue(codec.isConnected());
+        assertEquals(1, server.clientCount().intValue());
+        assertFalse(server.hasClient("zed"));
+        codec.setUsername("amy");
+        codec.encodeMessage("logoff");
+        assertEquals("Disconnecting request is successful.You are no longer connected", codec.decodeMessage(in));
+        assertEquals(0, server.clientCount().intValue());
+      } finally {
+        server.stop(0).get(5, TimeUnit.SECONDS);
+      }
+    }
+  }
+
+  @Test
+  void start_afterStop_rejected() throws Exception {
+    ChatRoomServer server = new ChatRoomServer();
+    server.stop(0).get(5, TimeUnit.SECONDS);
+    assertThrows(IllegalStateException.class, () -> server.start(0));
+  }
+
+  @Test
+  void publish_concurrentSenders_queuedInSequenceOrder() throws Exception {
+    ChatRoomServer server = new ChatRoomServer(new ServerConfig());
+    try {
+      SequenceConnection amy = new SequenceConnection();
+      List<ClientConnection> recipients = List.of(amy);
+      server.getRooms().join("java", amy, null);
+      Room room = server.getRooms().get("java");
+      Thread[] senders = new Thread[4];
+      for (int i = 0; i < senders.length; i++) {
+        MessageHistory history = i % 2 == 0 ? server.getLobbyHistory() : room.getHistory();
+        senders[i] = new Thread(() -> {
+          for (int j = 0; j < 2000; j++) {
+            Frame frame = new Frame(new byte[] {0, 0, 0, (byte) MessageIdentifier.BROADCAST_MESSAGE});
+            server.publish(history, frame, recipients);
+            frame.release();
+          }
+        });
+        senders[i].start();
+      }
+      for (Thread sender : senders) {
+        sender.join();
+      }
+      assertEquals(8000, amy.sequences.size());
+      for (int i = 1; i < amy.sequences.size(); i++) {
+        assertTrue(amy.sequences.get(i - 1) < amy.sequences.get(i));
+      }
+    } finally {
+      server.stop(0).get(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  void loginWithHistory_broadcastDuringRegister_receivedOnce() throws Exception {
+    for (ServerMode mode : new ServerMode[] {ServerMode.THREAD, ServerMode.NIO}) {
+      ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(encoded);
+      out.writeInt(MessageIdentifier.BROADCAST_MESSAGE);
+      WireFormat.writeString(out, "amy");
+      WireFormat.writeString(out, "late");
+      Frame frame = new Frame(encoded.toByteArray());
+      CountDownLatch appended = new CountDownLatch(1);
+      AtomicBoolean armed = new AtomicBoolean(true);
+      AtomicReference<Thread> publisher = new AtomicReference<>();
+      ServerConfig config = new ServerConfig();
+      config.setMode(mode);
+      ChatRoomServer server = new ChatRoomServer(config) {
+        @Override
+        public long getHistorySequence() {
+          if (armed.compareAndSet(true, false)) {
+            // a broadcast sequenced while eve registers, fanned out once eve can be found
+            Iterable<ClientConnection> onceEveJoined = () -> {
+              appended.countDown();
+              long deadline = System.currentTimeMillis() + 5000;
+              while (!this.hasClient("eve") && System.currentTimeMillis() < deadline) {
+                Thread.onSpinWait();
+              }
+              return this.getClients().iterator();
+            };
+            Thread thread = new Thread(() -> this.publish(this.getLobbyHistory(), frame, onceEveJoined));
+            publisher.set(thread);
+            thread.start();
+            try {
+              appended.await(500, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+          return super.getHistorySequence();
+        }
+      };
+      server.start(0).get(5, TimeUnit.SECONDS);
+      try (Socket socket = new Socket("localhost", server.getPort())) {
+        socket.setSoTimeout(5000);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        MessageCodec eve = new MessageCodec(new DataOutputStream(socket.getOutputStream()));
+        eve.setUsername("eve");
+        eve.encodeMessage("login last 10");
+        assertTrue(eve.decodeMessage(in).contains("other connected clients"));
+        int received = 0;
+        String message = eve.decodeMessage(in);
+        while (!message.startsWith("Replayed")) {
+          received += message.endsWith("amy: late") ? 1 : 0;
+          message = eve.decodeMessage(in);
+        }
+        publisher.get().join(5000);
+        eve.encodeMessage("logoff");
+        message = eve.decodeMessage(in);
+        while (!message.startsWith("Disconnecting")) {
+          received += message.endsWith("amy: late") ? 1 : 0;
+          message = eve.decodeMessage(in);
+        }
+        assertEquals(1, received);
+      } finally {
+        server.stop(0).get(5, TimeUnit.SECONDS);
+      }
+    }
+  }
+
+  /**
+   * Connection that keeps sequence numbers of frames queued to it, in queue order
+   */
+  private static class SequenceConnection implements ClientConnection {
+    private final List<Long> sequences = new ArrayList<>();
+
+    @Override
+    public synchronized void send(Frame frame) {
+      sequences.add(frame.getSequence());
+      frame.release();
+    }
+
+    @Override
+    public int queuedFrames() {
+      return 0;
+    }
+
+    @Override
+    public long writtenSequence() {
+      return 0;
+    }
+
+    @Override
+    public ChatRoomProtocol getProtocol() {
+      return null;
+    }
+
+    @Override
+    public boolean isClosed() {
+      return false;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
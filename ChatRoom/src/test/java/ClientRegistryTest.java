@@ -0,0 +1,173 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class ClientRegistryTest {
+
+  @Test
+  void registerAndGet() {
+    ClientRegistry registry = new ClientRegistry(10, 4);
+    ClientConnection amy = new TestConnection();
+    AtomicInteger registered = new AtomicInteger();
+    assertTrue(registry.tryReserve());
+    assertTrue(registry.register("amy", amy, registered::incrementAndGet));
+    assertEquals(1, registered.get());
+    assertSame(amy, registry.get("amy"));
+    assertTrue(registry.contains("amy"));
+    assertNull(registry.get("bob"));
+    assertEquals(1, registry.size());
+  }
+
+  @Test
+  void register_duplicate() {
+    ClientRegistry registry = new ClientRegistry(10, 4);
+    registry.tryReserve();
+    registry.register("amy", new TestConnection(), () -> { });
+    registry.tryReserve();
+    assertFalse(registry.register("amy", new TestConnection(), () -> { throw new AssertionError(); }));
+    registry.cancelReservation();
+    assertEquals(1, registry.size());
+  }
+
+  @Test
+  void tryReserve_capacity() throws InterruptedException {
+    ClientRegistry registry = new ClientRegistry(10, 4);
+    AtomicInteger reserved = new AtomicInteger();
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 100; j++) {
+          if (registry.tryReserve()) {
+            reserved.incrementAndGet();
+          }
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(10, reserved.get());
+    assertEquals(10, registry.size());
+  }
+
+  @Test
+  void unregister_onlyOwnConnection() {
+    ClientRegistry registry = new ClientRegistry(10, 4);
+    ClientConnection amy = new TestConnection();
+    registry.tryReserve();
+    registry.register("amy", amy, () -> { });
+    assertFalse(registry.unregister("amy", new TestConnection()));
+    assertFalse(registry.unregister(null, amy));
+    assertTrue(registry.unregister("amy", amy));
+    assertEquals(0, registry.size());
+    assertTrue(registry.tryReserve());
+  }
+
+  @Test
+  void replace_keepsVersion() {
+    ClientRegistry registry = new ClientRegistry(10, 4);
+    ClientConnection amy = new TestConnection();
+    ClientConnection resumed = new TestConnection();
+    registry.tryReserve();
+    registry.register("amy", amy, () -> { });
+    long version = registry.getVersion();
+    assertFalse(registry.replace("amy", new TestConnection(), resumed, () -> { throw new AssertionError(); }));
+    assertFalse(registry.replace("bob", amy, resumed, () -> { throw new AssertionError(); }));
+    AtomicInteger replaced = new AtomicInteger();
+    assertTrue(registry.replace("amy", amy, resumed, replaced::incrementAndGet));
+    assertEquals(1, replaced.get());
+    assertSame(resumed, registry.get("amy"));
+    assertEquals(version, registry.getVersion());
+    assertEquals(1, registry.size());
+    assertFalse(registry.unregister("amy", amy));
+  }
+
+  @Test
+  void iterator_allShards() {
+    ClientRegistry registry = new ClientRegistry(1000, 8);
+    Set<ClientConnection> all = new HashSet<>();
+    for (int i = 0; i < 500; i++) {
+      ClientConnection connection = new TestConnection();
+      all.add(connection);
+      registry.tryReserve();
+      registry.register("user" + i, connection, () -> { });
+    }
+    Set<ClientConnection> iterated = new HashSet<>();
+    for (ClientConnection connection : registry) {
+      iterated.add(connection);
+    }
+    assertEquals(all, iterated);
+    Set<ClientConnection> visited = new HashSet<>();
+    registry.forEach(visited::add);
+    assertEquals(all, visited);
+  }
+
+  @Test
+  void getRoster_rebuiltOnlyOnChange() {
+    ClientRegistry registry = new ClientRegistry(10, 4);
+    ClientConnection bob = new TestConnection();
+    registry.tryReserve();
+    registry.register("bob", bob, () -> { });
+    registry.tryReserve();
+    registry.register("amy", new TestConnection(), () -> { });
+    RosterSnapshot roster = registry.getRoster();
+    assertEquals(2, roster.size());
+    assertEquals("amy", roster.get(0));
+    assertEquals(registry.getVersion(), roster.getVersion());
+    assertSame(roster, registry.getRoster());
+    registry.unregister("bob", bob);
+    RosterSnapshot next = registry.getRoster();
+    assertEquals(1, next.size());
+    assertTrue(next.getVersion() > roster.getVersion());
+    assertEquals(2, roster.size());
+  }
+
+  @Test
+  void constructor_invalid() {
+    assertThrows(InvalidArgException.class, () -> new ClientRegistry(0, 4));
+    assertThrows(InvalidArgException.class, () -> new ClientRegistry(10, 0));
+  }
+
+  /**
+   * Connection that is never written to
+   */
+  private static class TestConnection implements ClientConnection {
+    @Override
+    public void send(Frame frame) {
+      frame.release();
+    }
+
+    @Override
+    public int queuedFrames() {
+      return 0;
+    }
+
+    @Override
+    public long writtenSequence() {
+      return 0;
+    }
+
+    @Override
+    public ChatRoomProtocol getProtocol() {
+      return null;
+    }
+
+    @Override
+    public boolean isClosed() {
+      return false;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,161 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class ConnectionReaperTest {
+  private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(5));
+  private final ConnectionReaper reaper = new ConnectionReaper(1000, 10, clock::get);
+
+  /**
+   * Moves the clock forward and turns the wheel
+   */
+  private void advance(long millis) {
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    reaper.expire(clock.get());
+  }
+
+  @Test
+  void idleConnection_pingedThenClosed() {
+    CountingConnection amy = new CountingConnection();
+    reaper.register(amy);
+    advance(490);
+    assertEquals(0, amy.pings);
+    advance(20);
+    assertEquals(1, amy.pings);
+    advance(400);
+    assertEquals(1, amy.pings);
+    assertFalse(amy.closed);
+    advance(100);
+    assertTrue(amy.closed);
+    assertEquals(1, reaper.getPings());
+    assertEquals(1, reaper.getEvictions());
+  }
+
+  @Test
+  void idleConnection_evictedNotClosedOnWheelThread() {
+    EvictedConnection amy = new EvictedConnection();
+    reaper.register(amy);
+    advance(1010);
+    assertTrue(amy.evicted);
+    assertFalse(amy.isClosed());
+    assertEquals(1, reaper.getEvictions());
+  }
+
+  @Test
+  void activeConnection_keptOpen() {
+    CountingConnection amy = new CountingConnection();
+    ConnectionReaper.Entry entry = reaper.register(amy);
+    for (int i = 0; i < 100; i++) {
+      advance(300);
+      entry.touch();
+    }
+    assertEquals(0, amy.pings);
+    assertFalse(amy.closed);
+  }
+
+  @Test
+  void pong_keepsConnectionOpen() {
+    CountingConnection amy = new CountingConnection();
+    ConnectionReaper.Entry entry = reaper.register(amy);
+    for (int i = 0; i < 10; i++) {
+      advance(520);
+      assertEquals(i + 1, amy.pings);
+      entry.touch(); // PONG arrives
+    }
+    assertFalse(amy.closed);
+  }
+
+  @Test
+  void cancelledEntry_dropped() {
+    CountingConnection amy = new CountingConnection();
+    reaper.register(amy).cancel();
+    advance(2000);
+    assertEquals(0, amy.pings);
+    assertFalse(amy.closed);
+    assertEquals(0, reaper.getEvictions());
+  }
+
+  @Test
+  void manyConnections_idleOnesClosed() {
+    CountingConnection[] connections = new CountingConnection[1000];
+    ConnectionReaper.Entry[] entries = new ConnectionReaper.Entry[connections.length];
+    for (int i = 0; i < connections.length; i++) {
+      connections[i] = new CountingConnection();
+      entries[i] = reaper.register(connections[i]);
+    }
+    for (int step = 0; step < 30; step++) {
+      advance(100);
+      for (int i = 0; i < entries.length; i += 2) {
+        entries[i].touch();
+      }
+    }
+    for (int i = 0; i < connections.length; i++) {
+      assertEquals(i % 2 == 1, connections[i].closed);
+    }
+    assertEquals(500, reaper.getEvictions());
+  }
+
+  @Test
+  void constructor_invalid() {
+    assertThrows(InvalidArgException.class, () -> new ConnectionReaper(0, 10));
+    assertThrows(InvalidArgException.class, () -> new ConnectionReaper(1000, 0));
+  }
+
+  /**
+   * Connection that counts frames sent to it
+   */
+  private static class CountingConnection implements ClientConnection {
+    private int pings;
+    private boolean closed;
+
+    @Override
+    public void send(Frame frame) {
+      if (frame.buffer().getInt() == MessageIdentifier.PING) {
+        pings++;
+      }
+      frame.release();
+    }
+
+    @Override
+    public int queuedFrames() {
+      return 0;
+    }
+
+    @Override
+    public long writtenSequence() {
+      return 0;
+    }
+
+    @Override
+    public ChatRoomProtocol getProtocol() {
+      return null;
+    }
+
+    @Override
+    public boolean isClosed() {
+      return closed;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  /**
+   * Connection served by another thread, which closes it once asked to
+   */
+  private static class EvictedConnection extends CountingConnection {
+    private boolean evicted;
+
+    @Override
+    public void evict() {
+      evicted = true;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class FrameBufferTest {
+  private BufferPool pool;
+  private FrameBuffer frameBuffer;
+  private DataOutputStream out;
+
+  @BeforeEach
+  void setUp() {
+    pool = new BufferPool(false, 256, 4096, 1 << 16);
+    frameBuffer = new FrameBuffer(pool);
+    out = new DataOutputStream(frameBuffer);
+  }
+
+  @Test
+  void relayBytes() throws IOException {
+    byte[] body = new byte[1000];
+    body[999] = 7;
+    ByteBuffer input = ByteBuffer.allocate(4 + body.length).putInt(body.length).put(body);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(input.array()));
+    out.writeInt(MessageIdentifier.BROADCAST_MESSAGE);
+    WireFormat.relayBytes(in, out, frameBuffer);
+    Frame frame = frameBuffer.takeFrame();
+    assertEquals(8 + body.length, frame.length());
+    assertEquals(MessageIdentifier.BROADCAST_MESSAGE, frame.buffer().getInt(0));
+    assertEquals(body.length, frame.buffer().getInt(4));
+    assertEquals(7, frame.buffer().get(frame.length() - 1));
+  }
+
+  @Test
+  void takeFrame_resets() throws IOException {
+    out.writeInt(1);
+    assertEquals(4, frameBuffer.takeFrame().length());
+    out.writeInt(2);
+    Frame second = frameBuffer.takeFrame();
+    assertEquals(4, second.length());
+    assertEquals(2, second.buffer().getInt());
+  }
+
+  @Test
+  void takeFrame_releaseReturnsBuffer() throws IOException {
+    out.writeInt(1);
+    Frame frame = frameBuffer.takeFrame();
+    frame.retain();
+    frame.release();
+    assertEquals(1, pool.getOutstanding());
+    frame.release();
+    assertEquals(0, pool.getOutstanding());
+    out.writeInt(2);
+    frameBuffer.takeFrame().release();
+    assertEquals(1, pool.getHits());
+  }
+
+  @Test
+  void write_growsIntoLargerBuffer() throws IOException {
+    byte[] body = new byte[1000];
+    body[999] = 9;
+    out.writeInt(MessageIdentifier.BROADCAST_MESSAGE);
+    out.write(body);
+    Frame frame = frameBuffer.takeFrame();
+    assertEquals(4 + body.length, frame.length());
+    assertEquals(9, frame.buffer().get(frame.length() - 1));
+    assertEquals(1, pool.getOutstanding());
+  }
+}
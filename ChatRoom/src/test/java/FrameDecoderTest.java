@@ -0,0 +1,104 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class FrameDecoderTest {
+  private ByteArrayOutputStream bytes;
+  private MessageCodec codec;
+
+  @BeforeEach
+  void setUp() {
+    bytes = new ByteArrayOutputStream();
+    codec = new MessageCodec(new DataOutputStream(bytes));
+    codec.setUsername("amy");
+  }
+
+  @Test
+  void frameLength_direct() throws IOException {
+    codec.encodeMessage("@bob hello");
+    ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+    assertEquals(bytes.size(), FrameDecoder.frameLength(buffer));
+    assertEquals(0, buffer.position());
+  }
+
+  @Test
+  void frameLength_incomplete() throws IOException {
+    codec.encodeMessage("@all hello everyone");
+    byte[] frame = bytes.toByteArray();
+    for (int i = 0; i < frame.length; i++) {
+      assertEquals(-1, FrameDecoder.frameLength(ByteBuffer.wrap(frame, 0, i)));
+    }
+  }
+
+  @Test
+  void frameLength_twoFrames() throws IOException {
+    codec.encodeMessage("who");
+    int first = bytes.size();
+    codec.encodeMessage("!bob");
+    ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+    assertEquals(first, FrameDecoder.frameLength(buffer));
+    buffer.position(first);
+    assertEquals(bytes.size() - first, FrameDecoder.frameLength(buffer));
+  }
+
+  @Test
+  void frameLength_version2() throws IOException {
+    acceptVersion2();
+    codec.encodeMessage("@bob " + "x".repeat(200)); // message length needs a two byte varint
+    byte[] frame = bytes.toByteArray();
+    assertEquals(1 + 1 + 3 + 2 + 200, frame.length);
+    assertEquals(frame.length, FrameDecoder.frameLength(ByteBuffer.wrap(frame), WireFormat.VERSION_2));
+    for (int i = 0; i < frame.length; i++) {
+      assertEquals(-1, FrameDecoder.frameLength(ByteBuffer.wrap(frame, 0, i), WireFormat.VERSION_2));
+    }
+  }
+
+  @Test
+  void frameLength_version2LoginKeepsUsername() throws IOException {
+    acceptVersion2();
+    codec.encodeMessage("login");
+    int login = bytes.size();
+    codec.encodeMessage("who");
+    ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+    assertEquals(1 + 1 + 3, FrameDecoder.frameLength(buffer, WireFormat.VERSION_2));
+    buffer.position(login);
+    assertEquals(1, FrameDecoder.frameLength(buffer, WireFormat.VERSION_2));
+  }
+
+  @Test
+  void frameLength_version2VarintTooLong() {
+    ByteBuffer buffer = ByteBuffer.wrap(new byte[] {MessageIdentifier.JOIN_ROOM, -1, -1, -1, -1, -1, 1});
+    assertThrows(IllegalStateException.class, () -> FrameDecoder.frameLength(buffer, WireFormat.VERSION_2));
+  }
+
+  @Test
+  void frameLength_unknownIdentifier() {
+    ByteBuffer buffer = ByteBuffer.allocate(8).putInt(99).putInt(0).flip();
+    assertThrows(IllegalStateException.class, () -> FrameDecoder.frameLength(buffer));
+  }
+
+  @Test
+  void frameLength_negativeLength() {
+    ByteBuffer buffer = ByteBuffer.allocate(8).putInt(MessageIdentifier.CONNECT_MESSAGE).putInt(-1).flip();
+    assertThrows(IllegalStateException.class, () -> FrameDecoder.frameLength(buffer));
+  }
+
+  /**
+   * Makes codec encode version 2 frames, as if the server had accepted it
+   */
+  private void acceptVersion2() throws IOException {
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(response);
+    out.writeInt(MessageIdentifier.PROTOCOL_VERSION_RESPONSE);
+    out.writeInt(WireFormat.VERSION_2);
+    codec.decodeMessage(new DataInputStream(new ByteArrayInputStream(response.toByteArray())));
+  }
+}
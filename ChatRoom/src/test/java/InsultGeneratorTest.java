@@ -0,0 +1,53 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class InsultGeneratorTest {
+  private Path grammarCopy;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    grammarCopy = Files.createTempFile("insult_grammar", ".json");
+    grammarCopy.toFile().deleteOnExit();
+    Files.copy(Paths.get(InsultGenerator.GRAMMAR_FILE), grammarCopy, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  @Test
+  void generate() {
+    InsultGenerator generator = new InsultGenerator(grammarCopy);
+    assertEquals(0, generator.getLoadCount());
+    assertFalse(generator.generate().isEmpty());
+    assertEquals(1, generator.getLoadCount());
+  }
+
+  @Test
+  void generate_parsesOnce() {
+    InsultGenerator generator = new InsultGenerator(grammarCopy, 0);
+    for (int i = 0; i < 10; i++) {
+      generator.generate();
+    }
+    assertEquals(1, generator.getLoadCount());
+  }
+
+  @Test
+  void generate_reloadsChangedFile() throws IOException {
+    InsultGenerator generator = new InsultGenerator(grammarCopy, 0);
+    generator.generate();
+    Files.setLastModifiedTime(grammarCopy, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+    generator.generate();
+    assertEquals(2, generator.getLoadCount());
+  }
+
+  @Test
+  void fromClasspath() {
+    assertFalse(InsultGenerator.fromClasspath().generate().isEmpty());
+  }
+}
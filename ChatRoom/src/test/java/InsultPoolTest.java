@@ -0,0 +1,99 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class InsultPoolTest {
+  private InsultPool pool;
+  private final Queue<Runnable> refills = new ArrayDeque<>();
+
+  @BeforeEach
+  void setUp() {
+    pool = new InsultPool(new InsultGenerator(Paths.get(InsultGenerator.GRAMMAR_FILE)), 8, 2);
+  }
+
+  @AfterEach
+  void tearDown() {
+    pool.shutdown();
+  }
+
+  @Test
+  void take_fromFilledPool() throws InterruptedException {
+    waitUntilFull();
+    assertFalse(pool.take().isEmpty());
+    assertEquals(1, pool.getHits());
+    assertEquals(0, pool.getMisses());
+  }
+
+  @Test
+  void take_refillsBelowLowWaterMark() {
+    InsultPool manual = manualPool();
+    runRefills();
+    assertEquals(8, manual.size());
+    for (int i = 0; i < 5; i++) {
+      manual.take();
+    }
+    assertTrue(refills.isEmpty());
+    manual.take();
+    manual.take();
+    assertEquals(1, refills.size());
+    runRefills();
+    assertEquals(8, manual.size());
+    assertEquals(15, manual.getGenerated());
+    assertEquals(7, manual.getHits());
+  }
+
+  @Test
+  void take_whileRefillPending_schedulesOnce() {
+    InsultPool manual = manualPool();
+    assertEquals(1, refills.size());
+    for (int i = 0; i < 3; i++) {
+      manual.take();
+    }
+    assertEquals(1, refills.size());
+    assertEquals(3, manual.getMisses());
+    runRefills();
+    assertEquals(8, manual.size());
+    assertTrue(refills.isEmpty());
+  }
+
+  @Test
+  void take_afterShutdown_generatesOnRequestThread() {
+    pool.shutdown();
+    for (int i = 0; i < 10; i++) {
+      assertFalse(pool.take().isEmpty());
+    }
+    assertEquals(10, pool.getHits() + pool.getMisses());
+  }
+
+  @Test
+  void invalidLowWaterMark() {
+    assertThrows(InvalidArgException.class, () ->
+        new InsultPool(new InsultGenerator(Paths.get(InsultGenerator.GRAMMAR_FILE)), 4, 4));
+  }
+
+  private InsultPool manualPool() {
+    return new InsultPool(new InsultGenerator(Paths.get(InsultGenerator.GRAMMAR_FILE)), 8, 2, refills::add);
+  }
+
+  private void runRefills() {
+    Runnable refill;
+    while ((refill = refills.poll()) != null) {
+      refill.run();
+    }
+  }
+
+  private void waitUntilFull() throws InterruptedException {
+    for (int i = 0; i < 500 && pool.size() < 8; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(8, pool.size());
+  }
+}
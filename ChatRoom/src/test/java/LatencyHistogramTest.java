@@ -0,0 +1,61 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void empty_allZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMin());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+  }
+
+  @Test
+  void smallValues_exact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+    assertEquals(50, histogram.getValueAtPercentile(50));
+    assertEquals(99, histogram.getValueAtPercentile(99));
+    assertEquals(100, histogram.getValueAtPercentile(100));
+    assertEquals(1, histogram.getMin());
+    assertEquals(50.5, histogram.getMean());
+  }
+
+  @Test
+  void largeValues_withinPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long i = 1; i <= 100_000; i++) {
+      histogram.record(i * 1000);
+    }
+    long p50 = histogram.getValueAtPercentile(50);
+    long p999 = histogram.getValueAtPercentile(99.9);
+    assertTrue(p50 >= 50_000_000 && p50 <= 50_000_000 + 50_000_000 / 64);
+    assertTrue(p999 >= 99_900_000 && p999 <= 99_900_000 + 99_900_000 / 64);
+    assertEquals(100_000_000, histogram.getValueAtPercentile(100));
+    assertEquals(100_000_000, histogram.getMax());
+  }
+
+  @Test
+  void extremeValues_recorded() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(0, histogram.getMin());
+    assertEquals(0, histogram.getValueAtPercentile(50));
+    assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  void percentile_invalid() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertThrows(InvalidArgException.class, () -> histogram.getValueAtPercentile(101));
+    assertThrows(InvalidArgException.class, () -> histogram.getValueAtPercentile(-1));
+  }
+}
@@ -0,0 +1,373 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class MailboxStoreTest {
+  private Path directory;
+  private BufferPool pool;
+  private ByteArrayOutputStream logBytes;
+  private ServerLog log;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    directory = Files.createTempDirectory("chatroom-mailbox");
+    pool = new BufferPool(false, 256, 1 << 16, 1 << 20);
+    logBytes = new ByteArrayOutputStream();
+    log = new ServerLog(LogLevel.INFO, 64, 1, new PrintStream(logBytes, true, StandardCharsets.UTF_8));
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    log.close(1000);
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  private MailboxStore store(int maxMessages, long maxAgeMillis) throws IOException {
+    return new MailboxStore(directory, maxMessages, 1 << 20, maxAgeMillis, 2, 8, pool, log);
+  }
+
+  private static boolean offer(MailboxStore store, String username, Frame frame) throws Exception {
+    return store.offer(username, frame).get(5, TimeUnit.SECONDS);
+  }
+
+  private static Frame frame(int number) {
+    return new Frame(new byte[] {0, 0, 0, (byte) MessageIdentifier.DIRECT_MESSAGE, (byte) number});
+  }
+
+  /**
+   * Logs a user in once on a connection that is already closed, so its mailbox exists but nothing is delivered
+   */
+  private static void createMailbox(MailboxStore store, String username) {
+    RecordingConnection closed = new RecordingConnection();
+    closed.closed = true;
+    store.deliver(username, closed);
+  }
+
+  @Test
+  void offer_onlyForUsersWhoLoggedIn() throws Exception {
+    MailboxStore store = store(10, 60000);
+    assertFalse(store.hasMailbox("bob"));
+    assertFalse(offer(store, "bob", frame(1)));
+    createMailbox(store, "bob");
+    assertTrue(store.hasMailbox("bob"));
+    assertTrue(offer(store, "bob", frame(1)));
+    assertEquals(1, store.size("bob"));
+  }
+
+  @Test
+  void offer_respectsMessageLimit() throws Exception {
+    MailboxStore store = store(2, 60000);
+    createMailbox(store, "bob");
+    assertTrue(offer(store, "bob", frame(1)));
+    assertTrue(offer(store, "bob", frame(2)));
+    assertFalse(offer(store, "bob", frame(3)));
+  }
+
+  @Test
+  void offer_fullWithNothingExpired_leavesFileAlone() throws Exception {
+    MailboxStore store = store(2, 60000);
+    createMailbox(store, "bob");
+    offer(store, "bob", frame(1));
+    offer(store, "bob", frame(2));
+    Object fileKey = mailboxFileKey();
+    assertFalse(offer(store, "bob", frame(3)));
+    assertEquals(fileKey, mailboxFileKey());
+    assertEquals(2, store.size("bob"));
+  }
+
+  @Test
+  void offer_fullWithExpiredMessages_dropsThem() throws Exception {
+    MailboxStore store = store(2, 50);
+    createMailbox(store, "bob");
+    offer(store, "bob", frame(1));
+    offer(store, "bob", frame(2));
+    Thread.sleep(100);
+    assertTrue(offer(store, "bob", frame(3)));
+    assertEquals(1, store.size("bob"));
+  }
+
+  /**
+   * Identity of the only mailbox file, which changes whenever the file is rewritten
+   */
+  private Object mailboxFileKey() throws IOException {
+    return Files.readAttributes(mailboxFile(), BasicFileAttributes.class).fileKey();
+  }
+
+  /**
+   * The only mailbox file
+   */
+  private Path mailboxFile() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(path -> path.toString().endsWith(".mbox")).findFirst().orElseThrow();
+    }
+  }
+
+  @Test
+  void deliver_streamsEveryMessageInOrder() throws Exception {
+    MailboxStore store = store(10, 60000);
+    createMailbox(store, "bob");
+    for (int i = 1; i <= 5; i++) {
+      offer(store, "bob", frame(i));
+    }
+    RecordingConnection bob = new RecordingConnection();
+    store.deliver("bob", bob);
+    for (int i = 1; i <= 5; i++) {
+      DataInputStream in = bob.next();
+      assertEquals(MessageIdentifier.DIRECT_MESSAGE, in.readInt());
+      assertEquals(i, in.readByte());
+    }
+    DataInputStream end = bob.next();
+    assertEquals(MessageIdentifier.MAILBOX_DELIVERED, end.readInt());
+    assertEquals(5, end.readInt());
+    assertEquals(0, store.size("bob"));
+    assertEquals(0, pool.getOutstanding());
+  }
+
+  @Test
+  void deliver_waitsForFullQueue() throws Exception {
+    MailboxStore store = store(10, 60000);
+    createMailbox(store, "bob");
+    offer(store, "bob", frame(1));
+    RecordingConnection bob = new RecordingConnection();
+    bob.queued.set(4);
+    store.deliver("bob", bob);
+    assertEquals(null, bob.frames.poll(100, TimeUnit.MILLISECONDS));
+    bob.queued.set(0);
+    assertEquals(MessageIdentifier.DIRECT_MESSAGE, bob.next().readInt());
+  }
+
+  @Test
+  void deliver_connectionClosedWithFramesQueued_keepsThem() throws Exception {
+    MailboxStore store = store(10, 60000);
+    createMailbox(store, "bob");
+    for (int i = 1; i <= 5; i++) {
+      offer(store, "bob", frame(i));
+    }
+    RecordingConnection lost = new RecordingConnection();
+    lost.queued.set(3); // below the limit, so every batch is queued
+    lost.writing = false; // but never written
+    store.deliver("bob", lost);
+    for (int i = 1; i <= 5; i++) {
+      assertEquals(MessageIdentifier.DIRECT_MESSAGE, lost.next().readInt());
+    }
+    lost.closed = true;
+
+    RecordingConnection bob = new RecordingConnection();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (bob.frames.isEmpty() && System.nanoTime() < deadline) {
+      store.deliver("bob", bob); // does nothing until delivery to the lost connection has stopped
+      Thread.sleep(5);
+    }
+    for (int i = 1; i <= 5; i++) {
+      DataInputStream in = bob.next();
+      assertEquals(MessageIdentifier.DIRECT_MESSAGE, in.readInt());
+      assertEquals(i, in.readByte());
+    }
+    DataInputStream end = bob.next();
+    assertEquals(MessageIdentifier.MAILBOX_DELIVERED, end.readInt());
+    assertEquals(5, end.readInt());
+    assertEquals(0, store.size("bob"));
+  }
+
+  @Test
+  void mailbox_survivesRestart() throws Exception {
+    MailboxStore store = store(10, 60000);
+    createMailbox(store, "zo\u00eb");
+    offer(store, "zo\u00eb", frame(7));
+    MailboxStore restarted = store(10, 60000);
+    assertTrue(restarted.hasMailbox("zo\u00eb"));
+    assertEquals(1, restarted.size("zo\u00eb"));
+    RecordingConnection zoe = new RecordingConnection();
+    restarted.deliver("zo\u00eb", zoe);
+    DataInputStream in = zoe.next();
+    assertEquals(MessageIdentifier.DIRECT_MESSAGE, in.readInt());
+    assertEquals(7, in.readByte());
+  }
+
+  @Test
+  void deliver_dropsExpiredMessages() throws Exception {
+    MailboxStore store = store(10, 1);
+    createMailbox(store, "bob");
+    offer(store, "bob", frame(1));
+    Thread.sleep(10);
+    RecordingConnection bob = new RecordingConnection();
+    store.deliver("bob", bob);
+    DataInputStream end = bob.next();
+    assertEquals(MessageIdentifier.MAILBOX_DELIVERED, end.readInt());
+    assertEquals(0, end.readInt());
+  }
+
+  @Test
+  void offer_doesNotWaitForMailboxThread() throws Exception {
+    MailboxStore store = store(10, 60000);
+    createMailbox(store, "bob");
+    CountDownLatch busy = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    RecordingConnection slow = new RecordingConnection() {
+      @Override
+      public int queuedFrames() {
+        busy.countDown();
+        try {
+          release.await(); // holds the mailbox thread, like a slow disk would
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return 0;
+      }
+    };
+    createMailbox(store, "amy");
+    offer(store, "amy", frame(1));
+    store.deliver("amy", slow);
+    assertTrue(busy.await(5, TimeUnit.SECONDS));
+    CompletableFuture<Boolean> stored = store.offer("bob", frame(2));
+    assertFalse(stored.isDone());
+    release.countDown();
+    assertTrue(stored.get(5, TimeUnit.SECONDS));
+    assertEquals(1, store.size("bob"));
+  }
+
+  @Test
+  void deliver_droppedFrameIsSentAgain() throws Exception {
+    MailboxStore store = store(10, 60000);
+    createMailbox(store, "bob");
+    for (int i = 1; i <= 5; i++) {
+      offer(store, "bob", frame(i));
+    }
+    RecordingConnection bob = new RecordingConnection();
+    bob.dropNext.set(1);
+    store.deliver("bob", bob);
+    boolean[] received = new boolean[6];
+    DataInputStream in;
+    while ((in = bob.next()).readInt() == MessageIdentifier.DIRECT_MESSAGE) {
+      received[in.readByte()] = true;
+    }
+    assertEquals(5, in.readInt());
+    for (int i = 1; i <= 5; i++) {
+      assertTrue(received[i]);
+    }
+    assertEquals(0, store.size("bob"));
+  }
+
+  @Test
+  void deliver_drainedMailboxLeavesMemory() throws Exception {
+    MailboxStore store = store(10, 60000);
+    createMailbox(store, "bob");
+    assertEquals(0, store.loadedMailboxes());
+    offer(store, "bob", frame(1));
+    assertEquals(1, store.loadedMailboxes());
+    RecordingConnection bob = new RecordingConnection();
+    store.deliver("bob", bob);
+    assertEquals(MessageIdentifier.DIRECT_MESSAGE, bob.next().readInt());
+    assertEquals(MessageIdentifier.MAILBOX_DELIVERED, bob.next().readInt());
+    assertEquals(0, store.loadedMailboxes());
+    assertTrue(store.hasMailbox("bob"));
+  }
+
+  @Test
+  void deliver_readFailureIsLoggedAndRetried() throws Exception {
+    MailboxStore store = store(10, 60000);
+    createMailbox(store, "bob");
+    offer(store, "bob", frame(1));
+    Path file = mailboxFile();
+    byte[] records = Files.readAllBytes(file);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(0); // records vanish under the open mailbox, reading them fails
+    }
+    RecordingConnection bob = new RecordingConnection();
+    store.deliver("bob", bob);
+    assertEquals(null, bob.frames.poll(300, TimeUnit.MILLISECONDS));
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(records), 0);
+    }
+    DataInputStream in = bob.next();
+    assertEquals(MessageIdentifier.DIRECT_MESSAGE, in.readInt());
+    assertEquals(1, in.readByte());
+    assertEquals(MessageIdentifier.MAILBOX_DELIVERED, bob.next().readInt());
+    log.close(1000);
+    assertTrue(logBytes.toString(StandardCharsets.UTF_8).contains("mailbox.deliveryFailed user=bob attempt=1"));
+  }
+
+  /**
+   * Connection that keeps frames sent to it and reports a settable queue size
+   */
+  private static class RecordingConnection implements ClientConnection {
+    private final BlockingQueue<byte[]> frames = new LinkedBlockingQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger dropNext = new AtomicInteger();
+    private volatile boolean writing = true;
+    private volatile boolean closed;
+
+    DataInputStream next() throws InterruptedException {
+      byte[] frame = frames.poll(5, TimeUnit.SECONDS);
+      return new DataInputStream(new ByteArrayInputStream(frame));
+    }
+
+    @Override
+    public void send(Frame frame) {
+      if (dropNext.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+        frame.release(); // dropped like by a full DROP_OLDEST queue
+        return;
+      }
+      byte[] copy = new byte[frame.length()];
+      frame.buffer().get(copy);
+      frames.add(copy);
+      if (writing) {
+        frame.markWritten();
+      }
+      frame.release();
+    }
+
+    @Override
+    public int queuedFrames() {
+      return queued.get();
+    }
+
+    @Override
+    public long writtenSequence() {
+      return 0;
+    }
+
+    @Override
+    public ChatRoomProtocol getProtocol() {
+      return null;
+    }
+
+    @Override
+    public boolean isClosed() {
+      return closed;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
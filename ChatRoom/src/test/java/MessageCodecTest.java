@@ -2,11 +2,14 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -91,6 +94,236 @@ class MessageCodecTest {
     codecTest.encodeMessage("who");
   }
 
+  @Test
+  void encodeMessageRooms() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    MessageCodec codec = new MessageCodec(new DataOutputStream(bytes));
+    codec.setUsername("amy");
+    codec.encodeMessage("join java");
+    codec.encodeMessage("#java hi all");
+    codec.encodeMessage("rooms");
+    codec.encodeMessage("leave java");
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(MessageIdentifier.JOIN_ROOM, in.readInt());
+    assertEquals("amy", WireFormat.readString(in));
+    assertEquals("java", WireFormat.readString(in));
+    assertEquals(MessageIdentifier.ROOM_MESSAGE, in.readInt());
+    assertEquals("amy", WireFormat.readString(in));
+    assertEquals("java", WireFormat.readString(in));
+    assertEquals("hi all", WireFormat.readString(in));
+    assertEquals(MessageIdentifier.LIST_ROOMS, in.readInt());
+    assertEquals("amy", WireFormat.readString(in));
+    assertEquals(MessageIdentifier.LEAVE_ROOM, in.readInt());
+    assertEquals("amy", WireFormat.readString(in));
+    assertEquals("java", WireFormat.readString(in));
+    assertThrows(IOException.class, () -> codec.encodeMessage("join"));
+  }
+
+  @Test
+  void decodeMessageRooms() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MessageIdentifier.ROOM_RESPONSE);
+    out.writeBoolean(true);
+    WireFormat.writeString(out, "java");
+    WireFormat.writeString(out, "You joined the room");
+    out.writeInt(MessageIdentifier.LIST_ROOMS_RESPONSE);
+    out.writeInt(2);
+    WireFormat.writeString(out, "java");
+    out.writeInt(3);
+    WireFormat.writeString(out, "rust");
+    out.writeInt(1);
+    out.writeInt(MessageIdentifier.ROOM_MESSAGE);
+    WireFormat.writeString(out, "amy");
+    WireFormat.writeString(out, "java");
+    WireFormat.writeString(out, "hi all");
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals("Room java request is successful.You joined the room", codecTest.decodeMessage(in));
+    assertEquals("There are 2 rooms: [java(3) rust(1)]", codecTest.decodeMessage(in));
+    assertEquals("amy#java: hi all", codecTest.decodeMessage(in));
+  }
+
+  @Test
+  void usersPages() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    MessageCodec codec = new MessageCodec(new DataOutputStream(bytes));
+    codec.setUsername("amy");
+    codec.encodeMessage("users b");
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(response);
+    out.writeInt(MessageIdentifier.QUERY_USERS_PAGE_RESPONSE);
+    out.writeLong(7);
+    out.writeInt(3);
+    out.writeInt(2);
+    WireFormat.writeString(out, "bea");
+    WireFormat.writeString(out, "bob");
+    WireFormat.writeString(out, "bob");
+    assertEquals("There are 3 users matching 'b': [bea bob] Type 'more' for the next page.",
+        codec.decodeMessage(new DataInputStream(new ByteArrayInputStream(response.toByteArray()))));
+    codec.encodeMessage("more");
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(MessageIdentifier.QUERY_USERS_PAGE, in.readInt());
+    assertEquals("amy", WireFormat.readString(in));
+    assertEquals("b", WireFormat.readString(in));
+    assertEquals("", WireFormat.readString(in));
+    assertEquals(MessageIdentifier.QUERY_USERS_PAGE, in.readInt());
+    assertEquals("amy", WireFormat.readString(in));
+    assertEquals("b", WireFormat.readString(in));
+    assertEquals("bob", WireFormat.readString(in));
+  }
+
+  @Test
+  void history() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    MessageCodec codec = new MessageCodec(new DataOutputStream(bytes));
+    codec.setUsername("amy");
+    codec.encodeMessage("login last 20");
+    codec.encodeMessage("join java after 7");
+    assertThrows(IOException.class, () -> codec.encodeMessage("join java after x"));
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(MessageIdentifier.CONNECT_WITH_HISTORY, in.readInt());
+    assertEquals("amy", WireFormat.readString(in));
+    assertEquals(MessageHistory.REQUEST_BYTES, in.readInt());
+    assertEquals(MessageHistory.LAST, in.readByte());
+    assertEquals(20, in.readLong());
+    assertEquals(MessageIdentifier.JOIN_ROOM_WITH_HISTORY, in.readInt());
+    assertEquals("amy", WireFormat.readString(in));
+    assertEquals("java", WireFormat.readString(in));
+    assertEquals(MessageHistory.REQUEST_BYTES, in.readInt());
+    assertEquals(MessageHistory.AFTER, in.readByte());
+    assertEquals(7, in.readLong());
+
+    ByteArrayOutputStream stored = new ByteArrayOutputStream();
+    DataOutputStream frame = new DataOutputStream(stored);
+    frame.writeInt(MessageIdentifier.ROOM_MESSAGE);
+    WireFormat.writeString(frame, "bob");
+    WireFormat.writeString(frame, "java");
+    WireFormat.writeString(frame, "hi");
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(response);
+    out.writeInt(MessageIdentifier.HISTORY_MESSAGE);
+    WireFormat.writeString(out, "java");
+    out.writeLong(8);
+    WireFormat.writeBytes(out, stored.toByteArray());
+    out.writeInt(MessageIdentifier.HISTORY_END);
+    WireFormat.writeString(out, "java");
+    out.writeInt(1);
+    out.writeLong(8);
+    DataInputStream replay = new DataInputStream(new ByteArrayInputStream(response.toByteArray()));
+    assertEquals("[8] bob#java: hi", codec.decodeMessage(replay));
+    assertEquals("Replayed 1 messages of room java, latest is 8", codec.decodeMessage(replay));
+  }
+
+  @Test
+  void resumeSession() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    MessageCodec codec = new MessageCodec(new DataOutputStream(bytes));
+    codec.setUsername("amy");
+    codec.encodeMessage("resume abc");
+    assertThrows(IOException.class, () -> codec.encodeMessage("resume"));
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(MessageIdentifier.RESUME_SESSION, in.readInt());
+    assertEquals("amy", WireFormat.readString(in));
+    assertEquals("abc", WireFormat.readString(in));
+
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(response);
+    out.writeInt(MessageIdentifier.SESSION_TOKEN);
+    WireFormat.writeString(out, "abc");
+    out.writeLong(5);
+    out.writeInt(MessageIdentifier.RESUME_RESPONSE);
+    out.writeBoolean(true);
+    out.writeLong(9);
+    WireFormat.writeString(out, "Session resumed");
+    DataInputStream decoded = new DataInputStream(new ByteArrayInputStream(response.toByteArray()));
+    assertEquals("Your session token is abc, latest message is 5. If your connection is lost, enter 'amy abc' as username to resume.",
+        codec.decodeMessage(decoded));
+    assertEquals("abc", codec.getSessionToken());
+    assertEquals("Resume request is successful.Session resumed, messages after 9 follow", codec.decodeMessage(decoded));
+    assertTrue(codec.isConnected());
+  }
+
+  @Test
+  void protocolVersion2_compactFrames() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    MessageCodec codec = new MessageCodec(new DataOutputStream(bytes));
+    codec.setUsername("amy");
+    codec.encodeProtocolVersion(WireFormat.VERSION_2);
+    DataInputStream request = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(MessageIdentifier.PROTOCOL_VERSION, request.readInt());
+    assertEquals("amy", WireFormat.readString(request));
+    assertEquals(1, request.readInt());
+    assertEquals(WireFormat.VERSION_2, request.readByte());
+    assertEquals(WireFormat.VERSION_1, codec.getProtocolVersion());
+
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(response);
+    out.writeInt(MessageIdentifier.PROTOCOL_VERSION_RESPONSE);
+    out.writeInt(WireFormat.VERSION_2);
+    assertEquals("Server accepted protocol version 2",
+        codec.decodeMessage(new DataInputStream(new ByteArrayInputStream(response.toByteArray()))));
+    assertEquals(WireFormat.VERSION_2, codec.getProtocolVersion());
+
+    bytes.reset();
+    codec.encodeMessage("login last 5");
+    codec.encodeMessage("@bob hi");
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(MessageIdentifier.CONNECT_WITH_HISTORY, in.readUnsignedByte());
+    assertEquals(3, in.readUnsignedByte());
+    assertEquals("amy", new String(in.readNBytes(3), StandardCharsets.UTF_8));
+    assertEquals(MessageHistory.REQUEST_BYTES, in.readUnsignedByte());
+    assertEquals(MessageHistory.LAST, in.readByte());
+    assertEquals(5, in.readLong());
+    assertEquals(MessageIdentifier.DIRECT_MESSAGE, in.readUnsignedByte()); // no username once logged in
+    assertEquals("bob", WireFormat.readString(in, WireFormat.VERSION_2));
+    assertEquals("hi", WireFormat.readString(in, WireFormat.VERSION_2));
+    assertEquals(-1, in.read());
+  }
+
+  @Test
+  void decodeResponse_skipsPingBeforeLoginAnswer() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    MessageCodec codec = new MessageCodec(new DataOutputStream(bytes));
+    codec.setUsername("amy");
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(response);
+    out.writeInt(MessageIdentifier.PING);
+    out.writeInt(MessageIdentifier.PING);
+    out.writeInt(MessageIdentifier.CONNECT_RESPONSE);
+    out.writeBoolean(true);
+    WireFormat.writeString(out, "There are 0 other connected clients");
+    DataInputStream decoded = new DataInputStream(new ByteArrayInputStream(response.toByteArray()));
+    assertEquals("Connection request is successful.There are 0 other connected clients", codec.decodeResponse(decoded));
+    assertTrue(codec.isConnected());
+    assertEquals(-1, decoded.read());
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(MessageIdentifier.PONG, in.readInt());
+    assertEquals("amy", WireFormat.readString(in));
+    assertEquals(MessageIdentifier.PONG, in.readInt());
+    assertEquals("amy", WireFormat.readString(in));
+    assertEquals(-1, in.read());
+  }
+
+  @Test
+  void ping_answeredWithPong() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    MessageCodec codec = new MessageCodec(new DataOutputStream(bytes));
+    codec.setUsername("amy");
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(response);
+    out.writeInt(MessageIdentifier.PING);
+    out.writeInt(MessageIdentifier.PONG);
+    DataInputStream decoded = new DataInputStream(new ByteArrayInputStream(response.toByteArray()));
+    assertEquals("", codec.decodeMessage(decoded));
+    assertEquals("Server is alive", codec.decodeMessage(decoded));
+    codec.encodeMessage("ping");
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(MessageIdentifier.PONG, in.readInt());
+    assertEquals("amy", WireFormat.readString(in));
+    assertEquals(MessageIdentifier.PING, in.readInt());
+    assertEquals("amy", WireFormat.readString(in));
+  }
+
   @Test
   void encodeMessage_ERROR() {
     codecTest.setConnected(Boolean.TRUE);
@@ -198,4 +431,17 @@ class MessageCodecTest {
       codecTest.decodeMessage(dataIn);
     });
   }
-}
\ No newline at end of file
+
+  @Test
+  void encodeDecodeUnicode() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    MessageCodec unicodeCodec = new MessageCodec(new DataOutputStream(bytes));
+    unicodeCodec.setUsername("Zo\u00eb");
+    unicodeCodec.encodeMessage("@all h\u00e9llo \u4e16\u754c");
+    unicodeCodec.encodeMessage("who");
+    DataInputStream dataIn = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals("Zo\u00eb: h\u00e9llo \u4e16\u754c", codecTest.decodeMessage(dataIn));
+    assertEquals(MessageIdentifier.QUERY_CONNECTED_USERS, dataIn.readInt());
+    assertEquals(4, dataIn.readInt());
+  }
+}
@@ -0,0 +1,130 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class MessageHistoryTest {
+
+  private static Frame frame(int length, int fill) {
+    byte[] bytes = new byte[length];
+    Arrays.fill(bytes, (byte) fill);
+    return new Frame(bytes);
+  }
+
+  private static List<Long> replay(MessageHistory history, long after, int limit) throws IOException {
+    List<Long> sequences = new ArrayList<>();
+    history.replay(after, limit, (sequence, frame) -> sequences.add(sequence));
+    return sequences;
+  }
+
+  @Test
+  void replay_lastAndAfter() throws IOException {
+    MessageHistory history = new MessageHistory(new AtomicLong(), 8, 1024);
+    for (int i = 0; i < 5; i++) {
+      history.append(frame(10, i));
+    }
+    assertEquals(List.of(4L, 5L), replay(history, 0, 2));
+    assertEquals(List.of(3L, 4L, 5L), replay(history, 2, Integer.MAX_VALUE));
+    assertEquals(List.of(), replay(history, 5, Integer.MAX_VALUE));
+    assertEquals(5, history.replay(0, 0, (sequence, frame) -> { }));
+  }
+
+  @Test
+  void replay_throughSequence_leavesOutLaterFrames() throws IOException {
+    MessageHistory history = new MessageHistory(new AtomicLong(), 8, 1024);
+    for (int i = 0; i < 5; i++) {
+      history.append(frame(10, i));
+    }
+    List<Long> sequences = new ArrayList<>();
+    assertEquals(3, history.replay(0, 3, 2, (sequence, frame) -> sequences.add(sequence)));
+    assertEquals(List.of(2L, 3L), sequences);
+    sequences.clear();
+    assertEquals(0, history.replay(0, 0, Integer.MAX_VALUE, (sequence, frame) -> sequences.add(sequence)));
+    assertEquals(List.of(), sequences);
+  }
+
+  @Test
+  void replay_returnsStoredBytes() throws IOException {
+    MessageHistory history = new MessageHistory(new AtomicLong(), 4, 64);
+    history.append(frame(3, 7));
+    history.replay(0, 1, (sequence, stored) -> {
+      assertEquals(3, stored.remaining());
+      assertEquals(7, stored.get());
+      assertTrue(stored.isReadOnly());
+    });
+  }
+
+  @Test
+  void append_dropsOldestByCount() throws IOException {
+    MessageHistory history = new MessageHistory(new AtomicLong(), 3, 1024);
+    for (int i = 0; i < 5; i++) {
+      history.append(frame(10, i));
+    }
+    assertEquals(3, history.size());
+    assertEquals(List.of(3L, 4L, 5L), replay(history, 0, 10));
+  }
+
+  @Test
+  void append_dropsOldestByBytesAcrossWrap() throws IOException {
+    MessageHistory history = new MessageHistory(new AtomicLong(), 100, 100);
+    for (int i = 1; i <= 9; i++) {
+      history.append(frame(30, i));
+    }
+    List<Integer> firstBytes = new ArrayList<>();
+    List<Long> sequences = new ArrayList<>();
+    history.replay(0, 100, (sequence, stored) -> {
+      sequences.add(sequence);
+      firstBytes.add((int) stored.get(stored.position()));
+      assertEquals(30, stored.remaining());
+    });
+    assertEquals(List.of(7L, 8L, 9L), sequences);
+    assertEquals(List.of(7, 8, 9), firstBytes);
+  }
+
+  @Test
+  void append_growsRingAndIndexAsNeeded() throws IOException {
+    MessageHistory history = new MessageHistory(new AtomicLong(), 256, 64 << 10);
+    assertEquals(0, history.getRingBytes());
+    history.append(frame(10, 0));
+    assertEquals(1 << 10, history.getRingBytes());
+    for (int i = 1; i < 300; i++) {
+      history.append(frame(100, i));
+    }
+    assertEquals(32 << 10, history.getRingBytes());
+    assertEquals(256, history.size());
+    List<Integer> firstBytes = new ArrayList<>();
+    List<Long> sequences = new ArrayList<>();
+    history.replay(0, 256, (sequence, stored) -> {
+      sequences.add(sequence);
+      firstBytes.add(stored.get(stored.position()) & 0xFF);
+    });
+    assertEquals(256, sequences.size());
+    for (int i = 0; i < 256; i++) {
+      assertEquals(45L + i, sequences.get(i).longValue());
+      assertEquals((44 + i) & 0xFF, firstBytes.get(i).intValue());
+    }
+  }
+
+  @Test
+  void append_skipsFrameLargerThanRing() throws IOException {
+    MessageHistory history = new MessageHistory(new AtomicLong(), 4, 16);
+    assertEquals(1, history.append(frame(8, 1)));
+    assertEquals(0, history.append(frame(17, 2)));
+    assertEquals(List.of(1L), replay(history, 0, 4));
+  }
+
+  @Test
+  void append_sharesSequenceNumbers() {
+    AtomicLong sequencer = new AtomicLong();
+    MessageHistory lobby = new MessageHistory(sequencer, 4, 64);
+    MessageHistory room = new MessageHistory(sequencer, 4, 64);
+    assertEquals(1, lobby.append(frame(4, 1)));
+    assertEquals(2, room.append(frame(4, 2)));
+    assertEquals(3, lobby.append(frame(4, 3)));
+  }
+}
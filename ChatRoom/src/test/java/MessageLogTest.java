@@ -0,0 +1,136 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class MessageLogTest {
+  private static final int SEGMENT_BYTES = 64 << 10;
+  private Path directory;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    directory = Files.createTempDirectory("chatroom-log");
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  private static ByteBuffer frame(int length, int fill) {
+    byte[] bytes = new byte[length];
+    bytes[0] = (byte) fill;
+    return ByteBuffer.wrap(bytes);
+  }
+
+  private static List<Long> read(MessageLog log, long after) throws IOException {
+    List<Long> sequences = new ArrayList<>();
+    log.read(after, (sequence, timestamp, room, frame) -> sequences.add(sequence));
+    return sequences;
+  }
+
+  @Test
+  void append_readsBackAfterSequence() throws IOException {
+    MessageLog log = new MessageLog(directory, new AtomicLong(), SEGMENT_BYTES, 8, 0);
+    byte[] java = WireFormat.encode("java");
+    for (int i = 1; i <= 5; i++) {
+      assertEquals(i, log.append(i % 2 == 0 ? java : new byte[0], frame(20, i)));
+    }
+    assertEquals(List.of(4L, 5L), read(log, 3));
+    List<String> rooms = new ArrayList<>();
+    log.read(0, (sequence, timestamp, room, frame) -> {
+      byte[] name = new byte[room.remaining()];
+      room.get(name);
+      rooms.add(WireFormat.decode(name));
+      assertEquals(20, frame.remaining());
+      assertEquals(sequence, frame.get(frame.position()));
+    });
+    assertEquals(List.of("", "java", "", "java", ""), rooms);
+    log.close();
+  }
+
+  @Test
+  void append_rollsSegmentsAndAppliesRetention() throws IOException {
+    MessageLog log = new MessageLog(directory, new AtomicLong(), SEGMENT_BYTES, 3, 0);
+    for (int i = 0; i < 100; i++) {
+      log.append(new byte[0], frame(4000, i));
+    }
+    assertEquals(3, log.segmentCount());
+    List<Long> sequences = read(log, 0);
+    assertEquals(100, sequences.get(sequences.size() - 1).longValue());
+    assertTrue(sequences.get(0) > 1);
+    assertEquals(List.of(98L, 99L, 100L), read(log, 97));
+    log.close();
+  }
+
+  @Test
+  void open_continuesAfterLastRecord() throws IOException {
+    MessageLog log = new MessageLog(directory, new AtomicLong(), SEGMENT_BYTES, 8, 10);
+    for (int i = 0; i < 40; i++) {
+      log.append(new byte[0], frame(3000, i));
+    }
+    log.close();
+    AtomicLong sequencer = new AtomicLong();
+    MessageLog reopened = new MessageLog(directory, sequencer, SEGMENT_BYTES, 8, 10);
+    assertEquals(40, sequencer.get());
+    assertEquals(41, reopened.append(new byte[0], frame(10, 1)));
+    assertEquals(List.of(40L, 41L), read(reopened, 39));
+    reopened.close();
+  }
+
+  @Test
+  void open_ignoresTornRecord() throws IOException {
+    MessageLog log = new MessageLog(directory, new AtomicLong(), SEGMENT_BYTES, 8, 0);
+    for (int i = 0; i < 3; i++) {
+      log.append(new byte[0], frame(100, i));
+    }
+    log.close();
+    Path segment = directory.resolve(LogSegment.fileName(1));
+    byte[] bytes = Files.readAllBytes(segment);
+    bytes[2 * (LogSegment.HEADER_BYTES + 100) + LogSegment.HEADER_BYTES + 50] ^= 1;
+    Files.write(segment, bytes);
+    AtomicLong sequencer = new AtomicLong();
+    MessageLog reopened = new MessageLog(directory, sequencer, SEGMENT_BYTES, 8, 0);
+    assertEquals(2, sequencer.get());
+    assertEquals(3, reopened.append(new byte[0], frame(100, 9)));
+    assertEquals(List.of(1L, 2L, 3L), read(reopened, 0));
+    reopened.close();
+  }
+
+  @Test
+  void readSince_seeksByTimestamp() throws IOException {
+    MessageLog log = new MessageLog(directory, new AtomicLong(), SEGMENT_BYTES, 8, 0);
+    for (int i = 0; i < 50; i++) {
+      log.append(new byte[0], frame(1000, i));
+    }
+    long[] middle = new long[1];
+    log.read(24, (sequence, timestamp, room, frame) -> {
+      if (sequence == 25) {
+        middle[0] = timestamp;
+      }
+    });
+    List<Long> since = new ArrayList<>();
+    log.readSince(middle[0], (sequence, timestamp, room, frame) -> {
+      assertTrue(timestamp >= middle[0]);
+      since.add(sequence);
+    });
+    assertTrue(since.contains(25L));
+    assertEquals(50, since.get(since.size() - 1).longValue());
+    log.close();
+  }
+}
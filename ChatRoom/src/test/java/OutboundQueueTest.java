@@ -0,0 +1,103 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class OutboundQueueTest {
+  private static final Frame FIRST = new Frame(new byte[] {1});
+  private static final Frame SECOND = new Frame(new byte[] {2});
+  private static final Frame THIRD = new Frame(new byte[] {3});
+
+  @Test
+  void offerAndPoll() {
+    OutboundQueue queue = new OutboundQueue(2, SlowConsumerPolicy.DISCONNECT, 0);
+    assertTrue(queue.offer(FIRST));
+    assertTrue(queue.offer(SECOND));
+    assertEquals(2, queue.size());
+    assertSame(FIRST, queue.poll());
+    assertSame(SECOND, queue.poll());
+    assertNull(queue.poll());
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  void offer_disconnect() {
+    OutboundQueue queue = new OutboundQueue(2, SlowConsumerPolicy.DISCONNECT, 0);
+    queue.offer(FIRST);
+    queue.offer(SECOND);
+    assertFalse(queue.offer(THIRD));
+    assertEquals(2, queue.size());
+  }
+
+  @Test
+  void offer_dropOldest() {
+    OutboundQueue queue = new OutboundQueue(2, SlowConsumerPolicy.DROP_OLDEST, 0);
+    queue.offer(FIRST);
+    queue.offer(SECOND);
+    assertTrue(queue.offer(THIRD));
+    assertEquals(1, queue.droppedCount());
+    assertSame(SECOND, queue.poll());
+    assertSame(THIRD, queue.poll());
+  }
+
+  @Test
+  void offer_dropOldestReleasesFrame() {
+    BufferPool pool = new BufferPool(false, 256, 256, 1024);
+    OutboundQueue queue = new OutboundQueue(1, SlowConsumerPolicy.DROP_OLDEST, 0);
+    queue.offer(new Frame(pool.acquire(4), 4, pool));
+    queue.offer(new Frame(pool.acquire(4), 4, pool));
+    assertEquals(1, pool.getOutstanding());
+    queue.clear();
+    assertEquals(0, pool.getOutstanding());
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  void offer_blockTimesOut() {
+    OutboundQueue.allowBlocking();
+    OutboundQueue queue = new OutboundQueue(1, SlowConsumerPolicy.BLOCK, 20);
+    queue.offer(FIRST);
+    assertFalse(queue.offer(SECOND));
+  }
+
+  @Test
+  void offer_blockUntilPolled() throws InterruptedException {
+    OutboundQueue.allowBlocking();
+    OutboundQueue queue = new OutboundQueue(1, SlowConsumerPolicy.BLOCK, 5000);
+    queue.offer(FIRST);
+    Thread writer = new Thread(() -> {
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      queue.poll();
+    });
+    writer.start();
+    assertTrue(queue.offer(SECOND));
+    writer.join();
+    assertSame(SECOND, queue.poll());
+  }
+
+  @Test
+  void offer_blockNotAllowed_disconnectsRightAway() throws Exception {
+    OutboundQueue queue = new OutboundQueue(1, SlowConsumerPolicy.BLOCK, 5000);
+    queue.offer(FIRST);
+    boolean[] offered = new boolean[1];
+    long[] elapsed = new long[1];
+    Thread eventLoop = new Thread(() -> {
+      long start = System.nanoTime();
+      offered[0] = queue.offer(SECOND);
+      elapsed[0] = System.nanoTime() - start;
+    });
+    eventLoop.start();
+    eventLoop.join();
+    assertFalse(offered[0]);
+    assertTrue(elapsed[0] < TimeUnit.SECONDS.toNanos(1));
+  }
+}
@@ -0,0 +1,127 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PresenceBrokerTest {
+  private ClientRegistry registry;
+  private PresenceBroker broker;
+  private RecordingConnection subscriber;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    registry = new ClientRegistry(100, 4);
+    subscriber = new RecordingConnection();
+    register("amy", subscriber);
+    broker = new PresenceBroker(registry, new BufferPool(false, 256, 1 << 16, 1 << 20), new FanoutStats(), 20);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    broker.subscribe(subscriber, new DataOutputStream(bytes));
+    DataInputStream snapshot = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(MessageIdentifier.PRESENCE_SNAPSHOT, snapshot.readInt());
+    assertEquals(1, snapshot.readLong());
+    assertEquals(1, snapshot.readInt());
+    assertEquals("amy", WireFormat.readString(snapshot));
+  }
+
+  @Test
+  void burstIsOneDelta() throws Exception {
+    register("bob", new RecordingConnection());
+    ClientConnection cat = new RecordingConnection();
+    register("cat", cat);
+    registry.unregister("cat", cat);
+    DataInputStream delta = subscriber.next();
+    assertEquals(MessageIdentifier.PRESENCE_DELTA, delta.readInt());
+    assertEquals(1, delta.readLong());
+    assertEquals(4, delta.readLong());
+    assertEquals(1, delta.readInt());
+    assertEquals("bob", WireFormat.readString(delta));
+    assertEquals(1, delta.readInt());
+    assertEquals("cat", WireFormat.readString(delta));
+    assertNull(subscriber.frames.poll(100, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  void outOfOrderVersionsWait() throws Exception {
+    broker.record("dan", true, 3);
+    assertNull(subscriber.frames.poll(100, TimeUnit.MILLISECONDS));
+    broker.record("bob", true, 2);
+    DataInputStream delta = subscriber.next();
+    assertEquals(MessageIdentifier.PRESENCE_DELTA, delta.readInt());
+    assertEquals(1, delta.readLong());
+    assertEquals(3, delta.readLong());
+    assertEquals(2, delta.readInt());
+  }
+
+  @Test
+  void unsubscribe() throws Exception {
+    assertEquals(1, broker.subscriberCount());
+    broker.unsubscribe(subscriber);
+    register("bob", new RecordingConnection());
+    assertNull(subscriber.frames.poll(100, TimeUnit.MILLISECONDS));
+  }
+
+  private void register(String username, ClientConnection connection) {
+    registry.tryReserve();
+    registry.register(username, connection, () -> { });
+  }
+
+  /**
+   * Connection that keeps frames sent to it
+   */
+  private static class RecordingConnection implements ClientConnection {
+    private final BlockingQueue<ByteBuffer> frames = new LinkedBlockingQueue<>();
+
+    DataInputStream next() throws InterruptedException {
+      ByteBuffer frame = frames.poll(5, TimeUnit.SECONDS);
+      return new DataInputStream(new InputStream() {
+        @Override
+        public int read() {
+          return frame.hasRemaining() ? frame.get() & 0xFF : -1;
+        }
+      });
+    }
+
+    @Override
+    public void send(Frame frame) {
+      ByteBuffer copy = ByteBuffer.allocate(frame.length());
+      copy.put(frame.buffer()).flip();
+      frames.add(copy);
+      frame.release();
+    }
+
+    @Override
+    public int queuedFrames() {
+      return 0;
+    }
+
+    @Override
+    public long writtenSequence() {
+      return 0;
+    }
+
+    @Override
+    public ChatRoomProtocol getProtocol() {
+      return null;
+    }
+
+    @Override
+    public boolean isClosed() {
+      return false;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
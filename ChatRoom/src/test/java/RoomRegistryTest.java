@@ -0,0 +1,165 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class RoomRegistryTest {
+  private static final ClientConnection AMY = new TestConnection();
+  private static final ClientConnection BOB = new TestConnection();
+
+  @Test
+  void join_createsRoomLazily() {
+    RoomRegistry rooms = new RoomRegistry();
+    assertNull(rooms.get("java"));
+    assertTrue(rooms.join("java", AMY));
+    assertFalse(rooms.join("java", AMY));
+    assertTrue(rooms.join("java", BOB));
+    assertEquals(1, rooms.size());
+    assertEquals(2, rooms.get("java").size());
+    assertTrue(rooms.get("java").contains(AMY));
+  }
+
+  @Test
+  void leave_removesEmptyRoom() {
+    RoomRegistry rooms = new RoomRegistry();
+    rooms.join("java", AMY);
+    rooms.join("java", BOB);
+    Room room = rooms.get("java");
+    assertTrue(rooms.leave("java", AMY));
+    assertFalse(rooms.leave("java", AMY));
+    assertEquals(1, rooms.size());
+    assertTrue(rooms.leave("java", BOB));
+    assertEquals(0, rooms.size());
+    assertNull(rooms.get("java"));
+    assertFalse(rooms.leave("java", BOB));
+    rooms.join("java", AMY);
+    assertNotSame(room, rooms.get("java"));
+  }
+
+  @Test
+  void join_severalRooms() {
+    RoomRegistry rooms = new RoomRegistry();
+    rooms.join("java", AMY);
+    rooms.join("rust", AMY);
+    rooms.join("rust", BOB);
+    Set<ClientConnection> members = new HashSet<>();
+    rooms.get("rust").forEach(members::add);
+    assertEquals(Set.of(AMY, BOB), members);
+    assertEquals(2, rooms.size());
+  }
+
+  @Test
+  void joinAndLeave_concurrently() throws InterruptedException {
+    RoomRegistry rooms = new RoomRegistry();
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      ClientConnection connection = new TestConnection();
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 1000; j++) {
+          rooms.join("room" + (j % 10), connection);
+          rooms.leave("room" + (j % 10), connection);
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0, rooms.size());
+  }
+
+  @Test
+  void replace_movesMembership() {
+    RoomRegistry rooms = new RoomRegistry();
+    ClientConnection resumed = new TestConnection();
+    rooms.join("java", AMY);
+    List<Room> called = new ArrayList<>();
+    assertFalse(rooms.replace("java", BOB, resumed, (joining, sequence) -> called.add(joining)));
+    assertFalse(rooms.replace("rust", AMY, resumed, (joining, sequence) -> called.add(joining)));
+    assertTrue(called.isEmpty());
+    Room room = rooms.get("java");
+    assertTrue(rooms.replace("java", AMY, resumed, (joining, sequence) -> {
+      assertTrue(joining.contains(resumed));
+      called.add(joining);
+    }));
+    assertEquals(List.of(room), called);
+    assertSame(room, rooms.get("java"));
+    assertTrue(room.contains(resumed));
+    assertFalse(room.contains(AMY));
+    assertEquals(1, room.size());
+  }
+
+  @Test
+  void isValidName() {
+    assertTrue(RoomRegistry.isValidName("java"));
+    assertFalse(RoomRegistry.isValidName(" "));
+    assertFalse(RoomRegistry.isValidName("x".repeat(RoomRegistry.MAX_ROOM_NAME_BYTES + 1)));
+  }
+
+  /**
+   * Connection that is never written to
+   */
+  private static class TestConnection implements ClientConnection {
+    @Override
+    public void send(Frame frame) {
+      frame.release();
+    }
+
+    @Override
+    public int queuedFrames() {
+      return 0;
+    }
+
+    @Override
+    public long writtenSequence() {
+      return 0;
+    }
+
+    @Override
+    public ChatRoomProtocol getProtocol() {
+      return null;
+    }
+
+    @Override
+    public boolean isClosed() {
+      return false;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  @Test
+  void join_runsCallbackAfterMembership() {
+    RoomRegistry rooms = new RoomRegistry();
+    List<Boolean> memberInCallback = new ArrayList<>();
+    assertTrue(rooms.join("java", AMY, (room, sequence) -> memberInCallback.add(room.contains(AMY))));
+    assertFalse(rooms.join("java", AMY, (room, sequence) -> memberInCallback.add(room.contains(AMY))));
+    assertEquals(List.of(true), memberInCallback);
+    assertNotNull(rooms.get("java").getHistory());
+  }
+
+  @Test
+  void join_callbackGetsSequenceReachedAtJoin() {
+    AtomicLong sequencer = new AtomicLong();
+    RoomRegistry rooms = new RoomRegistry(sequencer, null, 8, 1024);
+    rooms.join("java", AMY);
+    rooms.get("java").getHistory().append(new Frame(new byte[] {1}));
+    rooms.get("java").getHistory().append(new Frame(new byte[] {2}));
+    List<Long> joinedAt = new ArrayList<>();
+    assertTrue(rooms.join("java", BOB, (room, sequence) -> joinedAt.add(sequence)));
+    rooms.get("java").getHistory().append(new Frame(new byte[] {3}));
+    assertEquals(List.of(2L), joinedAt);
+  }
+}
@@ -0,0 +1,44 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+class RosterSnapshotTest {
+
+  @Test
+  void sortedAndEncodedOnce() throws IOException {
+    RosterSnapshot roster = new RosterSnapshot(3, new String[] {"bob", "amy", "\u00e9mile"});
+    assertEquals(3, roster.getVersion());
+    assertEquals(3, roster.size());
+    assertEquals("amy", roster.get(0));
+    assertEquals(1, roster.indexOf("bob"));
+    assertTrue(roster.indexOf("zed") < 0);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    roster.writeEntries(out, 0, 1);
+    roster.writeEntries(out, 2, 3);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals("amy", WireFormat.readString(in));
+    assertEquals("\u00e9mile", WireFormat.readString(in));
+    assertEquals(0, in.available());
+  }
+
+  @Test
+  void prefixRange() {
+    RosterSnapshot roster = new RosterSnapshot(1, new String[] {"al", "bob", "ann", "amy", "bea"});
+    int first = roster.lowerBound("a");
+    assertEquals(0, first);
+    assertEquals(3, roster.prefixEnd(first, "a"));
+    first = roster.lowerBound("b");
+    assertEquals(5, roster.prefixEnd(first, "b"));
+    first = roster.lowerBound("c");
+    assertEquals(5, first);
+    assertEquals(5, roster.prefixEnd(first, "c"));
+    assertEquals(5, roster.prefixEnd(roster.lowerBound(""), ""));
+  }
+}
@@ -0,0 +1,104 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class ServerLogTest {
+
+  @Test
+  void log_writesStructuredLines() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ServerLog log = new ServerLog(LogLevel.INFO, 16, 1, new PrintStream(bytes, true, StandardCharsets.UTF_8));
+    log.info("client.joined", "user", "amy");
+    log.warn("client.left", "user", "bob smith", "reason", "said \"bye\"\n", "empty", "");
+    log.close(1000);
+    String[] lines = bytes.toString(StandardCharsets.UTF_8).split(System.lineSeparator());
+    assertEquals(2, lines.length);
+    assertTrue(lines[0].endsWith(" INFO " + Thread.currentThread().getName() + " client.joined user=amy"));
+    assertTrue(lines[1].endsWith(" client.left user=\"bob smith\" reason=\"said \\\"bye\\\"\\n\" empty=\"\""));
+    assertEquals(2, log.getWritten());
+  }
+
+  @Test
+  void levelsBelowConfigured_notWritten() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ServerLog log = new ServerLog(LogLevel.WARN, 16, 1, new PrintStream(bytes, true, StandardCharsets.UTF_8));
+    assertFalse(log.isEnabled(LogLevel.INFO));
+    assertFalse(log.sampleDebug());
+    log.debug("frame.processed", "id", 24);
+    log.info("client.joined", "user", "amy");
+    log.error("server.failed");
+    log.close(1000);
+    String output = bytes.toString(StandardCharsets.UTF_8);
+    assertFalse(output.contains("client.joined"));
+    assertTrue(output.contains(" ERROR "));
+    assertEquals(0, log.getDropped());
+  }
+
+  @Test
+  void sampleDebug_keepsOneInRate() throws Exception {
+    ServerLog everyOne = new ServerLog(LogLevel.DEBUG, 16, 1, new PrintStream(new ByteArrayOutputStream()));
+    ServerLog sampled = new ServerLog(LogLevel.DEBUG, 16, 100, new PrintStream(new ByteArrayOutputStream()));
+    int kept = 0;
+    for (int i = 0; i < 10000; i++) {
+      assertTrue(everyOne.sampleDebug());
+      kept += sampled.sampleDebug() ? 1 : 0;
+    }
+    assertTrue(kept > 20 && kept < 300);
+    everyOne.close(1000);
+    sampled.close(1000);
+  }
+
+  @Test
+  void fullQueue_dropsAndReports() throws Exception {
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    OutputStream blocking = new OutputStream() {
+      @Override
+      public void write(int b) {
+        this.write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        writing.countDown();
+        try {
+          release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        bytes.write(b, off, len);
+      }
+    };
+    ServerLog log = new ServerLog(LogLevel.INFO, 4, 1, new PrintStream(blocking, true, StandardCharsets.UTF_8));
+    log.info("first");
+    assertTrue(writing.await(5, TimeUnit.SECONDS)); // writer is stuck printing the first event
+    for (int i = 0; i < 10; i++) {
+      log.info("burst", "i", i);
+    }
+    assertEquals(6, log.getDropped());
+    release.countDown();
+    log.close(5000);
+    String output = bytes.toString(StandardCharsets.UTF_8);
+    assertTrue(output.contains("log.dropped count=6 total=6"));
+    assertEquals(5, log.getWritten());
+    log.info("afterClose");
+    assertEquals(7, log.getDropped());
+  }
+
+  @Test
+  void oddFields_rejected() throws Exception {
+    ServerLog log = new ServerLog(LogLevel.INFO, 4, 1, new PrintStream(new ByteArrayOutputStream()));
+    assertThrows(InvalidArgException.class, () -> log.info("event", "key"));
+    log.close(1000);
+  }
+}
@@ -0,0 +1,87 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class ServerMetricsTest {
+
+  @Test
+  void recordRequest_countsAndTimesPerIdentifier() {
+    ServerMetrics metrics = new ServerMetrics();
+    metrics.recordRequest(MessageIdentifier.BROADCAST_MESSAGE, 1000);
+    metrics.recordRequest(MessageIdentifier.BROADCAST_MESSAGE, 3000);
+    metrics.recordRequest(MessageIdentifier.PING, 10);
+    assertEquals(2, metrics.getFramesIn(MessageIdentifier.BROADCAST_MESSAGE));
+    assertEquals(1, metrics.getFramesIn(MessageIdentifier.PING));
+    assertEquals(2000.0, metrics.getLatency(MessageIdentifier.BROADCAST_MESSAGE).getMean());
+    assertEquals(3000, metrics.getLatency(MessageIdentifier.BROADCAST_MESSAGE).getMax());
+    assertNull(metrics.getLatency(MessageIdentifier.DIRECT_MESSAGE));
+  }
+
+  @Test
+  void recordFrameOut_readsIdentifierOfFrame() {
+    ServerMetrics metrics = new ServerMetrics();
+    Frame frame = new Frame(ByteBuffer.allocate(8).putInt(MessageIdentifier.FAILED_MESSAGE).putInt(0).array());
+    metrics.recordFrameOut(frame);
+    metrics.recordFrameOut(frame);
+    metrics.recordFrameOut(new Frame(new byte[2]));
+    assertEquals(2, metrics.getFramesOut(MessageIdentifier.FAILED_MESSAGE));
+    assertEquals(1, metrics.getFramesOut(0));
+  }
+
+  @Test
+  void unknownIdentifiers_shareOneSlot() {
+    ServerMetrics metrics = new ServerMetrics();
+    metrics.recordRequest(-1, 5);
+    metrics.recordRequest(1000, 5);
+    assertEquals(2, metrics.getFramesIn(0));
+    assertEquals(2, metrics.getFramesIn(ServerMetrics.SLOTS));
+  }
+
+  @Test
+  void adminQuery_onlyAnsweredForAdmins() throws Exception {
+    for (ServerMode mode : new ServerMode[] {ServerMode.THREAD, ServerMode.NIO}) {
+      ServerConfig config = new ServerConfig();
+      config.setMode(mode);
+      config.setEventLoopThreads(1);
+      config.setAdminUsers(Set.of("amy"));
+      ChatRoomServer server = new ChatRoomServer(config);
+      server.start(0).get(5, TimeUnit.SECONDS);
+      try (Socket amySocket = new Socket("localhost", server.getPort());
+          Socket bobSocket = new Socket("localhost", server.getPort())) {
+        amySocket.setSoTimeout(5000);
+        bobSocket.setSoTimeout(5000);
+        DataInputStream amyIn = new DataInputStream(new BufferedInputStream(amySocket.getInputStream()));
+        DataInputStream bobIn = new DataInputStream(new BufferedInputStream(bobSocket.getInputStream()));
+        MessageCodec amy = new MessageCodec(new DataOutputStream(amySocket.getOutputStream()));
+        MessageCodec bob = new MessageCodec(new DataOutputStream(bobSocket.getOutputStream()));
+        amy.setUsername("amy");
+        bob.setUsername("bob");
+        amy.encodeMessage("login");
+        amy.decodeMessage(amyIn);
+        bob.encodeMessage("login");
+        bob.decodeMessage(bobIn);
+
+        bob.encodeMessage("stats");
+        assertEquals("You are not authorized to query server metrics", bob.decodeMessage(bobIn));
+        amy.encodeMessage("stats");
+        String snapshot = amy.decodeMessage(amyIn);
+        assertTrue(snapshot.startsWith("Server metrics:"));
+        assertTrue(snapshot.contains("connections=2, users=2"));
+        assertTrue(snapshot.contains("in CONNECT_MESSAGE: count=2"));
+        assertTrue(snapshot.contains("out CONNECT_RESPONSE: count=2"));
+        assertTrue(snapshot.contains("in ADMIN_QUERY: count=1"));
+      } finally {
+        server.stop(0).get(5, TimeUnit.SECONDS);
+      }
+    }
+  }
+}
@@ -0,0 +1,117 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class SessionManagerTest {
+
+  @Test
+  void open_uniqueTokens() {
+    SessionManager sessions = new SessionManager(1000);
+    String first = sessions.open("amy", new TestConnection());
+    String second = sessions.open("amy", new TestConnection());
+    assertNotEquals(first, second);
+    assertEquals(22, first.length());
+    assertEquals(2, sessions.size());
+  }
+
+  @Test
+  void detach_expiresSession() throws InterruptedException {
+    SessionManager sessions = new SessionManager(20);
+    ClientConnection amy = new TestConnection();
+    String token = sessions.open("amy", amy);
+    CountDownLatch expired = new CountDownLatch(1);
+    assertTrue(sessions.detach(token, amy, expired::countDown));
+    assertTrue(sessions.detach(token, amy, () -> { throw new AssertionError(); }));
+    assertTrue(expired.await(5, TimeUnit.SECONDS));
+    assertNull(sessions.resume("amy", token, new TestConnection()));
+    assertFalse(sessions.detach(token, amy, () -> { }));
+    assertEquals(0, sessions.size());
+  }
+
+  @Test
+  void resume_cancelsExpiry() throws InterruptedException {
+    SessionManager sessions = new SessionManager(20);
+    ClientConnection amy = new TestConnection();
+    ClientConnection resumed = new TestConnection();
+    String token = sessions.open("amy", amy);
+    AtomicInteger expired = new AtomicInteger();
+    sessions.detach(token, amy, expired::incrementAndGet);
+    assertSame(amy, sessions.resume("amy", token, resumed));
+    assertTrue(sessions.detach(token, amy, expired::incrementAndGet)); // old connection was taken over
+    Thread.sleep(100);
+    assertEquals(0, expired.get());
+    assertEquals(1, sessions.size());
+    assertFalse(sessions.close(token, amy));
+    assertTrue(sessions.close(token, resumed));
+    assertEquals(0, sessions.size());
+  }
+
+  @Test
+  void resume_wrongUserOrToken() {
+    SessionManager sessions = new SessionManager(1000);
+    ClientConnection amy = new TestConnection();
+    String token = sessions.open("amy", amy);
+    assertNull(sessions.resume("bob", token, new TestConnection()));
+    assertNull(sessions.resume("amy", token + "x", new TestConnection()));
+    assertSame(amy, sessions.resume("amy", token, new TestConnection()));
+  }
+
+  @Test
+  void close_endsSession() {
+    SessionManager sessions = new SessionManager(1000);
+    ClientConnection amy = new TestConnection();
+    String token = sessions.open("amy", amy);
+    assertTrue(sessions.close(token, amy));
+    assertFalse(sessions.close(token, amy));
+    assertFalse(sessions.detach(token, amy, () -> { throw new AssertionError(); }));
+    assertNull(sessions.resume("amy", token, new TestConnection()));
+  }
+
+  @Test
+  void constructor_invalid() {
+    assertThrows(InvalidArgException.class, () -> new SessionManager(0));
+  }
+
+  /**
+   * Connection that is never written to
+   */
+  private static class TestConnection implements ClientConnection {
+    @Override
+    public void send(Frame frame) {
+      frame.release();
+    }
+
+    @Override
+    public int queuedFrames() {
+      return 0;
+    }
+
+    @Override
+    public long writtenSequence() {
+      return 0;
+    }
+
+    @Override
+    public ChatRoomProtocol getProtocol() {
+      return null;
+    }
+
+    @Override
+    public boolean isClosed() {
+      return false;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
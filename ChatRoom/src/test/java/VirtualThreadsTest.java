@@ -0,0 +1,29 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class VirtualThreadsTest {
+
+  @Test
+  void isSupported_fromJdk21() {
+    assertEquals(Runtime.version().feature() >= 21, VirtualThreads.isSupported());
+  }
+
+  @Test
+  void newPerTaskExecutor_beforeJdk21_failsWithClearError() throws Exception {
+    if (VirtualThreads.isSupported()) {
+      ExecutorService executor = VirtualThreads.newPerTaskExecutor();
+      assertEquals(Boolean.TRUE, executor.submit(() -> Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()))
+          .get(5, TimeUnit.SECONDS));
+      executor.shutdown();
+      return;
+    }
+    UnsupportedOperationException e = assertThrows(UnsupportedOperationException.class, VirtualThreads::newPerTaskExecutor);
+    assertTrue(e.getMessage().contains("JDK 21"));
+    assertThrows(UnsupportedOperationException.class, VirtualThreads::requireSupported);
+  }
+}